@@ -34,6 +34,6 @@ import org.junit.runners.Suite;
  */
 @RunWith(Suite.class)
 @Suite.SuiteClasses({ TestIntegerNaryTree.class, TestCharacterNaryTree.class, TestStringNaryTree.class,
-        TestIntShiftRegister.class, TestCharShiftRegister.class, TestStringBinaryTree.class })
+        TestIntShiftRegister.class, TestCharShiftRegister.class, TestStringBinaryTree.class, TestEncodedTree.class })
 public class AllTreeTests {
 }
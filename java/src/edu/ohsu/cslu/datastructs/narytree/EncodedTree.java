@@ -0,0 +1,108 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.datastructs.narytree;
+
+/**
+ * A compact representation of an n-ary parse tree, as written by {@link EncodedTreeWriter} and read by
+ * {@link EncodedTreeReader}. Nodes are stored in pre-order as parallel arrays of non-terminal indices and child counts
+ * (arities). Preterminals are stored with an arity of 0, and reference the token they dominate by index.
+ * 
+ * Non-terminal indices refer to a label vocabulary shared by all trees in a stream (see
+ * {@link EncodedTreeReader#labels()}).
+ * 
+ * @author Aaron Dunlop
+ */
+public class EncodedTree {
+
+    /** Sentence tokens */
+    public final String[] tokens;
+
+    /** Non-terminal index of each node, in pre-order */
+    public final short[] labels;
+
+    /** Number of children of each node. Preterminals have an arity of 0. */
+    public final short[] arities;
+
+    /** Index of the token dominated by each preterminal (unused for other nodes) */
+    public final short[] tokenIndices;
+
+    /** Score (log inside probability) of each node. Null if scores were not encoded. */
+    public final float[] scores;
+
+    public EncodedTree(final String[] tokens, final short[] labels, final short[] arities, final short[] tokenIndices,
+            final float[] scores) {
+        this.tokens = tokens;
+        this.labels = labels;
+        this.arities = arities;
+        this.tokenIndices = tokenIndices;
+        this.scores = scores;
+    }
+
+    /**
+     * Constructs an empty tree, denoting a parse failure
+     * 
+     * @param tokens Sentence tokens
+     */
+    public EncodedTree(final String[] tokens) {
+        this(tokens, new short[0], new short[0], new short[0], null);
+    }
+
+    /**
+     * @return The number of nodes in the tree (excluding leaves). 0 denotes a parse failure.
+     */
+    public int size() {
+        return labels.length;
+    }
+
+    /**
+     * Constructs an {@link NaryTree} from the encoded tree.
+     * 
+     * @param labelVocabulary Non-terminal labels, indexed by non-terminal index
+     * @return An {@link NaryTree} representation of the encoded tree, or null if the encoded parse failed
+     */
+    public NaryTree<String> toNaryTree(final String[] labelVocabulary) {
+        if (labels.length == 0) {
+            return null;
+        }
+        final NaryTree<String> root = new NaryTree<String>(labelVocabulary[labels[0]]);
+        addChildren(root, 0, labelVocabulary);
+        return root;
+    }
+
+    /**
+     * Adds the children of the specified node to <code>tree</code>
+     * 
+     * @return The index of the node following the subtree rooted at <code>node</code>
+     */
+    private int addChildren(final NaryTree<String> tree, final int node, final String[] labelVocabulary) {
+        if (arities[node] == 0) {
+            tree.addChild(tokens[tokenIndices[node]]);
+            return node + 1;
+        }
+
+        int next = node + 1;
+        for (int i = 0; i < arities[node]; i++) {
+            next = addChildren(tree.addChild(labelVocabulary[labels[next]]), next, labelVocabulary);
+        }
+        return next;
+    }
+}
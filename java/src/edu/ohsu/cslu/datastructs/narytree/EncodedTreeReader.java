@@ -0,0 +1,150 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.datastructs.narytree;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads parse trees written by {@link EncodedTreeWriter}. e.g.:
+ * 
+ * <pre>
+ * final EncodedTreeReader reader = new EncodedTreeReader(inputStream);
+ * for (EncodedTree tree = reader.read(); tree != null; tree = reader.read()) {
+ *     final NaryTree&lt;String&gt; naryTree = tree.toNaryTree(reader.labels());
+ *     ...
+ * }
+ * </pre>
+ * 
+ * @author Aaron Dunlop
+ */
+public class EncodedTreeReader {
+
+    private final DataInputStream input;
+    private final String[] labels;
+    private final boolean scores;
+
+    /**
+     * Reads the stream header
+     * 
+     * @param inputStream Input stream
+     * @throws IOException if the read fails or the stream header is invalid
+     */
+    public EncodedTreeReader(final InputStream inputStream) throws IOException {
+        this.input = new DataInputStream(new BufferedInputStream(inputStream));
+
+        if (input.readInt() != EncodedTreeWriter.MAGIC) {
+            throw new IOException("Not an encoded tree stream");
+        }
+        final short version = input.readShort();
+        if (version != EncodedTreeWriter.VERSION) {
+            throw new IOException("Unsupported encoded tree version: " + version);
+        }
+
+        this.scores = input.readBoolean();
+        this.labels = new String[input.readShort()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = input.readUTF();
+        }
+    }
+
+    /**
+     * @return Non-terminal labels, indexed by non-terminal index
+     */
+    public String[] labels() {
+        return labels;
+    }
+
+    /**
+     * @return True if the stream includes node scores
+     */
+    public boolean scores() {
+        return scores;
+    }
+
+    /**
+     * Reads the next tree
+     * 
+     * @return the next tree, or null at the end of the stream
+     * @throws IOException if the read fails
+     */
+    public EncodedTree read() throws IOException {
+        try {
+            input.readInt(); // Record length
+        } catch (final EOFException e) {
+            return null;
+        }
+
+        final String[] tokens = new String[input.readShort()];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = input.readUTF();
+        }
+
+        final int size = input.readShort();
+        final short[] nodeLabels = new short[size];
+        final short[] arities = new short[size];
+        final short[] tokenIndices = new short[size];
+        final float[] nodeScores = scores ? new float[size] : null;
+
+        for (int i = 0; i < size; i++) {
+            nodeLabels[i] = input.readShort();
+            arities[i] = input.readShort();
+            if (arities[i] == 0) {
+                tokenIndices[i] = input.readShort();
+            }
+            if (scores) {
+                nodeScores[i] = input.readFloat();
+            }
+        }
+        return new EncodedTree(tokens, nodeLabels, arities, tokenIndices, nodeScores);
+    }
+
+    /**
+     * Skips the next tree without decoding it
+     * 
+     * @return false at the end of the stream
+     * @throws IOException if the read fails
+     */
+    public boolean skip() throws IOException {
+        final int length;
+        try {
+            length = input.readInt();
+        } catch (final EOFException e) {
+            return false;
+        }
+        for (int remaining = length; remaining > 0;) {
+            final int skipped = input.skipBytes(remaining);
+            if (skipped == 0) {
+                throw new EOFException("Truncated record");
+            }
+            remaining -= skipped;
+        }
+        return true;
+    }
+
+    public void close() throws IOException {
+        input.close();
+    }
+}
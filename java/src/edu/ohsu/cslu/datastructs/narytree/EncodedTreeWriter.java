@@ -0,0 +1,133 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.datastructs.narytree;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes parse trees in a compact binary encoding, avoiding the cost of formatting (and later re-parsing) bracketed
+ * strings. The stream begins with a header:
+ * 
+ * <pre>
+ * int     magic number ({@link #MAGIC})
+ * short   format version ({@link #VERSION})
+ * boolean true if node scores are included
+ * short   label count, followed by each non-terminal label (modified UTF-8)
+ * </pre>
+ * 
+ * Each tree is a length-prefixed record, so readers can skip trees without decoding them:
+ * 
+ * <pre>
+ * int     record length in bytes (excluding this field)
+ * short   token count, followed by each token (modified UTF-8)
+ * short   node count (0 denotes a parse failure), followed by each node in pre-order:
+ *   short   non-terminal index
+ *   short   arity (0 denotes a preterminal)
+ *   short   token index (preterminals only)
+ *   float   score (only if scores are included)
+ * </pre>
+ * 
+ * All values are big-endian, as written by {@link DataOutputStream}.
+ * 
+ * @see EncodedTreeReader
+ * 
+ * @author Aaron Dunlop
+ */
+public class EncodedTreeWriter {
+
+    public final static int MAGIC = 0x42554253; // 'BUBS'
+    public final static short VERSION = 1;
+
+    private final DataOutputStream output;
+    private final boolean scores;
+
+    /** Reusable buffer for each record, so we can prefix it with its length */
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(1024);
+    private final DataOutputStream recordOutput = new DataOutputStream(record);
+
+    /**
+     * Writes the stream header
+     * 
+     * @param outputStream Output stream
+     * @param labels Non-terminal labels, indexed by non-terminal index
+     * @param scores Include node scores (if true, all trees written must include scores)
+     * @throws IOException if the write fails
+     */
+    public EncodedTreeWriter(final OutputStream outputStream, final String[] labels, final boolean scores)
+            throws IOException {
+        this.output = new DataOutputStream(new BufferedOutputStream(outputStream));
+        this.scores = scores;
+
+        output.writeInt(MAGIC);
+        output.writeShort(VERSION);
+        output.writeBoolean(scores);
+        output.writeShort(labels.length);
+        for (final String label : labels) {
+            output.writeUTF(label);
+        }
+    }
+
+    /**
+     * Writes a single tree record and flushes the underlying stream (output is typically piped to a downstream
+     * process, which should not wait for the buffer to fill).
+     * 
+     * @param tree Encoded tree
+     * @throws IOException if the write fails
+     */
+    public void write(final EncodedTree tree) throws IOException {
+        record.reset();
+
+        recordOutput.writeShort(tree.tokens.length);
+        for (final String token : tree.tokens) {
+            recordOutput.writeUTF(token);
+        }
+
+        recordOutput.writeShort(tree.size());
+        for (int i = 0; i < tree.size(); i++) {
+            recordOutput.writeShort(tree.labels[i]);
+            recordOutput.writeShort(tree.arities[i]);
+            if (tree.arities[i] == 0) {
+                recordOutput.writeShort(tree.tokenIndices[i]);
+            }
+            if (scores) {
+                recordOutput.writeFloat(tree.scores[i]);
+            }
+        }
+        recordOutput.flush();
+
+        output.writeInt(record.size());
+        record.writeTo(output);
+        output.flush();
+    }
+
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    public void close() throws IOException {
+        output.close();
+    }
+}
@@ -33,6 +33,8 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 
+import edu.ohsu.cslu.grammar.Vocabulary;
+
 /**
  * Implements a set of head-percolation rules.
  * 
@@ -131,6 +133,41 @@ public class HeadPercolationRuleset {
         throw new IllegalArgumentException("Unable to find head child for " + parentProduction);
     }
 
+    /**
+     * Compiles this ruleset against the base (unsplit) categories of a grammar's non-terminal vocabulary, for
+     * head-finding directly on non-terminal indices.
+     * 
+     * @param nonTermSet Grammar non-terminal vocabulary
+     * @return a {@link HeadTable} indexed by non-terminal
+     */
+    public HeadTable headTable(final Vocabulary nonTermSet) {
+        final Vocabulary baseVocabulary = nonTermSet.baseVocabulary();
+        final boolean[][] rightmost = new boolean[baseVocabulary.size()][];
+        final boolean[][][] categories = new boolean[baseVocabulary.size()][][];
+
+        for (int baseParent = 0; baseParent < baseVocabulary.size(); baseParent++) {
+            final List<CategorySet> preferences = rules.get(baseVocabulary.getSymbol(baseParent));
+            if (preferences == null) {
+                continue;
+            }
+
+            rightmost[baseParent] = new boolean[preferences.size()];
+            categories[baseParent] = new boolean[preferences.size()][baseVocabulary.size()];
+            int i = 0;
+            for (final CategorySet preference : preferences) {
+                rightmost[baseParent][i] = preference.direction == Preference.Rightmost;
+                for (final String category : preference.categories) {
+                    final int baseChild = baseVocabulary.getIndex(category);
+                    if (baseChild >= 0) {
+                        categories[baseParent][i][baseChild] = true;
+                    }
+                }
+                i++;
+            }
+        }
+        return new HeadTable(nonTermSet, rightmost, categories);
+    }
+
     private class CategorySet {
 
         private final Preference direction;
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.datastructs.narytree;
+
+import edu.ohsu.cslu.grammar.Vocabulary;
+
+/**
+ * A {@link HeadPercolationRuleset} compiled against a grammar's non-terminal {@link Vocabulary}. Preferences are
+ * represented as membership arrays indexed by base (unsplit) non-terminal, so head-finding operates directly on
+ * non-terminal indices (e.g., while walking chart backpointers), without mapping indices to labels or materializing an
+ * {@link NaryTree}.
+ * 
+ * Instances are immutable and may be shared between threads.
+ * 
+ * @author Aaron Dunlop
+ */
+public class HeadTable {
+
+    /** Base (unsplit) vocabulary, used to label error messages */
+    private final Vocabulary baseVocabulary;
+
+    /** Base (unsplit) category of each non-terminal, indexed by non-terminal index */
+    private final short[] baseIndices;
+
+    /**
+     * Search direction of each preference, indexed by base parent category and preference. Null for categories without
+     * a head rule.
+     */
+    private final boolean[][] rightmost;
+
+    /**
+     * Category membership of each preference, indexed by base parent category, preference, and base child category.
+     * Null for categories without a head rule.
+     */
+    private final boolean[][][] categories;
+
+    HeadTable(final Vocabulary nonTermSet, final boolean[][] rightmost, final boolean[][][] categories) {
+        this.baseVocabulary = nonTermSet.baseVocabulary();
+        this.baseIndices = new short[nonTermSet.size()];
+        for (short nt = 0; nt < baseIndices.length; nt++) {
+            baseIndices[nt] = nonTermSet.getBaseIndex(nt);
+        }
+        this.rightmost = rightmost;
+        this.categories = categories;
+    }
+
+    /**
+     * Returns the index of the child preferred as the head of a production. Equivalent to
+     * {@link HeadPercolationRuleset#headChild(String, java.util.List)}, but operates on non-terminal indices.
+     * 
+     * @param parent Parent non-terminal index
+     * @param children Array containing child non-terminal indices
+     * @param offset Offset of the first child in <code>children</code>
+     * @param count Number of children
+     * @return the index of the head child (relative to <code>offset</code>)
+     */
+    public int headChild(final short parent, final short[] children, final int offset, final int count) {
+
+        final short baseParent = baseIndices[parent];
+        final boolean[][] preferences = categories[baseParent];
+        if (preferences == null) {
+            throw new IllegalArgumentException("No head rule for " + baseVocabulary.getSymbol(baseParent));
+        }
+
+        for (int i = 0; i < preferences.length; i++) {
+            final boolean[] preference = preferences[i];
+
+            if (rightmost[baseParent][i]) {
+                for (int j = offset + count - 1; j >= offset; j--) {
+                    if (preference[baseIndices[children[j]]]) {
+                        return j - offset;
+                    }
+                }
+            } else {
+                for (int j = offset; j < offset + count; j++) {
+                    if (preference[baseIndices[children[j]]]) {
+                        return j - offset;
+                    }
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unable to find head child for " + baseVocabulary.getSymbol(baseParent));
+    }
+}
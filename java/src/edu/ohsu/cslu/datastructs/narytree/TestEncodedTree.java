@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.datastructs.narytree;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.cjunit.FilteredRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests {@link EncodedTreeWriter} and {@link EncodedTreeReader}
+ * 
+ * @author Aaron Dunlop
+ */
+@RunWith(FilteredRunner.class)
+public class TestEncodedTree {
+
+    private final static String[] LABELS = new String[] { "ROOT", "S", "NP", "VP", "DT", "NN", "VB" };
+
+    /** (ROOT (S (NP (DT The) (NN fish)) (VP (VB swims)))) */
+    private final static EncodedTree SAMPLE_TREE = new EncodedTree(new String[] { "The", "fish", "swims" },
+            new short[] { 0, 1, 2, 4, 5, 3, 6 }, new short[] { 1, 2, 2, 0, 0, 1, 0 },
+            new short[] { 0, 0, 0, 0, 1, 0, 2 }, new float[] { -5f, -5f, -2f, -1f, -1f, -3f, -3f });
+
+    @Test
+    public void testToNaryTree() {
+        assertEquals("(ROOT (S (NP (DT The) (NN fish)) (VP (VB swims))))", SAMPLE_TREE.toNaryTree(LABELS).toString());
+        assertNull(new EncodedTree(new String[] { "The", "fish" }).toNaryTree(LABELS));
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final EncodedTreeWriter writer = new EncodedTreeWriter(bos, LABELS, true);
+        writer.write(SAMPLE_TREE);
+        writer.write(new EncodedTree(new String[] { "fish" }));
+        writer.write(SAMPLE_TREE);
+        writer.close();
+
+        final EncodedTreeReader reader = new EncodedTreeReader(new ByteArrayInputStream(bos.toByteArray()));
+        assertArrayEquals(LABELS, reader.labels());
+        assertTrue(reader.scores());
+
+        final EncodedTree tree = reader.read();
+        assertArrayEquals(SAMPLE_TREE.tokens, tree.tokens);
+        assertArrayEquals(SAMPLE_TREE.labels, tree.labels);
+        assertArrayEquals(SAMPLE_TREE.arities, tree.arities);
+        assertArrayEquals(SAMPLE_TREE.scores, tree.scores, .0001f);
+        assertEquals(SAMPLE_TREE.toNaryTree(LABELS).toString(), tree.toNaryTree(LABELS).toString());
+
+        // A parse failure
+        final EncodedTree failure = reader.read();
+        assertEquals(0, failure.size());
+        assertArrayEquals(new String[] { "fish" }, failure.tokens);
+
+        assertTrue(reader.skip());
+        assertFalse(reader.skip());
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void testWithoutScores() throws Exception {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final EncodedTreeWriter writer = new EncodedTreeWriter(bos, LABELS, false);
+        writer.write(SAMPLE_TREE);
+        writer.close();
+
+        final EncodedTreeReader reader = new EncodedTreeReader(new ByteArrayInputStream(bos.toByteArray()));
+        assertFalse(reader.scores());
+        final EncodedTree tree = reader.read();
+        assertNull(tree.scores);
+        assertEquals(SAMPLE_TREE.toNaryTree(LABELS).toString(), tree.toNaryTree(LABELS).toString());
+        assertNull(reader.read());
+    }
+}
@@ -26,6 +26,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses({ TestDependencyGraph.class, TestTransitionParserFeatureExtractor.class })
+@Suite.SuiteClasses({ TestDependencyGraph.class, TestTransitionParserFeatureExtractor.class, TestArcStack.class,
+        TestTransitionBeam.class })
 public class AllDependencyTests {
 }
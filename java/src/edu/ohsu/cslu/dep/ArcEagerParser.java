@@ -22,7 +22,7 @@
 
 package edu.ohsu.cslu.dep;
 
-import java.util.LinkedList;
+import java.io.Serializable;
 
 import edu.ohsu.cslu.datastructs.vectors.BitVector;
 import edu.ohsu.cslu.dep.DependencyGraph.Arc;
@@ -35,7 +35,9 @@ import edu.ohsu.cslu.util.MutableEnumeration;
  * @author Aaron Dunlop
  * @since Jul 5, 2012
  */
-public class ArcEagerParser {
+public class ArcEagerParser implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public final TransitionParserFeatureExtractor featureExtractor;
     public final AveragedPerceptron actionClassifier;
@@ -57,15 +59,28 @@ public class ArcEagerParser {
     }
 
     public DependencyGraph parse(final DependencyGraph input) {
+        return parse(input, new NivreParserContext());
+    }
+
+    /**
+     * Parses the input, reusing the supplied parser context (stack and feature buffer). Concurrent callers must each
+     * supply their own context.
+     * 
+     * @param input
+     * @param context Reusable parser context (see {@link NivreParserContext#NivreParserContext()})
+     * @return The parsed graph
+     */
+    public DependencyGraph parse(final DependencyGraph input, final NivreParserContext context) {
 
         final DependencyGraph parse = input.clear();
 
-        final LinkedList<Arc> stack = new LinkedList<Arc>();
+        context.reset(parse.arcs);
+        final ArcStack stack = context.arcStack();
 
         final int totalSteps = parse.size() * 2 - 1;
         for (int step = 0, next = 0; step < totalSteps; step++) {
-            final BitVector featureVector = featureExtractor.featureVector(new NivreParserContext(stack, parse.arcs,
-                    next), next);
+            context.next = next;
+            final BitVector featureVector = featureExtractor.featureVector(context, next);
 
             ArcEagerAction action = null;
             ScoredClassification actionClassification = null;
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+
+package edu.ohsu.cslu.dep;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import edu.ohsu.cslu.dep.DependencyGraph.Arc;
+
+/**
+ * Array-backed stack of {@link Arc}s for transition-based dependency parsing. Follows the {@link java.util.LinkedList}
+ * stack conventions used throughout the parsers and feature extractors (the top of the stack is element 0), but
+ * supports constant-time random access and can be cleared and reused across sentences without allocation.
+ * 
+ * @author Aaron Dunlop
+ */
+public class ArcStack extends AbstractList<Arc> {
+
+    private Arc[] elements;
+    private int size;
+
+    public ArcStack() {
+        this(64);
+    }
+
+    public ArcStack(final int initialCapacity) {
+        this.elements = new Arc[initialCapacity];
+    }
+
+    /**
+     * Pushes an arc onto the top of the stack
+     * 
+     * @param arc
+     */
+    public void addFirst(final Arc arc) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, elements.length * 2);
+        }
+        elements[size++] = arc;
+    }
+
+    /**
+     * Pops the top arc off the stack
+     * 
+     * @return The top arc
+     * @throws NoSuchElementException if the stack is empty
+     */
+    public Arc removeFirst() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        final Arc top = elements[--size];
+        elements[size] = null;
+        return top;
+    }
+
+    /**
+     * @return The top arc, or null if the stack is empty
+     */
+    public Arc peekFirst() {
+        return size == 0 ? null : elements[size - 1];
+    }
+
+    /**
+     * @param index Stack depth (0 is the top of the stack)
+     */
+    @Override
+    public Arc get(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return elements[size - 1 - index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(elements, 0, size, null);
+        size = 0;
+    }
+}
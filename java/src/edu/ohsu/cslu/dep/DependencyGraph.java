@@ -55,7 +55,7 @@ public class DependencyGraph implements Cloneable {
      */
     public DependencyGraph(final int sentenceLength) {
         arcs = new Arc[sentenceLength + 1];
-        arcs[sentenceLength] = ROOT;
+        arcs[sentenceLength] = ROOT.clone();
     }
 
     /**
@@ -67,7 +67,7 @@ public class DependencyGraph implements Cloneable {
     public DependencyGraph(final String taggedSequence) {
         final String[] split = taggedSequence.split("\\s+");
         this.arcs = new Arc[split.length / 2 + 1];
-        arcs[arcs.length - 1] = ROOT;
+        arcs[arcs.length - 1] = ROOT.clone();
 
         for (int i = 0; i < split.length; i += 2) {
             final String tag = split[i].substring(1); // remove "("
@@ -85,7 +85,7 @@ public class DependencyGraph implements Cloneable {
      */
     public DependencyGraph(final String[] tokens, final String[] pos) {
         this.arcs = new Arc[tokens.length + 1];
-        arcs[arcs.length - 1] = ROOT;
+        arcs[arcs.length - 1] = ROOT.clone();
 
         for (int i = 0; i < tokens.length; i++) {
             arcs[i] = new Arc(tokens[i], "_", pos[i], i + 1, 0, "_");
@@ -153,7 +153,7 @@ public class DependencyGraph implements Cloneable {
         final LinkedList<Arc> stack = new LinkedList<Arc>();
         int step = 0;
 
-        for (int i = 0; i < arcs.length || (stack.size() != 1 || stack.peek() != ROOT);) {
+        for (int i = 0; i < arcs.length || (stack.size() != 1 || !stack.peek().isRoot());) {
             if (stack.size() < 2) {
                 stack.addFirst(arcs[i++]);
                 d[step++] = StackProjectiveAction.SHIFT;
@@ -196,7 +196,7 @@ public class DependencyGraph implements Cloneable {
         final LinkedList<Arc> stack = new LinkedList<Arc>();
         int step = 0;
 
-        for (int i = 0; i < arcs.length || (stack.size() != 1 || stack.peek() != ROOT);) {
+        for (int i = 0; i < arcs.length || (stack.size() != 1 || !stack.peek().isRoot());) {
             if (stack.size() < 2) {
                 stack.addFirst(arcs[i++]);
                 tmpDerivation[step++] = StackProjectiveAction.SHIFT;
@@ -247,7 +247,7 @@ public class DependencyGraph implements Cloneable {
         final LinkedList<Arc> stack = new LinkedList<Arc>();
         int step = 0;
 
-        for (int next = 0; next < arcs.length || stack.size() != 1 || stack.peek() != ROOT;) {
+        for (int next = 0; next < arcs.length || stack.size() != 1 || !stack.peek().isRoot();) {
 
             if (stack.size() < 1) {
                 // If the stack is empty, we have to shift
@@ -438,7 +438,7 @@ public class DependencyGraph implements Cloneable {
 
         for (int i = 0; i < arcs.length; i++) {
             final Arc a = arcs[i];
-            if (a != ROOT) {
+            if (!a.isRoot()) {
                 sb.append(String.format("%d\t%s\t_\t%s\t%s\t_\t%d\t%s\t_\t_\n", i + 1, a.token, a.coarsePos, a.pos,
                         a.head, a.label));
             }
@@ -446,6 +446,22 @@ public class DependencyGraph implements Cloneable {
         return sb.toString();
     }
 
+    /**
+     * Output in CoNLL format, with predicted heads and labels in place of the gold heads and labels
+     */
+    public String toPredictedConllString() {
+        final StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < arcs.length; i++) {
+            final Arc a = arcs[i];
+            if (!a.isRoot()) {
+                sb.append(String.format("%d\t%s\t_\t%s\t%s\t_\t%d\t%s\t_\t_\n", i + 1, a.token, a.coarsePos, a.pos,
+                        a.predictedHead, a.predictedLabel != null ? a.predictedLabel : "_"));
+            }
+        }
+        return sb.toString();
+    }
+
     /**
      * Augment CoNLL format with predicted POS and heads, and (if available) head scores
      */
@@ -454,7 +470,7 @@ public class DependencyGraph implements Cloneable {
         // Output with heads
         for (int i = 0; i < arcs.length; i++) {
             final Arc a = arcs[i];
-            if (a != ROOT) {
+            if (!a.isRoot()) {
                 if (a.score != 0) {
                     sb.append(String.format("%d\t%s\t_\t%s\t%s\t_\t%d\t%s\t_\t_\t%s\t%d\t%.5f\n", i + 1, a.token,
                             a.coarsePos, a.pos, a.head, a.label, a.score, a.predictedPos, a.predictedHead));
@@ -527,12 +543,19 @@ public class DependencyGraph implements Cloneable {
             this.label = label;
         }
 
+        /**
+         * @return True if this arc represents the (artificial) root node of a sentence
+         */
+        public boolean isRoot() {
+            return index == 0;
+        }
+
+        /**
+         * Note: each {@link DependencyGraph} holds its own copy of {@link DependencyGraph#ROOT}, since parsing sets
+         * predicted heads and labels on the root node as well, and graphs may be parsed concurrently.
+         */
         @Override
         public Arc clone() {
-            if (this == ROOT) {
-                return this;
-            }
-
             try {
                 return (Arc) super.clone();
             } catch (final CloneNotSupportedException e) {
@@ -25,27 +25,150 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.ObjectInputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import cltool4j.BaseCommandlineTool;
+import cltool4j.BaseLogger;
+import cltool4j.Threadable;
 import cltool4j.args4j.Option;
 
+/**
+ * Parses dependency graphs from CoNLL-format input, using a trained greedy transition-based model (either a
+ * {@link TransitionDepParser} or an {@link ArcEagerParser}, as serialized by {@link TrainDepParser} or
+ * {@link TrainArcEagerParser}).
+ * 
+ * Parsing is greedy by default; TransitionDepParser models also support beam search (with -beam).
+ * 
+ * Sentences are parsed concurrently when multiple threads are specified (with -xt). Each thread reuses a single
+ * {@link NivreParserContext} (stack and feature buffer), and output is written in input order.
+ * 
+ * Input: Sentences in CoNLL 2007 format (gold heads and labels are ignored)
+ * 
+ * Output: Predicted heads and labels in CoNLL 2007 format
+ * 
+ * @author Aaron Dunlop
+ */
+@Threadable(defaultThreads = 1)
 public class NivreDepParser extends BaseCommandlineTool {
 
     @Option(name = "-m", required = true, metaVar = "file", usage = "Model file")
     private File modelFile;
 
-    @Override
-    protected void run() throws Exception {
+    @Option(name = "-beam", metaVar = "width", usage = "Beam width (beam search is supported for TransitionDepParser models)")
+    private int beamWidth = 1;
 
+    private TransitionDepParser transitionParser;
+    private ArcEagerParser arcEagerParser;
+
+    private final ThreadLocal<NivreParserContext> threadLocalContexts = new ThreadLocal<NivreParserContext>() {
+        @Override
+        protected NivreParserContext initialValue() {
+            return new NivreParserContext();
+        }
+    };
+
+    private final ThreadLocal<TransitionBeam> threadLocalBeams = new ThreadLocal<TransitionBeam>() {
+        @Override
+        protected TransitionBeam initialValue() {
+            return new TransitionBeam(transitionParser, beamWidth);
+        }
+    };
+
+    @Override
+    protected void setup() throws Exception {
         final ObjectInputStream ois = new ObjectInputStream(new FileInputStream(modelFile));
-        final TransitionDepParser parser = (TransitionDepParser) ois.readObject();
+        final Object model = ois.readObject();
         ois.close();
 
-        for (final BufferedReader br = inputAsBufferedReader(); br.ready();) {
+        // Average the perceptron models before sharing them across threads
+        if (model instanceof TransitionDepParser) {
+            transitionParser = (TransitionDepParser) model;
+            transitionParser.shiftReduceClassifier.averageModel();
+            transitionParser.reduceDirectionClassifier.averageModel();
+            if (transitionParser.labelClassifier != null) {
+                transitionParser.labelClassifier.averageModel();
+            }
+        } else {
+            if (beamWidth > 1) {
+                throw new IllegalArgumentException("Beam search is not supported for arc-eager models");
+            }
+            arcEagerParser = (ArcEagerParser) model;
+            arcEagerParser.actionClassifier.averageModel();
+            if (arcEagerParser.labelClassifier != null) {
+                arcEagerParser.labelClassifier.averageModel();
+            }
+        }
+    }
+
+    @Override
+    protected void run() throws Exception {
+
+        final long startTime = System.currentTimeMillis();
+        int sentences = 0, words = 0;
+
+        final BufferedReader br = inputAsBufferedReader();
+
+        if (maxThreads <= 1) {
+            for (DependencyGraph g = DependencyGraph.readConll(br); g != null; g = DependencyGraph.readConll(br)) {
+                System.out.println(parse(g).toPredictedConllString());
+                sentences++;
+                words += g.size() - 1;
+            }
+
+        } else {
+            // Parse concurrently, buffering a bounded number of pending sentences so output remains in input order
+            final ExecutorService executor = Executors.newFixedThreadPool(maxThreads);
+            final LinkedList<Future<String>> pending = new LinkedList<Future<String>>();
+            final int maxPending = maxThreads * 16;
+
+            try {
+                for (DependencyGraph g = DependencyGraph.readConll(br); g != null; g = DependencyGraph.readConll(br)) {
+                    final DependencyGraph input = g;
+                    pending.add(executor.submit(new Callable<String>() {
+                        @Override
+                        public String call() {
+                            return parse(input).toPredictedConllString();
+                        }
+                    }));
+                    sentences++;
+                    words += g.size() - 1;
+
+                    if (pending.size() >= maxPending) {
+                        System.out.println(pending.removeFirst().get());
+                    }
+                }
+
+                while (!pending.isEmpty()) {
+                    System.out.println(pending.removeFirst().get());
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        final long time = System.currentTimeMillis() - startTime;
+        BaseLogger.singleton().info(
+                String.format("INFO: Parsed %d sentences (%d words) in %.1f seconds (%.2f sentences/sec, %.2f words/sec)",
+                        sentences, words, time / 1000.0, sentences * 1000.0 / time, words * 1000.0 / time));
+    }
 
-            final DependencyGraph g = DependencyGraph.readConll(br);
-            System.out.println(parser.parse(g));
+    /**
+     * Parses a sentence, using the current thread's {@link NivreParserContext} or {@link TransitionBeam}
+     * 
+     * @param input
+     * @return Parsed graph
+     */
+    private DependencyGraph parse(final DependencyGraph input) {
+        if (beamWidth > 1) {
+            return transitionParser.parse(input, threadLocalBeams.get());
         }
+        final NivreParserContext context = threadLocalContexts.get();
+        return transitionParser != null ? transitionParser.parse(input, context) : arcEagerParser.parse(input,
+                context);
     }
 
     public static void main(final String[] args) {
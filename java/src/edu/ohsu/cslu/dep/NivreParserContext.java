@@ -22,25 +22,61 @@
 
 package edu.ohsu.cslu.dep;
 
-import java.util.LinkedList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.util.List;
 
 import edu.ohsu.cslu.dep.DependencyGraph.Arc;
 
 /**
  * Represents the state of a greedy Nivre-style dependency parser.
  * 
+ * A context created with {@link #NivreParserContext()} owns its stack and feature buffer, and can be reused for each
+ * transition of each sentence (see {@link #reset(Arc[])}). Such contexts are not thread-safe; concurrent parsers
+ * should maintain one context per thread.
+ * 
  * @author Aaron Dunlop
  */
 public class NivreParserContext {
 
-    final LinkedList<Arc> stack;
-    final Arc[] arcs;
-    final int next;
+    List<Arc> stack;
+    Arc[] arcs;
+    int next;
 
-    public NivreParserContext(final LinkedList<Arc> stack, final Arc[] arcs, final int next) {
+    /** Feature indices populated by {@link TransitionParserFeatureExtractor}, reused for each transition */
+    final LongArrayList featureIndices = new LongArrayList();
+
+    public NivreParserContext(final List<Arc> stack, final Arc[] arcs, final int next) {
         this.stack = stack;
         this.arcs = arcs;
         this.next = next;
     }
 
+    /**
+     * Creates a reusable context, with an empty {@link ArcStack}
+     */
+    public NivreParserContext() {
+        this(new ArcStack(), null, 0);
+    }
+
+    /**
+     * Resets the context to begin parsing a new sentence
+     * 
+     * @param newArcs Arcs of the new sentence
+     * @return This context
+     */
+    public NivreParserContext reset(final Arc[] newArcs) {
+        this.stack.clear();
+        this.arcs = newArcs;
+        this.next = 0;
+        return this;
+    }
+
+    /**
+     * @return The parser stack, as an {@link ArcStack} (only valid for contexts created with
+     *         {@link #NivreParserContext()})
+     */
+    ArcStack arcStack() {
+        return (ArcStack) stack;
+    }
 }
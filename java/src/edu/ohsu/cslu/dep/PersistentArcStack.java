@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+
+package edu.ohsu.cslu.dep;
+
+import java.util.AbstractList;
+import java.util.NoSuchElementException;
+
+import edu.ohsu.cslu.dep.DependencyGraph.Arc;
+
+/**
+ * Immutable linked stack of {@link Arc}s. Pushing and popping return new stacks which share structure with the
+ * original, so beam-search parser states can branch without copying their stacks. As in {@link ArcStack}, the top of
+ * the stack is element 0.
+ * 
+ * @author Aaron Dunlop
+ */
+public final class PersistentArcStack extends AbstractList<Arc> {
+
+    /** The empty stack */
+    public final static PersistentArcStack EMPTY = new PersistentArcStack(null, null, 0);
+
+    private final Arc top;
+    private final PersistentArcStack rest;
+    private final int size;
+
+    private PersistentArcStack(final Arc top, final PersistentArcStack rest, final int size) {
+        this.top = top;
+        this.rest = rest;
+        this.size = size;
+    }
+
+    /**
+     * @param arc
+     * @return A new stack, with the specified arc on top of this stack
+     */
+    public PersistentArcStack push(final Arc arc) {
+        return new PersistentArcStack(arc, this, size + 1);
+    }
+
+    /**
+     * @return The stack below the top arc
+     * @throws NoSuchElementException if the stack is empty
+     */
+    public PersistentArcStack pop() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return rest;
+    }
+
+    /**
+     * @return The top arc, or null if the stack is empty
+     */
+    public Arc peekFirst() {
+        return top;
+    }
+
+    /**
+     * @param index Stack depth (0 is the top of the stack)
+     */
+    @Override
+    public Arc get(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        PersistentArcStack s = this;
+        for (int i = 0; i < index; i++) {
+            s = s.rest;
+        }
+        return s.top;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
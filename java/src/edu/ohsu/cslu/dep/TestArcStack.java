@@ -0,0 +1,84 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+
+package edu.ohsu.cslu.dep;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+import edu.ohsu.cslu.dep.DependencyGraph.Arc;
+
+/**
+ * Unit tests for {@link ArcStack}
+ * 
+ * @author Aaron Dunlop
+ */
+public class TestArcStack {
+
+    /**
+     * Verifies that {@link ArcStack} behaves identically to a {@link LinkedList} used as a stack (including growth
+     * beyond the initial capacity)
+     */
+    @Test
+    public void testStackOperations() {
+        final ArcStack stack = new ArcStack(2);
+        final LinkedList<Arc> expected = new LinkedList<Arc>();
+
+        assertNull(stack.peekFirst());
+
+        for (int i = 1; i <= 5; i++) {
+            final Arc arc = new Arc("w" + i, "NN", "NN", i, 0, "_");
+            stack.addFirst(arc);
+            expected.addFirst(arc);
+        }
+        assertEquals(expected, stack);
+        assertSame(expected.peekFirst(), stack.peekFirst());
+        assertSame(expected.get(1), stack.get(1));
+
+        assertSame(expected.removeFirst(), stack.removeFirst());
+        assertSame(expected.removeFirst(), stack.removeFirst());
+        assertEquals(3, stack.size());
+        assertEquals(expected, stack);
+
+        stack.clear();
+        assertEquals(0, stack.size());
+        assertNull(stack.peekFirst());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testRemoveFromEmptyStack() {
+        new ArcStack().removeFirst();
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetBeyondStackDepth() {
+        final ArcStack stack = new ArcStack();
+        stack.addFirst(new Arc("w", "NN", "NN", 1, 0, "_"));
+        stack.get(1);
+    }
+}
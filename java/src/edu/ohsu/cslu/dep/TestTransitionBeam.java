@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+
+package edu.ohsu.cslu.dep;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ohsu.cslu.dep.DependencyGraph.Arc;
+import edu.ohsu.cslu.perceptron.AveragedPerceptron;
+import edu.ohsu.cslu.util.MutableEnumeration;
+
+/**
+ * Unit tests for beam-search parsing and early-update training with {@link TransitionBeam}
+ * 
+ * @author Aaron Dunlop
+ */
+public class TestTransitionBeam {
+
+    private ArrayList<DependencyGraph> examples;
+    private MutableEnumeration<String> tokens, pos, labels;
+
+    @Before
+    public void setUp() throws IOException {
+        examples = new ArrayList<DependencyGraph>();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("1	The	_	DT	DT	_	3	NMOD	_	_\n");
+        sb.append("2	aged	_	NN	NN	_	3	NMOD	_	_\n");
+        sb.append("3	bottle	_	NN	NN	_	4	SBJ	_	_\n");
+        sb.append("4	flies	_	VB	VBZ	_	0	ROOT	_	_\n");
+        sb.append("5	fast	_	RB	RB	_	4	ADV	_	_\n");
+        examples.add(DependencyGraph.readConll(sb.toString()));
+
+        sb = new StringBuilder();
+        sb.append("1	The	_	DT	DT	_	4	NMOD	_	_\n");
+        sb.append("2	luxury	_	NN	NN	_	4	NMOD	_	_\n");
+        sb.append("3	auto	_	NN	NN	_	4	NMOD	_	_\n");
+        sb.append("4	maker	_	NN	NN	_	7	SBJ	_	_\n");
+        sb.append("5	last	_	JJ	JJ	_	6	NMOD	_	_\n");
+        sb.append("6	year	_	NN	NN	_	7	VMOD	_	_\n");
+        sb.append("7	sold	_	VB	VBD	_	0	ROOT	_	_\n");
+        sb.append("8	1,214	_	CD	CD	_	9	NMOD	_	_\n");
+        sb.append("9	cars	_	NN	NNS	_	7	OBJ	_	_\n");
+        sb.append("10	in	_	IN	IN	_	7	ADV	_	_\n");
+        sb.append("11	the	_	DT	DT	_	12	NMOD	_	_\n");
+        sb.append("12	U.S.	_	NN	NNP	_	10	PMOD	_	_\n");
+        examples.add(DependencyGraph.readConll(sb.toString()));
+
+        tokens = new MutableEnumeration<String>();
+        tokens.addSymbol(DependencyGraph.NULL);
+        tokens.addSymbol(DependencyGraph.ROOT.token);
+        pos = new MutableEnumeration<String>();
+        pos.addSymbol(DependencyGraph.NULL);
+        pos.addSymbol(DependencyGraph.ROOT.pos);
+        labels = new MutableEnumeration<String>();
+        labels.addSymbol(DependencyGraph.NULL);
+        labels.addSymbol(DependencyGraph.ROOT.label);
+
+        for (final DependencyGraph example : examples) {
+            for (final Arc arc : example.arcs) {
+                tokens.addSymbol(arc.token);
+                pos.addSymbol(arc.pos);
+                labels.addSymbol(arc.label);
+            }
+        }
+    }
+
+    private TransitionDepParser trainParser(final String featureTemplates, final int beamWidth) {
+        final TransitionParserFeatureExtractor fe = new TransitionParserFeatureExtractor(featureTemplates, tokens, pos,
+                labels);
+        final TransitionDepParser parser = new TransitionDepParser(fe, new AveragedPerceptron(2, fe.vectorLength()),
+                new AveragedPerceptron(2, fe.vectorLength()), new AveragedPerceptron(labels.size(), fe.vectorLength()),
+                tokens, pos, labels);
+
+        final TransitionBeam beam = new TransitionBeam(parser, beamWidth);
+        for (int i = 0; i < 20; i++) {
+            for (final DependencyGraph example : examples) {
+                parser.trainEarlyUpdate(example, example.stackProjectiveDerivation(), beam);
+            }
+        }
+        return parser;
+    }
+
+    private void assertTrainingSetParsed(final TransitionDepParser parser, final int beamWidth) {
+        final TransitionBeam beam = new TransitionBeam(parser, beamWidth);
+        for (final DependencyGraph example : examples) {
+            final DependencyGraph parse = parser.parse(example, beam);
+            assertEquals(parse.size() - 1, parse.correctArcs());
+            assertEquals(parse.size() - 1, parse.correctLabels());
+        }
+    }
+
+    @Test
+    public void testEarlyUpdateTraining() {
+        assertTrainingSetParsed(trainParser("s1w,s0w,i0w,s1t,s0t,i0t,s1t_s0t,s0t_i0t,d", 4), 4);
+    }
+
+    /**
+     * Feature templates which depend on predicted heads require each state's arcs to be applied before feature
+     * extraction
+     */
+    @Test
+    public void testPredictedHeadFeatures() {
+        assertTrainingSetParsed(trainParser("s1w,s0w,i0w,s1t,s0t,i0t,s1t_s0t,s0t_i0t,s0pt,s1lt,s1rt,d", 4), 4);
+    }
+}
@@ -41,7 +41,7 @@ import edu.ohsu.cslu.perceptron.AveragedPerceptron;
 import edu.ohsu.cslu.util.MutableEnumeration;
 
 /**
- * Trains a perceptron classifier for greedy dependency parsing.
+ * Trains a perceptron classifier for greedy or beam-search dependency parsing.
  * 
  * Input: Dependency treebank in CoNLL 2007 format
  * 
@@ -69,6 +69,9 @@ public class TrainDepParser extends BaseCommandlineTool {
     @Option(name = "-l", usage = "Label arcs (if false, no arc labels will be assigned)")
     private boolean classifyLabels = false;
 
+    @Option(name = "-beam", metaVar = "width", usage = "Beam width (if greater than 1, train with beam search and early update)")
+    private int beamWidth = 1;
+
     @Override
     protected void run() throws Exception {
 
@@ -130,6 +133,8 @@ public class TrainDepParser extends BaseCommandlineTool {
 
         final TransitionDepParser parser = new TransitionDepParser(fe, shiftReduceClassifier,
                 reduceDirectionClassifier, labelClassifier, tokens, pos, labels);
+        final TransitionBeam beam = beamWidth > 1 ? new TransitionBeam(parser, beamWidth) : null;
+
         //
         // Iterate through the training instances
         //
@@ -139,47 +144,51 @@ public class TrainDepParser extends BaseCommandlineTool {
                 try {
                     final DependencyGraph.StackProjectiveAction[] derivation = example.stackProjectiveDerivation();
 
-                    final Arc[] arcs = example.arcs;
-                    final LinkedList<Arc> stack = new LinkedList<Arc>();
-
-                    for (int step = 0, i = 0; step < derivation.length; step++) {
-                        final NivreParserContext context = new NivreParserContext(stack, arcs, i);
-                        final BitVector featureVector = fe.featureVector(context, i);
-
-                        switch (derivation[step]) {
-
-                        case SHIFT:
-                            if (stack.size() >= 2) {
-                                shiftReduceClassifier.train(ParserAction.SHIFT.ordinal(), featureVector);
+                    if (beam != null) {
+                        parser.trainEarlyUpdate(example, derivation, beam);
+                    } else {
+                        final Arc[] arcs = example.arcs;
+                        final LinkedList<Arc> stack = new LinkedList<Arc>();
+
+                        for (int step = 0, i = 0; step < derivation.length; step++) {
+                            final NivreParserContext context = new NivreParserContext(stack, arcs, i);
+                            final BitVector featureVector = fe.featureVector(context, i);
+
+                            switch (derivation[step]) {
+
+                            case SHIFT:
+                                if (stack.size() >= 2) {
+                                    shiftReduceClassifier.train(ParserAction.SHIFT.ordinal(), featureVector);
+                                }
+                                stack.addFirst(arcs[i++]);
+                                break;
+
+                            case REDUCE_LEFT: {
+                                shiftReduceClassifier.train(ParserAction.REDUCE.ordinal(), featureVector);
+                                reduceDirectionClassifier.train(ReduceDirection.LEFT.ordinal(), featureVector);
+                                final Arc top = stack.removeFirst();
+                                top.predictedHead = stack.peek().index;
+
+                                if (labelClassifier != null) {
+                                    labelClassifier.train(labels.getIndex(top.label), featureVector);
+                                }
+                                break;
                             }
-                            stack.addFirst(arcs[i++]);
-                            break;
-
-                        case REDUCE_LEFT: {
-                            shiftReduceClassifier.train(ParserAction.REDUCE.ordinal(), featureVector);
-                            reduceDirectionClassifier.train(ReduceDirection.LEFT.ordinal(), featureVector);
-                            final Arc top = stack.removeFirst();
-                            top.predictedHead = stack.peek().index;
-
-                            if (labelClassifier != null) {
-                                labelClassifier.train(labels.getIndex(top.label), featureVector);
+                            case REDUCE_RIGHT: {
+                                shiftReduceClassifier.train(ParserAction.REDUCE.ordinal(), featureVector);
+                                reduceDirectionClassifier.train(ReduceDirection.RIGHT.ordinal(), featureVector);
+
+                                final Arc top = stack.removeFirst();
+                                final Arc second = stack.removeFirst();
+                                second.predictedHead = top.index;
+                                stack.addFirst(top);
+
+                                if (labelClassifier != null) {
+                                    labelClassifier.train(labels.getIndex(second.label), featureVector);
+                                }
+                                break;
                             }
-                            break;
-                        }
-                        case REDUCE_RIGHT: {
-                            shiftReduceClassifier.train(ParserAction.REDUCE.ordinal(), featureVector);
-                            reduceDirectionClassifier.train(ReduceDirection.RIGHT.ordinal(), featureVector);
-
-                            final Arc top = stack.removeFirst();
-                            final Arc second = stack.removeFirst();
-                            second.predictedHead = top.index;
-                            stack.addFirst(top);
-
-                            if (labelClassifier != null) {
-                                labelClassifier.train(labels.getIndex(second.label), featureVector);
                             }
-                            break;
-                        }
                         }
                     }
                 } catch (final IllegalArgumentException ignore) {
@@ -192,10 +201,10 @@ public class TrainDepParser extends BaseCommandlineTool {
             System.out.println(iteration + 1);
 
             if (BaseLogger.singleton().isLoggable(Level.FINE)) {
-                test(parser, trainingExamples, "Training-set");
+                test(parser, beam, trainingExamples, "Training-set");
             }
             if (devExamples != null) {
-                test(parser, devExamples, "Dev-set");
+                test(parser, beam, devExamples, "Dev-set");
             }
         }
 
@@ -210,7 +219,8 @@ public class TrainDepParser extends BaseCommandlineTool {
         }
     }
 
-    private void test(final TransitionDepParser parser, final LinkedList<DependencyGraph> examples, final String label) {
+    private void test(final TransitionDepParser parser, final TransitionBeam beam,
+            final LinkedList<DependencyGraph> examples, final String label) {
 
         final long startTime = System.currentTimeMillis();
 
@@ -218,7 +228,7 @@ public class TrainDepParser extends BaseCommandlineTool {
 
         for (final DependencyGraph example : examples) {
             total += example.size() - 1;
-            final DependencyGraph parse = parser.parse(example);
+            final DependencyGraph parse = beam != null ? parser.parse(example, beam) : parser.parse(example);
             correctArcs += parse.correctArcs();
             correctLabels += parse.correctLabels();
         }
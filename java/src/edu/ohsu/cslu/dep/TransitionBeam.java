@@ -0,0 +1,389 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+
+package edu.ohsu.cslu.dep;
+
+import java.util.Arrays;
+
+import edu.ohsu.cslu.datastructs.vectors.BitVector;
+import edu.ohsu.cslu.dep.DependencyGraph.Arc;
+import edu.ohsu.cslu.dep.DependencyGraph.StackProjectiveAction;
+import edu.ohsu.cslu.dep.TransitionDepParser.ParserAction;
+import edu.ohsu.cslu.dep.TransitionDepParser.ReduceDirection;
+
+/**
+ * Beam of partial derivations, used for beam-search decoding and early-update training of a
+ * {@link TransitionDepParser}.
+ * 
+ * Each state holds a {@link PersistentArcStack}, so successor states share their parents' stacks. At each step, the
+ * features of all states in the beam are scored in a single batch by each classifier (see
+ * {@link edu.ohsu.cslu.perceptron.Perceptron#scores(edu.ohsu.cslu.datastructs.vectors.Vector[], int, float[][])}),
+ * and the best successors are retained.
+ * 
+ * Scratch storage is allocated once and reused for each step and each sentence, so a beam is not thread-safe.
+ * Concurrent parsers should maintain one beam per thread.
+ * 
+ * @author Aaron Dunlop
+ */
+public class TransitionBeam {
+
+    final static int SHIFT = 0;
+    final static int REDUCE_LEFT = 1;
+    final static int REDUCE_RIGHT = 2;
+
+    private final TransitionDepParser parser;
+    private final boolean usesPredictedHeads;
+    final int beamWidth;
+
+    /** Current states, sorted by descending score */
+    private State[] states;
+    private int size;
+    private State[] successors;
+
+    /** Candidate successors (parent index, action, and score) */
+    private final int[] candidateParents;
+    private final int[] candidateActions;
+    private final float[] candidateScores;
+    private int candidateCount;
+
+    /** Batched scoring storage */
+    private final BitVector[] featureVectors;
+    private final int[] batchIndices;
+    private final float[][] shiftReduceScores;
+    private final float[][] reduceDirectionScores;
+
+    private final NivreParserContext context = new NivreParserContext();
+    private Arc[] arcs;
+
+    public TransitionBeam(final TransitionDepParser parser, final int beamWidth) {
+        this.parser = parser;
+        this.usesPredictedHeads = parser.featureExtractor.usesPredictedHeads();
+        this.beamWidth = beamWidth;
+
+        this.states = new State[beamWidth];
+        this.successors = new State[beamWidth];
+
+        this.candidateParents = new int[beamWidth * 3];
+        this.candidateActions = new int[beamWidth * 3];
+        this.candidateScores = new float[beamWidth * 3];
+
+        this.featureVectors = new BitVector[beamWidth];
+        this.batchIndices = new int[beamWidth];
+        this.shiftReduceScores = new float[beamWidth][ParserAction.values().length];
+        this.reduceDirectionScores = new float[beamWidth][ReduceDirection.values().length];
+    }
+
+    /**
+     * Initializes the beam with the start state for a new sentence
+     * 
+     * @param newArcs
+     */
+    void init(final Arc[] newArcs) {
+        this.arcs = newArcs;
+        Arrays.fill(states, null);
+        states[0] = new State(PersistentArcStack.EMPTY, 0, 0f, null, SHIFT);
+        size = 1;
+    }
+
+    /**
+     * Expands each state in the beam by all legal actions, and retains the best successors.
+     * 
+     * @param raw Score with the raw (unaveraged) perceptron weights, as during training.
+     */
+    void advance(final boolean raw) {
+
+        // Extract features for all states with a choice of actions (at least 2 words on the stack)
+        int batchSize = 0;
+        for (int j = 0; j < size; j++) {
+            final State s = states[j];
+            if (s.stack.size() >= 2) {
+                s.featureVector = featureVector(s);
+                featureVectors[batchSize] = s.featureVector;
+                batchIndices[j] = batchSize++;
+            }
+        }
+
+        // Score the entire beam in a single pass over each classifier's weights
+        if (batchSize > 0) {
+            if (raw) {
+                parser.shiftReduceClassifier.rawScores(featureVectors, batchSize, shiftReduceScores);
+                parser.reduceDirectionClassifier.rawScores(featureVectors, batchSize, reduceDirectionScores);
+            } else {
+                parser.shiftReduceClassifier.scores(featureVectors, batchSize, shiftReduceScores);
+                parser.reduceDirectionClassifier.scores(featureVectors, batchSize, reduceDirectionScores);
+            }
+        }
+
+        candidateCount = 0;
+        for (int j = 0; j < size; j++) {
+            final State s = states[j];
+
+            if (s.stack.size() < 2) {
+                addCandidate(j, SHIFT, s.score);
+                continue;
+            }
+
+            final float[] srScores = shiftReduceScores[batchIndices[j]];
+            final float[] rdScores = reduceDirectionScores[batchIndices[j]];
+
+            if (s.next < arcs.length) {
+                addCandidate(j, SHIFT, s.score + srScores[ParserAction.SHIFT.ordinal()]);
+            }
+            final float reduceScore = s.score + srScores[ParserAction.REDUCE.ordinal()];
+            addCandidate(j, REDUCE_LEFT, reduceScore + rdScores[ReduceDirection.LEFT.ordinal()]);
+            addCandidate(j, REDUCE_RIGHT, reduceScore + rdScores[ReduceDirection.RIGHT.ordinal()]);
+        }
+
+        // Select the best successors. The candidate list is small, so a partial selection sort suffices.
+        final int newSize = Math.min(beamWidth, candidateCount);
+        for (int k = 0; k < newSize; k++) {
+            int best = k;
+            for (int c = k + 1; c < candidateCount; c++) {
+                if (candidateScores[c] > candidateScores[best]) {
+                    best = c;
+                }
+            }
+            swapCandidates(k, best);
+            successors[k] = successor(states[candidateParents[k]], candidateActions[k], candidateScores[k]);
+        }
+
+        final State[] tmp = states;
+        states = successors;
+        successors = tmp;
+        Arrays.fill(successors, null);
+        size = newSize;
+    }
+
+    private void addCandidate(final int parent, final int action, final float score) {
+        candidateParents[candidateCount] = parent;
+        candidateActions[candidateCount] = action;
+        candidateScores[candidateCount++] = score;
+    }
+
+    private void swapCandidates(final int i, final int j) {
+        final int parent = candidateParents[i];
+        candidateParents[i] = candidateParents[j];
+        candidateParents[j] = parent;
+
+        final int action = candidateActions[i];
+        candidateActions[i] = candidateActions[j];
+        candidateActions[j] = action;
+
+        final float score = candidateScores[i];
+        candidateScores[i] = candidateScores[j];
+        candidateScores[j] = score;
+    }
+
+    /**
+     * @param parent
+     * @param action
+     * @param score
+     * @return The state resulting from applying the specified action to the parent state
+     */
+    State successor(final State parent, final int action, final float score) {
+        switch (action) {
+        case SHIFT:
+            return new State(parent.stack.push(arcs[parent.next]), parent.next + 1, score, parent, action);
+        case REDUCE_LEFT:
+            return new State(parent.stack.pop(), parent.next, score, parent, action);
+        case REDUCE_RIGHT:
+            return new State(parent.stack.pop().pop().push(parent.stack.peekFirst()), parent.next, score, parent,
+                    action);
+        default:
+            throw new IllegalArgumentException("Unknown action: " + action);
+        }
+    }
+
+    /**
+     * @param parent
+     * @param action
+     * @return The state in the beam derived from the specified parent by the specified action, or null if that state
+     *         has fallen off the beam.
+     */
+    State find(final State parent, final int action) {
+        for (int j = 0; j < size; j++) {
+            if (states[j].previous == parent && states[j].action == action) {
+                return states[j];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The highest-scoring state in the beam
+     */
+    State best() {
+        return states[0];
+    }
+
+    /**
+     * @return The start state (only valid immediately after {@link #init(Arc[])})
+     */
+    State start() {
+        return states[0];
+    }
+
+    /**
+     * Extracts features for a state. If the feature templates depend on predicted heads, the state's arcs are first
+     * applied to the graph.
+     */
+    private BitVector featureVector(final State s) {
+        if (usesPredictedHeads) {
+            applyArcs(s);
+        }
+        context.stack = s.stack;
+        context.arcs = arcs;
+        context.next = s.next;
+        return parser.featureExtractor.featureVector(context, s.next);
+    }
+
+    /**
+     * Sets predicted heads on the graph's arcs according to the derivation of the specified state, and clears all
+     * other predicted heads.
+     * 
+     * @param s
+     */
+    void applyArcs(final State s) {
+        for (int i = 0; i < arcs.length; i++) {
+            arcs[i].predictedHead = -1;
+        }
+        for (State t = s; t.previous != null; t = t.previous) {
+            if (t.action != SHIFT) {
+                dependent(t.previous, t.action).predictedHead = head(t.previous, t.action).index;
+            }
+        }
+    }
+
+    /**
+     * Applies the derivation of the specified (complete) state to the graph, including arc labels if the parser
+     * includes a label classifier.
+     * 
+     * @param s
+     */
+    void apply(final State s) {
+        applyArcs(s);
+
+        if (parser.labelClassifier != null) {
+            for (State t = s; t.previous != null; t = t.previous) {
+                if (t.action != SHIFT) {
+                    dependent(t.previous, t.action).predictedLabel = parser.labels.getSymbol(parser.labelClassifier
+                            .classify(t.previous.featureVector));
+                }
+            }
+        }
+    }
+
+    /**
+     * Performs a perceptron update toward the gold derivation and away from the predicted derivation, for each step
+     * since the two diverged (both derivations must be of the same length).
+     * 
+     * @param gold
+     * @param predicted
+     */
+    void update(final State gold, final State predicted) {
+
+        for (State g = gold, p = predicted; g != p; g = g.previous, p = p.previous) {
+
+            if (g.previous == p.previous && g.action == p.action) {
+                continue;
+            }
+
+            // Features are null for forced shifts, which are not scored
+            final BitVector goldFeatures = g.previous.featureVector;
+            final BitVector predictedFeatures = p.previous.featureVector;
+            if (goldFeatures == null && predictedFeatures == null) {
+                continue;
+            }
+
+            parser.shiftReduceClassifier.update(shiftReduceClass(g.action), goldFeatures,
+                    shiftReduceClass(p.action), predictedFeatures);
+
+            if (g.action != SHIFT || p.action != SHIFT) {
+                parser.reduceDirectionClassifier.update(reduceDirectionClass(g.action), g.action != SHIFT ? goldFeatures
+                        : null, reduceDirectionClass(p.action), p.action != SHIFT ? predictedFeatures : null);
+            }
+        }
+    }
+
+    /**
+     * @param parent
+     * @param action Reduce action
+     * @return The word assigned a head by applying the specified reduce action to the parent state
+     */
+    static Arc dependent(final State parent, final int action) {
+        return action == REDUCE_LEFT ? parent.stack.get(0) : parent.stack.get(1);
+    }
+
+    private static Arc head(final State parent, final int action) {
+        return action == REDUCE_LEFT ? parent.stack.get(1) : parent.stack.get(0);
+    }
+
+    private static int shiftReduceClass(final int action) {
+        return action == SHIFT ? ParserAction.SHIFT.ordinal() : ParserAction.REDUCE.ordinal();
+    }
+
+    private static int reduceDirectionClass(final int action) {
+        return action == REDUCE_LEFT ? ReduceDirection.LEFT.ordinal() : ReduceDirection.RIGHT.ordinal();
+    }
+
+    /**
+     * @param action
+     * @return The beam action corresponding to a gold derivation action
+     */
+    static int action(final StackProjectiveAction action) {
+        switch (action) {
+        case SHIFT:
+            return SHIFT;
+        case REDUCE_LEFT:
+            return REDUCE_LEFT;
+        case REDUCE_RIGHT:
+            return REDUCE_RIGHT;
+        default:
+            throw new IllegalArgumentException("Unknown action: " + action);
+        }
+    }
+
+    /**
+     * A (partial) derivation. States are immutable, aside from the lazily-populated feature vector.
+     */
+    static final class State {
+
+        final PersistentArcStack stack;
+        final int next;
+        final float score;
+
+        /** The state from which this state was derived, and the action applied to it */
+        final State previous;
+        final int action;
+
+        /** Features of this state, used to score its successors (null until computed) */
+        BitVector featureVector;
+
+        State(final PersistentArcStack stack, final int next, final float score, final State previous, final int action) {
+            this.stack = stack;
+            this.next = next;
+            this.score = score;
+            this.previous = previous;
+            this.action = action;
+        }
+    }
+}
@@ -25,7 +25,6 @@ import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 
 import java.io.Serializable;
 import java.util.EnumSet;
-import java.util.LinkedList;
 
 import edu.ohsu.cslu.datastructs.vectors.BitVector;
 import edu.ohsu.cslu.dep.DependencyGraph.Arc;
@@ -59,17 +58,30 @@ public class TransitionDepParser implements Serializable {
         this.labels = labels;
     }
 
-    @SuppressWarnings("null")
     public DependencyGraph parse(final DependencyGraph input) {
+        return parse(input, new NivreParserContext());
+    }
+
+    /**
+     * Parses the input, reusing the supplied parser context (stack and feature buffer). Concurrent callers must each
+     * supply their own context.
+     * 
+     * @param input
+     * @param context Reusable parser context (see {@link NivreParserContext#NivreParserContext()})
+     * @return The parsed graph
+     */
+    @SuppressWarnings("null")
+    public DependencyGraph parse(final DependencyGraph input, final NivreParserContext context) {
 
         final DependencyGraph parse = input.clear();
 
-        final LinkedList<Arc> stack = new LinkedList<Arc>();
+        context.reset(parse.arcs);
+        final ArcStack stack = context.arcStack();
 
         final int totalSteps = parse.size() * 2 - 1;
         for (int step = 0, i = 0; step < totalSteps; step++) {
-            final BitVector featureVector = featureExtractor.featureVector(new NivreParserContext(stack,
-                    parse.arcs, i), i);
+            context.next = i;
+            final BitVector featureVector = featureExtractor.featureVector(context, i);
 
             ParserAction action = null;
             ScoredClassification shiftReduceClassification = null;
@@ -126,6 +138,70 @@ public class TransitionDepParser implements Serializable {
         return parse;
     }
 
+    /**
+     * Parses the input with beam search, retaining the best-scoring derivations at each step (see
+     * {@link TransitionBeam}). Concurrent callers must each supply their own beam.
+     * 
+     * @param input
+     * @param beam Reusable beam (see {@link TransitionBeam#TransitionBeam(TransitionDepParser, int)})
+     * @return The parsed graph
+     */
+    public DependencyGraph parse(final DependencyGraph input, final TransitionBeam beam) {
+
+        final DependencyGraph parse = input.clear();
+        beam.init(parse.arcs);
+
+        final int totalSteps = parse.size() * 2 - 1;
+        for (int step = 0; step < totalSteps; step++) {
+            beam.advance(false);
+        }
+        beam.apply(beam.best());
+
+        return parse;
+    }
+
+    /**
+     * Trains the model with beam search and early update (Collins and Roark, 2004): the beam is advanced until the
+     * gold derivation falls out of it, and the model is then updated toward the gold derivation prefix and away from
+     * the best-scoring derivation in the beam. Arc labels (if any) are trained locally along the gold derivation.
+     * 
+     * @param example Training example
+     * @param derivation Gold derivation of the training example
+     * @param beam
+     */
+    public void trainEarlyUpdate(final DependencyGraph example, final DependencyGraph.StackProjectiveAction[] derivation,
+            final TransitionBeam beam) {
+
+        beam.init(example.clear().arcs);
+        TransitionBeam.State gold = beam.start();
+
+        for (int step = 0; step < derivation.length; step++) {
+            beam.advance(true);
+            final int goldAction = TransitionBeam.action(derivation[step]);
+
+            if (labelClassifier != null && goldAction != TransitionBeam.SHIFT) {
+                labelClassifier.train(labels.getIndex(TransitionBeam.dependent(gold, goldAction).label),
+                        gold.featureVector);
+            }
+
+            final TransitionBeam.State goldSuccessor = beam.find(gold, goldAction);
+            if (goldSuccessor == null) {
+                // The gold derivation has fallen off the beam; update and move on to the next example
+                beam.update(beam.successor(gold, goldAction, 0), beam.best());
+                return;
+            }
+            gold = goldSuccessor;
+
+            // Count each correct step as a training example for averaging purposes
+            shiftReduceClassifier.skipExample();
+            reduceDirectionClassifier.skipExample();
+        }
+
+        if (beam.best() != gold) {
+            beam.update(gold, beam.best());
+        }
+    }
+
     public static enum ParserAction {
         SHIFT, REDUCE;
 
@@ -214,6 +214,35 @@ public class TransitionParserFeatureExtractor extends FeatureExtractor<NivrePars
         return size;
     }
 
+    /**
+     * @return True if any feature template depends on predicted heads (e.g., the POS of a word's head or dependents).
+     *         Beam-search parsers must then apply each state's arcs to the graph before extracting its features.
+     */
+    public boolean usesPredictedHeads() {
+        for (final TemplateElement[] template : templates) {
+            for (final TemplateElement t : template) {
+                switch (t) {
+                case s0lt:
+                case s1lt:
+                case s0rt:
+                case s1rt:
+                case i0lt:
+                case i1lt:
+                case i0rt:
+                case i1rt:
+                case s0pt:
+                case s1pt:
+                case i0pt:
+                case i1pt:
+                    return true;
+                default:
+                    break;
+                }
+            }
+        }
+        return false;
+    }
+
     @Override
     public long vectorLength() {
         return featureVectorLength;
@@ -222,7 +251,9 @@ public class TransitionParserFeatureExtractor extends FeatureExtractor<NivrePars
     @Override
     public BitVector featureVector(final NivreParserContext source, final int tokenIndex) {
 
-        final LongArrayList featureIndices = new LongArrayList();
+        // Reuse the context's feature buffer
+        final LongArrayList featureIndices = source.featureIndices;
+        featureIndices.clear();
 
         // TODO Handle UNKs
         for (int i = 0; i < templates.length; i++) {
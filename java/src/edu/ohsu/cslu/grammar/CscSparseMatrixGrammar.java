@@ -25,6 +25,7 @@ import it.unimi.dsi.fastutil.ints.Int2FloatOpenHashMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.shorts.ShortArrayList;
 
 import java.io.IOException;
 import java.io.Reader;
@@ -101,6 +102,13 @@ public abstract class CscSparseMatrixGrammar extends SparseMatrixGrammar {
      */
     public final float[] factoredCscBinaryProbabilities;
 
+    /**
+     * Parent-blocked copies of the binary rule matrix and the factored-only matrix, for the most recently requested
+     * block boundaries. Shared by all parser instances (and threads) using this grammar. Populated on demand by
+     * {@link #parentBlockedMatrix(short[], boolean)}.
+     */
+    private transient volatile ParentBlockedMatrix[] parentBlockedMatrices;
+
     protected CscSparseMatrixGrammar(final Reader grammarFile, final TokenClassifier tokenClassifier,
             final Class<? extends PackingFunction> cartesianProductFunctionClass) throws IOException {
         super(grammarFile, tokenClassifier, cartesianProductFunctionClass);
@@ -300,4 +308,294 @@ public abstract class CscSparseMatrixGrammar extends SparseMatrixGrammar {
         }
         return binaryProductions;
     }
+
+    /**
+     * Computes boundaries partitioning the parent non-terminals into contiguous blocks, for use with
+     * {@link #parentBlockedMatrix(short[], boolean)}. Blocks contain roughly equal numbers of binary rules (so they can
+     * be distributed evenly across threads), and are further subdivided so no block contains more than
+     * <code>maxParentsPerBlock</code> parents.
+     * 
+     * @param blocks Target number of rule-balanced blocks
+     * @param maxParentsPerBlock Maximum number of parents in a single block (0 for no limit)
+     * @return Block boundaries; block <code>i</code> contains parents <code>boundaries[i]</code> (inclusive) through
+     *         <code>boundaries[i + 1]</code> (exclusive). Length is the actual number of blocks + 1.
+     */
+    public short[] parentBlockBoundaries(final int blocks, final int maxParentsPerBlock) {
+
+        final int[] parentRuleCounts = new int[numNonTerms()];
+        for (final short parent : cscBinaryRowIndices) {
+            parentRuleCounts[parent]++;
+        }
+        final int targetRules = cscBinaryRowIndices.length / Math.max(blocks, 1) + 1;
+        final int maxParents = maxParentsPerBlock > 0 ? maxParentsPerBlock : numNonTerms();
+
+        final ShortArrayList boundaries = new ShortArrayList();
+        boundaries.add((short) 0);
+        int blockRules = 0, blockStart = 0;
+        for (int parent = 0; parent < parentRuleCounts.length; parent++) {
+            if (parent > blockStart && (blockRules >= targetRules || parent - blockStart >= maxParents)) {
+                boundaries.add((short) parent);
+                blockStart = parent;
+                blockRules = 0;
+            }
+            blockRules += parentRuleCounts[parent];
+        }
+        boundaries.add((short) numNonTerms());
+        return boundaries.toShortArray();
+    }
+
+    /**
+     * Partitions the binary rule matrix (or the factored-only matrix) into separate CSC matrices by blocks of parents.
+     * Multiplying each block in turn by a cartesian-product vector confines writes to the target cell to a small range
+     * of parents (improving cache locality), and blocks can be processed concurrently without conflicting writes.
+     * 
+     * Both partitioned matrices are retained, and returned to subsequent callers requesting the same boundaries, so
+     * parsers sharing a grammar share a single copy.
+     * 
+     * @param boundaries Parent block boundaries (see {@link #parentBlockBoundaries(int, int)})
+     * @param factored Partition the factored-only matrix instead of the full binary matrix
+     * @return Parent-blocked matrix
+     */
+    public ParentBlockedMatrix parentBlockedMatrix(final short[] boundaries, final boolean factored) {
+        ParentBlockedMatrix[] matrices = parentBlockedMatrices;
+        if (matrices == null || !Arrays.equals(matrices[0].boundaries, boundaries)) {
+            synchronized (this) {
+                matrices = parentBlockedMatrices;
+                if (matrices == null || !Arrays.equals(matrices[0].boundaries, boundaries)) {
+                    final short[] b = boundaries.clone();
+                    matrices = new ParentBlockedMatrix[] {
+                            new ParentBlockedMatrix(b, cscBinaryPopulatedColumns, cscBinaryPopulatedColumnOffsets,
+                                    cscBinaryRowIndices, cscBinaryProbabilities),
+                            new ParentBlockedMatrix(b, factoredCscBinaryPopulatedColumns,
+                                    factoredCscBinaryPopulatedColumnOffsets, factoredCscBinaryRowIndices,
+                                    factoredCscBinaryProbabilities) };
+                    parentBlockedMatrices = matrices;
+                }
+            }
+        }
+        return matrices[factored ? 1 : 0];
+    }
+
+    /**
+     * Quantizes the binary rule matrix (or the factored-only matrix) to fixed-point codes of the specified width,
+     * scaled independently for each column (see {@link QuantizedMatrix}).
+     * 
+     * @param bits Code width (1-16)
+     * @param factored Quantize the factored-only matrix instead of the full binary matrix
+     * @return Quantized matrix, with codes indexed identically to the source matrix
+     */
+    public QuantizedMatrix quantizedMatrix(final int bits, final boolean factored) {
+        final int columns = packingFunction.packedArraySize();
+        return factored ? new QuantizedMatrix(bits, factoredCscBinaryPopulatedColumns,
+                factoredCscBinaryPopulatedColumnOffsets, factoredCscBinaryProbabilities, columns) : new QuantizedMatrix(
+                bits, cscBinaryPopulatedColumns, cscBinaryPopulatedColumnOffsets, cscBinaryProbabilities, columns);
+    }
+
+    /**
+     * A binary rule matrix partitioned into contiguous blocks of parents, each stored as a separate CSC matrix (with
+     * the same column ordering as the source matrix).
+     */
+    public final static class ParentBlockedMatrix {
+
+        /** Block boundaries. Block i contains parents boundaries[i] through boundaries[i + 1] - 1. */
+        public final short[] boundaries;
+
+        /** Populated columns (child pairs) of each block. Indexed by block. */
+        public final int[][] populatedColumns;
+
+        /**
+         * Offsets into {@link #rowIndices} and {@link #probabilities} of each populated column of each block. Indexed
+         * by block; each array is 1 longer than the corresponding entry in {@link #populatedColumns}.
+         */
+        public final int[][] populatedColumnOffsets;
+
+        /** Row indices (parents). Indexed by block. */
+        public final short[][] rowIndices;
+
+        /** Rule probabilities. Indexed by block. */
+        public final float[][] probabilities;
+
+        ParentBlockedMatrix(final short[] boundaries, final int[] sourcePopulatedColumns,
+                final int[] sourcePopulatedColumnOffsets, final short[] sourceRowIndices,
+                final float[] sourceProbabilities) {
+
+            this.boundaries = boundaries;
+            final int blocks = boundaries.length - 1;
+
+            // Map each parent to its block
+            final int[] parentBlocks = new int[boundaries[blocks]];
+            for (int b = 0; b < blocks; b++) {
+                Arrays.fill(parentBlocks, boundaries[b], boundaries[b + 1], b);
+            }
+
+            // Count columns and rules in each block
+            final int[] blockColumns = new int[blocks];
+            final int[] blockRules = new int[blocks];
+            final int[] lastColumn = new int[blocks];
+            Arrays.fill(lastColumn, -1);
+
+            for (int i = 0; i < sourcePopulatedColumns.length; i++) {
+                for (int j = sourcePopulatedColumnOffsets[i]; j < sourcePopulatedColumnOffsets[i + 1]; j++) {
+                    final int b = parentBlocks[sourceRowIndices[j]];
+                    blockRules[b]++;
+                    if (lastColumn[b] != i) {
+                        blockColumns[b]++;
+                        lastColumn[b] = i;
+                    }
+                }
+            }
+
+            this.populatedColumns = new int[blocks][];
+            this.populatedColumnOffsets = new int[blocks][];
+            this.rowIndices = new short[blocks][];
+            this.probabilities = new float[blocks][];
+            for (int b = 0; b < blocks; b++) {
+                populatedColumns[b] = new int[blockColumns[b]];
+                populatedColumnOffsets[b] = new int[blockColumns[b] + 1];
+                rowIndices[b] = new short[blockRules[b]];
+                probabilities[b] = new float[blockRules[b]];
+            }
+
+            // Populate the block matrices
+            Arrays.fill(blockColumns, 0);
+            Arrays.fill(blockRules, 0);
+            Arrays.fill(lastColumn, -1);
+
+            for (int i = 0; i < sourcePopulatedColumns.length; i++) {
+                for (int j = sourcePopulatedColumnOffsets[i]; j < sourcePopulatedColumnOffsets[i + 1]; j++) {
+                    final int b = parentBlocks[sourceRowIndices[j]];
+                    if (lastColumn[b] != i) {
+                        populatedColumns[b][blockColumns[b]] = sourcePopulatedColumns[i];
+                        populatedColumnOffsets[b][blockColumns[b]] = blockRules[b];
+                        blockColumns[b]++;
+                        lastColumn[b] = i;
+                    }
+                    rowIndices[b][blockRules[b]] = sourceRowIndices[j];
+                    probabilities[b][blockRules[b]] = sourceProbabilities[j];
+                    blockRules[b]++;
+                }
+            }
+
+            for (int b = 0; b < blocks; b++) {
+                populatedColumnOffsets[b][blockColumns[b]] = blockRules[b];
+            }
+        }
+
+        /**
+         * @return The number of parent blocks
+         */
+        public int blocks() {
+            return boundaries.length - 1;
+        }
+
+        /**
+         * @param block
+         * @return The number of rules in the specified block
+         */
+        public int rules(final int block) {
+            return rowIndices[block].length;
+        }
+    }
+
+    /**
+     * A binary rule matrix with rule log probabilities stored as fixed-point codes of reduced width instead of floats.
+     * Codes are offsets from the maximum probability in each column (child pair), in units of a per-column step size,
+     * so the full range of codes spans the probabilities actually observed in that column. Codes are indexed
+     * identically to the source probability array, and the column parameters by populated column (see
+     * {@link CscSparseMatrixGrammar#cscBinaryPopulatedColumns}), so only the mapping from child pair to populated
+     * column is allocated per packed child pair. A rule probability is decoded as
+     * <code>columnMaxima[p] - code * columnScales[p]</code>, where <code>p = populatedColumnIndices[column]</code>.
+     * 
+     * Codes of 8 bits or fewer are stored in {@link #byteCodes} (as unsigned bytes), and wider codes in
+     * {@link #charCodes}; the other array is null.
+     */
+    public final static class QuantizedMatrix {
+
+        /** Code width */
+        public final int bits;
+
+        /** Quantized rule probabilities, for codes of 8 bits or fewer (null otherwise). Indexed by rule. */
+        public final byte[] byteCodes;
+
+        /** Quantized rule probabilities, for codes wider than 8 bits (null otherwise). Indexed by rule. */
+        public final char[] charCodes;
+
+        /** Index of each populated column (child pair) in the column parameters; -1 for unpopulated columns */
+        public final int[] populatedColumnIndices;
+
+        /** Offsets of the first rule in each populated column (shared with the source grammar) */
+        public final int[] populatedColumnOffsets;
+
+        /** Maximum rule probability in each column. Indexed by populated column. */
+        public final float[] columnMaxima;
+
+        /** The size of a single fixed-point step in each column (in log probability). Indexed by populated column. */
+        public final float[] columnScales;
+
+        QuantizedMatrix(final int bits, final int[] sourcePopulatedColumns, final int[] sourcePopulatedColumnOffsets,
+                final float[] sourceProbabilities, final int columns) {
+
+            if (bits < 1 || bits > 16) {
+                throw new IllegalArgumentException("Unsupported code width: " + bits);
+            }
+            this.bits = bits;
+            this.byteCodes = bits <= 8 ? new byte[sourceProbabilities.length] : null;
+            this.charCodes = bits <= 8 ? null : new char[sourceProbabilities.length];
+            this.populatedColumnIndices = new int[columns];
+            Arrays.fill(populatedColumnIndices, -1);
+            this.populatedColumnOffsets = sourcePopulatedColumnOffsets;
+            this.columnMaxima = new float[sourcePopulatedColumns.length];
+            this.columnScales = new float[sourcePopulatedColumns.length];
+            final int maxCode = (1 << bits) - 1;
+
+            for (int i = 0; i < sourcePopulatedColumns.length; i++) {
+                final int start = sourcePopulatedColumnOffsets[i], end = sourcePopulatedColumnOffsets[i + 1];
+
+                float max = Float.NEGATIVE_INFINITY, min = Float.POSITIVE_INFINITY;
+                for (int j = start; j < end; j++) {
+                    max = Math.max(max, sourceProbabilities[j]);
+                    min = Math.min(min, sourceProbabilities[j]);
+                }
+                final float scale = max > min ? (max - min) / maxCode : 0f;
+                populatedColumnIndices[sourcePopulatedColumns[i]] = i;
+                columnMaxima[i] = max;
+                columnScales[i] = scale;
+
+                for (int j = start; j < end; j++) {
+                    final int code = Math.min(scale == 0 ? 0 : Math.round((max - sourceProbabilities[j]) / scale),
+                            maxCode);
+                    if (byteCodes != null) {
+                        byteCodes[j] = (byte) code;
+                    } else {
+                        charCodes[j] = (char) code;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @param i Index of the rule
+         * @return The (unsigned) code of the specified rule
+         */
+        public int code(final int i) {
+            return byteCodes != null ? byteCodes[i] & 0xff : charCodes[i];
+        }
+
+        /**
+         * @param populatedColumn Populated column index (see {@link #populatedColumnIndices})
+         * @param i Index of the rule
+         * @return Decoded log probability of the specified rule
+         */
+        public float probability(final int populatedColumn, final int i) {
+            return columnMaxima[populatedColumn] - code(i) * columnScales[populatedColumn];
+        }
+
+        /**
+         * @return The memory footprint of the codes, column index, and column parameters, in bytes
+         */
+        public long bytes() {
+            final long codeBytes = byteCodes != null ? byteCodes.length : charCodes.length * 2L;
+            return codeBytes + populatedColumnIndices.length * 4L + (columnMaxima.length + columnScales.length) * 4L;
+        }
+    }
 }
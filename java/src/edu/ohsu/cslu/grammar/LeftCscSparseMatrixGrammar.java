@@ -52,6 +52,20 @@ public class LeftCscSparseMatrixGrammar extends CscSparseMatrixGrammar {
      */
     public final int[] cscBinaryLeftChildEndIndices;
 
+    /**
+     * Interleaved copy of {@link #cscBinaryRowIndices} and {@link #cscBinaryProbabilities}, with the parent and
+     * probability of each rule packed into a single entry (see {@link #packRule(short, float)}). Indexed identically to
+     * the separate arrays (i.e., by {@link #cscBinaryColumnOffsets}), so the inner grammar loop reads a single
+     * sequential stream instead of two. Populated on demand by {@link #cscBinaryInterleavedRules()}.
+     */
+    private transient volatile long[] cscBinaryInterleavedRules;
+
+    /**
+     * Interleaved copy of {@link #factoredCscBinaryRowIndices} and {@link #factoredCscBinaryProbabilities}. Populated
+     * on demand by {@link #factoredCscBinaryInterleavedRules()}.
+     */
+    private transient volatile long[] factoredCscBinaryInterleavedRules;
+
     public LeftCscSparseMatrixGrammar(final Reader grammarFile, final TokenClassifier tokenClassifier,
             final Class<? extends PackingFunction> packingFunctionClass) throws IOException {
         super(grammarFile, tokenClassifier, packingFunctionClass);
@@ -102,6 +116,78 @@ public class LeftCscSparseMatrixGrammar extends CscSparseMatrixGrammar {
                 new DecisionTreeTokenClassifier(), PerfectIntPairHashPackingFunction.class, true);
     }
 
+    /**
+     * Returns binary rules in an interleaved CSC layout, indexed by {@link #cscBinaryColumnOffsets} (and
+     * {@link #cscBinaryPopulatedColumnOffsets}). The array is constructed on first access, so grammars used only with
+     * the separate-array layout do not pay its memory cost.
+     * 
+     * @return Binary rules, packed as by {@link #packRule(short, float)}
+     */
+    public long[] cscBinaryInterleavedRules() {
+        if (cscBinaryInterleavedRules == null) {
+            synchronized (this) {
+                if (cscBinaryInterleavedRules == null) {
+                    cscBinaryInterleavedRules = interleave(cscBinaryRowIndices, cscBinaryProbabilities);
+                }
+            }
+        }
+        return cscBinaryInterleavedRules;
+    }
+
+    /**
+     * Returns factored binary rules in an interleaved CSC layout, indexed by {@link #factoredCscBinaryColumnOffsets}
+     * (and {@link #factoredCscBinaryPopulatedColumnOffsets}).
+     * 
+     * @return Factored binary rules, packed as by {@link #packRule(short, float)}
+     */
+    public long[] factoredCscBinaryInterleavedRules() {
+        if (factoredCscBinaryInterleavedRules == null) {
+            synchronized (this) {
+                if (factoredCscBinaryInterleavedRules == null) {
+                    factoredCscBinaryInterleavedRules = interleave(factoredCscBinaryRowIndices,
+                            factoredCscBinaryProbabilities);
+                }
+            }
+        }
+        return factoredCscBinaryInterleavedRules;
+    }
+
+    private static long[] interleave(final short[] rowIndices, final float[] probabilities) {
+        final long[] rules = new long[rowIndices.length];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = packRule(rowIndices[i], probabilities[i]);
+        }
+        return rules;
+    }
+
+    /**
+     * Packs a parent and rule probability into a single entry; the probability occupies the high-order 32 bits and
+     * the parent the low-order 16.
+     * 
+     * @param parent Parent non-terminal
+     * @param probability Rule log probability
+     * @return Packed rule
+     */
+    public static long packRule(final short parent, final float probability) {
+        return ((long) Float.floatToRawIntBits(probability)) << 32 | (parent & 0xffffL);
+    }
+
+    /**
+     * @param packedRule Rule packed by {@link #packRule(short, float)}
+     * @return Parent non-terminal
+     */
+    public static short unpackParent(final long packedRule) {
+        return (short) packedRule;
+    }
+
+    /**
+     * @param packedRule Rule packed by {@link #packRule(short, float)}
+     * @return Rule log probability
+     */
+    public static float unpackProbability(final long packedRule) {
+        return Float.intBitsToFloat((int) (packedRule >>> 32));
+    }
+
     private void init() {
         Arrays.fill(cscBinaryLeftChildStartIndices, -1);
         Arrays.fill(cscBinaryLeftChildEndIndices, -1);
@@ -886,45 +886,59 @@ public abstract class SparseMatrixGrammar extends Grammar {
      */
     public Grammar toUnsplitGrammar() {
         final Vocabulary baseVocabulary = nonTermSet.baseVocabulary();
-        final FractionalCountGrammar unsplitGrammar = new FractionalCountGrammar(baseVocabulary, lexSet, null, null,
-                null, 0, 0);
+        final short[] projection = new short[numNonTerms()];
+        for (short nt = 0; nt < projection.length; nt++) {
+            projection[nt] = nonTermSet.getBaseIndex(nt);
+        }
+        return toProjectedGrammar(baseVocabulary, projection);
+    }
+
+    /**
+     * Returns a {@link Grammar} instance (of the same class as <b>this</b>), with non-terminals collapsed onto a
+     * coarser vocabulary. The probability of each coarse production is the (normalized) sum of the probabilities of
+     * the fine productions projected onto it. Note that the current {@link Grammar} subclass must implement a
+     * constructor
+     * 
+     * @param projectedVocabulary Coarse vocabulary. The start symbol must be index 0.
+     * @param projection Index of the coarse non-terminal corresponding to each fine non-terminal, indexed by fine
+     *            non-terminal index.
+     * @return A {@link Grammar} instance (of the same class as <b>this</b>), over <code>projectedVocabulary</code>
+     */
+    public Grammar toProjectedGrammar(final Vocabulary projectedVocabulary, final short[] projection) {
+        final FractionalCountGrammar projectedGrammar = new FractionalCountGrammar(projectedVocabulary, lexSet, null,
+                null, null, 0, 0);
 
         for (final Production p : getBinaryProductions()) {
-            final short unsplitParent = nonTermSet.getBaseIndex((short) p.parent);
-            final short unsplitLeftChild = nonTermSet.getBaseIndex((short) p.leftChild);
-            final short unsplitRightChild = nonTermSet.getBaseIndex((short) p.rightChild);
-            unsplitGrammar.incrementBinaryCount(unsplitParent, unsplitLeftChild, unsplitRightChild,
-                    java.lang.Math.exp(p.prob));
+            projectedGrammar.incrementBinaryCount(projection[p.parent], projection[p.leftChild],
+                    projection[p.rightChild], java.lang.Math.exp(p.prob));
         }
 
         for (final Production p : getUnaryProductions()) {
-            final short unsplitParent = nonTermSet.getBaseIndex((short) p.parent);
-            final short unsplitChild = nonTermSet.getBaseIndex((short) p.leftChild);
-            unsplitGrammar.incrementUnaryCount(unsplitParent, unsplitChild, java.lang.Math.exp(p.prob));
+            projectedGrammar.incrementUnaryCount(projection[p.parent], projection[p.leftChild],
+                    java.lang.Math.exp(p.prob));
         }
 
         for (final Production p : getLexicalProductions()) {
-            final short unsplitParent = nonTermSet.getBaseIndex((short) p.parent);
-            unsplitGrammar.incrementLexicalCount(unsplitParent, p.leftChild, java.lang.Math.exp(p.prob));
+            projectedGrammar.incrementLexicalCount(projection[p.parent], p.leftChild, java.lang.Math.exp(p.prob));
         }
 
         try {
             return getClass().getConstructor(
                     new Class[] { ArrayList.class, ArrayList.class, ArrayList.class, MutableEnumeration.class, MutableEnumeration.class,
                             GrammarFormatType.class, TokenClassifier.class, Class.class, boolean.class }).newInstance(
-                    new Object[] { unsplitGrammar.binaryProductions(Float.NEGATIVE_INFINITY),
-                            unsplitGrammar.unaryProductions(Float.NEGATIVE_INFINITY),
-                            unsplitGrammar.lexicalProductions(Float.NEGATIVE_INFINITY), baseVocabulary, lexSet,
+                    new Object[] { projectedGrammar.binaryProductions(Float.NEGATIVE_INFINITY),
+                            projectedGrammar.unaryProductions(Float.NEGATIVE_INFINITY),
+                            projectedGrammar.lexicalProductions(Float.NEGATIVE_INFINITY), projectedVocabulary, lexSet,
                             grammarFormat, this.tokenClassifier, this.packingFunction.getClass(), true });
         } catch (final Exception e) {
             try {
                 return getClass().getConstructor(
                         new Class[] { ArrayList.class, ArrayList.class, ArrayList.class, MutableEnumeration.class,
                                 MutableEnumeration.class, GrammarFormatType.class, TokenClassifier.class }).newInstance(
-                        new Object[] { unsplitGrammar.binaryProductions(Float.NEGATIVE_INFINITY),
-                                unsplitGrammar.unaryProductions(Float.NEGATIVE_INFINITY),
-                                unsplitGrammar.lexicalProductions(Float.NEGATIVE_INFINITY), baseVocabulary, lexSet,
-                                grammarFormat, this.tokenClassifier });
+                        new Object[] { projectedGrammar.binaryProductions(Float.NEGATIVE_INFINITY),
+                                projectedGrammar.unaryProductions(Float.NEGATIVE_INFINITY),
+                                projectedGrammar.lexicalProductions(Float.NEGATIVE_INFINITY), projectedVocabulary,
+                                lexSet, grammarFormat, this.tokenClassifier });
 
             } catch (final Exception e2) {
                 throw new UnsupportedOperationException(getClass() + " does not support this operation");
@@ -70,4 +70,31 @@ public class TestTokenizer {
                 Tokenizer
                         .treebankDetokenize("do n't wo n't would n't it 's Mitchell 's they 're he 'd I 'm I 'll we 're you 'd they 'll I 've you 've you 'd "));
     }
+
+    @Test
+    public void testTokenOffsets() {
+        final String input = "He said, \"The children's parents won't (really) go.\"";
+        final String[] tokens = Tokenizer.treebankTokenize(input).split(" ");
+        final int[][] offsets = Tokenizer.tokenOffsets(input, tokens);
+        assertEquals(tokens.length, offsets.length);
+
+        // Each token should be aligned with its surface form in the original input
+        final String[] surface = new String[] { "He", "said", ",", "\"", "The", "children", "'s", "parents", "wo",
+                "n't", "(", "really", ")", "go", ".", "\"" };
+        assertEquals(surface.length, tokens.length);
+        for (int i = 0; i < tokens.length; i++) {
+            assertEquals(surface[i], input.substring(offsets[i][0], offsets[i][1]));
+        }
+
+        // Leading whitespace and literal treebank tokens
+        final int[][] tokenOffsets = Tokenizer.tokenOffsets("  `` a  -LRB-", new String[] { "``", "a", "-LRB-" });
+        assertEquals(2, tokenOffsets[0][0]);
+        assertEquals(4, tokenOffsets[0][1]);
+        assertEquals(5, tokenOffsets[1][0]);
+        assertEquals(8, tokenOffsets[2][0]);
+        assertEquals(13, tokenOffsets[2][1]);
+
+        // Unaligned tokens
+        assertEquals(-1, Tokenizer.tokenOffsets("a b", new String[] { "a", "c" })[1][0]);
+    }
 }
@@ -179,4 +179,81 @@ public class Tokenizer {
         // Collapse multiple spaces and trim whitespace from beginning and end
         return s.replaceAll("\\s+", " ").trim();
     }
+
+    /**
+     * Aligns the tokens produced by {@link #treebankTokenize(String)} (or whitespace-separated input tokens) with the
+     * original input, reversing the bracket and quote substitutions made by the tokenizer. Tokens are matched in order,
+     * so each alignment starts after the end of the previous token. A token which cannot be found in the remaining
+     * input (which should only occur for unusual rewrites, such as '<i>'Tis</i>') is aligned to (-1, -1).
+     * 
+     * @param input Original (untokenized) input
+     * @param tokens Tokens
+     * @return Character offsets of each token in <code>input</code>; offsets[i][0] is the start of token i and
+     *         offsets[i][1] is the end (exclusive)
+     */
+    public static int[][] tokenOffsets(final String input, final String[] tokens) {
+        final int[][] offsets = new int[tokens.length][];
+        int position = 0;
+
+        for (int i = 0; i < tokens.length; i++) {
+            while (position < input.length() && Character.isWhitespace(input.charAt(position))) {
+                position++;
+            }
+
+            final String token = tokens[i];
+            final String surface = surfaceForm(token);
+
+            int start = -1;
+            String match = null;
+            if (input.startsWith(token, position)) {
+                start = position;
+                match = token;
+            } else if (surface != null && input.startsWith(surface, position)) {
+                start = position;
+                match = surface;
+            } else {
+                // Skip over any characters dropped by the tokenizer
+                start = input.indexOf(token, position);
+                match = token;
+                if (surface != null) {
+                    final int surfaceStart = input.indexOf(surface, position);
+                    if (surfaceStart >= 0 && (start < 0 || surfaceStart < start)) {
+                        start = surfaceStart;
+                        match = surface;
+                    }
+                }
+            }
+
+            if (start < 0) {
+                offsets[i] = new int[] { -1, -1 };
+            } else {
+                offsets[i] = new int[] { start, start + match.length() };
+                position = start + match.length();
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * @return The original surface form of a token rewritten by {@link #treebankTokenize(String)}, or null if the
+     *         tokenizer does not rewrite the token
+     */
+    private static String surfaceForm(final String token) {
+        if (token.equals("``") || token.equals("''")) {
+            return "\"";
+        } else if (token.equals("-LRB-")) {
+            return "(";
+        } else if (token.equals("-RRB-")) {
+            return ")";
+        } else if (token.equals("-LSB-")) {
+            return "[";
+        } else if (token.equals("-RSB-")) {
+            return "]";
+        } else if (token.equals("-LCB-")) {
+            return "{";
+        } else if (token.equals("-RCB-")) {
+            return "}";
+        }
+        return null;
+    }
 }
@@ -26,7 +26,7 @@ import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({ TestStringCountGrammar.class, TestFractionalCountGrammar.class, TestConstrainingChart.class,
-        TestConstrainedChart.class, TestConstrainedSplitInsideOutsideParser.class, TestTrainGrammar.class })
+        TestConstraintCorpus.class, TestConstrainedChart.class, TestConstrainedSplitInsideOutsideParser.class, TestTrainGrammar.class })
 public class AllLelaTests {
 
     /**
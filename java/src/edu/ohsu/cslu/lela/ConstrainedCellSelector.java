@@ -49,6 +49,8 @@ public class ConstrainedCellSelector extends CellSelector {
 
     protected ConstrainedCellSelector(final CellSelector child) {
         super(child);
+        // Every cell in the constraining chart is viable
+        this.dynamicCellClosure = false;
     }
 
     @Override
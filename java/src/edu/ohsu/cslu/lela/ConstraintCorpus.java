@@ -0,0 +1,202 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.lela;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.ohsu.cslu.datastructs.narytree.BinaryTree;
+import edu.ohsu.cslu.grammar.SparseMatrixGrammar;
+
+/**
+ * Compact storage for the gold constraints of a training corpus. Each binarized gold tree is stored as a pre-order
+ * sequence of integer-coded nodes (non-terminal indices for internal nodes and lexical indices for leaves), and a
+ * {@link ConstrainingChart} is materialized on demand when a sentence is parsed. Only one chart per iteration is live
+ * at any time, so memory consumption is proportional to the corpus size in tokens rather than to the sum of the chart
+ * sizes.
+ * 
+ * Optionally, the encoded corpus can be moved to a memory-mapped file (see {@link #map(File)}), in which case it is
+ * paged in by the operating system as needed and consumes no heap space at all.
+ * 
+ * @author Aaron Dunlop
+ */
+public class ConstraintCorpus implements Iterable<ConstrainingChart> {
+
+    /** Markov-0 grammar, used to encode labels and to populate materialized charts */
+    private final SparseMatrixGrammar baseGrammar;
+
+    /**
+     * Encoded nodes, in pre-order. Internal nodes are coded as (non-terminal index << 1 | binary), leaves as the
+     * bitwise complement of the lexical index (and are thus always negative). Null once the corpus has been mapped to
+     * a file.
+     */
+    private IntArrayList nodes = new IntArrayList();
+
+    /** Encoded nodes, backed by a memory-mapped file. Null unless {@link #map(File)} has been called. */
+    private IntBuffer mappedNodes;
+
+    /** Offset of the first node of each sentence */
+    private final IntArrayList sentenceOffsets = new IntArrayList();
+
+    public ConstraintCorpus(final SparseMatrixGrammar baseGrammar) {
+        this.baseGrammar = baseGrammar;
+    }
+
+    /**
+     * Encodes and appends a binarized gold tree to the corpus.
+     * 
+     * @param goldTree Binarized gold tree, labeled with non-terminals and words from the base grammar
+     */
+    public void add(final BinaryTree<String> goldTree) {
+        if (nodes == null) {
+            throw new IllegalStateException("Cannot add trees to a memory-mapped corpus");
+        }
+        sentenceOffsets.add(nodes.size());
+
+        for (final BinaryTree<String> node : goldTree.preOrderTraversal()) {
+            if (node.isLeaf()) {
+                final int word = baseGrammar.lexSet.getIndex(node.label());
+                if (word < 0) {
+                    throw new IllegalArgumentException("Word not found in lexicon: " + node.label());
+                }
+                nodes.add(~word);
+            } else {
+                final int nonTerminal = baseGrammar.nonTermSet.getIndex(node.label());
+                if (nonTerminal < 0) {
+                    throw new IllegalArgumentException("Non-terminal not found in vocabulary: " + node.label());
+                }
+                nodes.add(nonTerminal << 1 | (node.rightChild() != null ? 1 : 0));
+            }
+        }
+    }
+
+    /**
+     * @return The number of sentences in the corpus
+     */
+    public int size() {
+        return sentenceOffsets.size();
+    }
+
+    /**
+     * @param index Sentence index
+     * @return The binarized gold tree of the specified sentence
+     */
+    public BinaryTree<String> goldTree(final int index) {
+        final int[] cursor = new int[] { sentenceOffsets.getInt(index) };
+        return decode(cursor);
+    }
+
+    /**
+     * Materializes a {@link ConstrainingChart} for the specified sentence. The chart is not retained; callers should
+     * release it when the sentence has been parsed.
+     * 
+     * @param index Sentence index
+     * @return A newly-populated {@link ConstrainingChart}
+     */
+    public ConstrainingChart constrainingChart(final int index) {
+        return new ConstrainingChart(goldTree(index), baseGrammar);
+    }
+
+    /**
+     * Moves the encoded corpus to the specified file and maps it into memory, releasing the heap copy. No further
+     * trees may be added after mapping.
+     * 
+     * @param file Backing file. Any existing content will be overwritten.
+     * @throws IOException if the file cannot be written or mapped
+     */
+    public void map(final File file) throws IOException {
+        if (nodes == null) {
+            throw new IllegalStateException("Corpus is already memory-mapped");
+        }
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final ByteBuffer byteBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, nodes.size() * 4L);
+            byteBuffer.asIntBuffer().put(nodes.elements(), 0, nodes.size());
+            mappedNodes = byteBuffer.asIntBuffer();
+            nodes = null;
+        } finally {
+            // The mapping remains valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    private int node(final int offset) {
+        return mappedNodes != null ? mappedNodes.get(offset) : nodes.getInt(offset);
+    }
+
+    /**
+     * Decodes a subtree, starting at the node indicated by cursor[0], and advances the cursor past the subtree
+     */
+    private BinaryTree<String> decode(final int[] cursor) {
+        final int node = node(cursor[0]++);
+
+        if (node < 0) {
+            return new BinaryTree<String>(baseGrammar.lexSet.getSymbol(~node));
+        }
+
+        final BinaryTree<String> tree = new BinaryTree<String>(baseGrammar.nonTermSet.getSymbol(node >>> 1));
+        tree.addChild(decode(cursor));
+        if ((node & 1) != 0) {
+            tree.addChild(decode(cursor));
+        }
+        return tree;
+    }
+
+    /**
+     * Returns an iterator which materializes a {@link ConstrainingChart} for each sentence in turn.
+     */
+    @Override
+    public Iterator<ConstrainingChart> iterator() {
+        return new Iterator<ConstrainingChart>() {
+
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size();
+            }
+
+            @Override
+            public ConstrainingChart next() {
+                if (next >= size()) {
+                    throw new NoSuchElementException();
+                }
+                return constrainingChart(next++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.lela;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ohsu.cslu.datastructs.narytree.BinaryTree;
+import edu.ohsu.cslu.datastructs.narytree.NaryTree;
+import edu.ohsu.cslu.datastructs.narytree.NaryTree.Binarization;
+import edu.ohsu.cslu.grammar.GrammarFormatType;
+import edu.ohsu.cslu.grammar.SparseMatrixGrammar;
+import edu.ohsu.cslu.tests.JUnit;
+
+/**
+ * Unit tests for {@link ConstraintCorpus}.
+ * 
+ * @author Aaron Dunlop
+ */
+public class TestConstraintCorpus {
+
+    private final static String CORPUS = AllLelaTests.STRING_SAMPLE_TREE + '\n'
+            + AllLelaTests.TREE_WITH_LONG_UNARY_CHAIN;
+
+    private ConstrainedInsideOutsideGrammar grammar;
+    private BinaryTree<String>[] goldTrees;
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Before
+    public void setUp() throws IOException {
+        final FractionalCountGrammar countGrammar = new StringCountGrammar(new StringReader(CORPUS),
+                Binarization.RIGHT, GrammarFormatType.Berkeley).toFractionalCountGrammar();
+        grammar = new ConstrainedInsideOutsideGrammar(countGrammar, GrammarFormatType.Berkeley,
+                SparseMatrixGrammar.PerfectIntPairHashPackingFunction.class);
+
+        final String[] lines = CORPUS.split("\n");
+        goldTrees = new BinaryTree[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            goldTrees[i] = NaryTree.read(lines[i], String.class).binarize(GrammarFormatType.Berkeley,
+                    Binarization.RIGHT);
+        }
+    }
+
+    @Test
+    public void testHeapCorpus() {
+        assertCorpus(populatedCorpus());
+    }
+
+    @Test
+    public void testMappedCorpus() throws IOException {
+        final ConstraintCorpus corpus = populatedCorpus();
+        final File file = File.createTempFile("constraints", ".bin");
+        file.deleteOnExit();
+        corpus.map(file);
+
+        assertEquals(0, file.length() % 4);
+        assertCorpus(corpus);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddToMappedCorpus() throws IOException {
+        final ConstraintCorpus corpus = populatedCorpus();
+        final File file = File.createTempFile("constraints", ".bin");
+        file.deleteOnExit();
+        corpus.map(file);
+        corpus.add(goldTrees[0]);
+    }
+
+    private ConstraintCorpus populatedCorpus() {
+        final ConstraintCorpus corpus = new ConstraintCorpus(grammar);
+        for (final BinaryTree<String> goldTree : goldTrees) {
+            corpus.add(goldTree);
+        }
+        return corpus;
+    }
+
+    /**
+     * Verifies that each materialized chart matches a chart constructed directly from the gold tree
+     */
+    private void assertCorpus(final ConstraintCorpus corpus) {
+        assertEquals(goldTrees.length, corpus.size());
+
+        int i = 0;
+        for (final ConstrainingChart cc : corpus) {
+            assertEquals(goldTrees[i].toString(), corpus.goldTree(i).toString());
+
+            final ConstrainingChart expected = new ConstrainingChart(goldTrees[i], grammar);
+            assertEquals(expected.size(), cc.size());
+            assertEquals(expected.maxUnaryChainLength(), cc.maxUnaryChainLength());
+            assertArrayEquals(expected.tokens, cc.tokens);
+            assertArrayEquals(expected.unaryChainLength, cc.unaryChainLength);
+            assertArrayEquals(expected.parentCellIndices, cc.parentCellIndices);
+            assertArrayEquals(expected.siblingCellIndices, cc.siblingCellIndices);
+            JUnit.assertArrayEquals(expected.openCells, cc.openCells);
+            assertEquals(expected.extractBestParse(0).toString(), cc.extractBestParse(0).toString());
+            i++;
+        }
+        assertEquals(goldTrees.length, i);
+    }
+}
@@ -140,6 +140,9 @@ public class TrainGrammar extends BaseCommandlineTool {
     @Option(name = "-muc", aliases = { "--merge-unary-chains" }, usage = "Collapse unary chain probabilities into single productions")
     private boolean mergeUnaryChains;
 
+    @Option(name = "-cf", aliases = { "--constraints-file" }, metaVar = "file", usage = "Store encoded gold constraints in a memory-mapped file instead of on the heap")
+    private File constraintsFile;
+
     /**
      * Configuration property key for the weight of estimated likelihood loss when ordering merge candidates. See also
      * {@link #OPT_RULE_COUNT_LAMBDA}.
@@ -156,7 +159,12 @@ public class TrainGrammar extends BaseCommandlineTool {
     private final static int MAX_CORPUS_SIZE = 20 * 1024 * 1024;
 
     final ArrayList<NaryTree<String>> goldTrees = new ArrayList<NaryTree<String>>();
-    final ArrayList<ConstrainingChart> constrainingCharts = new ArrayList<ConstrainingChart>();
+
+    /**
+     * Compact encoding of the binarized gold trees. {@link ConstrainingChart}s are materialized from it one sentence at
+     * a time.
+     */
+    ConstraintCorpus constraintCorpus;
 
     long parseTime = 0, countTime = 0;
 
@@ -228,8 +236,8 @@ public class TrainGrammar extends BaseCommandlineTool {
                     uncommonWordThreshold, rareWordThreshold);
 
             // Iterate over the training corpus, parsing and counting rule occurrences
-            for (int i = 0; i < constrainingCharts.size(); i++) {
-                parser.findBestParse(constrainingCharts.get(i));
+            for (final ConstrainingChart constrainingChart : constraintCorpus) {
+                parser.findBestParse(constrainingChart);
                 parser.countRuleOccurrences(countGrammar);
             }
 
@@ -341,15 +349,20 @@ public class TrainGrammar extends BaseCommandlineTool {
         // Convert Markov-0 grammar to CSC format
         final SparseMatrixGrammar cscGrammar0 = cscGrammar(markov0Grammar);
 
-        // Load in constraining charts from training corpus
-        BaseLogger.singleton().info("Loading gold trees and constraining charts...");
+        // Load and encode gold constraints from training corpus
+        BaseLogger.singleton().info("Loading gold trees and constraints...");
+        constraintCorpus = new ConstraintCorpus(cscGrammar0);
 
         for (String line = trainingCorpusReader.readLine(); line != null; line = trainingCorpusReader.readLine()) {
             final NaryTree<String> goldTree = NaryTree.read(line, String.class);
             goldTrees.add(goldTree);
 
             final BinaryTree<String> factoredTree = goldTree.binarize(grammarFormatType, binarization);
-            constrainingCharts.add(new ConstrainingChart(factoredTree, cscGrammar0));
+            constraintCorpus.add(factoredTree);
+        }
+
+        if (constraintsFile != null) {
+            constraintCorpus.map(constraintsFile);
         }
     }
 
@@ -376,10 +389,10 @@ public class TrainGrammar extends BaseCommandlineTool {
         final long t1 = System.currentTimeMillis();
         // Iterate over the training corpus, parsing and counting rule occurrences
         double corpusLikelihood = 0f;
-        for (int i = 0; i < constrainingCharts.size(); i++) {
+        for (final ConstrainingChart constrainingChart : constraintCorpus) {
             // TODO Remove detailed timing instrumentation
             final long t00 = System.nanoTime();
-            parser.findBestParse(constrainingCharts.get(i));
+            parser.findBestParse(constrainingChart);
             final long t01 = System.nanoTime();
             parseTime += (t01 - t00);
             corpusLikelihood += parser.chart.getInside(0, parser.chart.size(), 0);
@@ -500,7 +513,7 @@ public class TrainGrammar extends BaseCommandlineTool {
         // Iterate over the training corpus, parsing and counting rule occurrences
         @SuppressWarnings("unused")
         int sentenceCount = 0;
-        for (final ConstrainingChart constrainingChart : constrainingCharts) {
+        for (final ConstrainingChart constrainingChart : constraintCorpus) {
             parser.findBestParse(constrainingChart);
             parser.countMergeCost(mergeCost, logSplitFraction);
             sentenceCount++;
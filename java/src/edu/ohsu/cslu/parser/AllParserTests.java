@@ -39,7 +39,9 @@ import edu.ohsu.cslu.parser.spmv.AllSparseMatrixVectorParserTests;
 @Suite.SuiteClasses({ AllGrammarTests.class, AllDependencyTests.class, TestChart.class, TestParser.class,
         TestECPGramLoop.class, TestECPGramLoopBerkFilter.class, TestECPCellCrossHash.class, TestECPCellCrossList.class,
         TestECPCellCrossMatrix.class, AllSparseMatrixVectorParserTests.class, AllMatrixLoopParserTests.class,
-        TestParserDriver.class })
+        TestParserDriver.class, TestParseScheduler.class, TestParseCache.class,
+        TestCellCache.class, TestParserMetrics.class,
+        TestModelRegistry.class, TestBatchingParseService.class, TestJsonOutputWriter.class })
 public class AllParserTests {
 
 }
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cltool4j.BaseLogger;
+import cltool4j.GlobalConfigProperties;
+import edu.ohsu.cslu.parser.Parser.InputFormat;
+
+/**
+ * Serves parse requests from many concurrent callers (e.g. servlet request threads), each submitting one or a few
+ * sentences, by micro-batching them. A dispatcher thread collects incoming sentences for a short window (
+ * {@link #PROPERTY_BATCH_WINDOW}), groups them into length buckets ({@link #PROPERTY_BATCH_BUCKETS}), and hands each
+ * group to a worker thread, which parses the batch sequentially with a single parser instance.
+ * 
+ * Each bucket draws parsers from its own pool in the {@link ModelRegistry} (see {@link ModelRegistry#acquire(int)}).
+ * Since {@link SparseMatrixParser} only reallocates its chart when a sentence exceeds the current chart size, a parser
+ * which only sees sentences from one bucket retains a chart sized for that bucket, instead of a chart sized for the
+ * longest sentence it has ever parsed; and consecutive sentences of similar length reuse the same (cache-resident)
+ * chart storage. The cost is a queueing delay of at most the batching window (plus the time to parse any sentences
+ * ahead of it in the same batch).
+ * 
+ * Sentences longer than the last bucket boundary are grouped into an overflow bucket. Each sentence is parsed with the
+ * model which is current when its batch begins, so the sentences of a single caller may be parsed with different
+ * models if a new model is installed while they are queued.
+ * 
+ * @author Aaron Dunlop
+ */
+public class BatchingParseService {
+
+    /** Batching window, in milliseconds. Default = 5 */
+    public final static String PROPERTY_BATCH_WINDOW = "batchWindow";
+
+    /** Upper bounds (inclusive) of sentence-length buckets, comma-separated. Default = 10,20,40 */
+    public final static String PROPERTY_BATCH_BUCKETS = "batchBuckets";
+
+    /**
+     * Maximum sentences in a single batch. A bucket which reaches this size is dispatched immediately, without waiting
+     * for the window to close. Default = 16
+     */
+    public final static String PROPERTY_MAX_BATCH_SIZE = "maxBatchSize";
+
+    /** Worker threads. Default = the number of available processors */
+    public final static String PROPERTY_BATCH_THREADS = "batchThreads";
+
+    private final ModelRegistry registry;
+    private final long windowNanos;
+    private final int[] bucketBoundaries;
+    private final int maxBatchSize;
+
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+    private final ExecutorService workers;
+    private final Thread dispatcher;
+    private volatile boolean shutdown;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong sentences = new AtomicLong();
+
+    /**
+     * Configures batching from {@link GlobalConfigProperties}
+     * 
+     * @param registry Model registry
+     */
+    public BatchingParseService(final ModelRegistry registry) {
+        this(registry, GlobalConfigProperties.singleton().getIntProperty(PROPERTY_BATCH_WINDOW, 5),
+                parseBuckets(GlobalConfigProperties.singleton().getProperty(PROPERTY_BATCH_BUCKETS, "10,20,40")),
+                GlobalConfigProperties.singleton().getIntProperty(PROPERTY_MAX_BATCH_SIZE, 16), GlobalConfigProperties
+                        .singleton().getIntProperty(PROPERTY_BATCH_THREADS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param registry Model registry
+     * @param windowMillis Batching window, in milliseconds
+     * @param bucketBoundaries Upper bounds (inclusive) of sentence-length buckets, in ascending order
+     * @param maxBatchSize Maximum sentences in a single batch
+     * @param threads Worker threads
+     */
+    public BatchingParseService(final ModelRegistry registry, final int windowMillis, final int[] bucketBoundaries,
+            final int maxBatchSize, final int threads) {
+
+        for (int i = 1; i < bucketBoundaries.length; i++) {
+            if (bucketBoundaries[i] <= bucketBoundaries[i - 1]) {
+                throw new IllegalArgumentException("Bucket boundaries must be ascending");
+            }
+        }
+        if (maxBatchSize < 1 || threads < 1) {
+            throw new IllegalArgumentException("Batch size and thread count must be positive");
+        }
+
+        this.registry = registry;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.bucketBoundaries = bucketBoundaries;
+        this.maxBatchSize = maxBatchSize;
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "BatchingParseService-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        this.dispatcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatch();
+            }
+        }, "BatchingParseService-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Queues a sentence for parsing
+     * 
+     * @param sentence
+     * @return A {@link Future} which completes when the sentence has been parsed
+     * @throws RejectedExecutionException if the service has been shut down
+     */
+    public Future<ParseTask> submit(final String sentence) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Service shut down");
+        }
+        final Request request = new Request(sentence,
+                bucket(ParserDriver.estimateSentenceLength(sentence, InputFormat.Text)));
+        queue.add(request);
+
+        // If shutdown() drained the queue between the check above and the add, the request would never be dispatched
+        if (shutdown && queue.remove(request)) {
+            request.cancel(false);
+            throw new RejectedExecutionException("Service shut down");
+        }
+        return request;
+    }
+
+    /**
+     * Queues a sentence for parsing and waits for the result
+     * 
+     * @param sentence
+     * @return Parse output and state
+     * @throws InterruptedException if interrupted while waiting
+     * @throws ExecutionException if parsing failed
+     */
+    public ParseTask parse(final String sentence) throws InterruptedException, ExecutionException {
+        return submit(sentence).get();
+    }
+
+    /**
+     * Stops accepting requests, cancels any queued requests, and allows batches in progress to complete.
+     */
+    public void shutdown() {
+        shutdown = true;
+        dispatcher.interrupt();
+        workers.shutdown();
+        for (Request r = queue.poll(); r != null; r = queue.poll()) {
+            r.cancel(false);
+        }
+    }
+
+    /**
+     * @param sentenceLength
+     * @return The index of the length bucket containing the specified length (buckets.length for sentences longer than
+     *         the last bucket boundary)
+     */
+    int bucket(final int sentenceLength) {
+        for (int i = 0; i < bucketBoundaries.length; i++) {
+            if (sentenceLength <= bucketBoundaries[i]) {
+                return i;
+            }
+        }
+        return bucketBoundaries.length;
+    }
+
+    /**
+     * @return The number of batches dispatched to workers
+     */
+    public long batches() {
+        return batches.get();
+    }
+
+    /**
+     * @return The number of sentences dispatched to workers
+     */
+    public long sentences() {
+        return sentences.get();
+    }
+
+    /**
+     * Parses a comma-separated list of bucket boundaries
+     * 
+     * @param buckets
+     * @return Bucket boundaries
+     */
+    static int[] parseBuckets(final String buckets) {
+        final String[] split = buckets.trim().split("\\s*,\\s*");
+        final int[] boundaries = new int[split.length];
+        for (int i = 0; i < split.length; i++) {
+            boundaries[i] = Integer.parseInt(split[i]);
+        }
+        return boundaries;
+    }
+
+    /**
+     * Dispatcher loop. Waits for a request, collects further requests until the batching window closes, and dispatches
+     * each non-empty bucket as a batch.
+     */
+    private void dispatch() {
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        final List<Request>[] pending = new List[bucketBoundaries.length + 1];
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = new ArrayList<Request>(maxBatchSize);
+        }
+
+        try {
+            while (!shutdown) {
+                Request r = queue.take();
+                final long windowEnd = System.nanoTime() + windowNanos;
+
+                while (r != null) {
+                    final List<Request> bucket = pending[r.bucket];
+                    bucket.add(r);
+                    if (bucket.size() == maxBatchSize) {
+                        dispatch(r.bucket, bucket);
+                        bucket.clear();
+                    }
+                    final long remaining = windowEnd - System.nanoTime();
+                    r = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                }
+
+                for (int i = 0; i < pending.length; i++) {
+                    if (!pending[i].isEmpty()) {
+                        dispatch(i, pending[i]);
+                        pending[i].clear();
+                    }
+                }
+            }
+        } catch (final InterruptedException e) {
+            // Shutting down
+        }
+
+        // Cancel any requests collected but not yet dispatched
+        for (final List<Request> bucket : pending) {
+            for (final Request r : bucket) {
+                r.cancel(false);
+            }
+        }
+    }
+
+    private void dispatch(final int bucket, final List<Request> requests) {
+        final Request[] batch = requests.toArray(new Request[requests.size()]);
+        try {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    parseBatch(bucket, batch);
+                }
+            });
+            batches.incrementAndGet();
+            sentences.addAndGet(batch.length);
+        } catch (final RejectedExecutionException e) {
+            for (final Request r : batch) {
+                r.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Parses a batch of sentences with a single parser instance from the bucket's pool
+     */
+    private void parseBatch(final int bucket, final Request[] batch) {
+        final ModelRegistry.Lease lease;
+        try {
+            lease = registry.acquire(bucket);
+        } catch (final RuntimeException e) {
+            for (final Request r : batch) {
+                r.fail(e);
+            }
+            return;
+        }
+
+        try {
+            for (final Request r : batch) {
+                // Requests cancelled while queued are skipped
+                r.run(lease);
+            }
+        } finally {
+            lease.close();
+        }
+    }
+
+    /**
+     * A queued sentence. Run by a batch worker, with the batch's lease. Not exposed to callers (who see only a
+     * {@link Future}), so {@link #run()} is never called without a lease.
+     */
+    private final static class Request extends FutureTask<ParseTask> {
+
+        final String sentence;
+        final int bucket;
+        private final ParseCallable callable;
+
+        public Request(final String sentence, final int bucket) {
+            this(new ParseCallable(sentence), bucket);
+        }
+
+        private Request(final ParseCallable callable, final int bucket) {
+            super(callable);
+            this.sentence = callable.sentence;
+            this.bucket = bucket;
+            this.callable = callable;
+        }
+
+        void run(final ModelRegistry.Lease lease) {
+            callable.lease = lease;
+            run();
+            callable.lease = null;
+        }
+
+        void fail(final Throwable t) {
+            setException(t);
+        }
+    }
+
+    /**
+     * Parses a single sentence with the lease supplied by the batch worker
+     */
+    private final static class ParseCallable implements Callable<ParseTask> {
+
+        final String sentence;
+        ModelRegistry.Lease lease;
+
+        public ParseCallable(final String sentence) {
+            this.sentence = sentence;
+        }
+
+        @Override
+        public ParseTask call() {
+            try {
+                return lease.parse(sentence);
+            } catch (final RuntimeException e) {
+                BaseLogger.singleton().warning("WARNING: Parse failed: " + e.toString());
+                throw e;
+            }
+        }
+    }
+}
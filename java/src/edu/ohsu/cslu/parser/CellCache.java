@@ -0,0 +1,135 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser;
+
+import java.util.Arrays;
+
+import edu.ohsu.cslu.parser.chart.PackedArrayChart;
+import edu.ohsu.cslu.parser.chart.PackedArrayChart.CellSnapshot;
+import edu.ohsu.cslu.util.SegmentedLruCache;
+
+/**
+ * Caches finalized chart cells across sentences, so near-duplicate inputs (e.g., form letters with substituted names)
+ * reuse the cells spanning their shared token sequences instead of recomputing them.
+ * 
+ * Cells are keyed by the token sequence they cover and by the parser configuration fingerprint (see
+ * {@link ParserDriver#configurationFingerprint()}). Reuse is only valid when a cell's contents depend solely on the
+ * tokens it covers - i.e., in exhaustive search without cell constraints. In pruned search, the figure-of-merit
+ * (and thus the cell population) depends on the surrounding context as well, so {@link SparseMatrixParser} bypasses
+ * the cache. Cells are stored independently of their position (see {@link PackedArrayChart#snapshotCell(int, int)}),
+ * so a shared subsequence may be reused at any offset.
+ * 
+ * @author Aaron Dunlop
+ */
+public class CellCache extends SegmentedLruCache<CellCache.Key, CellSnapshot> {
+
+    /** Estimated per-entry overhead (key, map entry, and array headers) */
+    private final static int ENTRY_OVERHEAD_BYTES = 96;
+
+    /**
+     * @param maxBytes Approximate maximum size of the cache, in bytes
+     */
+    public CellCache(final long maxBytes) {
+        super(maxBytes);
+    }
+
+    /**
+     * @param fingerprint Parser configuration fingerprint
+     * @param tokens Mapped token sequence of the sentence
+     * @param start Start of the cell span
+     * @param end End of the cell span
+     * @return Cached cell, or null if not found
+     */
+    public CellSnapshot get(final long fingerprint, final int[] tokens, final int start, final int end) {
+        return get(new Key(fingerprint, tokens, start, end));
+    }
+
+    /**
+     * @param fingerprint Parser configuration fingerprint
+     * @param tokens Mapped token sequence of the sentence
+     * @param start Start of the cell span
+     * @param end End of the cell span
+     * @param cell Snapshot of the finalized cell
+     */
+    public void put(final long fingerprint, final int[] tokens, final int start, final int end,
+            final CellSnapshot cell) {
+        put(new Key(fingerprint, Arrays.copyOfRange(tokens, start, end), 0, end - start), cell);
+    }
+
+    @Override
+    protected long bytes(final Key key, final CellSnapshot cell) {
+        return ENTRY_OVERHEAD_BYTES + ((key.end - key.start) << 2) + cell.bytes();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "cellCacheHits=%d cellCacheMisses=%d cellCacheEvictions=%d cellCacheEntries=%d cellCacheBytes=%d",
+                hits(), misses(), evictions(), size(), bytes());
+    }
+
+    /**
+     * A range of a token sequence. Lookups reference the sentence's tokens directly; stored keys copy their range.
+     */
+    final static class Key {
+
+        private final long fingerprint;
+        private final int[] tokens;
+        private final int start, end;
+        private final int hashCode;
+
+        public Key(final long fingerprint, final int[] tokens, final int start, final int end) {
+            this.fingerprint = fingerprint;
+            this.tokens = tokens;
+            this.start = start;
+            this.end = end;
+
+            int h = (int) (fingerprint ^ (fingerprint >>> 32));
+            for (int i = start; i < end; i++) {
+                h = 31 * h + tokens[i];
+            }
+            this.hashCode = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            if (other.fingerprint != fingerprint || other.end - other.start != end - start) {
+                return false;
+            }
+            for (int i = start, j = other.start; i < end; i++, j++) {
+                if (tokens[i] != other.tokens[j]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -31,6 +31,7 @@ import edu.ohsu.cslu.parser.chart.CellChart;
 import edu.ohsu.cslu.parser.chart.Chart;
 import edu.ohsu.cslu.parser.chart.Chart.ChartCell;
 import edu.ohsu.cslu.parser.chart.Chart.RecoveryStrategy;
+import edu.ohsu.cslu.parser.chart.PackedArrayChart;
 
 public abstract class ChartParser<G extends Grammar, C extends Chart> extends Parser<G> {
 
@@ -52,11 +53,25 @@ public abstract class ChartParser<G extends Grammar, C extends Chart> extends Pa
     }
 
     @Override
-    public ParseTask parseSentence(final String input, final RecoveryStrategy recoveryStrategy) {
-        final ParseTask task = super.parseSentence(input, recoveryStrategy);
+    public ParseTask parseSentence(final String input, final RecoveryStrategy recoveryStrategy, final long deadlineMs) {
+        final ParseTask task = super.parseSentence(input, recoveryStrategy, deadlineMs);
         if (task.binaryParse == null && recoveryStrategy != null) {
             task.recoveryParse = chart.extractRecoveryParse(recoveryStrategy);
         }
+
+        // Dependencies are extracted from the chart here, while the chart is still populated with this sentence
+        if (task.binaryParse != null && opts.headTable != null) {
+            ((PackedArrayChart) chart).extractDependencies(opts.headTable);
+        }
+        if (task.binaryParse != null && opts.outputFormat == OutputFormat.Binary) {
+            task.encodedParse = ((PackedArrayChart) chart).extractEncodedParse(opts.encodeScores);
+        }
+        if (task.binaryParse != null && opts.outputFormat == OutputFormat.Json) {
+            task.structuredParse = StructuredParse.fromBinaryParse(task.binaryParse, grammar, chart);
+        }
+        if (task.binaryParse != null && opts.forestOutput) {
+            task.forest = ((PackedArrayChart) chart).extractForest(opts.forestEdgeThreshold);
+        }
         return task;
     }
 
@@ -67,27 +82,27 @@ public abstract class ChartParser<G extends Grammar, C extends Chart> extends Pa
      */
     protected void initChart(final ParseTask parseTask) {
         if (collectDetailedStatistics) {
-            final long t0 = System.currentTimeMillis();
+            final long t0 = System.nanoTime();
             initSentence(parseTask);
-            parseTask.chartInitMs = System.currentTimeMillis() - t0;
+            parseTask.chartInitNs = System.nanoTime() - t0;
         } else {
             initSentence(parseTask);
         }
 
         if (figureOfMerit != null) {
             if (collectDetailedStatistics) {
-                final long t1 = System.currentTimeMillis();
+                final long t1 = System.nanoTime();
                 figureOfMerit.initSentence(parseTask, chart);
-                parseTask.fomInitMs = System.currentTimeMillis() - t1;
+                parseTask.fomInitNs = System.nanoTime() - t1;
             } else {
                 figureOfMerit.initSentence(parseTask, chart);
             }
         }
 
         if (collectDetailedStatistics) {
-            final long t2 = System.currentTimeMillis();
+            final long t2 = System.nanoTime();
             cellSelector.initSentence(this, parseTask);
-            parseTask.ccInitMs = System.currentTimeMillis() - t2;
+            parseTask.ccInitNs = System.nanoTime() - t2;
         } else {
             cellSelector.initSentence(this, parseTask);
         }
@@ -133,6 +148,9 @@ public abstract class ChartParser<G extends Grammar, C extends Chart> extends Pa
      */
     protected void insidePass() {
         while (cellSelector.hasNext()) {
+            if (chart.parseTask.deadlineExpired()) {
+                break;
+            }
             final short[] startAndEnd = cellSelector.next();
             final ChartCell cell = chart.getCell(startAndEnd[0], startAndEnd[1]);
             if (startAndEnd[1] - startAndEnd[0] == 1) {
@@ -144,9 +162,9 @@ public abstract class ChartParser<G extends Grammar, C extends Chart> extends Pa
 
     protected final BinaryTree<String> extract(final RecoveryStrategy recoveryStrategy) {
         if (collectDetailedStatistics) {
-            final long t3 = System.currentTimeMillis();
+            final long t3 = System.nanoTime();
             final BinaryTree<String> parseTree = chart.extractBestParse(grammar.startSymbol);
-            chart.parseTask.extractTimeMs = System.currentTimeMillis() - t3;
+            chart.parseTask.extractNs = System.nanoTime() - t3;
             return parseTree;
         }
 
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import edu.ohsu.cslu.grammar.Tokenizer;
+import edu.ohsu.cslu.util.Strings;
+
+/**
+ * Writes parse results as JSON, one object per line, directly from {@link ParseTask} fields (without formatting and
+ * re-parsing bracketed trees). Each line includes:
+ * 
+ * <ul>
+ * <li>id: Sentence index (in output order, starting at 0)</li>
+ * <li>status: 'normal', 'reparsed' (see reparseStages), 'recovered' (the parse failed, and the tree was produced by
+ * the recovery strategy), 'timeout', 'failed', or 'error' (an exception during parsing)</li>
+ * <li>reparseStages, timeMs, and inside (the log inside probability of the sentence)</li>
+ * <li>tokens: The tokenized sentence</li>
+ * <li>offsets: [start, end) character offsets of each token in the original input, for text and token input (see
+ * {@link Tokenizer#tokenOffsets(String, String[])})</li>
+ * <li>nodes: The parse tree as an array of nodes in pre-order (see {@link StructuredParse}). Each node includes its
+ * label, the index of its parent (-1 for the root), its span, the index of the token it dominates (for preterminals),
+ * and its log inside and posterior probabilities, when available.</li>
+ * </ul>
+ * 
+ * e.g. <code>{"id":0,"status":"normal","reparseStages":0,"timeMs":12,"inside":-28.51,"tokens":["Fish","swim"],
+ * "offsets":[[0,4],[5,9]],"nodes":[{"label":"ROOT","parent":-1,"start":0,"end":2,"inside":-28.51},...]}</code>
+ * 
+ * Scores which are unavailable or infinite are written as null.
+ * 
+ * @author Aaron Dunlop
+ */
+public class JsonOutputWriter {
+
+    private final Writer writer;
+    private int sentences = 0;
+
+    public JsonOutputWriter(final OutputStream os) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(os, Charset.forName("UTF-8")));
+    }
+
+    /**
+     * Writes a single parse result, flushing it to the underlying stream so a consumer reading the stream incrementally
+     * sees each result as soon as its sentence is parsed.
+     * 
+     * @param parseTask Parse result, or null if parsing failed with an exception
+     * @throws IOException if the write fails
+     */
+    public void write(final ParseTask parseTask) throws IOException {
+        writer.write("{\"id\":");
+        writer.write(Integer.toString(sentences++));
+
+        if (parseTask == null) {
+            writer.write(",\"status\":\"error\"}\n");
+            writer.flush();
+            return;
+        }
+
+        writer.write(",\"status\":\"");
+        writer.write(status(parseTask));
+        writer.write("\",\"reparseStages\":");
+        writer.write(Integer.toString(parseTask.reparseStages));
+        writer.write(",\"timeMs\":");
+        writer.write(Long.toString(parseTask.parseTimeMs));
+        writer.write(",\"inside\":");
+        writeFloat(parseTask.binaryParse != null ? parseTask.insideProbability : Float.NaN);
+
+        final String[] tokens = parseTask.sentence != null ? Strings.splitOnSpace(parseTask.sentence) : new String[0];
+        writer.write(",\"tokens\":[");
+        for (int i = 0; i < tokens.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeString(tokens[i]);
+        }
+        writer.write(']');
+
+        // Offsets are only meaningful for raw text and token input (not for trees or tagged input)
+        if (parseTask.input != null && parseTask.inputTree == null && parseTask.inputTags == null) {
+            final int[][] offsets = Tokenizer.tokenOffsets(parseTask.input, tokens);
+            writer.write(",\"offsets\":[");
+            for (int i = 0; i < offsets.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write('[');
+                writer.write(Integer.toString(offsets[i][0]));
+                writer.write(',');
+                writer.write(Integer.toString(offsets[i][1]));
+                writer.write(']');
+            }
+            writer.write(']');
+        }
+
+        final StructuredParse tree = structuredParse(parseTask);
+        writer.write(",\"nodes\":[");
+        if (tree != null) {
+            for (int i = 0; i < tree.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeNode(tree, i);
+            }
+        }
+        writer.write("]}\n");
+        writer.flush();
+    }
+
+    private void writeNode(final StructuredParse tree, final int i) throws IOException {
+        writer.write("{\"label\":");
+        writeString(tree.labels[i]);
+        writer.write(",\"parent\":");
+        writer.write(Integer.toString(tree.parents[i]));
+        writer.write(",\"start\":");
+        writer.write(Short.toString(tree.starts[i]));
+        writer.write(",\"end\":");
+        writer.write(Short.toString(tree.ends[i]));
+        if (tree.tokenIndices[i] >= 0) {
+            writer.write(",\"token\":");
+            writer.write(Short.toString(tree.tokenIndices[i]));
+        }
+        if (tree.insideProbabilities != null) {
+            writer.write(",\"inside\":");
+            writeFloat(tree.insideProbabilities[i]);
+        }
+        if (tree.posteriors != null) {
+            writer.write(",\"posterior\":");
+            writeFloat(tree.posteriors[i]);
+        }
+        writer.write('}');
+    }
+
+    /**
+     * @return The scored tree extracted by the parser, if available; otherwise, an unscored tree converted from the
+     *         binary or recovery parse
+     */
+    private static StructuredParse structuredParse(final ParseTask parseTask) {
+        if (parseTask.structuredParse != null) {
+            return parseTask.structuredParse;
+        }
+        if (parseTask.binaryParse != null) {
+            return StructuredParse.fromBinaryParse(parseTask.binaryParse, parseTask.grammar, null);
+        }
+        if (parseTask.recoveryParse != null) {
+            return StructuredParse.fromTree(parseTask.recoveryParse);
+        }
+        return null;
+    }
+
+    static String status(final ParseTask parseTask) {
+        if (parseTask.timedOut) {
+            return "timeout";
+        }
+        if (parseTask.binaryParse == null) {
+            return parseTask.recoveryParse != null ? "recovered" : "failed";
+        }
+        return parseTask.reparseStages > 0 ? "reparsed" : "normal";
+    }
+
+    private void writeFloat(final float f) throws IOException {
+        if (Float.isNaN(f) || Float.isInfinite(f)) {
+            writer.write("null");
+        } else {
+            writer.write(Float.toString(f));
+        }
+    }
+
+    private void writeString(final String s) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                writer.write("\\\"");
+                break;
+            case '\\':
+                writer.write("\\\\");
+                break;
+            case '\n':
+                writer.write("\\n");
+                break;
+            case '\r':
+                writer.write("\\r");
+                break;
+            case '\t':
+                writer.write("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    writer.write(String.format("\\u%04x", (int) c));
+                } else {
+                    writer.write(c);
+                }
+            }
+        }
+        writer.write('"');
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    public void close() throws IOException {
+        writer.close();
+    }
+}
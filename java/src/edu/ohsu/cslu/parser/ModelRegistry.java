@@ -0,0 +1,358 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import cltool4j.BaseLogger;
+
+/**
+ * Maintains the model (grammar, FOM, and cell-selector model) currently used to serve parse requests, and replaces it
+ * without interrupting service. A new model is loaded (optionally in the background), warmed with a sample workload,
+ * and then installed atomically; subsequent requests use the new model, while requests in progress complete on the
+ * model they started with. When the last of those requests completes, the retired model's parser instances and thread
+ * pool are shut down, and the model becomes eligible for garbage collection.
+ * 
+ * Each model is represented by a fully-configured {@link ParserDriver} (as for embedded use; see
+ * {@link EmbeddedExample}), which must specify {@link ParserDriver#researchParserType}. Parser instances are created
+ * with {@link ParserDriver#createLocal()} and pooled per model, so a parser and its chart are reused across requests.
+ * Callers may partition each model's parsers into several pools (see {@link #acquire(int)}), e.g. by sentence length,
+ * so that each parser's chart is sized for the sentences it is likely to see.
+ * 
+ * Usage:
+ * 
+ * <pre>
+ * final ModelRegistry.Lease lease = registry.acquire();
+ * try {
+ *     for (final String sentence : sentences) {
+ *         output(lease.parse(sentence));
+ *     }
+ * } finally {
+ *     lease.close();
+ * }
+ * </pre>
+ * 
+ * Note that {@link cltool4j.GlobalConfigProperties} are shared by all models.
+ * 
+ * @author Aaron Dunlop
+ */
+public class ModelRegistry {
+
+    private final AtomicReference<Model> current = new AtomicReference<Model>();
+
+    /** Loads models in the background. Single-threaded, so overlapping installs are applied in order. */
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "ModelRegistry");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * Leases the current model. The lease must be closed (generally in a finally block) when the request completes.
+     * Leases are not thread-safe; each request thread should acquire its own.
+     * 
+     * @return A lease on the current model
+     * @throws IllegalStateException if no model has been installed
+     */
+    public Lease acquire() {
+        return acquire(0);
+    }
+
+    /**
+     * Leases the current model, drawing parser instances from the specified pool. Parsers are only reused within a
+     * pool, so a caller which groups requests (e.g., by sentence length) can keep charts sized appropriately for each
+     * group. The lease must be closed when the request completes.
+     * 
+     * @param pool Pool index (non-negative)
+     * @return A lease on the current model
+     * @throws IllegalStateException if no model has been installed
+     */
+    public Lease acquire(final int pool) {
+        while (true) {
+            final Model model = current.get();
+            if (model == null) {
+                throw new IllegalStateException("No model installed");
+            }
+            // If the model was retired between reading the reference and acquiring it, retry with its replacement
+            if (model.tryAcquire()) {
+                return new Lease(model, pool);
+            }
+        }
+    }
+
+    /**
+     * Warms the specified model and installs it as the current model, retiring the previous model (if any).
+     * 
+     * @param version Model version (for reporting)
+     * @param opts Parser configuration, including grammar and models
+     * @param warmupSentences Sentences to parse before installing the model (may be empty)
+     * @return The installed model
+     */
+    public Model install(final String version, final ParserDriver opts, final List<String> warmupSentences) {
+        final Model model = new Model(version, opts);
+
+        final long t0 = System.currentTimeMillis();
+        final Parser<?> parser = model.borrowParser(0);
+        try {
+            for (final String sentence : warmupSentences) {
+                parser.parseSentence(sentence);
+            }
+        } finally {
+            model.returnParser(0, parser);
+        }
+
+        final Model previous = current.getAndSet(model);
+        BaseLogger.singleton().info(
+                String.format("INFO: Installed model %s (warmup=%d sentences, %d ms)%s", version,
+                        warmupSentences.size(), System.currentTimeMillis() - t0, previous != null ? "; retiring "
+                                + previous.version : ""));
+        if (previous != null) {
+            previous.retire();
+        }
+        return model;
+    }
+
+    /**
+     * Loads, warms, and installs a model in the background.
+     * 
+     * @param version Model version (for reporting)
+     * @param modelLoader Loads the grammar and models and returns the configured {@link ParserDriver}
+     * @param warmupSentences Sentences to parse before installing the model (may be empty)
+     * @return A {@link Future} which completes when the model has been installed (or reports an exception if loading
+     *         failed, in which case the failure is also logged, and the current model is unaffected)
+     */
+    public Future<Model> installAsync(final String version, final Callable<ParserDriver> modelLoader,
+            final List<String> warmupSentences) {
+        return loader.submit(new Callable<Model>() {
+            @Override
+            public Model call() throws Exception {
+                BaseLogger.singleton().info("INFO: Loading model " + version);
+                try {
+                    return install(version, modelLoader.call(), warmupSentences);
+                } catch (final Exception e) {
+                    // Callers may not wait on the returned Future, so we report the failure here as well
+                    BaseLogger.singleton().severe("ERROR: Failed to load model " + version + ": " + e.toString());
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Convenience method; loads, warms, and installs a model in the background, without warmup sentences
+     * 
+     * @param version Model version (for reporting)
+     * @param modelLoader Loads the grammar and models and returns the configured {@link ParserDriver}
+     * @return A {@link Future} which completes when the model has been installed
+     */
+    public Future<Model> installAsync(final String version, final Callable<ParserDriver> modelLoader) {
+        return installAsync(version, modelLoader, Collections.<String> emptyList());
+    }
+
+    /**
+     * @return The current model, or null if none has been installed
+     */
+    public Model current() {
+        return current.get();
+    }
+
+    /**
+     * Stops background loading and retires the current model (requests in progress are allowed to complete)
+     */
+    public void shutdown() {
+        loader.shutdownNow();
+        final Model model = current.getAndSet(null);
+        if (model != null) {
+            model.retire();
+        }
+    }
+
+    /**
+     * A single model version, and its pool of parser instances.
+     */
+    public final static class Model {
+
+        public final String version;
+        public final ParserDriver opts;
+
+        /** Idle parser instances, by pool index */
+        private final ConcurrentHashMap<Integer, ConcurrentLinkedQueue<Parser<?>>> idleParsers;
+
+        /** Outstanding leases */
+        private final AtomicInteger leases = new AtomicInteger();
+        private volatile boolean retired;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Model(final String version, final ParserDriver opts) {
+            this.version = version;
+            this.opts = opts;
+            this.idleParsers = new ConcurrentHashMap<Integer, ConcurrentLinkedQueue<Parser<?>>>();
+        }
+
+        private boolean tryAcquire() {
+            leases.incrementAndGet();
+            if (retired) {
+                release();
+                return false;
+            }
+            return true;
+        }
+
+        private void release() {
+            if (leases.decrementAndGet() == 0 && retired) {
+                releaseResources();
+            }
+        }
+
+        private void retire() {
+            retired = true;
+            if (leases.get() == 0) {
+                releaseResources();
+            }
+        }
+
+        /**
+         * Shuts down pooled parsers. May be reached from both {@link #retire()} and {@link #release()}, but executes
+         * only once.
+         */
+        private void releaseResources() {
+            // Mark the model released under the same lock as returnParser(), so no parser can be added to the pool
+            // after it is cleared
+            synchronized (idleParsers) {
+                if (!released.compareAndSet(false, true)) {
+                    return;
+                }
+                idleParsers.clear();
+            }
+            opts.shutdownParsers();
+            BaseLogger.singleton().info("INFO: Released model " + version);
+        }
+
+        private ConcurrentLinkedQueue<Parser<?>> pool(final int pool) {
+            final ConcurrentLinkedQueue<Parser<?>> q = idleParsers.get(pool);
+            if (q != null) {
+                return q;
+            }
+            final ConcurrentLinkedQueue<Parser<?>> newQueue = new ConcurrentLinkedQueue<Parser<?>>();
+            final ConcurrentLinkedQueue<Parser<?>> existing = idleParsers.putIfAbsent(pool, newQueue);
+            return existing != null ? existing : newQueue;
+        }
+
+        private Parser<?> borrowParser(final int pool) {
+            final Parser<?> parser = pool(pool).poll();
+            return parser != null ? parser : opts.createLocal();
+        }
+
+        private void returnParser(final int pool, final Parser<?> parser) {
+            synchronized (idleParsers) {
+                if (!released.get()) {
+                    pool(pool).add(parser);
+                    return;
+                }
+            }
+            // The model has already been released, so the parser won't be reused
+            parser.shutdown();
+        }
+
+        /**
+         * @return True if this model has been replaced and all requests using it have completed
+         */
+        public boolean isReleased() {
+            return released.get();
+        }
+
+        /**
+         * @return The number of requests currently using this model
+         */
+        public int activeLeases() {
+            return leases.get();
+        }
+    }
+
+    /**
+     * A single request's use of a model. Holds one parser instance from the model's pool until closed.
+     */
+    public final static class Lease {
+
+        public final Model model;
+        private final int pool;
+        private Parser<?> parser;
+        private boolean closed;
+
+        private Lease(final Model model, final int pool) {
+            this.model = model;
+            this.pool = pool;
+        }
+
+        /**
+         * @return The parser instance held by this lease (created or taken from the pool on first use)
+         */
+        public Parser<?> parser() {
+            if (closed) {
+                throw new IllegalStateException("Lease closed");
+            }
+            if (parser == null) {
+                parser = model.borrowParser(pool);
+            }
+            return parser;
+        }
+
+        /**
+         * Parses a sentence with the leased model
+         * 
+         * @param sentence
+         * @return Parse output and state
+         */
+        public ParseTask parse(final String sentence) {
+            return parser().parseSentence(sentence);
+        }
+
+        /**
+         * Returns the parser to the pool and releases the model. The lease may not be used afterward.
+         */
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (parser != null) {
+                model.returnParser(pool, parser);
+                parser = null;
+            }
+            model.release();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser;
+
+import java.util.Arrays;
+
+import edu.ohsu.cslu.datastructs.narytree.BinaryTree;
+import edu.ohsu.cslu.util.SegmentedLruCache;
+
+/**
+ * Caches parse results for repeated sentences (boilerplate, headlines, templated strings, etc.), so a cache hit skips
+ * chart population entirely.
+ * 
+ * Results are keyed by the sentence's mapped token sequence ({@link ParseTask#tokens}) and by a fingerprint of the
+ * parser configuration (see {@link ParserDriver#configurationFingerprint()}), so a single cache may be shared by
+ * parsers with different grammars or pruning settings. Parses are stored as bracketed strings, with unknown words
+ * represented by their UNK classes (as in the chart), so different sentences mapping to the same token sequence share
+ * an entry; the original words are restored at output time, as with any other parse.
+ * 
+ * The size of each entry is estimated from its token and string lengths.
+ * 
+ * @author Aaron Dunlop
+ */
+public class ParseCache extends SegmentedLruCache<ParseCache.Key, ParseCache.CachedParse> {
+
+    /** Estimated per-entry overhead (key, value, map entry, and array headers) */
+    private final static int ENTRY_OVERHEAD_BYTES = 128;
+
+    /**
+     * @param maxBytes Approximate maximum size of the cache, in bytes
+     */
+    public ParseCache(final long maxBytes) {
+        super(maxBytes);
+    }
+
+    /**
+     * @param maxBytes Approximate maximum size of the cache, in bytes
+     * @param segments Number of independently-synchronized segments
+     */
+    public ParseCache(final long maxBytes, final int segments) {
+        super(maxBytes, segments);
+    }
+
+    /**
+     * @param fingerprint Parser configuration fingerprint
+     * @param tokens Mapped token sequence
+     * @return Cached parse, or null if not found
+     */
+    public CachedParse get(final long fingerprint, final int[] tokens) {
+        return get(new Key(fingerprint, tokens));
+    }
+
+    /**
+     * Adds a parse to the cache, evicting least-recently-used entries if necessary
+     * 
+     * @param fingerprint Parser configuration fingerprint
+     * @param tokens Mapped token sequence
+     * @param binaryParse Binarized parse tree, with mapped (UNK) leaf labels
+     * @param insideProbability Inside probability of the parse
+     */
+    public void put(final long fingerprint, final int[] tokens, final BinaryTree<String> binaryParse,
+            final float insideProbability) {
+        put(new Key(fingerprint, tokens.clone()), new CachedParse(binaryParse.toString(), insideProbability));
+    }
+
+    @Override
+    protected long bytes(final Key key, final CachedParse parse) {
+        return ENTRY_OVERHEAD_BYTES + (key.tokens.length << 2) + (parse.parse.length() << 1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("cacheHits=%d cacheMisses=%d cacheEvictions=%d cacheEntries=%d cacheBytes=%d", hits(),
+                misses(), evictions(), size(), bytes());
+    }
+
+    /**
+     * A single cached parse
+     */
+    public final static class CachedParse {
+
+        private final String parse;
+        public final float insideProbability;
+
+        private CachedParse(final String parse, final float insideProbability) {
+            this.parse = parse;
+            this.insideProbability = insideProbability;
+        }
+
+        /**
+         * @return A new copy of the cached parse tree (callers may modify it)
+         */
+        public BinaryTree<String> binaryParse() {
+            return BinaryTree.read(parse, String.class);
+        }
+    }
+
+    final static class Key {
+
+        private final long fingerprint;
+        private final int[] tokens;
+        private final int hashCode;
+
+        public Key(final long fingerprint, final int[] tokens) {
+            this.fingerprint = fingerprint;
+            this.tokens = tokens;
+            this.hashCode = 31 * Arrays.hashCode(tokens) + (int) (fingerprint ^ (fingerprint >>> 32));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return other.fingerprint == fingerprint && Arrays.equals(other.tokens, tokens);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import cltool4j.ConfigProperties;
+
+/**
+ * Allocates a single thread budget across the three levels of parallelism supported by the parser (sentence, cell,
+ * and grammar; see the 'Multithreading' section of {@link ParserDriver}), and owns the work-stealing pool shared by all
+ * parser instances for cell-level tasks.
+ * 
+ * Previously, each parser instance created its own pool, so running 'n' sentence threads with 'c' cell threads
+ * started n * c pool workers (plus any grammar-level workers), regardless of the number of cores available. With a
+ * shared pool, concurrent sentences draw cell-level workers from the same pool, and the total is bounded by
+ * {@link ParserDriver#OPT_THREAD_BUDGET} (if specified). When a budget is specified, cell-level and grammar-level thread
+ * counts are reduced as necessary to fit within the per-sentence share of that budget.
+ * 
+ * The scheduler also applies a simple adaptive policy: short sentences have little intra-sentence work to distribute,
+ * so sentences shorter than {@link ParserDriver#OPT_MIN_PARALLEL_SENTENCE_LENGTH} are parsed entirely on their own
+ * (sentence-level) thread, and only longer sentences are split across the shared pool.
+ * 
+ * @author Aaron Dunlop
+ */
+public class ParseScheduler {
+
+    /**
+     * Default minimum sentence length for intra-sentence parallelism when a thread budget is specified. Without a
+     * budget, all sentences are parallelized (matching the behavior of per-parser pools).
+     */
+    public final static int DEFAULT_MIN_PARALLEL_SENTENCE_LENGTH = 16;
+
+    private final int threadBudget;
+    private final int sentenceThreads;
+    private final int cellThreads;
+    private final int grammarThreads;
+    private final int minParallelSentenceLength;
+
+    /** Shared cell-level pool (null if cell-level threading is not in use). Created on first use. */
+    private ForkJoinPool pool;
+
+    /**
+     * @param sentenceThreads Number of sentence-level threads (from the '-xt' option)
+     * @param props Configuration properties
+     */
+    public ParseScheduler(final int sentenceThreads, final ConfigProperties props) {
+        this.sentenceThreads = Math.max(1, sentenceThreads);
+        this.threadBudget = props.getIntProperty(ParserDriver.OPT_THREAD_BUDGET, 0);
+
+        final int requestedCellThreads = Math.max(1, props.getIntProperty(ParserDriver.OPT_CELL_THREAD_COUNT, 1));
+        final int requestedGrammarThreads = Math.max(1,
+                props.getIntProperty(ParserDriver.OPT_GRAMMAR_THREAD_COUNT, 1));
+
+        if (threadBudget > 0) {
+            // Divide the budget evenly between sentence threads, and allocate each sentence's share first to cell-level
+            // threads and then to grammar-level threads
+            final int sentenceShare = Math.max(1, threadBudget / this.sentenceThreads);
+            this.cellThreads = Math.min(requestedCellThreads, sentenceShare);
+            this.grammarThreads = Math.min(requestedGrammarThreads, Math.max(1, sentenceShare / cellThreads));
+            this.minParallelSentenceLength = props.getIntProperty(ParserDriver.OPT_MIN_PARALLEL_SENTENCE_LENGTH,
+                    DEFAULT_MIN_PARALLEL_SENTENCE_LENGTH);
+        } else {
+            this.cellThreads = requestedCellThreads;
+            this.grammarThreads = requestedGrammarThreads;
+            this.minParallelSentenceLength = props.getIntProperty(ParserDriver.OPT_MIN_PARALLEL_SENTENCE_LENGTH, 0);
+        }
+    }
+
+    /**
+     * @return The number of cell-level threads each sentence may use (after applying the thread budget)
+     */
+    public int cellThreads() {
+        return cellThreads;
+    }
+
+    /**
+     * @return The number of grammar-level threads each cell may use (after applying the thread budget)
+     */
+    public int grammarThreads() {
+        return grammarThreads;
+    }
+
+    /**
+     * Returns the work-stealing pool shared by all parser instances for cell-level tasks. The pool is sized to serve
+     * all sentence threads at once, but never exceeds the thread budget.
+     * 
+     * @return The shared cell-level pool, or null if cell-level threading is not in use
+     */
+    public synchronized ForkJoinPool pool() {
+        if (cellThreads <= 1) {
+            return null;
+        }
+        if (pool == null) {
+            int parallelism = sentenceThreads * cellThreads;
+            if (threadBudget > 0) {
+                parallelism = Math.max(cellThreads, Math.min(parallelism, threadBudget));
+            }
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+
+    /**
+     * @param sentenceLength Length of the sentence about to be parsed
+     * @return True if the sentence should be split across the shared pool; false if it should be parsed entirely on the
+     *         calling thread
+     */
+    public boolean parallelize(final int sentenceLength) {
+        return cellThreads > 1 && sentenceLength >= minParallelSentenceLength;
+    }
+
+    /**
+     * Executes a set of tasks in the specified thread pool and waits for all to complete, propagating any exception
+     * thrown by a task. Used to execute all cells of a span in parallel.
+     * 
+     * @param threadPool Thread pool
+     * @param tasks Tasks to execute
+     */
+    public static void invokeAll(final ForkJoinPool threadPool, final List<Callable<Void>> tasks) {
+        try {
+            for (final Future<Void> f : threadPool.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (final InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * @return The total number of threads configured across all levels (used to estimate CPU time)
+     */
+    public int threads() {
+        final int threads = sentenceThreads * cellThreads * grammarThreads;
+        // Sentence threads are created by the command-line infrastructure, so we can't restrict them to the budget
+        return threadBudget > 0 ? Math.max(sentenceThreads, Math.min(threads, threadBudget)) : threads;
+    }
+
+    /**
+     * @return Thread-pool statistics, in the form 'poolThreads=n poolActive=n poolQueued=n poolSteals=n'
+     */
+    @Override
+    public synchronized String toString() {
+        if (pool == null) {
+            return "poolThreads=0 poolActive=0 poolQueued=0 poolSteals=0";
+        }
+        return String.format("poolThreads=%d poolActive=%d poolQueued=%d poolSteals=%d", pool.getPoolSize(),
+                pool.getActiveThreadCount(), pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount(),
+                pool.getStealCount());
+    }
+
+    /**
+     * Shuts down the shared pool (if created)
+     */
+    public synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import java.util.logging.Level;
 import cltool4j.BaseLogger;
 import cltool4j.GlobalConfigProperties;
 import edu.ohsu.cslu.datastructs.narytree.BinaryTree;
+import edu.ohsu.cslu.datastructs.narytree.EncodedTree;
 import edu.ohsu.cslu.datastructs.narytree.HeadPercolationRuleset;
 import edu.ohsu.cslu.datastructs.narytree.NaryTree;
 import edu.ohsu.cslu.grammar.Grammar;
@@ -34,6 +35,7 @@ import edu.ohsu.cslu.grammar.Tokenizer;
 import edu.ohsu.cslu.parser.Parser.DecodeMethod;
 import edu.ohsu.cslu.parser.Parser.InputFormat;
 import edu.ohsu.cslu.parser.chart.Chart.RecoveryStrategy;
+import edu.ohsu.cslu.parser.chart.PackedForest;
 import edu.ohsu.cslu.parser.fom.BoundaryPosModel.BoundaryPosFom;
 import edu.ohsu.cslu.parser.fom.FigureOfMeritModel.FigureOfMerit;
 import edu.ohsu.cslu.parser.fom.InsideProb;
@@ -46,6 +48,9 @@ import edu.ohsu.cslu.util.Strings;
 // the chart should be handled in this class eventually)
 public class ParseTask {
 
+    /** Original input line, before tokenization */
+    public final String input;
+
     /** Input sentence */
     public final String sentence;
 
@@ -74,6 +79,35 @@ public class ParseTask {
     private EvalbResult evalb = null;
     public String chartStats = ""; // move all of these stats into this class
 
+    /**
+     * Lexical head of each word (0-indexed; -1 denotes the root). Only populated when dependency output is requested
+     * (see {@link edu.ohsu.cslu.parser.chart.PackedArrayChart#extractDependencies})
+     */
+    public int[] dependencyHeads = null;
+    /** The (unfactored) constituent in which each word attaches to its head */
+    public short[] dependencyLabels = null;
+    /** Preterminal (POS) of each word in the 1-best parse */
+    public short[] preterminals = null;
+
+    /**
+     * Compact encoding of the parse tree. Only populated when encoded output is requested (see
+     * {@link edu.ohsu.cslu.parser.chart.PackedArrayChart#extractEncodedParse(boolean)})
+     */
+    public EncodedTree encodedParse = null;
+
+    /**
+     * Populated chart entries. Only populated when forest output is requested (see
+     * {@link edu.ohsu.cslu.parser.chart.PackedArrayChart#extractForest(float)})
+     */
+    public PackedForest forest = null;
+
+    /**
+     * Node-array representation of the parse tree, with constituent scores from the chart. Only populated when JSON
+     * output is requested (see
+     * {@link StructuredParse#fromBinaryParse(BinaryTree, Grammar, edu.ohsu.cslu.parser.chart.Chart)})
+     */
+    public StructuredParse structuredParse = null;
+
     /** Recovery strategy in case of parse failure */
     public final RecoveryStrategy recoveryStrategy;
     /** Recovery parse (only populated in case of parse failure) */
@@ -99,12 +133,12 @@ public class ParseTask {
 
     /** Total time to parse the sentence. */
     public long parseTimeMs = 0;
-    /** Chart initialization and lexical production time */
-    public long chartInitMs = 0;
-    /** Figure-of-merit initialization time */
-    public long fomInitMs = 0;
-    /** Cell-selector initialization time */
-    public long ccInitMs = 0;
+    /** Chart initialization and lexical production time (measured in nanoseconds, but reported in ms) */
+    public long chartInitNs = 0;
+    /** Figure-of-merit initialization time (measured in nanoseconds, but reported in ms) */
+    public long fomInitNs = 0;
+    /** Cell-selector initialization time (measured in nanoseconds, but reported in ms) */
+    public long ccInitNs = 0;
     /** Total inside-pass binary time (accumulated in nanoseconds, but reported in ms) */
     public long insideBinaryNs = 0;
     /** Total unary and pruning time (accumulated in nanoseconds, but reported in ms) */
@@ -113,12 +147,27 @@ public class ParseTask {
     public long outsideBinaryNs = 0;
     /** Total outside unary and pruning time (accumulated in nanoseconds, but reported in ms) */
     public long outsideUnaryNs = 0;
-    /** Time to extract the parse tree from the chart, including unfactoring, if necessary. */
-    public long extractTimeMs = 0;
+    /**
+     * Time to extract the parse tree from the chart, including unfactoring, if necessary (measured in nanoseconds, but
+     * reported in ms)
+     */
+    public long extractNs = 0;
 
     /** The number of reparsing stages required to find a valid parse */
     public short reparseStages = 0;
 
+    /**
+     * Deadline for this parse, in {@link System#nanoTime()} units (see {@link ParserDriver#deadlineMs}). Checked
+     * cooperatively between chart cells; if it passes, the parser stops and returns the best result available.
+     */
+    public long deadlineNanos = Long.MAX_VALUE;
+
+    /** True if parsing was cut short by {@link #deadlineNanos} */
+    public boolean timedOut = false;
+
+    /** True if the parse was retrieved from a {@link ParseCache} rather than computed */
+    public boolean cacheHit = false;
+
     long startTime;
 
     /**
@@ -134,6 +183,7 @@ public class ParseTask {
     public ParseTask(final String input, final InputFormat inputFormat, final Grammar grammar,
             final FigureOfMerit figureOfMerit, final RecoveryStrategy recoveryStrategy, final DecodeMethod decodeMethod) {
 
+        this.input = input;
         this.grammar = grammar;
         this.figureOfMerit = figureOfMerit;
         this.decodeMethod = decodeMethod;
@@ -173,7 +223,7 @@ public class ParseTask {
         case Tagged: {
             // (DT The) (NN economy) (POS 's) (NN temperature) (MD will)
             final StringBuilder sb = new StringBuilder(128);
-            final String[] split = input.split("\\s+");
+            final String[] split = input.trim().split("\\s+");
             this.inputTags = new int[split.length / 2];
             this.stringInputTags = new String[split.length / 2];
 
@@ -222,6 +272,7 @@ public class ParseTask {
     public ParseTask(final int[] tokens, final Grammar grammar) {
         this.tokens = tokens;
         this.grammar = grammar;
+        this.input = null;
         this.sentence = null;
         this.inputTags = null;
         this.stringInputTags = null;
@@ -241,8 +292,9 @@ public class ParseTask {
 
     public String statsString() {
         final StringBuilder result = new StringBuilder(128);
-        result.append(String.format("\nINFO: sentLen=%d time=%d inside=%.5f reparses=%d%s", sentenceLength(),
-                parseTimeMs, insideProbability, reparseStages, chartStats.length() > 0 ? " " + chartStats : ""));
+        result.append(String.format("\nINFO: sentLen=%d time=%d inside=%.5f reparses=%d%s%s%s", sentenceLength(),
+                parseTimeMs, insideProbability, reparseStages, timedOut ? " timeout=true" : "",
+                cacheHit ? " cacheHit=true" : "", chartStats.length() > 0 ? " " + chartStats : ""));
         if (evalb != null) {
             result.append(String.format(" f1=%.2f prec=%.2f recall=%.2f matched=%d goldBrackets=%d parseBrackets=%d",
                     evalb.f1() * 100, evalb.precision() * 100, evalb.recall() * 100, evalb.matchedBrackets,
@@ -253,9 +305,10 @@ public class ParseTask {
             result.append(String
                     .format(" pops=%d pushes=%d considered=%d nLex=%d nLexUnary=%d nUnary=%d nBinary=%d chartInit=%d fomInit=%d cellSelectorInit=%d insideBinary=%d unaryAndPruning=%d outsideBinary=%d outsideUnary=%d extract=%d",
                             totalPopulatedEdges, totalPushes, nBinaryConsidered + nUnaryConsidered, nLex,
-                            nLexUnaryConsidered, nUnaryConsidered, nBinaryConsidered, chartInitMs, fomInitMs, ccInitMs,
-                            insideBinaryNs / 1000000, unaryAndPruningNs / 1000000, outsideBinaryNs / 1000000,
-                            outsideUnaryNs / 10000000, extractTimeMs));
+                            nLexUnaryConsidered, nUnaryConsidered, nBinaryConsidered, chartInitNs / 1000000,
+                            fomInitNs / 1000000, ccInitNs / 1000000, insideBinaryNs / 1000000,
+                            unaryAndPruningNs / 1000000, outsideBinaryNs / 1000000, outsideUnaryNs / 10000000,
+                            extractNs / 1000000));
         }
 
         return result.toString();
@@ -318,6 +371,31 @@ public class ParseTask {
         return parseBracketString(binaryTree, false, false, null);
     }
 
+    /**
+     * Returns a CoNLL-format representation of the dependencies extracted from the parse chart (see
+     * {@link #dependencyHeads}). POS tags and dependency labels are reported as unsplit categories. If the parse
+     * failed, heads and labels are left unspecified ('_').
+     * 
+     * @return A CoNLL-format representation of the dependency parse
+     */
+    public String conllString() {
+        final String[] words = Strings.splitOnSpace(sentence);
+        final StringBuilder sb = new StringBuilder(words.length * 32);
+
+        for (int i = 0; i < words.length; i++) {
+            if (dependencyHeads == null) {
+                sb.append(String.format("%d\t%s\t_\t_\t_\t_\t_\t_\t_\t_\n", i + 1, words[i]));
+            } else {
+                final String pos = grammar.grammarFormat.getBaseNT(grammar.nonTermSet.getSymbol(preterminals[i]),
+                        false);
+                sb.append(String.format("%d\t%s\t_\t%s\t%s\t_\t%d\t%s\t_\t_\n", i + 1, words[i], pos, pos,
+                        dependencyHeads[i] + 1,
+                        grammar.grammarFormat.getBaseNT(grammar.nonTermSet.getSymbol(dependencyLabels[i]), false)));
+            }
+        }
+        return sb.toString();
+    }
+
     public NaryTree<String> naryParseWithHeadLabels(final HeadPercolationRuleset headRules) {
         final NaryTree<String> tree = naryParse();
 
@@ -341,6 +419,28 @@ public class ParseTask {
         startTime = System.currentTimeMillis();
     }
 
+    /**
+     * Sets a deadline relative to the current time
+     * 
+     * @param deadlineMs Time limit in milliseconds (0 for no limit; a negative limit has already expired)
+     */
+    public void setDeadline(final long deadlineMs) {
+        deadlineNanos = deadlineMs != 0 ? System.nanoTime() + deadlineMs * 1000000 : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return True if the deadline has passed (and records the timeout in {@link #timedOut})
+     */
+    public boolean deadlineExpired() {
+        if (timedOut) {
+            return true;
+        }
+        if (deadlineNanos != Long.MAX_VALUE && System.nanoTime() - deadlineNanos > 0) {
+            timedOut = true;
+        }
+        return timedOut;
+    }
+
     public void stopTime() {
         parseTimeMs = System.currentTimeMillis() - startTime;
     }
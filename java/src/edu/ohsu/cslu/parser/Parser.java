@@ -29,6 +29,7 @@ import cltool4j.args4j.EnumAliasMap;
 import edu.ohsu.cslu.datastructs.narytree.BinaryTree;
 import edu.ohsu.cslu.grammar.Grammar;
 import edu.ohsu.cslu.lela.ConstrainedCellSelector;
+import edu.ohsu.cslu.parser.ParseCache.CachedParse;
 import edu.ohsu.cslu.parser.agenda.APDecodeFOM;
 import edu.ohsu.cslu.parser.agenda.APGhostEdges;
 import edu.ohsu.cslu.parser.agenda.APWithMemory;
@@ -58,9 +59,13 @@ import edu.ohsu.cslu.parser.ml.CartesianProductBinarySearchSpmlParser;
 import edu.ohsu.cslu.parser.ml.CartesianProductHashSpmlParser;
 import edu.ohsu.cslu.parser.ml.CartesianProductLeftChildHashSpmlParser;
 import edu.ohsu.cslu.parser.ml.ConstrainedCphSpmlParser;
+import edu.ohsu.cslu.parser.ml.CoarseToFineCphSpmlParser;
 import edu.ohsu.cslu.parser.ml.GrammarLoopSpmlParser;
 import edu.ohsu.cslu.parser.ml.InsideOutsideCphSpmlParser;
+import edu.ohsu.cslu.parser.ml.InterleavedCphSpmlParser;
 import edu.ohsu.cslu.parser.ml.LeftChildLoopSpmlParser;
+import edu.ohsu.cslu.parser.ml.QuantizedCphSpmlParser;
+import edu.ohsu.cslu.parser.ml.QuantizedGrammarCphSpmlParser;
 import edu.ohsu.cslu.parser.ml.RightChildLoopSpmlParser;
 import edu.ohsu.cslu.parser.ml.ViterbiInOutCphSpmlParser;
 import edu.ohsu.cslu.parser.real.RealInsideOutsideCphParser;
@@ -68,6 +73,7 @@ import edu.ohsu.cslu.parser.spmv.CscSpmvParser;
 import edu.ohsu.cslu.parser.spmv.CsrSpmvParser;
 import edu.ohsu.cslu.parser.spmv.GrammarParallelCscSpmvParser;
 import edu.ohsu.cslu.parser.spmv.GrammarParallelCsrSpmvParser;
+import edu.ohsu.cslu.parser.spmv.InterleavedCscSpmvParser;
 
 /**
  * Implements common data structures and operations shared by all parser implementations. Child classes implement
@@ -118,11 +124,15 @@ public abstract class Parser<G extends Grammar> {
     public final CellSelector cellSelector;
 
     /**
-     * True if we're collecting detailed counts of cell populations, cartesian-product sizes, etc. Set from the
-     * command-line (using the '-v' option of {@link BaseCommandlineTool}, but it is duplicated here as a final
-     * variable, so that the JIT can eliminate potentially-expensive counting code when we don't need it.
+     * True if we're collecting detailed counts of cell populations, cartesian-product sizes, etc. for the current
+     * sentence. Set from the command-line (using the '-v' option of {@link BaseCommandlineTool}), or for a sample of
+     * sentences when collecting {@link ParserDriver#metrics}. Only updated between sentences, so the branches it guards
+     * are very predictable when detailed statistics are disabled.
      */
-    protected final boolean collectDetailedStatistics;
+    protected boolean collectDetailedStatistics;
+
+    /** True if detailed statistics are required for logging (independent of metric sampling) */
+    private final boolean logDetailedStatistics;
 
     public Parser(final ParserDriver opts, final G grammar) {
         this.grammar = grammar;
@@ -130,7 +140,8 @@ public abstract class Parser<G extends Grammar> {
         this.figureOfMerit = opts.fomModel != null ? opts.fomModel.createFOM() : null;
         this.cellSelector = opts.cellSelectorModel.createCellSelector();
 
-        this.collectDetailedStatistics = BaseLogger.singleton().isLoggable(Level.FINER);
+        this.logDetailedStatistics = BaseLogger.singleton().isLoggable(Level.FINER);
+        this.collectDetailedStatistics = logDetailedStatistics;
     }
 
     public abstract float getInside(int start, int end, int nt);
@@ -168,23 +179,43 @@ public abstract class Parser<G extends Grammar> {
      * @param recoveryStrategy Recovery strategy in case of parse failure
      * @return Parse output and state
      */
-    public ParseTask parseSentence(String input, final RecoveryStrategy recoveryStrategy) {
+    public ParseTask parseSentence(final String input, final RecoveryStrategy recoveryStrategy) {
+        return parseSentence(input, recoveryStrategy, opts.deadlineMs);
+    }
+
+    /**
+     * Wraps parse tree from findBestParse() with additional stats and cleans up output for consumption. Input can be a
+     * sentence string or a parse tree. The input format is set to {@link InputFormat#Tree} if the input string starts
+     * with '((', '(TOP', or '(ROOT'.
+     * 
+     * If parsing exceeds the specified time limit, the parser stops at the next chart cell and returns the best
+     * available result (a complete parse if one has been found, or a recovery parse, if a recovery strategy is
+     * specified). The timeout is recorded in {@link ParseTask#timedOut}.
+     * 
+     * @param input
+     * @param recoveryStrategy Recovery strategy in case of parse failure
+     * @param deadlineMs Time limit in milliseconds (0 for no limit; a negative limit has already expired)
+     * @return Parse output and state
+     */
+    public ParseTask parseSentence(final String input, final RecoveryStrategy recoveryStrategy, final long deadlineMs) {
 
-        input = input.trim();
-        if (input.length() == 0) {
+        final String trimmedInput = input.trim();
+        if (trimmedInput.length() == 0) {
             BaseLogger.singleton().info("WARNING: blank line in input.");
             return null;
         }
 
         synchronized (opts.inputFormat) {
-            if (opts.inputFormat != InputFormat.Tree && input.charAt(0) == '('
-                    && (input.startsWith("((") || input.startsWith("(TOP") || input.startsWith("(ROOT"))) {
+            if (opts.inputFormat != InputFormat.Tree && trimmedInput.charAt(0) == '('
+                    && (trimmedInput.startsWith("((") || trimmedInput.startsWith("(TOP")
+                            || trimmedInput.startsWith("(ROOT"))) {
                 BaseLogger.singleton().fine(
                         "INFO: Auto-detecting inputFormat as Tree (originally " + opts.inputFormat + ")");
                 opts.inputFormat = InputFormat.Tree;
             }
         }
 
+        // ParseTask trims the input itself; we pass the original line, so token offsets are relative to the input line
         final ParseTask task = new ParseTask(input, opts.inputFormat, grammar, figureOfMerit, recoveryStrategy,
                 opts.decodeMethod);
 
@@ -193,13 +224,40 @@ public abstract class Parser<G extends Grammar> {
                     "INFO: Skipping sentence. Length of " + task.sentenceLength() + " is greater than maxLength ("
                             + opts.maxLength + ")");
         } else {
+            final ParserMetrics metrics = opts.metrics;
+            final boolean sampled = metrics != null && metrics.sample();
+            collectDetailedStatistics = logDetailedStatistics || sampled;
+            final long t0 = metrics != null ? System.nanoTime() : 0;
+
             task.startTime();
+            task.setDeadline(deadlineMs);
+
+            final ParseCache cache = opts.parseCache();
+            final CachedParse cachedParse = cache != null ? cache.get(opts.configurationFingerprint(), task.tokens)
+                    : null;
+
+            if (cachedParse != null) {
+                task.binaryParse = cachedParse.binaryParse();
+                task.stopTime();
+                task.insideProbability = cachedParse.insideProbability;
+                task.cacheHit = true;
+
+            } else {
+                task.binaryParse = findBestParse(task);
 
-            task.binaryParse = findBestParse(task);
+                task.stopTime();
+                task.insideProbability = getInside(0, task.sentenceLength(), grammar.startSymbol);
+                task.chartStats = getStats();
 
-            task.stopTime();
-            task.insideProbability = getInside(0, task.sentenceLength(), grammar.startSymbol);
-            task.chartStats = getStats();
+                // Cache complete parses. Timeouts depend on system load, so we don't want to retain those results.
+                if (cache != null && task.binaryParse != null && !task.timedOut) {
+                    cache.put(opts.configurationFingerprint(), task.tokens, task.binaryParse, task.insideProbability);
+                }
+            }
+
+            if (metrics != null) {
+                metrics.record(task, System.nanoTime() - t0, sampled);
+            }
         }
 
         return task;
@@ -266,6 +324,7 @@ public abstract class Parser<G extends Grammar> {
         GrammarParallelCsrSpmv(GrammarParallelCsrSpmvParser.class.getName(), "gpcsr"),
         CscSpmv(CscSpmvParser.class.getName(), "csc"),
         GrammarParallelCscSpmv(GrammarParallelCscSpmvParser.class.getName(), "gpcsc"),
+        InterleavedCscSpmv(InterleavedCscSpmvParser.class.getName(), "icsc"),
         LeftChildMl(LeftChildLoopSpmlParser.class.getName(), "lcml"),
         RightChildMl(RightChildLoopSpmlParser.class.getName(), "rcml"),
         GrammarLoopMl(GrammarLoopSpmlParser.class.getName(), "glml"),
@@ -273,10 +332,14 @@ public abstract class Parser<G extends Grammar> {
         CartesianProductBinarySearchLeftChildMl(CartesianProductBinarySearchLeftChildSpmlParser.class.getName(),
                 "cplbs"),
         CartesianProductHashMl(CartesianProductHashSpmlParser.class.getName(), "cph"),
+        QuantizedCartesianProductHashMl(QuantizedCphSpmlParser.class.getName(), "qcph"),
+        QuantizedGrammarCartesianProductHashMl(QuantizedGrammarCphSpmlParser.class.getName(), "qgcph"),
+        InterleavedCartesianProductHashMl(InterleavedCphSpmlParser.class.getName(), "icph"),
         CartesianProductLeftChildHashMl(CartesianProductLeftChildHashSpmlParser.class.getName(), "cplch"),
         InsideOutsideCartesianProductHash(InsideOutsideCphSpmlParser.class.getName(), "iocph"),
         RealInsideOutsideCartesianProductHash(RealInsideOutsideCphParser.class.getName(), "realio"),
         ViterbiInOutCph(ViterbiInOutCphSpmlParser.class.getName(), "vitio"),
+        CoarseToFineCph(CoarseToFineCphSpmlParser.class.getName(), "c2f"),
         ConstrainedCartesianProductHashMl(ConstrainedCphSpmlParser.class.getName(), ConstrainedCellSelector.MODEL,
                 "const");
 
@@ -322,6 +385,17 @@ public abstract class Parser<G extends Grammar> {
         }
     }
 
+    static public enum OutputFormat {
+        /** Bracketed constituent trees */
+        Tree,
+        /** CoNLL-format dependencies, extracted from the parse chart using head-percolation rules */
+        Conll,
+        /** Compact binary tree encoding (see {@link edu.ohsu.cslu.datastructs.narytree.EncodedTreeWriter}) */
+        Binary,
+        /** JSON lines, including token offsets and constituent scores (see {@link JsonOutputWriter}) */
+        Json;
+    }
+
     /**
      * Methods of decoding a populated chart.
      */
@@ -390,7 +464,14 @@ public abstract class Parser<G extends Grammar> {
 
         /** Remove beam width prediction and cell closure, double beam 5X, and finally parse exhaustively */
         Escalate(null, Stage.NORMAL, Stage.FIXED_BEAM, Stage.DOUBLE, Stage.DOUBLE, Stage.DOUBLE, Stage.DOUBLE,
-                Stage.DOUBLE, Stage.EXHAUSTIVE);
+                Stage.DOUBLE, Stage.EXHAUSTIVE),
+
+        /**
+         * Reparse only the failed region of the chart, doubling the beam twice, and then escalate as in
+         * {@link #Escalate}
+         */
+        LocalEscalate("local", Stage.NORMAL, Stage.LOCAL, Stage.LOCAL, Stage.FIXED_BEAM, Stage.DOUBLE, Stage.DOUBLE,
+                Stage.DOUBLE, Stage.DOUBLE, Stage.DOUBLE, Stage.EXHAUSTIVE);
 
         private Stage[] stages;
 
@@ -413,6 +494,13 @@ public abstract class Parser<G extends Grammar> {
             /** Double the previous beam width and add a constant to maxLocalDelta */
             DOUBLE,
 
+            /**
+             * Double the previous beam width (as in {@link #DOUBLE}), but reparse only the region of the chart which
+             * failed to produce complete constituents, retaining other cells from the previous pass. Parsers which do
+             * not support localized reparsing reparse the entire chart.
+             */
+            LOCAL,
+
             /** Exhaustive parsing */
             EXHAUSTIVE;
         }
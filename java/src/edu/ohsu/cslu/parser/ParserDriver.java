@@ -23,14 +23,33 @@ package edu.ohsu.cslu.parser;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.Reader;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.math.BigInteger;
 import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
 import java.util.logging.Level;
 
@@ -41,7 +60,10 @@ import cltool4j.ThreadLocalLinewiseClTool;
 import cltool4j.Threadable;
 import cltool4j.args4j.Option;
 import edu.ohsu.cslu.datastructs.narytree.CharniakHeadPercolationRuleset;
+import edu.ohsu.cslu.datastructs.narytree.EncodedTree;
+import edu.ohsu.cslu.datastructs.narytree.EncodedTreeWriter;
 import edu.ohsu.cslu.datastructs.narytree.HeadPercolationRuleset;
+import edu.ohsu.cslu.datastructs.narytree.HeadTable;
 import edu.ohsu.cslu.grammar.ChildMatrixGrammar;
 import edu.ohsu.cslu.grammar.ClusterTaggerTokenClassifier;
 import edu.ohsu.cslu.grammar.CoarseGrammar;
@@ -61,12 +83,15 @@ import edu.ohsu.cslu.grammar.SparseMatrixGrammar.Int2IntHashPackingFunction;
 import edu.ohsu.cslu.grammar.SparseMatrixGrammar.LeftShiftFunction;
 import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PerfectIntPairHashPackingFunction;
 import edu.ohsu.cslu.grammar.TokenClassifier;
+import edu.ohsu.cslu.grammar.Vocabulary;
 import edu.ohsu.cslu.parser.Parser.DecodeMethod;
 import edu.ohsu.cslu.parser.Parser.InputFormat;
+import edu.ohsu.cslu.parser.Parser.OutputFormat;
 import edu.ohsu.cslu.parser.Parser.ParserType;
 import edu.ohsu.cslu.parser.Parser.ReparseStrategy;
 import edu.ohsu.cslu.parser.Parser.ResearchParserType;
 import edu.ohsu.cslu.parser.cellselector.AdaptiveBeamModel;
+import edu.ohsu.cslu.parser.cellselector.CellSelector;
 import edu.ohsu.cslu.parser.cellselector.CellSelectorModel;
 import edu.ohsu.cslu.parser.cellselector.CompleteClosureModel;
 import edu.ohsu.cslu.parser.cellselector.LeftRightBottomTopTraversal;
@@ -74,18 +99,24 @@ import edu.ohsu.cslu.parser.cellselector.LimitedSpanTraversalModel;
 import edu.ohsu.cslu.parser.cellselector.OHSUCellConstraintsModel;
 import edu.ohsu.cslu.parser.cellselector.PerceptronBeamWidthModel;
 import edu.ohsu.cslu.parser.chart.Chart.RecoveryStrategy;
+import edu.ohsu.cslu.parser.chart.PackedArrayChart;
+import edu.ohsu.cslu.parser.chart.PackedForest;
+import edu.ohsu.cslu.parser.chart.PackedForestWriter;
 import edu.ohsu.cslu.parser.fom.BoundaryLex;
 import edu.ohsu.cslu.parser.fom.BoundaryPosModel;
 import edu.ohsu.cslu.parser.fom.FigureOfMeritModel;
 import edu.ohsu.cslu.parser.fom.FigureOfMeritModel.FOMType;
 import edu.ohsu.cslu.parser.fom.InsideProb;
 import edu.ohsu.cslu.parser.real.RealInsideOutsideCscSparseMatrixGrammar;
+import edu.ohsu.cslu.parser.spmv.CscSpmvParser;
+import edu.ohsu.cslu.parser.spmv.GrammarParallelCscSpmvParser;
 import edu.ohsu.cslu.parser.spmv.SparseMatrixVectorParser;
 import edu.ohsu.cslu.parser.spmv.SparseMatrixVectorParser.PackingFunctionType;
 import edu.ohsu.cslu.perceptron.AdaptiveBeamClassifier;
 import edu.ohsu.cslu.perceptron.CompleteClosureClassifier;
 import edu.ohsu.cslu.util.Evalb.BracketEvaluator;
 import edu.ohsu.cslu.util.Evalb.EvalbResult;
+import edu.ohsu.cslu.util.Strings;
 
 /**
  * BUBS Parser
@@ -148,6 +179,11 @@ import edu.ohsu.cslu.util.Evalb.EvalbResult;
  * simultaneously), and we have shown that cell-level and grammar-level threading can provide additive benefits, but we
  * make no claims about the efficiency impact of combining sentence-level threading with other parallelization methods.
  * 
+ * Cell-level tasks from all sentence threads share a single work-stealing pool (see {@link ParseScheduler}). To bound
+ * the total thread count when combining levels, specify a budget with 'threadBudget' (e.g., '-xt 4 -O cellThreads=4
+ * -O threadBudget=8'); cell-level and grammar-level threads are reduced to fit within each sentence thread's share of
+ * the budget, and sentences shorter than 'minParallelSentenceLength' are parsed entirely on their own thread.
+ * 
  * 
  * == Research Parser Implementations ==
  * 
@@ -224,6 +260,84 @@ public class ParserDriver extends ThreadLocalLinewiseClTool<Parser<?>, ParseTask
     @Option(name = "-maxLength", metaVar = "length", usage = "Skip sentences longer than length")
     int maxLength = 250;
 
+    /**
+     * Sentence-level threads normally parse sentences in input order, so a single long sentence can delay output (and
+     * leave other threads idle) while shorter sentences queued behind it wait. With a read-ahead window, we dispatch
+     * the longest sentences of each window first and buffer results to restore input order. This improves throughput
+     * for batch jobs with heavy-tailed length distributions, at the cost of output latency (and buffer memory)
+     * proportional to the window size. Only useful with multiple sentence-level threads ('-xt').
+     */
+    @Option(name = "-lengthWindow", metaVar = "sentences", usage = "Read ahead n sentences, and parse the longest first (output order is unchanged)")
+    int lengthSortWindow = 0;
+
+    /**
+     * Per-sentence time limit. The deadline is checked between chart cells (and between reparse stages), so a parse
+     * may overrun it by the time required to populate a single cell. On expiry, the parser returns a complete parse if
+     * one has already been found, or the '-recovery' parse if not. Intended for serving with hard latency targets, and
+     * for batch runs with occasional pathological inputs.
+     */
+    @Option(name = "-deadline", metaVar = "ms", usage = "Per-sentence time limit in milliseconds; returns the best available parse on expiry")
+    public long deadlineMs = 0;
+
+    /**
+     * Caches parse results for repeated sentences (see {@link ParseCache}). Only applies to text and token input, and
+     * to bracketed tree output (CoNLL and binary output are extracted directly from the chart).
+     */
+    @Option(name = "-cacheSize", metaVar = "MB", usage = "Cache parses of repeated sentences, up to the specified size")
+    private int parseCacheMb = 0;
+
+    /**
+     * Parse result cache. Created in {@link #setup()} if '-cacheSize' is specified. Applications embedding BUBS may
+     * assign a cache directly (and may share a single cache between multiple {@link ParserDriver} instances).
+     */
+    public ParseCache parseCache = null;
+
+    /**
+     * Caches chart cells across sentences, so near-duplicate sentences reuse the cells covering their shared token
+     * sequences (see {@link CellCache}). Only applies to exhaustive search with packed-array charts.
+     */
+    @Option(name = "-cellCacheSize", metaVar = "MB", usage = "Cache chart cells for reuse by sentences sharing token sequences, up to the specified size (exhaustive search only)")
+    private int cellCacheMb = 0;
+
+    /** Chart cell cache. Created in {@link #setup()} if '-cellCacheSize' is specified, or assigned directly. */
+    public CellCache cellCache = null;
+
+    /**
+     * Collects runtime metrics (see {@link ParserMetrics}), exposed via JMX and written periodically as 'key=value'
+     * summaries. Per-phase timings are collected for 1 in '-metricsSample' sentences.
+     */
+    @Option(name = "-metrics", usage = "Collect runtime metrics (exposed via JMX)")
+    private boolean collectMetrics = false;
+
+    @Option(name = "-metricsSample", metaVar = "n", usage = "Collect per-phase metrics for 1 in n sentences (0 = none)")
+    private int metricsSampleInterval = ParserMetrics.DEFAULT_SAMPLE_INTERVAL;
+
+    @Option(name = "-metricsInterval", metaVar = "seconds", usage = "Write a metrics summary every n seconds (0 = only at completion)")
+    private int metricsInterval = 0;
+
+    @Option(name = "-metricsFile", metaVar = "file", usage = "Append metrics summaries to the specified file (by default, summaries are logged)")
+    private File metricsFile = null;
+
+    /** Runtime metrics. Created in {@link #setup()} if '-metrics' is specified, or assigned directly. */
+    public ParserMetrics metrics = null;
+
+    /**
+     * Identifies the grammar and pruning models for {@link #configurationFingerprint()}, along with the model instances
+     * it describes (see {@link #setModelVersion(String)}).
+     */
+    private String modelVersion = null;
+    private Object[] versionedModels = null;
+
+    /** The most recent configuration fingerprint, used to detect configuration changes */
+    private volatile long configurationFingerprint = 0;
+
+    /**
+     * Serial numbers identifying model instances which have no explicit version. Unlike identity hash codes, serial
+     * numbers are unique, and are never reused after a model is garbage-collected.
+     */
+    private final static Map<Object, Long> modelSerialNumbers = new WeakHashMap<Object, Long>();
+    private static long nextModelSerialNumber = 1;
+
     // == Output options ==
     @Option(name = "-printUNK", optionalChoiceGroup = "UNK", usage = "Print unknown words as their UNK replacement class")
     boolean printUnkLabels = false;
@@ -238,6 +352,42 @@ public class ParserDriver extends ThreadLocalLinewiseClTool<Parser<?>, ParseTask
     @Option(name = "-binary", optionalChoiceGroup = "binary", usage = "Leave parse tree output in binary-branching form")
     public boolean binaryTreeOutput = false;
 
+    /**
+     * Dependency output is extracted directly from the Viterbi backpointers in the chart (using the head-percolation
+     * rules specified with '-head-rules', or Charniak's rules by default), so it requires Viterbi decoding and a
+     * parser implementation based on a packed-array chart (e.g., the default matrix-loop parser).
+     * 
+     * JSON output (see {@link JsonOutputWriter}) includes token offsets in the original input, the tree as an array of
+     * nodes with spans and constituent scores, and parse status and timing.
+     */
+    @Option(name = "-of", metaVar = "format type", usage = "Output format type. 'conll' outputs dependencies, using head-percolation rules; 'json' outputs JSON lines.")
+    public OutputFormat outputFormat = OutputFormat.Tree;
+
+    /**
+     * Binary output (see {@link EncodedTreeWriter}) is written directly from chart backpointers, and is intended for
+     * pipelines exchanging large numbers of trees. Like CoNLL output, it requires Viterbi decoding and a packed-array
+     * chart.
+     */
+    @Option(name = "-encodeScores", usage = "Include constituent inside probabilities in binary output")
+    public boolean encodeScores = false;
+
+    /**
+     * Forest output (see {@link PackedForestWriter}) is written directly from the populated chart, so it requires a
+     * parser implementation based on a packed-array chart. Parse failures are written as empty forests.
+     */
+    @Option(name = "-forest", metaVar = "file", usage = "Write the populated chart of each sentence to the specified file")
+    private File forestFile = null;
+
+    /**
+     * Hyperedge posteriors are computed from outside probabilities, so hyperedges are only written when using an
+     * inside-outside parser (e.g. '-rp iocph').
+     */
+    @Option(name = "-forestEdges", metaVar = "threshold", usage = "Include hyperedges with log posterior probability above the threshold in forest output")
+    public float forestEdgeThreshold = Float.POSITIVE_INFINITY;
+
+    /** Extract forests from the chart. Set in {@link #setup()} if '-forest' is specified, or assigned directly. */
+    public boolean forestOutput = false;
+
     // == Processing options ==
     /**
      * Most alternate decoding methods depend on inside-outside inference. See the '-p IO' option.
@@ -322,6 +472,16 @@ public class ParserDriver extends ThreadLocalLinewiseClTool<Parser<?>, ParseTask
     private String headRules = null;
     private HeadPercolationRuleset headPercolationRuleset = null;
 
+    /** Head-percolation rules compiled against the grammar's non-terminal vocabulary. Used for dependency output. */
+    public HeadTable headTable = null;
+
+    /** Used for binary output */
+    private EncodedTreeWriter encodedTreeWriter;
+    private JsonOutputWriter jsonWriter;
+
+    /** Used for forest output */
+    private PackedForestWriter forestWriter;
+
     @Option(name = "-debug", hidden = true, usage = "Exit on error with trace (by default, a parse error outputs '()' and continues)")
     public boolean debug = false;
 
@@ -342,13 +502,18 @@ public class ParserDriver extends ThreadLocalLinewiseClTool<Parser<?>, ParseTask
     public final static String OPT_GRAMMAR_THREAD_COUNT = "grammarThreads";
 
     /**
-     * The number of row-level or cell-level threads actually used. In some cases the number of threads requested is
-     * impractical (e.g., if it is greater than the maximum number of cells in a row or greater than the number of
-     * grammar rows). {@link Parser} instances which make use of {@link #OPT_GRAMMAR_THREAD_COUNT} should populate this
-     * property to indicate the number of threads actually used. Among other potential uses, this allows
-     * {@link #cleanup()} to report accurate timing information.
+     * Total number of threads to use across sentence-level, cell-level, and grammar-level parallelism. If specified,
+     * cell-level and grammar-level thread counts are reduced as needed to fit within each sentence thread's share of the
+     * budget (see {@link ParseScheduler}). By default, no budget is applied. Integer property.
      */
-    public final static String RUNTIME_CONFIGURED_THREAD_COUNT = "actualThreads";
+    public final static String OPT_THREAD_BUDGET = "threadBudget";
+
+    /**
+     * Minimum sentence length for which cell-level parallelism is used. Shorter sentences are parsed entirely on their
+     * own sentence-level thread. Defaults to {@link ParseScheduler#DEFAULT_MIN_PARALLEL_SENTENCE_LENGTH} when
+     * {@link #OPT_THREAD_BUDGET} is specified, and 0 otherwise. Integer property.
+     */
+    public final static String OPT_MIN_PARALLEL_SENTENCE_LENGTH = "minParallelSentenceLength";
 
     /**
      * Specifies the comparator class used to order non-terminals. Implementations are in {@link SparseMatrixGrammar}.
@@ -401,6 +566,21 @@ public class ParserDriver extends ThreadLocalLinewiseClTool<Parser<?>, ParseTask
     /** Disables unary-constraint classification in {@link AdaptiveBeamModel}. Boolean property. */
     public final static String OPT_DISABLE_UNARY_CLASSIFIER = "disableUnaryClassifier";
 
+    /**
+     * Disables dynamic cell closure in {@link CellSelector} (skipping cells which cannot be populated because all
+     * possible child cells are empty). Boolean property.
+     */
+    public final static String OPT_DISABLE_DYNAMIC_CELL_CLOSURE = "disableDynamicCellClosure";
+
+    /**
+     * Maximum number of parent non-terminals per block when performing cache-blocked binary SpMV in
+     * {@link CscSpmvParser} and {@link GrammarParallelCscSpmvParser}. Blocks should be small enough that the portion of
+     * the target cell indexed by their parents (10 bytes per parent) stays resident in L1 or L2 cache. 0 (the default)
+     * disables blocking in {@link CscSpmvParser}; {@link GrammarParallelCscSpmvParser} always partitions the grammar
+     * by parent, and uses this limit to subdivide each thread's partition. Integer property.
+     */
+    public final static String OPT_SPMV_PARENT_BLOCK_SIZE = "spmvParentBlockSize";
+
     /**
      * Maximize rule scores only over a local cell (rather than globally over the entire tree). Ignored unless using
      * '-decode MaxRuleProd'
@@ -412,13 +592,14 @@ public class ParserDriver extends ThreadLocalLinewiseClTool<Parser<?>, ParseTask
     //
     private long parseStartTime;
     private volatile int sentencesParsed = 0, wordsParsed = 0, failedParses = 0, reparsedSentences = 0,
-            totalReparses = 0;
+            totalReparses = 0, timedOutParses = 0;
 
     //
     // ParserDriver state
     //
     private Grammar grammar;
     private LinkedList<Parser<?>> parserInstances = new LinkedList<Parser<?>>();
+    private ParseScheduler scheduler;
     private final BracketEvaluator evaluator = new BracketEvaluator();
 
     public static void main(final String[] args) {
@@ -438,6 +619,16 @@ public class ParserDriver extends ThreadLocalLinewiseClTool<Parser<?>, ParseTask
                 "INFO: parser=" + researchParserType + " fom=" + fomTypeOrModel + " decode=" + decodeMethod);
         BaseLogger.singleton().info("INFO: " + commandLineArguments());
 
+        if (outputFormat == OutputFormat.Conll || outputFormat == OutputFormat.Binary) {
+            if (decodeMethod != DecodeMethod.ViterbiMax) {
+                throw new IllegalArgumentException(outputFormat + " output requires Viterbi decoding");
+            }
+            requirePackedArrayChart(outputFormat + " output");
+        }
+        if (outputFormat == OutputFormat.Conll && headRules == null) {
+            headRules = "charniak";
+        }
+
         if (headRules != null) {
             if (headRules.equalsIgnoreCase("charniak")) {
                 headPercolationRuleset = new CharniakHeadPercolationRuleset();
@@ -524,12 +715,95 @@ public class ParserDriver extends ThreadLocalLinewiseClTool<Parser<?>, ParseTask
                 }
             }
         }
+        setModelVersion(modelFileDigest());
+
+        if (outputFormat == OutputFormat.Conll) {
+            headTable = headPercolationRuleset.headTable(grammar.nonTermSet);
+        } else if (outputFormat == OutputFormat.Binary) {
+            final Vocabulary baseVocabulary = grammar.nonTermSet.baseVocabulary();
+            final String[] labels = new String[baseVocabulary.size()];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = baseVocabulary.getSymbol(i);
+            }
+            encodedTreeWriter = new EncodedTreeWriter(System.out, labels, encodeScores);
+        } else if (outputFormat == OutputFormat.Json) {
+            jsonWriter = new JsonOutputWriter(System.out);
+        }
+
+        if (forestFile != null) {
+            requirePackedArrayChart("Forest output");
+            final String[] labels = new String[grammar.nonTermSet.size()];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = grammar.nonTermSet.getSymbol(i);
+            }
+            forestWriter = new PackedForestWriter(new FileOutputStream(forestFile), labels);
+            forestOutput = true;
+        }
+
+        if (parseCacheMb > 0) {
+            parseCache = new ParseCache(parseCacheMb * 1024L * 1024);
+        }
+        if (cellCacheMb > 0) {
+            cellCache = new CellCache(cellCacheMb * 1024L * 1024);
+        }
+        if (collectMetrics) {
+            metrics = new ParserMetrics(this, metricsSampleInterval);
+            metrics.register();
+            if (metricsInterval > 0) {
+                metrics.startDumps(metricsInterval, metricsFile);
+            }
+        }
 
         BaseLogger.singleton().fine(grammar.getStats());
 
         parseStartTime = System.currentTimeMillis();
     }
 
+    /**
+     * @return A digest of the command-line arguments and the contents of all model files, identifying the models loaded
+     *         by {@link #setup()}. Null if any model was read from a source other than a regular file.
+     */
+    private String modelFileDigest() throws IOException, NoSuchAlgorithmException {
+        final ArrayList<File> files = new ArrayList<File>();
+        for (final String filename : new String[] { grammarFile, coarseGrammarFile, beamModelFileName,
+                chartConstraintsModel }) {
+            if (filename != null) {
+                files.add(new File(filename));
+            }
+        }
+        for (final File file : new File[] { modelFile, completeClosureClassifierFile, adaptiveBeamModelFile,
+                tokenClassifierModel }) {
+            if (file != null) {
+                files.add(file);
+            }
+        }
+        if (pruningModels != null) {
+            files.addAll(Arrays.asList(pruningModels));
+        }
+        // The FOM option may name a model type rather than a file
+        if (new File(fomTypeOrModel).isFile()) {
+            files.add(new File(fomTypeOrModel));
+        }
+
+        final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        digest.update(commandLineArguments().getBytes("UTF-8"));
+        final byte[] buf = new byte[65536];
+        for (final File file : files) {
+            if (!file.isFile()) {
+                return null;
+            }
+            final InputStream is = new FileInputStream(file);
+            try {
+                for (int n = is.read(buf); n >= 0; n = is.read(buf)) {
+                    digest.update(buf, 0, n);
+                }
+            } finally {
+                is.close();
+            }
+        }
+        return new BigInteger(1, digest.digest()).toString(16);
+    }
+
     public static FigureOfMeritModel readFomModel(final String fomModel, final String coarseGrammarFile,
             final Grammar grammar) throws IOException {
 
@@ -644,6 +918,7 @@ public class ParserDriver extends ThreadLocalLinewiseClTool<Parser<?>, ParseTask
 
         case CscSpmv:
         case GrammarParallelCscSpmv:
+        case InterleavedCscSpmv:
             switch (packingFunctionType) {
             case Simple:
                 return new LeftCscSparseMatrixGrammar(grammarFile, tokenClassifier, LeftShiftFunction.class);
@@ -658,6 +933,9 @@ public class ParserDriver extends ThreadLocalLinewiseClTool<Parser<?>, ParseTask
         case CartesianProductBinarySearchMl:
         case CartesianProductBinarySearchLeftChildMl:
         case CartesianProductHashMl:
+        case QuantizedCartesianProductHashMl:
+        case QuantizedGrammarCartesianProductHashMl:
+        case InterleavedCartesianProductHashMl:
         case CartesianProductLeftChildHashMl:
             switch (packingFunctionType) {
             case Simple:
@@ -676,6 +954,7 @@ public class ParserDriver extends ThreadLocalLinewiseClTool<Parser<?>, ParseTask
             return new CsrSparseMatrixGrammar(grammarFile, tokenClassifier, LeftShiftFunction.class);
         case InsideOutsideCartesianProductHash:
         case ViterbiInOutCph:
+        case CoarseToFineCph:
             return new InsideOutsideCscSparseMatrixGrammar(grammarFile, tokenClassifier,
                     PerfectIntPairHashPackingFunction.class);
 
@@ -692,6 +971,64 @@ public class ParserDriver extends ThreadLocalLinewiseClTool<Parser<?>, ParseTask
         }
     }
 
+    /**
+     * Verifies that the selected parser populates a {@link PackedArrayChart}. Some output options are extracted
+     * directly from the packed chart structure, and are not supported by other chart implementations.
+     * 
+     * @param option Description of the output option, for error reporting
+     * @throws IllegalArgumentException if the parser populates any other chart type
+     */
+    private void requirePackedArrayChart(final String option) {
+        Class<?> chartClass = null;
+        try {
+            if (researchParserType.classname() != null) {
+                chartClass = chartClass(Class.forName(researchParserType.classname()));
+            }
+        } catch (final ClassNotFoundException e) {
+            // Leave chartClass null, and report the parser type as unsupported
+        }
+        if (chartClass == null || !PackedArrayChart.class.isAssignableFrom(chartClass)) {
+            throw new IllegalArgumentException(option + " is not supported by parser type " + researchParserType);
+        }
+    }
+
+    /**
+     * Resolves the chart type populated by a parser class, from the type arguments supplied to {@link ChartParser} in
+     * its class hierarchy. Unbound type variables resolve to their declared bound.
+     * 
+     * @param parserClass Parser implementation
+     * @return The chart type populated by the parser, or null if the parser does not extend {@link ChartParser}
+     */
+    static Class<?> chartClass(final Class<?> parserClass) {
+        final Map<TypeVariable<?>, Type> typeArguments = new HashMap<TypeVariable<?>, Type>();
+
+        for (Class<?> c = parserClass; c != null; c = c.getSuperclass()) {
+            if (!(c.getGenericSuperclass() instanceof ParameterizedType)) {
+                continue;
+            }
+            final ParameterizedType superclass = (ParameterizedType) c.getGenericSuperclass();
+            final TypeVariable<?>[] typeParameters = ((Class<?>) superclass.getRawType()).getTypeParameters();
+            final Type[] actualTypeArguments = superclass.getActualTypeArguments();
+
+            for (int i = 0; i < typeParameters.length; i++) {
+                final Type argument = typeArguments.get(actualTypeArguments[i]);
+                typeArguments.put(typeParameters[i], argument != null ? argument : actualTypeArguments[i]);
+            }
+        }
+        return erasure(typeArguments.get(ChartParser.class.getTypeParameters()[1]));
+    }
+
+    private static Class<?> erasure(final Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            return erasure(((ParameterizedType) type).getRawType());
+        } else if (type instanceof TypeVariable) {
+            return erasure(((TypeVariable<?>) type).getBounds()[0]);
+        }
+        return null;
+    }
+
     @Override
     public Parser<?> createLocal() {
         try {
@@ -719,6 +1056,139 @@ public class ParserDriver extends ThreadLocalLinewiseClTool<Parser<?>, ParseTask
         }
     }
 
+    @Override
+    protected void run() throws Exception {
+        if (lengthSortWindow <= 0) {
+            super.run();
+            return;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(maxThreads);
+        try {
+            final BufferedReader br = inputAsBufferedReader();
+            final ArrayList<String> window = new ArrayList<String>(lengthSortWindow);
+            FutureTask<ParseTask>[] pending = null;
+
+            for (String line = br.readLine(); line != null; line = br.readLine()) {
+                window.add(line);
+                if (window.size() == lengthSortWindow) {
+                    // Dispatch the next window before waiting on the previous one, so threads don't idle at window
+                    // boundaries
+                    final FutureTask<ParseTask>[] dispatched = dispatchWindow(window, executor);
+                    outputWindow(pending);
+                    pending = dispatched;
+                    window.clear();
+                }
+            }
+            final FutureTask<ParseTask>[] dispatched = dispatchWindow(window, executor);
+            outputWindow(pending);
+            outputWindow(dispatched);
+
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Submits parse tasks for a window of input lines, longest first.
+     * 
+     * @return Tasks in input order
+     */
+    private FutureTask<ParseTask>[] dispatchWindow(final List<String> window, final ExecutorService executor) {
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        final FutureTask<ParseTask>[] tasks = new FutureTask[window.size()];
+        for (final int i : lengthSortedOrder(window, inputFormat, maxLength)) {
+            tasks[i] = lineTask(window.get(i));
+            executor.execute(tasks[i]);
+        }
+        return tasks;
+    }
+
+    /**
+     * Waits for and outputs the results of a window, in input order.
+     */
+    private void outputWindow(final FutureTask<ParseTask>[] tasks) throws Exception {
+        if (tasks == null) {
+            return;
+        }
+        for (final FutureTask<ParseTask> task : tasks) {
+            try {
+                output(task.get());
+            } catch (final ExecutionException e) {
+                // Only possible in debug mode; otherwise, lineTask() logs exceptions and returns null
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Orders input lines by estimated parse cost (descending). Cost is monotonic in sentence length for all our parsers
+     * (cubic for exhaustive search, roughly quadratic in length times beam width for pruned search), so we simply order
+     * by length. Sentences longer than <code>maxLength</code> will be skipped, so they are dispatched last.
+     * 
+     * @param lines Input lines
+     * @param inputFormat Input format
+     * @param maxLength Maximum sentence length (see {@link #maxLength})
+     * @return Indices into <code>lines</code>, longest sentence first
+     */
+    static int[] lengthSortedOrder(final List<String> lines, final InputFormat inputFormat, final int maxLength) {
+        final int[] lengths = new int[lines.size()];
+        final Integer[] order = new Integer[lines.size()];
+        for (int i = 0; i < lengths.length; i++) {
+            final int length = estimateSentenceLength(lines.get(i), inputFormat);
+            lengths[i] = length > maxLength ? -1 : length;
+            order[i] = i;
+        }
+
+        // Stable sort, so sentences of equal length are dispatched in input order
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer o1, final Integer o2) {
+                return lengths[o2] - lengths[o1];
+            }
+        });
+
+        final int[] sorted = new int[order.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = order[i];
+        }
+        return sorted;
+    }
+
+    /**
+     * Estimates sentence length without tokenizing or parsing the input. Exact for token, tagged, and tree input; text
+     * tokenization may split some whitespace-delimited tokens, which doesn't matter for scheduling purposes.
+     * 
+     * @param line Input line
+     * @param inputFormat Input format
+     * @return Approximate number of words
+     */
+    static int estimateSentenceLength(final String line, final InputFormat inputFormat) {
+        int words = 0;
+        if (inputFormat == InputFormat.Tree || inputFormat == InputFormat.Tagged) {
+            // Count leaves - i.e., close-parens immediately following a token
+            for (int i = 1; i < line.length(); i++) {
+                final char prev = line.charAt(i - 1);
+                if (line.charAt(i) == ')' && prev != ')' && prev != '(' && !Character.isWhitespace(prev)) {
+                    words++;
+                }
+            }
+        } else {
+            boolean inToken = false;
+            for (int i = 0; i < line.length(); i++) {
+                final boolean whitespace = Character.isWhitespace(line.charAt(i));
+                if (!whitespace && !inToken) {
+                    words++;
+                }
+                inToken = !whitespace;
+            }
+        }
+        return words;
+    }
+
     @Override
     protected FutureTask<ParseTask> lineTask(final String input) {
         return new FutureTask<ParseTask>(new Callable<ParseTask>() {
@@ -732,22 +1202,51 @@ public class ParserDriver extends ThreadLocalLinewiseClTool<Parser<?>, ParseTask
                     return getLocal().parseSentence(input, recoveryStrategy);
                 } catch (final Exception e) {
                     BaseLogger.singleton().log(Level.SEVERE, e.toString());
-                    return null;
+                    return outputFormat == OutputFormat.Conll ? failedParseTask(input) : null;
                 }
             }
         });
     }
 
+    /**
+     * Creates an unparsed {@link ParseTask} for an input which failed with an exception, so that CoNLL output still
+     * includes a row for each token (with unspecified heads). Recorded as a failed parse.
+     * 
+     * @param input Input line
+     * @return An unparsed task, or null if the input itself cannot be processed
+     */
+    private ParseTask failedParseTask(final String input) {
+        try {
+            return new ParseTask(input, inputFormat, grammar, decodeMethod);
+        } catch (final Exception e) {
+            return null;
+        }
+    }
+
     @Override
     protected void output(final ParseTask parseTask) {
         // We'll count the sentence even if it failed with an exception (and record it as failed below). However, we
         // don't currently include the words of such sentences in wordsParsed. That's a bit of an inconsistency, but
         // it's OK for now.
         sentencesParsed++;
+        if (forestWriter != null) {
+            outputForest(parseTask);
+        }
+        if (encodedTreeWriter != null) {
+            outputEncoded(parseTask);
+            return;
+        }
+        if (jsonWriter != null) {
+            outputJson(parseTask);
+            return;
+        }
+
         if (parseTask != null) {
             final StringBuilder output = new StringBuilder(512);
 
-            if (addUnkLabels) {
+            if (outputFormat == OutputFormat.Conll) {
+                output.append(parseTask.conllString());
+            } else if (addUnkLabels) {
                 output.append(parseTask.parseBracketString(binaryTreeOutput, true, true, headPercolationRuleset));
             } else {
                 output.append(parseTask.parseBracketString(binaryTreeOutput, printUnkLabels, false,
@@ -767,28 +1266,123 @@ public class ParserDriver extends ThreadLocalLinewiseClTool<Parser<?>, ParseTask
             }
 
             System.out.println(output.toString());
-            wordsParsed += parseTask.sentenceLength();
-            if (parseTask.parseFailed()) {
+            recordStatistics(parseTask);
+
+        } else {
+            failedParses++;
+            System.out.println(outputFormat == OutputFormat.Conll ? "" : "()");
+        }
+    }
+
+    /**
+     * Writes the forest of a parse result to {@link #forestWriter}. Failed parses are written with no entries.
+     */
+    private void outputForest(final ParseTask parseTask) {
+        try {
+            if (parseTask != null && parseTask.forest != null) {
+                forestWriter.write(parseTask.forest);
+            } else {
+                forestWriter.write(new PackedForest(parseTask != null ? Strings.splitOnSpace(parseTask.sentence)
+                        : new String[0]));
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes a parse result to {@link #encodedTreeWriter}. Failed parses are written with no nodes.
+     */
+    private void outputEncoded(final ParseTask parseTask) {
+        try {
+            if (parseTask != null) {
+                encodedTreeWriter.write(parseTask.encodedParse != null ? parseTask.encodedParse : new EncodedTree(
+                        Strings.splitOnSpace(parseTask.sentence)));
+
+                if (BaseLogger.singleton().isLoggable(Level.FINE)) {
+                    BaseLogger.singleton().fine(parseTask.statsString());
+                }
+                recordStatistics(parseTask);
+
+            } else {
                 failedParses++;
-            } else if (parseTask.reparseStages > 0) {
-                reparsedSentences++;
+                encodedTreeWriter.write(new EncodedTree(new String[0]));
             }
-            totalReparses += parseTask.reparseStages;
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-        } else {
+    /**
+     * Writes a parse result to {@link #jsonWriter}. Sentences which failed with an exception are written with status
+     * 'error'.
+     */
+    private void outputJson(final ParseTask parseTask) {
+        try {
+            jsonWriter.write(parseTask);
+            if (parseTask != null) {
+                try {
+                    parseTask.evaluate(evaluator);
+                } catch (final Exception e) {
+                    BaseLogger.singleton().severe("ERROR: Evaluation failed: " + e.toString());
+                }
+                if (BaseLogger.singleton().isLoggable(Level.FINE)) {
+                    BaseLogger.singleton().fine(parseTask.statsString());
+                }
+                recordStatistics(parseTask);
+            } else {
+                failedParses++;
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Accumulates corpus-level statistics for a completed parse
+     */
+    private void recordStatistics(final ParseTask parseTask) {
+        wordsParsed += parseTask.sentenceLength();
+        if (parseTask.parseFailed()) {
             failedParses++;
-            System.out.println("()");
+        } else if (parseTask.reparseStages > 0) {
+            reparsedSentences++;
+        }
+        totalReparses += parseTask.reparseStages;
+        if (parseTask.timedOut) {
+            timedOutParses++;
         }
     }
 
     @Override
     protected void cleanup() {
+        if (encodedTreeWriter != null) {
+            try {
+                encodedTreeWriter.flush();
+            } catch (final IOException e) {
+                BaseLogger.singleton().log(Level.SEVERE, e.toString());
+            }
+        }
+        if (jsonWriter != null) {
+            try {
+                jsonWriter.flush();
+            } catch (final IOException e) {
+                BaseLogger.singleton().log(Level.SEVERE, e.toString());
+            }
+        }
+        if (forestWriter != null) {
+            try {
+                forestWriter.close();
+            } catch (final IOException e) {
+                BaseLogger.singleton().log(Level.SEVERE, e.toString());
+            }
+        }
+
         final float parseTime = (System.currentTimeMillis() - parseStartTime) / 1000f;
 
-        // If the individual parser configured a thread count (e.g. CellParallelCsrSpmvParser), compute
-        // CPU-time using that thread count; otherwise, assume maxThreads is correct
-        final int threads = GlobalConfigProperties.singleton().containsKey(RUNTIME_CONFIGURED_THREAD_COUNT) ? GlobalConfigProperties
-                .singleton().getIntProperty(RUNTIME_CONFIGURED_THREAD_COUNT) : maxThreads;
+        // If the parser instances used the shared scheduler (e.g. CellParallelCsrSpmvParser), compute CPU-time using
+        // the thread count it allocated; otherwise, assume maxThreads is correct
+        final int threads = scheduler != null ? scheduler.threads() : maxThreads;
 
         // Note that this CPU-time computation does not include GC time
         final float cpuTime = parseTime * threads;
@@ -799,6 +1393,19 @@ public class ParserDriver extends ThreadLocalLinewiseClTool<Parser<?>, ParseTask
                         sentencesParsed, failedParses, reparsedSentences, totalReparses, parseTime, cpuTime, parseTime
                                 / sentencesParsed, wordsParsed / parseTime));
 
+        if (deadlineMs > 0) {
+            sb.append(String.format(" timeouts=%d", timedOutParses));
+        }
+
+        if (parseCache != null) {
+            sb.append(' ');
+            sb.append(parseCache.toString());
+        }
+        if (cellCache != null) {
+            sb.append(' ');
+            sb.append(cellCache.toString());
+        }
+
         if (!parserInstances.isEmpty() && parserInstances.getFirst() instanceof SparseMatrixVectorParser) {
             sb.append(String.format(" totalXProductTime=%d totalBinarySpMVTime=%d",
                     SparseMatrixVectorParser.totalCartesianProductTime, SparseMatrixVectorParser.totalBinarySpmvNs));
@@ -812,6 +1419,19 @@ public class ParserDriver extends ThreadLocalLinewiseClTool<Parser<?>, ParseTask
 
         BaseLogger.singleton().info(sb.toString());
 
+        if (metrics != null) {
+            metrics.dump(metricsFile);
+        }
+
+        shutdownParsers();
+    }
+
+    /**
+     * Shuts down all parser instances created by {@link #createLocal()} and the shared thread pool (if any), and closes
+     * {@link #metrics} (stopping periodic dumps and unregistering its MBean). Called from {@link #cleanup()}, and when a
+     * model is retired from a {@link ModelRegistry}.
+     */
+    public void shutdownParsers() {
         // Synchronize again, just to be sure we don't somehow try to add a new instance during cleanup. It should be
         // rare, but the (usually) uncontested sync is cheap.
         synchronized (parserInstances) {
@@ -821,15 +1441,158 @@ public class ParserDriver extends ThreadLocalLinewiseClTool<Parser<?>, ParseTask
                 } catch (final Exception ignore) {
                 }
             }
+            parserInstances.clear();
+        }
+
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdown();
+                scheduler = null;
+            }
+        }
+
+        if (metrics != null) {
+            metrics.close();
+        }
+    }
+
+    /**
+     * Returns the parse result cache, if caching is enabled and applicable to the current input and output formats.
+     * Cached results are stored as trees, so output formats which require the populated chart (CoNLL, binary, JSON,
+     * and forest output) bypass the cache, as do input formats which may constrain the parse by more than the token
+     * sequence.
+     * 
+     * @return The parse result cache, or null if caching is disabled
+     */
+    public ParseCache parseCache() {
+        if (parseCache == null || outputFormat != OutputFormat.Tree || headTable != null || forestOutput
+                || (inputFormat != InputFormat.Text && inputFormat != InputFormat.Token)) {
+            return null;
+        }
+        return parseCache;
+    }
+
+    /**
+     * Returns a fingerprint of the configuration which determines parse output for a given token sequence (parser
+     * implementation, grammar and pruning models, decoding, and configuration properties), used to key
+     * {@link ParseCache} and {@link CellCache} entries. Models are identified by version if one has been set (see
+     * {@link #setModelVersion(String)}), and otherwise by instance, so parsers sharing a cache must share model
+     * instances or versions to share cache entries.
+     * 
+     * The fingerprint is recomputed on each call, so it reflects any change to the models or configuration properties.
+     * When it changes, both caches are cleared, since entries cached under the previous configuration can no longer be
+     * used.
+     * 
+     * @return 64-bit configuration fingerprint
+     */
+    public long configurationFingerprint() {
+        final StringBuilder sb = new StringBuilder(1024);
+        sb.append(researchParserType).append(' ').append(decodeMethod).append(' ').append(reparseStrategy);
+        sb.append(' ').append(modelIdentity());
+
+        // Include all configuration properties (beam widths, etc.), in a consistent order
+        final ConfigProperties props = GlobalConfigProperties.singleton();
+        for (final String key : new TreeSet<String>(props.stringPropertyNames())) {
+            sb.append(' ').append(key).append('=').append(props.getProperty(key));
+        }
+
+        // 64-bit FNV-1a hash
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < sb.length(); i++) {
+            hash ^= sb.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        if (hash == 0) {
+            hash = 1;
+        }
+
+        if (hash != configurationFingerprint) {
+            configurationChanged(hash);
+        }
+        return hash;
+    }
+
+    private synchronized void configurationChanged(final long fingerprint) {
+        if (configurationFingerprint != 0 && configurationFingerprint != fingerprint) {
+            if (parseCache != null) {
+                parseCache.clear();
+            }
+            if (cellCache != null) {
+                cellCache.clear();
+            }
+        }
+        configurationFingerprint = fingerprint;
+    }
+
+    /**
+     * @return The model version, if the current models are those it was assigned to, or serial numbers identifying the
+     *         current model instances.
+     */
+    private synchronized String modelIdentity() {
+        if (modelVersion != null && versionedModels[0] == grammar && versionedModels[1] == fomModel
+                && versionedModels[2] == cellSelectorModel) {
+            return modelVersion;
+        }
+        return modelSerialNumber(grammar) + " " + modelSerialNumber(fomModel) + " "
+                + modelSerialNumber(cellSelectorModel);
+    }
+
+    private static long modelSerialNumber(final Object model) {
+        if (model == null) {
+            return 0;
         }
+        synchronized (modelSerialNumbers) {
+            Long serialNumber = modelSerialNumbers.get(model);
+            if (serialNumber == null) {
+                serialNumber = nextModelSerialNumber++;
+                modelSerialNumbers.put(model, serialNumber);
+            }
+            return serialNumber;
+        }
+    }
+
+    /**
+     * Identifies the current grammar and pruning models by an explicit version (e.g., a release identifier or a digest
+     * of the model files), so parsers using separately-loaded copies of the same models can share {@link ParseCache}
+     * and {@link CellCache} entries. {@link #setup()} sets a digest of the model files. The version applies only to the
+     * model instances current when it is set; if the grammar or either pruning model is later replaced, models are
+     * identified by instance until a new version is set.
+     * 
+     * @param version Model version, or null to identify models by instance
+     */
+    public synchronized void setModelVersion(final String version) {
+        this.modelVersion = version;
+        this.versionedModels = new Object[] { grammar, fomModel, cellSelectorModel };
+    }
+
+    /**
+     * Returns the scheduler which allocates cell-level and grammar-level threads and owns the thread pool shared by
+     * all parser instances. Created on first use, since the sentence-level thread count is not known until
+     * command-line options are parsed.
+     * 
+     * @return The shared {@link ParseScheduler}
+     */
+    public synchronized ParseScheduler scheduler() {
+        if (scheduler == null) {
+            scheduler = new ParseScheduler(maxThreads, GlobalConfigProperties.singleton());
+        }
+        return scheduler;
+    }
+
+    /**
+     * @return The scheduler, if one has been created, or null (unlike {@link #scheduler()}, does not create one)
+     */
+    synchronized ParseScheduler activeScheduler() {
+        return scheduler;
     }
 
     /**
-     * Sets the grammar. Used when embedding BUBS into an independent system (see {@link EmbeddedExample}).
+     * Sets the grammar. Used when embedding BUBS into an independent system (see {@link EmbeddedExample}). Any model
+     * version set previously no longer applies (see {@link #setModelVersion(String)}).
      * 
      * @param g Grammar
      */
-    public void setGrammar(final Grammar g) {
+    public synchronized void setGrammar(final Grammar g) {
         this.grammar = g;
     }
 
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import cltool4j.BaseLogger;
+import edu.ohsu.cslu.parser.Parser.ReparseStrategy.Stage;
+import edu.ohsu.cslu.util.LatencyHistogram;
+
+/**
+ * Aggregates runtime metrics across all parsing threads, at low enough overhead to leave enabled in production.
+ * 
+ * Every sentence is counted, and its total latency recorded in a histogram for its length bucket. Reparse stages are
+ * timed individually. Per-phase timings (chart initialization, FOM initialization, cell-selector initialization, the
+ * binary grammar intersection, unary processing and pruning, outside passes, and tree extraction) require the
+ * instrumentation normally enabled by {@link Parser#collectDetailedStatistics}, so they are collected only for a sample
+ * of sentences (1 in {@link #sampleInterval}).
+ * 
+ * Metrics are exposed via JMX (see {@link ParserMetricsMBean}) and as a single-line summary of 'key=value' pairs
+ * (see {@link #summary()}), which can be written periodically to a file or to the log. All values are cumulative, and
+ * all latencies are in microseconds.
+ * 
+ * @author Aaron Dunlop
+ */
+public class ParserMetrics implements ParserMetricsMBean {
+
+    /** Default sampling interval for detailed statistics */
+    public final static int DEFAULT_SAMPLE_INTERVAL = 10;
+
+    /** Upper bounds of sentence-length buckets */
+    private final static int[] LENGTH_BUCKETS = new int[] { 10, 20, 30, 40, 60, Integer.MAX_VALUE };
+
+    /** Phases timed for sampled sentences */
+    public static enum Phase {
+        ChartInit, FomInit, CellSelectorInit, InsideBinary, UnaryAndPruning, OutsideBinary, OutsideUnary, Extract;
+    }
+
+    private final ParserDriver opts;
+    private final int sampleInterval;
+    private final AtomicLong sampleCounter = new AtomicLong();
+
+    private final AtomicLong sentences = new AtomicLong();
+    private final AtomicLong words = new AtomicLong();
+    private final AtomicLong failedParses = new AtomicLong();
+    private final AtomicLong reparsedSentences = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong sampledSentences = new AtomicLong();
+
+    // Counts from sampled sentences
+    private final AtomicLong populatedEdges = new AtomicLong();
+    private final AtomicLong binaryConsidered = new AtomicLong();
+    private final AtomicLong unaryConsidered = new AtomicLong();
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram[] lengthLatency = new LatencyHistogram[LENGTH_BUCKETS.length];
+    private final LatencyHistogram[] phaseLatency = new LatencyHistogram[Phase.values().length];
+    private final LatencyHistogram[] stageLatency = new LatencyHistogram[Stage.values().length];
+
+    private ObjectName objectName;
+    private Timer timer;
+
+    /**
+     * @param opts Parser configuration (used to report cache and thread-pool statistics)
+     * @param sampleInterval Collect detailed statistics for 1 in n sentences (0 to disable detailed statistics)
+     */
+    public ParserMetrics(final ParserDriver opts, final int sampleInterval) {
+        this.opts = opts;
+        this.sampleInterval = sampleInterval;
+
+        for (int i = 0; i < lengthLatency.length; i++) {
+            lengthLatency[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < phaseLatency.length; i++) {
+            phaseLatency[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < stageLatency.length; i++) {
+            stageLatency[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @return True if detailed statistics should be collected for the next sentence
+     */
+    public boolean sample() {
+        return sampleInterval > 0 && sampleCounter.getAndIncrement() % sampleInterval == 0;
+    }
+
+    /**
+     * Records the results of a parse
+     * 
+     * @param task
+     * @param latencyNs Total parse time, in nanoseconds
+     * @param sampled True if detailed statistics were collected for this sentence
+     */
+    public void record(final ParseTask task, final long latencyNs, final boolean sampled) {
+        sentences.incrementAndGet();
+        words.addAndGet(task.sentenceLength());
+        if (task.parseFailed()) {
+            failedParses.incrementAndGet();
+        } else if (task.reparseStages > 0) {
+            reparsedSentences.incrementAndGet();
+        }
+        if (task.timedOut) {
+            timeouts.incrementAndGet();
+        }
+        if (task.cacheHit) {
+            cacheHits.incrementAndGet();
+        }
+
+        final long latencyUs = latencyNs / 1000;
+        latency.record(latencyUs);
+        lengthLatency[lengthBucket(task.sentenceLength())].record(latencyUs);
+
+        // Cache hits bypass the parser entirely, so there's nothing more to record
+        if (!sampled || task.cacheHit) {
+            return;
+        }
+        sampledSentences.incrementAndGet();
+        phaseLatency[Phase.ChartInit.ordinal()].record(task.chartInitNs / 1000);
+        phaseLatency[Phase.FomInit.ordinal()].record(task.fomInitNs / 1000);
+        phaseLatency[Phase.CellSelectorInit.ordinal()].record(task.ccInitNs / 1000);
+        phaseLatency[Phase.InsideBinary.ordinal()].record(task.insideBinaryNs / 1000);
+        phaseLatency[Phase.UnaryAndPruning.ordinal()].record(task.unaryAndPruningNs / 1000);
+        phaseLatency[Phase.OutsideBinary.ordinal()].record(task.outsideBinaryNs / 1000);
+        phaseLatency[Phase.OutsideUnary.ordinal()].record(task.outsideUnaryNs / 1000);
+        phaseLatency[Phase.Extract.ordinal()].record(task.extractNs / 1000);
+
+        populatedEdges.addAndGet(task.totalPopulatedEdges);
+        binaryConsidered.addAndGet(task.nBinaryConsidered);
+        unaryConsidered.addAndGet(task.nUnaryConsidered + task.nLexUnaryConsidered);
+    }
+
+    /**
+     * Records the time spent in a single reparse stage
+     * 
+     * @param stage
+     * @param ns Stage time, in nanoseconds
+     */
+    public void recordStage(final Stage stage, final long ns) {
+        stageLatency[stage.ordinal()].record(ns / 1000);
+    }
+
+    private static int lengthBucket(final int sentenceLength) {
+        int i = 0;
+        while (sentenceLength > LENGTH_BUCKETS[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @param phase
+     * @return Latency histogram for the specified phase (in microseconds; sampled sentences only)
+     */
+    public LatencyHistogram phaseLatency(final Phase phase) {
+        return phaseLatency[phase.ordinal()];
+    }
+
+    /**
+     * @param stage
+     * @return Latency histogram for the specified reparse stage (in microseconds)
+     */
+    public LatencyHistogram stageLatency(final Stage stage) {
+        return stageLatency[stage.ordinal()];
+    }
+
+    /**
+     * @return Sentence latency histogram (in microseconds)
+     */
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    /**
+     * Returns all metrics as a single line of space-delimited 'key=value' pairs (in the same form as the summary
+     * statistics output by {@link ParserDriver}), suitable for periodic logging and machine parsing. Histograms are
+     * reported as '&lt;name&gt;.count', '.mean', '.p50', '.p90', '.p99', and '.max'. Phases not implemented by the
+     * current parser (and reparse stages not executed) are omitted.
+     * 
+     * @return Summary of all metrics
+     */
+    public String summary() {
+        final StringBuilder sb = new StringBuilder(2048);
+        sb.append(String.format(
+                "time=%d sentences=%d words=%d failed=%d reparsed=%d timeouts=%d cacheHits=%d sampled=%d",
+                System.currentTimeMillis(), sentences.get(), words.get(), failedParses.get(),
+                reparsedSentences.get(), timeouts.get(), cacheHits.get(), sampledSentences.get()));
+        sb.append(String.format(" populatedEdges=%d binaryConsidered=%d unaryConsidered=%d", populatedEdges.get(),
+                binaryConsidered.get(), unaryConsidered.get()));
+
+        latency.appendSummary(sb, "latency", 1);
+        for (int i = 0; i < LENGTH_BUCKETS.length; i++) {
+            final String name = i == LENGTH_BUCKETS.length - 1 ? String.format("latency.len%d+",
+                    LENGTH_BUCKETS[i - 1] + 1) : String.format("latency.len%d-%d", i == 0 ? 1
+                    : LENGTH_BUCKETS[i - 1] + 1, LENGTH_BUCKETS[i]);
+            lengthLatency[i].appendSummary(sb, name, 1);
+        }
+        for (final Phase phase : Phase.values()) {
+            if (phaseLatency[phase.ordinal()].max() > 0) {
+                phaseLatency[phase.ordinal()].appendSummary(sb, "phase." + phase, 1);
+            }
+        }
+        for (final Stage stage : Stage.values()) {
+            if (stageLatency[stage.ordinal()].count() > 0) {
+                stageLatency[stage.ordinal()].appendSummary(sb, "stage." + stage, 1);
+            }
+        }
+
+        if (opts.parseCache != null) {
+            sb.append(' ');
+            sb.append(opts.parseCache.toString());
+        }
+        if (opts.cellCache != null) {
+            sb.append(' ');
+            sb.append(opts.cellCache.toString());
+        }
+        final ParseScheduler scheduler = opts.activeScheduler();
+        if (scheduler != null) {
+            sb.append(' ');
+            sb.append(scheduler.toString());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Registers this instance with the platform MBean server. Registration failures are logged, but are not fatal.
+     */
+    public synchronized void register() {
+        try {
+            objectName = new ObjectName("edu.ohsu.cslu.parser:type=ParserMetrics,id="
+                    + Integer.toHexString(System.identityHashCode(this)));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (final JMException e) {
+            objectName = null;
+            BaseLogger.singleton().warning("WARNING: Unable to register metrics MBean: " + e.toString());
+        }
+    }
+
+    /**
+     * Starts writing {@link #summary()} periodically (on a daemon thread), appending to the specified file, or to the
+     * log (at {@link Level#INFO}) if no file is specified.
+     * 
+     * @param intervalSeconds
+     * @param file Output file (null to log instead)
+     */
+    public synchronized void startDumps(final int intervalSeconds, final File file) {
+        timer = new Timer("ParserMetrics", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                dump(file);
+            }
+        }, intervalSeconds * 1000L, intervalSeconds * 1000L);
+    }
+
+    /**
+     * Writes {@link #summary()} to the specified file (appending), or to the log if the file is null
+     * 
+     * @param file
+     */
+    public void dump(final File file) {
+        final String summary = summary();
+        if (file == null) {
+            BaseLogger.singleton().info("INFO: metrics " + summary);
+            return;
+        }
+        try {
+            final Writer w = new FileWriter(file, true);
+            try {
+                w.write(summary);
+                w.write('\n');
+            } finally {
+                w.close();
+            }
+        } catch (final IOException e) {
+            BaseLogger.singleton().warning("WARNING: Unable to write metrics: " + e.toString());
+        }
+    }
+
+    /**
+     * Stops periodic dumps and unregisters the MBean
+     */
+    public synchronized void close() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (final JMException ignore) {
+            }
+            objectName = null;
+        }
+    }
+
+    @Override
+    public long getSentences() {
+        return sentences.get();
+    }
+
+    @Override
+    public long getWords() {
+        return words.get();
+    }
+
+    @Override
+    public long getFailedParses() {
+        return failedParses.get();
+    }
+
+    @Override
+    public long getReparsedSentences() {
+        return reparsedSentences.get();
+    }
+
+    @Override
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    @Override
+    public long getSampledSentences() {
+        return sampledSentences.get();
+    }
+
+    @Override
+    public long getLatencyMeanUs() {
+        return Math.round(latency.mean());
+    }
+
+    @Override
+    public long getLatencyP50Us() {
+        return latency.percentile(50);
+    }
+
+    @Override
+    public long getLatencyP90Us() {
+        return latency.percentile(90);
+    }
+
+    @Override
+    public long getLatencyP99Us() {
+        return latency.percentile(99);
+    }
+
+    @Override
+    public long getLatencyMaxUs() {
+        return latency.max();
+    }
+
+    @Override
+    public String getSummary() {
+        return summary();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser;
+
+/**
+ * JMX management interface for {@link ParserMetrics}. All latencies are reported in microseconds.
+ * 
+ * @author Aaron Dunlop
+ */
+public interface ParserMetricsMBean {
+
+    public long getSentences();
+
+    public long getWords();
+
+    public long getFailedParses();
+
+    public long getReparsedSentences();
+
+    public long getTimeouts();
+
+    public long getCacheHits();
+
+    /** Sentences for which detailed (per-phase) statistics were collected */
+    public long getSampledSentences();
+
+    public long getLatencyMeanUs();
+
+    public long getLatencyP50Us();
+
+    public long getLatencyP90Us();
+
+    public long getLatencyP99Us();
+
+    public long getLatencyMaxUs();
+
+    /** A single-line machine-readable summary of all metrics (see {@link ParserMetrics#summary()}) */
+    public String getSummary();
+}
@@ -30,6 +30,8 @@ import cltool4j.BaseLogger;
 import cltool4j.ConfigProperties;
 import cltool4j.GlobalConfigProperties;
 import edu.ohsu.cslu.datastructs.narytree.BinaryTree;
+import edu.ohsu.cslu.datastructs.vectors.BitVector;
+import edu.ohsu.cslu.datastructs.vectors.PackedBitVector;
 import edu.ohsu.cslu.grammar.SparseMatrixGrammar;
 import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PackingFunction;
 import edu.ohsu.cslu.parser.Parser.ReparseStrategy.Stage;
@@ -37,6 +39,8 @@ import edu.ohsu.cslu.parser.chart.BoundedPriorityQueue;
 import edu.ohsu.cslu.parser.chart.Chart;
 import edu.ohsu.cslu.parser.chart.Chart.ChartCell;
 import edu.ohsu.cslu.parser.chart.DenseVectorChart.DenseVectorChartCell;
+import edu.ohsu.cslu.parser.chart.PackedArrayChart;
+import edu.ohsu.cslu.parser.chart.PackedArrayChart.CellSnapshot;
 import edu.ohsu.cslu.parser.chart.PackedArrayChart.PackedArrayChartCell;
 import edu.ohsu.cslu.parser.chart.PackedArrayChart.TemporaryChartCell;
 import edu.ohsu.cslu.parser.chart.ParallelArrayChart;
@@ -71,6 +75,12 @@ public abstract class SparseMatrixParser<G extends SparseMatrixGrammar, C extend
     protected float maxLocalDelta;
     protected boolean exhaustiveSearch;
 
+    /**
+     * True if the current reparse stage retained cells from a previous (pruned) stage. Cells computed from those
+     * children may be incomplete, so they must not be stored in the cross-sentence cell cache.
+     */
+    private boolean retainedStageCells;
+
     protected final ThreadLocal<BoundedPriorityQueue> threadLocalBoundedPriorityQueue;
     protected final ThreadLocal<float[]> threadLocalTmpFoms;
     protected final ThreadLocal<TemporaryChartCell> threadLocalQueueEdges;
@@ -140,8 +150,15 @@ public abstract class SparseMatrixParser<G extends SparseMatrixGrammar, C extend
                 Integer.MAX_VALUE) == 0 ? new Stage[] { Stage.EXHAUSTIVE } : opts.reparseStrategy.stages();
         for (final Parser.ReparseStrategy.Stage stage : reparseStages) {
 
+            // Don't start another reparse stage if we've exceeded the deadline
+            if (parseTask.deadlineExpired()) {
+                break;
+            }
+
             final long stageStartTime = System.currentTimeMillis();
+            final long stageStartNs = opts.metrics != null ? System.nanoTime() : 0;
             parseTask.reparseStages++;
+            retainedStageCells = false;
 
             switch (stage) {
             case NORMAL:
@@ -164,6 +181,38 @@ public abstract class SparseMatrixParser<G extends SparseMatrixGrammar, C extend
                 cellSelector.reset(false);
                 break;
 
+            case LOCAL:
+                // As for DOUBLE, skip this stage if it results in exhaustive parsing; retained cells were populated
+                // with a pruned beam, so they can't be combined with an exhaustive search.
+                if ((beamWidth << 1) >= grammar.nonTermSet.size()) {
+                    continue;
+                }
+                if (!(chart instanceof PackedArrayChart)) {
+                    // We can only retain cells from a packed chart; reparse the full chart
+                    initSentence(parseTask, beamWidth << 1, lexicalRowBeamWidth << 1, lexicalRowUnaries << 1,
+                            maxLocalDelta * MAX_LOCAL_DELTA_MULTIPLIER);
+                    cellSelector.reset(false);
+                    break;
+                }
+                final PackedArrayChart previousChart = (PackedArrayChart) chart;
+                final BitVector retainedCells = retainedCells(previousChart);
+
+                // Force allocation of a new chart (with the wider beam), and copy retained cells into it
+                chart = null;
+                initSentence(parseTask, beamWidth << 1, lexicalRowBeamWidth << 1, lexicalRowUnaries << 1,
+                        maxLocalDelta * MAX_LOCAL_DELTA_MULTIPLIER);
+                final PackedArrayChart newChart = (PackedArrayChart) chart;
+                for (short start = 0; start < previousChart.size(); start++) {
+                    for (short end = (short) (start + 1); end <= previousChart.size(); end++) {
+                        if (retainedCells.contains(previousChart.cellIndex(start, end))) {
+                            newChart.copyCell(previousChart, start, end);
+                        }
+                    }
+                }
+                retainedStageCells = true;
+                cellSelector.reset(false, retainedCells);
+                break;
+
             case EXHAUSTIVE:
                 initSentence(parseTask, grammar.nonTermSet.size(), grammar.nonTermSet.size(),
                         grammar.nonTermSet.size(), Float.MAX_VALUE);
@@ -173,6 +222,10 @@ public abstract class SparseMatrixParser<G extends SparseMatrixGrammar, C extend
 
             insidePass();
 
+            if (opts.metrics != null) {
+                opts.metrics.recordStage(stage, System.nanoTime() - stageStartNs);
+            }
+
             if (BaseLogger.singleton().isLoggable(Level.ALL)) {
                 BaseLogger.singleton().finest(chart.toString());
             }
@@ -181,16 +234,124 @@ public abstract class SparseMatrixParser<G extends SparseMatrixGrammar, C extend
                 BaseLogger.singleton().finer(
                         String.format("INFO: stage=%s time=%d success=true", stage.toString(),
                                 System.currentTimeMillis() - stageStartTime));
-                return chart.extractBestParse(grammar.startSymbol);
+                return extract(parseTask.recoveryStrategy);
             }
             BaseLogger.singleton().finer(
-                    String.format("INFO: stage=%s time=%d success=false", stage.toString(), System.currentTimeMillis()
-                            - stageStartTime));
+                    String.format("INFO: stage=%s time=%d success=false%s", stage.toString(),
+                            System.currentTimeMillis() - stageStartTime, parseTask.timedOut ? " timeout=true" : ""));
         }
 
         return extract(parseTask.recoveryStrategy);
     }
 
+    /**
+     * Executes the inside pass, reusing cells from {@link ParserDriver#cellCache} where possible (see
+     * {@link #cellCache()}).
+     */
+    @Override
+    protected void insidePass() {
+        final CellCache cellCache = cellCache();
+        if (cellCache == null) {
+            super.insidePass();
+            return;
+        }
+
+        final long fingerprint = opts.configurationFingerprint();
+        while (cellSelector.hasNext()) {
+            if (chart.parseTask.deadlineExpired()) {
+                break;
+            }
+            final short[] startAndEnd = cellSelector.next();
+            final short start = startAndEnd[0], end = startAndEnd[1];
+            if (restoreCachedCell(cellCache, fingerprint, start, end)) {
+                continue;
+            }
+
+            final ChartCell cell = chart.getCell(start, end);
+            if (end - start == 1) {
+                addLexicalProductions(cell);
+            }
+            computeInsideProbabilities(cell);
+            cacheCell(cellCache, fingerprint, start, end);
+        }
+    }
+
+    /**
+     * Returns the cross-sentence cell cache, if applicable to the current sentence. Cached cells are only valid if the
+     * contents of a cell depend solely on the tokens it covers, so we only use the cache during exhaustive search of a
+     * packed-array chart, without cell constraints or input tags, and not in a reparse stage which retained cells from
+     * an earlier (pruned) stage.
+     * 
+     * @return The cell cache, or null if not applicable
+     */
+    protected CellCache cellCache() {
+        if (opts.cellCache == null || !exhaustiveSearch || retainedStageCells || !(chart instanceof PackedArrayChart)
+                || cellSelector.hasCellConstraints() || ParserDriver.parseFromInputTags) {
+            return null;
+        }
+        return opts.cellCache;
+    }
+
+    /**
+     * Populates a cell from the cell cache, if a cell covering the same tokens is cached
+     * 
+     * @return True if the cell was populated from the cache
+     */
+    protected final boolean restoreCachedCell(final CellCache cellCache, final long fingerprint, final short start,
+            final short end) {
+        final CellSnapshot snapshot = cellCache.get(fingerprint, chart.parseTask.tokens, start, end);
+        return snapshot != null && ((PackedArrayChart) chart).restoreCell(snapshot, start, end);
+    }
+
+    /**
+     * Adds a finalized cell to the cell cache
+     */
+    protected final void cacheCell(final CellCache cellCache, final long fingerprint, final short start,
+            final short end) {
+        cellCache.put(fingerprint, chart.parseTask.tokens, start, end,
+                ((PackedArrayChart) chart).snapshotCell(start, end));
+    }
+
+    /**
+     * Selects the cells to retain during localized reparsing (see {@link Stage#LOCAL}). We choose non-overlapping
+     * spans containing complete (unfactored) constituents, preferring the largest, and retain all cells within those
+     * spans. Every other cell includes part of the failed region (or depends on a cell which does), so it must be
+     * reparsed.
+     * 
+     * @param previousChart Chart populated by the failed parsing pass
+     * @return Cells to retain, indexed by {@link Chart#cellIndex(int, int, int)}
+     */
+    static BitVector retainedCells(final PackedArrayChart previousChart) {
+
+        final int size = previousChart.size();
+        final PackedBitVector retainedCells = new PackedBitVector(previousChart.cells());
+        final boolean[] covered = new boolean[size];
+
+        // Span-1 cells are always populated, so we only retain larger spans (and reparse the lexical row in the failed
+        // region). The root cell failed, so we never retain it.
+        for (int span = size - 1; span >= 2; span--) {
+            for (int start = 0; start <= size - span; start++) {
+                final int end = start + span;
+
+                if (covered[start] || covered[end - 1]
+                        || previousChart.getCell(start, end).getNumUnfactoredNTs() == 0) {
+                    continue;
+                }
+
+                // Retain all cells within this span
+                for (int i = start; i < end; i++) {
+                    covered[i] = true;
+                }
+                for (int s = start; s < end; s++) {
+                    for (int e = s + 1; e <= end; e++) {
+                        retainedCells.add(previousChart.cellIndex(s, e));
+                    }
+                }
+            }
+        }
+        return retainedCells;
+    }
+
     @Override
     protected void initSentence(final ParseTask parseTask) {
         initSentence(parseTask, beamWidth, lexicalRowBeamWidth, lexicalRowUnaries, maxLocalDelta);
@@ -220,7 +381,7 @@ public abstract class SparseMatrixParser<G extends SparseMatrixGrammar, C extend
         if (chart != null
                 && chart.chartArraySize() >= ParallelArrayChart.chartArraySize(parseTask.sentenceLength(),
                         this.beamWidth, this.lexicalRowBeamWidth)
-                && chart.maxCells >= parseTask.sentenceLength() * (parseTask.sentenceLength() + 1) / 1) {
+                && chart.maxCells >= parseTask.sentenceLength() * (parseTask.sentenceLength() + 1) / 2) {
             chart.reset(parseTask, this.beamWidth, this.lexicalRowBeamWidth);
         } else {
             // Construct a chart of the appropriate type
@@ -419,8 +580,13 @@ public abstract class SparseMatrixParser<G extends SparseMatrixGrammar, C extend
          * non-terminal, if greater, and updates the inside probability and backpointer in (A).
          */
 
-        // Push all binary or lexical edges onto a bounded priority queue
-        final BoundedPriorityQueue q = threadLocalBoundedPriorityQueue.get();
+        // Push all binary or lexical edges onto a bounded priority queue. If the beam has been widened for reparsing,
+        // the queue allocated for this thread may be too small
+        BoundedPriorityQueue q = threadLocalBoundedPriorityQueue.get();
+        if (q.capacity() < cellBeamWidth) {
+            q = new BoundedPriorityQueue(Math.max(beamWidth, lexicalRowBeamWidth), grammar);
+            threadLocalBoundedPriorityQueue.set(q);
+        }
         q.clear(cellBeamWidth);
 
         // Packed children and probabilities currently on the queue. Initially copied from cell temporary storage, but
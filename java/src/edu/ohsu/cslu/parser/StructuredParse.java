@@ -0,0 +1,210 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser;
+
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.shorts.ShortArrayList;
+
+import java.util.ArrayList;
+
+import edu.ohsu.cslu.datastructs.narytree.BinaryTree;
+import edu.ohsu.cslu.datastructs.narytree.Tree;
+import edu.ohsu.cslu.grammar.Grammar;
+import edu.ohsu.cslu.grammar.GrammarFormatType;
+import edu.ohsu.cslu.parser.chart.Chart;
+
+/**
+ * A parse tree represented as an array of nodes in pre-order, each referencing its parent by index, with the span of
+ * each constituent and (optionally) its scores from the chart. Intended for structured output (see
+ * {@link JsonOutputWriter}), so consumers don't have to re-parse bracketed trees and re-derive spans.
+ * 
+ * Factored categories are flattened and split categories are reported as their unsplit base categories, as in
+ * {@link BinaryTree#unfactor(GrammarFormatType)}. Leaves (tokens) are not represented as nodes; each preterminal
+ * references the index of the token it dominates.
+ * 
+ * @author Aaron Dunlop
+ */
+public class StructuredParse {
+
+    /** Label of each node */
+    public final String[] labels;
+
+    /** Index of the parent of each node (-1 for the root) */
+    public final int[] parents;
+
+    /** Start of the span covered by each node */
+    public final short[] starts;
+
+    /** End of the span covered by each node (exclusive) */
+    public final short[] ends;
+
+    /** Index of the token dominated by each preterminal, or -1 for other nodes */
+    public final short[] tokenIndices;
+
+    /**
+     * Log inside probability of each node, as stored in the chart (the Viterbi inside score for Viterbi parsers). NaN
+     * for nodes which are not found in the chart. Null if the tree was not extracted from a chart.
+     */
+    public final float[] insideProbabilities;
+
+    /**
+     * Log posterior probability of each node (inside + outside - sentence inside probability). NaN for nodes which are
+     * not found in the chart. Null if the chart does not include outside probabilities.
+     */
+    public final float[] posteriors;
+
+    public StructuredParse(final String[] labels, final int[] parents, final short[] starts, final short[] ends,
+            final short[] tokenIndices, final float[] insideProbabilities, final float[] posteriors) {
+        this.labels = labels;
+        this.parents = parents;
+        this.starts = starts;
+        this.ends = ends;
+        this.tokenIndices = tokenIndices;
+        this.insideProbabilities = insideProbabilities;
+        this.posteriors = posteriors;
+    }
+
+    /**
+     * @return The number of nodes in the tree (excluding leaves)
+     */
+    public int size() {
+        return labels.length;
+    }
+
+    /**
+     * Converts a binary parse tree, flattening factored categories, and (if a chart is supplied) looks up the scores of
+     * each constituent. Must be called while the chart is still populated with the parsed sentence.
+     * 
+     * @param binaryParse Binary parse tree, labeled with grammar non-terminals
+     * @param grammar Grammar
+     * @param chart Populated chart (may be null, in which case scores are omitted)
+     * @return Node-array representation of the unfactored tree
+     */
+    public static StructuredParse fromBinaryParse(final BinaryTree<String> binaryParse, final Grammar grammar,
+            final Chart chart) {
+        final Builder builder = new Builder(grammar, chart);
+        builder.add(binaryParse, -1, 0);
+        return builder.build();
+    }
+
+    /**
+     * Converts an unscored tree (e.g., a recovery parse), retaining all labels as-is.
+     * 
+     * @param tree
+     * @return Node-array representation of the tree, without scores
+     */
+    public static StructuredParse fromTree(final Tree<String> tree) {
+        final Builder builder = new Builder(null, null);
+        builder.add(tree, -1, 0);
+        return builder.build();
+    }
+
+    private final static class Builder {
+
+        private final Grammar grammar;
+        private final GrammarFormatType grammarFormat;
+        private final Chart chart;
+        private final boolean posteriors;
+        private final float sentenceInsideProbability;
+
+        private final ArrayList<String> labels = new ArrayList<String>();
+        private final IntArrayList parents = new IntArrayList();
+        private final ShortArrayList starts = new ShortArrayList();
+        private final ShortArrayList ends = new ShortArrayList();
+        private final ShortArrayList tokenIndices = new ShortArrayList();
+        private final FloatArrayList insideProbabilities = new FloatArrayList();
+        private final FloatArrayList posteriorProbabilities = new FloatArrayList();
+
+        public Builder(final Grammar grammar, final Chart chart) {
+            this.grammar = grammar;
+            this.grammarFormat = grammar != null ? grammar.grammarFormat : null;
+            this.chart = chart;
+            this.posteriors = chart != null && chart.hasOutsideProbabilities();
+            this.sentenceInsideProbability = posteriors ? chart.getInside(0, chart.size(), grammar.startSymbol) : 0;
+        }
+
+        /**
+         * Adds a node and its descendants
+         * 
+         * @return The end of the span covered by the node
+         */
+        public int add(final Tree<String> node, final int parent, final int start) {
+            final int index = labels.size();
+            final String label = node.label();
+            labels.add(grammarFormat != null ? grammarFormat.getBaseNT(label, false) : label);
+            parents.add(parent);
+            starts.add((short) start);
+            ends.add((short) 0);
+            tokenIndices.add((short) -1);
+            insideProbabilities.add(Float.NaN);
+            posteriorProbabilities.add(Float.NaN);
+
+            int end = start;
+            if (node.isPreterminal()) {
+                tokenIndices.set(index, (short) start);
+                end = start + 1;
+            } else {
+                for (final Tree<String> child : node.children()) {
+                    end = addChildren(child, index, end);
+                }
+            }
+            ends.set(index, (short) end);
+
+            if (chart != null) {
+                final int nonTerminal = grammar.nonTermSet.getIndex(label);
+                if (nonTerminal >= 0) {
+                    final float inside = chart.getInside(start, end, nonTerminal);
+                    insideProbabilities.set(index, inside);
+                    if (posteriors) {
+                        posteriorProbabilities.set(index, inside + chart.getOutside(start, end, nonTerminal)
+                                - sentenceInsideProbability);
+                    }
+                }
+            }
+            return end;
+        }
+
+        /**
+         * Adds the n-ary children contributed by a binary child, descending through factored categories
+         * 
+         * @return The end of the span covered by the child
+         */
+        private int addChildren(final Tree<String> child, final int parent, final int start) {
+            if (grammarFormat != null && !child.isPreterminal() && grammarFormat.isFactored(child.label())) {
+                int end = start;
+                for (final Tree<String> grandchild : child.children()) {
+                    end = addChildren(grandchild, parent, end);
+                }
+                return end;
+            }
+            return add(child, parent, start);
+        }
+
+        public StructuredParse build() {
+            return new StructuredParse(labels.toArray(new String[labels.size()]), parents.toIntArray(),
+                    starts.toShortArray(), ends.toShortArray(), tokenIndices.toShortArray(),
+                    chart != null ? insideProbabilities.toFloatArray() : null,
+                    posteriors ? posteriorProbabilities.toFloatArray() : null);
+        }
+    }
+}
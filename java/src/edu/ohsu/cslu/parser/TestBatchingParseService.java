@@ -0,0 +1,246 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cltool4j.GlobalConfigProperties;
+import edu.ohsu.cslu.grammar.DecisionTreeTokenClassifier;
+import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
+import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PerfectIntPairHashPackingFunction;
+import edu.ohsu.cslu.parser.Parser.ResearchParserType;
+import edu.ohsu.cslu.parser.fom.InsideProb;
+import edu.ohsu.cslu.tests.JUnit;
+
+/**
+ * Unit tests for {@link BatchingParseService}
+ * 
+ * @author Aaron Dunlop
+ */
+public class TestBatchingParseService {
+
+    private final static String LONG_SENTENCE = "The report is due out tomorrow .";
+    private final static String SHORT_SENTENCE = "The report is due .";
+
+    private static LeftCscSparseMatrixGrammar grammar;
+
+    private ModelRegistry registry;
+    private BatchingParseService service;
+
+    @BeforeClass
+    public static void suiteSetUp() throws IOException {
+        GlobalConfigProperties.singleton().setProperty(Parser.PROPERTY_MAX_BEAM_WIDTH, "0");
+        grammar = new LeftCscSparseMatrixGrammar(JUnit.unitTestDataAsReader("grammars/eng.R0.gr.gz"),
+                new DecisionTreeTokenClassifier(), PerfectIntPairHashPackingFunction.class);
+    }
+
+    @AfterClass
+    public static void suiteTearDown() {
+        GlobalConfigProperties.singleton().clear();
+    }
+
+    @Before
+    public void setUp() {
+        final ParserDriver opts = new ParserDriver();
+        opts.researchParserType = ResearchParserType.CartesianProductHashMl;
+        opts.setGrammar(grammar);
+        opts.fomModel = new InsideProb();
+
+        registry = new ModelRegistry();
+        registry.install("1", opts, Collections.<String> emptyList());
+    }
+
+    @After
+    public void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+        registry.shutdown();
+    }
+
+    @Test
+    public void testBuckets() {
+        assertArrayEquals(new int[] { 10, 20, 40 }, BatchingParseService.parseBuckets(" 10, 20,40"));
+
+        service = new BatchingParseService(registry, 5, new int[] { 5, 10 }, 16, 1);
+        assertEquals(0, service.bucket(1));
+        assertEquals(0, service.bucket(5));
+        assertEquals(1, service.bucket(6));
+        assertEquals(1, service.bucket(10));
+        assertEquals(2, service.bucket(11));
+
+        try {
+            new BatchingParseService(registry, 5, new int[] { 10, 5 }, 16, 1);
+            fail("Expected IllegalArgumentException");
+        } catch (final IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testBatching() throws Exception {
+        final ModelRegistry.Lease lease = registry.acquire();
+        final String expectedLong = lease.parse(LONG_SENTENCE).parseBracketString(false);
+        final String expectedShort = lease.parse(SHORT_SENTENCE).parseBracketString(false);
+        lease.close();
+
+        // Populate each bucket's pool with a single parser, and parse an unrelated sentence with each
+        final ChartParser<?, ?> shortParser = primeParser(0);
+        final ChartParser<?, ?> longParser = primeParser(1);
+
+        // A long window, so all sentences fall into one window, and are grouped into one batch per bucket
+        service = new BatchingParseService(registry, 500, new int[] { 5 }, 16, 2);
+        final String[] sentences = new String[] { LONG_SENTENCE, SHORT_SENTENCE, LONG_SENTENCE, LONG_SENTENCE,
+                SHORT_SENTENCE, LONG_SENTENCE };
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        final Future<ParseTask>[] results = new Future[sentences.length];
+        for (int i = 0; i < sentences.length; i++) {
+            results[i] = service.submit(sentences[i]);
+        }
+
+        for (int i = 0; i < sentences.length; i++) {
+            assertEquals(sentences[i] == LONG_SENTENCE ? expectedLong : expectedShort, results[i].get()
+                    .parseBracketString(false));
+        }
+        assertEquals(2, service.batches());
+        assertEquals(6, service.sentences());
+
+        // Results are completed before the worker returns its parser to the pool
+        for (int i = 0; i < 100 && registry.current().activeLeases() > 0; i++) {
+            Thread.sleep(10);
+        }
+
+        // Each batch was parsed by the parser from its own bucket's pool
+        assertEquals(SHORT_SENTENCE, shortParser.chart.parseTask.sentence);
+        assertEquals(LONG_SENTENCE, longParser.chart.parseTask.sentence);
+
+        // And each parser was returned to the same pool
+        final ModelRegistry.Lease shortLease = registry.acquire(0);
+        final ModelRegistry.Lease longLease = registry.acquire(1);
+        assertSame(shortParser, shortLease.parser());
+        assertSame(longParser, longLease.parser());
+        shortLease.close();
+        longLease.close();
+    }
+
+    /**
+     * Creates a parser in the specified pool, and parses a sentence which is not used in other tests
+     * 
+     * @param pool
+     * @return The parser, which has been returned to the pool
+     */
+    private ChartParser<?, ?> primeParser(final int pool) {
+        final ModelRegistry.Lease lease = registry.acquire(pool);
+        final ChartParser<?, ?> parser = (ChartParser<?, ?>) lease.parser();
+        lease.parse("The bill passed .");
+        lease.close();
+        return parser;
+    }
+
+    /**
+     * A bucket's parser should reuse the same chart for every sentence in the bucket, rather than reallocating it for
+     * sentences shorter than the one it was allocated for
+     */
+    @Test
+    public void testChartReuse() throws Exception {
+        // Allocate a chart for the longest sentence in the bucket
+        final ModelRegistry.Lease lease = registry.acquire(1);
+        final SparseMatrixParser<?, ?> parser = (SparseMatrixParser<?, ?>) lease.parser();
+        parser.parseSentence("The report is due out tomorrow , he said .");
+        final Object chart = parser.chart;
+        lease.close();
+
+        service = new BatchingParseService(registry, 500, new int[] { 5, 10 }, 16, 1);
+        final String[] sentences = new String[] { LONG_SENTENCE, "The report is due out tomorrow , he said .",
+                "He said the report is due out ." };
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        final Future<ParseTask>[] results = new Future[sentences.length];
+        for (int i = 0; i < sentences.length; i++) {
+            results[i] = service.submit(sentences[i]);
+        }
+        for (final Future<ParseTask> result : results) {
+            result.get();
+        }
+        assertEquals(1, service.batches());
+
+        // Results are completed before the worker returns its parser to the pool
+        for (int i = 0; i < 100 && registry.current().activeLeases() > 0; i++) {
+            Thread.sleep(10);
+        }
+        final ModelRegistry.Lease next = registry.acquire(1);
+        assertSame(parser, next.parser());
+        assertSame(chart, parser.chart);
+        next.close();
+    }
+
+    @Test
+    public void testMaxBatchSize() throws Exception {
+        // A full batch is dispatched without waiting for the window to close
+        service = new BatchingParseService(registry, 60000, new int[] { 5 }, 2, 2);
+        final Future<ParseTask> r1 = service.submit(SHORT_SENTENCE);
+        final Future<ParseTask> r2 = service.submit(SHORT_SENTENCE);
+        r1.get();
+        r2.get();
+        assertEquals(1, service.batches());
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        service = new BatchingParseService(registry, 1, new int[] { 5 }, 16, 1);
+        assertEquals(LONG_SENTENCE.split(" ").length, service.parse(LONG_SENTENCE).sentenceLength());
+        service.shutdown();
+        try {
+            service.submit(LONG_SENTENCE);
+            fail("Expected RejectedExecutionException");
+        } catch (final RejectedExecutionException expected) {
+        }
+    }
+
+    /**
+     * Requests queued when the service shuts down are cancelled, rather than left waiting indefinitely
+     */
+    @Test
+    public void testShutdownCancelsQueuedRequests() throws Exception {
+        service = new BatchingParseService(registry, 60000, new int[] { 5 }, 16, 1);
+        final Future<ParseTask> queued = service.submit(LONG_SENTENCE);
+        service.shutdown();
+        try {
+            queued.get();
+            fail("Expected CancellationException");
+        } catch (final CancellationException expected) {
+        }
+    }
+}
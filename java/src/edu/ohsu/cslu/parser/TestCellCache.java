@@ -0,0 +1,114 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cltool4j.GlobalConfigProperties;
+import edu.ohsu.cslu.grammar.DecisionTreeTokenClassifier;
+import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
+import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PerfectIntPairHashPackingFunction;
+import edu.ohsu.cslu.parser.fom.InsideProb;
+import edu.ohsu.cslu.parser.ml.CartesianProductHashSpmlParser;
+import edu.ohsu.cslu.parser.spmv.CscSpmvParser;
+import edu.ohsu.cslu.tests.JUnit;
+
+/**
+ * Tests reuse of chart cells across sentences with {@link CellCache}
+ * 
+ * @author Aaron Dunlop
+ */
+public class TestCellCache {
+
+    private final static String[] SENTENCES = new String[] {
+            "The most troublesome report may be the August merchandise trade deficit due out tomorrow .",
+            // Shared prefix
+            "The most troublesome report may be the August merchandise trade surplus due out next week .",
+            // Shared subsequence at a different offset
+            "Analysts said the most troublesome report may be the August merchandise trade deficit ." };
+
+    private static LeftCscSparseMatrixGrammar grammar;
+
+    @BeforeClass
+    public static void suiteSetUp() throws IOException {
+        GlobalConfigProperties.singleton().setProperty(Parser.PROPERTY_MAX_BEAM_WIDTH, "0");
+        grammar = new LeftCscSparseMatrixGrammar(JUnit.unitTestDataAsReader("grammars/eng.R0.gr.gz"),
+                new DecisionTreeTokenClassifier(), PerfectIntPairHashPackingFunction.class);
+    }
+
+    @AfterClass
+    public static void suiteTearDown() {
+        GlobalConfigProperties.singleton().clear();
+    }
+
+    @Test
+    public void testSpmvParser() {
+        final ParserDriver uncachedOpts = parserDriver(null);
+        final ParserDriver cachedOpts = parserDriver(new CellCache(64 * 1024 * 1024));
+        assertCachedParses(new CscSpmvParser(uncachedOpts, grammar), new CscSpmvParser(cachedOpts, grammar),
+                cachedOpts.cellCache);
+    }
+
+    @Test
+    public void testLoopParser() {
+        final ParserDriver uncachedOpts = parserDriver(null);
+        final ParserDriver cachedOpts = parserDriver(new CellCache(64 * 1024 * 1024));
+        assertCachedParses(new CartesianProductHashSpmlParser(uncachedOpts, grammar),
+                new CartesianProductHashSpmlParser(cachedOpts, grammar), cachedOpts.cellCache);
+    }
+
+    private ParserDriver parserDriver(final CellCache cellCache) {
+        final ParserDriver opts = new ParserDriver();
+        opts.setGrammar(grammar);
+        opts.fomModel = new InsideProb();
+        opts.cellCache = cellCache;
+        return opts;
+    }
+
+    private void assertCachedParses(final Parser<?> uncachedParser, final Parser<?> cachedParser,
+            final CellCache cellCache) {
+
+        for (final String sentence : SENTENCES) {
+            final ParseTask expected = uncachedParser.parseSentence(sentence);
+            final ParseTask actual = cachedParser.parseSentence(sentence);
+            assertEquals(expected.parseBracketString(false), actual.parseBracketString(false));
+            assertEquals(expected.insideProbability, actual.insideProbability, .001f);
+        }
+
+        // Every cell of the second and third sentences spanning shared tokens should be reused
+        assertTrue("Expected cache hits", cellCache.hits() > 12 * 13 / 2);
+
+        // And a repeated sentence should be reconstructed entirely from the cache
+        final long misses = cellCache.misses();
+        final ParseTask task = cachedParser.parseSentence(SENTENCES[0]);
+        assertEquals(uncachedParser.parseSentence(SENTENCES[0]).parseBracketString(false),
+                task.parseBracketString(false));
+        assertEquals(misses, cellCache.misses());
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cltool4j.GlobalConfigProperties;
+import edu.ohsu.cslu.datastructs.narytree.NaryTree;
+import edu.ohsu.cslu.grammar.DecisionTreeTokenClassifier;
+import edu.ohsu.cslu.grammar.InsideOutsideCscSparseMatrixGrammar;
+import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
+import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PerfectIntPairHashPackingFunction;
+import edu.ohsu.cslu.parser.Parser.DecodeMethod;
+import edu.ohsu.cslu.parser.Parser.InputFormat;
+import edu.ohsu.cslu.parser.Parser.OutputFormat;
+import edu.ohsu.cslu.parser.fom.InsideProb;
+import edu.ohsu.cslu.parser.ml.CartesianProductHashSpmlParser;
+import edu.ohsu.cslu.parser.ml.InsideOutsideCphSpmlParser;
+import edu.ohsu.cslu.parser.ml.TestInsideOutsideCphSpmlParser;
+import edu.ohsu.cslu.tests.JUnit;
+
+/**
+ * Unit tests for {@link JsonOutputWriter} and {@link StructuredParse}
+ * 
+ * @author Aaron Dunlop
+ */
+public class TestJsonOutputWriter {
+
+    private static LeftCscSparseMatrixGrammar grammar;
+
+    @BeforeClass
+    public static void suiteSetUp() throws IOException {
+        GlobalConfigProperties.singleton().setProperty(Parser.PROPERTY_MAX_BEAM_WIDTH, "0");
+        grammar = new LeftCscSparseMatrixGrammar(JUnit.unitTestDataAsReader("grammars/eng.R2.gr.gz"),
+                new DecisionTreeTokenClassifier(), PerfectIntPairHashPackingFunction.class);
+    }
+
+    @AfterClass
+    public static void suiteTearDown() {
+        GlobalConfigProperties.singleton().clear();
+    }
+
+    /**
+     * The structured parse should reproduce the (unfactored) bracketed parse, and include inside scores from the chart
+     */
+    @Test
+    public void testViterbiParse() throws Exception {
+        final ParserDriver opts = new ParserDriver();
+        opts.outputFormat = OutputFormat.Json;
+        final CartesianProductHashSpmlParser parser = new CartesianProductHashSpmlParser(opts, grammar);
+
+        final String input = "  He said (again), \"The report is due out tomorrow.\"";
+        final ParseTask task = parser.parseSentence(input);
+        final StructuredParse tree = task.structuredParse;
+        final String json = write(task);
+
+        assertEquals(task.parseBracketString(false), toNaryTree(tree, task.sentence.split(" ")).toString());
+        assertEquals("ROOT", tree.labels[0]);
+        assertEquals(-1, tree.parents[0]);
+        assertEquals(0, tree.starts[0]);
+        assertEquals(task.sentenceLength(), tree.ends[0]);
+        assertEquals(task.insideProbability, tree.insideProbabilities[0], .0001f);
+        assertNull(tree.posteriors);
+
+        // Every node should be found in the chart
+        for (int i = 0; i < tree.size(); i++) {
+            assertTrue(tree.insideProbabilities[i] > Float.NEGATIVE_INFINITY);
+            assertTrue(tree.insideProbabilities[i] <= 0);
+        }
+
+        assertTrue(json, json.startsWith("{\"id\":0,\"status\":\"normal\",\"reparseStages\":0,\"timeMs\":"));
+        assertTrue(json,
+                json.contains("\"tokens\":[\"He\",\"said\",\"-LRB-\",\"again\",\"-RRB-\",\",\",\"``\",\"The\""));
+        assertTrue(json, json.contains("\"offsets\":[[2,4],[5,9],[10,11],[11,16],[16,17],[17,18],[19,20],[20,23]"));
+        assertTrue(json,
+                json.contains("\"nodes\":[{\"label\":\"ROOT\",\"parent\":-1,\"start\":0,\"end\":15,\"inside\":"));
+        assertTrue(json, json.endsWith("}]}\n"));
+        assertEquals(1, json.split("\n").length);
+    }
+
+    /**
+     * An inside-outside parser should report constituent posteriors
+     */
+    @Test
+    public void testPosteriors() throws Exception {
+        final ParserDriver opts = new ParserDriver();
+        opts.outputFormat = OutputFormat.Json;
+        opts.decodeMethod = DecodeMethod.MaxRuleProd;
+        opts.fomModel = new InsideProb();
+
+        final InsideOutsideCscSparseMatrixGrammar g = new InsideOutsideCscSparseMatrixGrammar(
+                TestInsideOutsideCphSpmlParser.simpleGrammar2(), new DecisionTreeTokenClassifier(),
+                PerfectIntPairHashPackingFunction.class);
+        final InsideOutsideCphSpmlParser parser = new InsideOutsideCphSpmlParser(opts, g);
+        final StructuredParse tree = parser.parseSentence("The fish market stands last").structuredParse;
+
+        // The root spans the sentence, so its posterior is 1
+        assertEquals(0f, tree.posteriors[0], .0001f);
+        for (int i = 0; i < tree.size(); i++) {
+            if (!Float.isNaN(tree.posteriors[i])) {
+                assertTrue(tree.posteriors[i] < .0001f);
+            }
+        }
+        assertTrue(write(parser.parseSentence("The fish market stands last")).contains(",\"posterior\":"));
+    }
+
+    @Test
+    public void testStatus() throws Exception {
+        final ParseTask task = new ParseTask("say \"hi\\ there", InputFormat.Token, grammar, DecodeMethod.ViterbiMax);
+        assertEquals("failed", JsonOutputWriter.status(task));
+        task.recoveryParse = NaryTree.read("(ROOT (VB say) (NN \"hi\\) (RB there))", String.class);
+        assertEquals("recovered", JsonOutputWriter.status(task));
+        task.timedOut = true;
+        assertEquals("timeout", JsonOutputWriter.status(task));
+        task.timedOut = false;
+        task.binaryParse = task.recoveryParse.binarize(grammar.grammarFormat, grammar.binarization());
+        assertEquals("normal", JsonOutputWriter.status(task));
+        task.reparseStages = 2;
+        assertEquals("reparsed", JsonOutputWriter.status(task));
+
+        // Strings are escaped, and unscored trees omit scores
+        final String json = write(task);
+        assertTrue(json, json.contains("\"tokens\":[\"say\",\"\\\"hi\\\\\",\"there\"]"));
+        assertTrue(json, json.contains("\"offsets\":[[0,3],[4,8],[9,14]]"));
+        assertTrue(json, json.contains("{\"label\":\"NN\",\"parent\":0,\"start\":1,\"end\":2,\"token\":1}"));
+        assertTrue(json, json.contains("\"inside\":null"));
+
+        // Exceptions
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final JsonOutputWriter writer = new JsonOutputWriter(bos);
+        writer.write(task);
+        writer.write(null);
+        // Each result is flushed as it is written
+        assertTrue(bos.toString("UTF-8").endsWith("\n{\"id\":1,\"status\":\"error\"}\n"));
+        writer.close();
+    }
+
+    private static String write(final ParseTask task) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final JsonOutputWriter writer = new JsonOutputWriter(bos);
+        writer.write(task);
+        writer.close();
+        return bos.toString("UTF-8");
+    }
+
+    /**
+     * Reconstructs an {@link NaryTree} from the node array
+     */
+    private static NaryTree<String> toNaryTree(final StructuredParse tree, final String[] tokens) {
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        final NaryTree<String>[] nodes = new NaryTree[tree.size()];
+        for (int i = 0; i < tree.size(); i++) {
+            nodes[i] = tree.parents[i] < 0 ? new NaryTree<String>(tree.labels[i]) : nodes[tree.parents[i]]
+                    .addChild(tree.labels[i]);
+            if (tree.tokenIndices[i] >= 0) {
+                nodes[i].addChild(tokens[tree.tokenIndices[i]]);
+            }
+        }
+        return nodes[0];
+    }
+}
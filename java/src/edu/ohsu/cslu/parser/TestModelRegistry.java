@@ -0,0 +1,192 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cltool4j.BaseLogger;
+import cltool4j.GlobalConfigProperties;
+import edu.ohsu.cslu.grammar.DecisionTreeTokenClassifier;
+import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
+import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PerfectIntPairHashPackingFunction;
+import edu.ohsu.cslu.parser.Parser.ResearchParserType;
+import edu.ohsu.cslu.parser.fom.InsideProb;
+import edu.ohsu.cslu.tests.JUnit;
+
+/**
+ * Unit tests for {@link ModelRegistry}
+ * 
+ * @author Aaron Dunlop
+ */
+public class TestModelRegistry {
+
+    private final static String SENTENCE = "The report is due out tomorrow .";
+
+    private static LeftCscSparseMatrixGrammar grammar;
+
+    @BeforeClass
+    public static void suiteSetUp() throws IOException {
+        GlobalConfigProperties.singleton().setProperty(Parser.PROPERTY_MAX_BEAM_WIDTH, "0");
+        grammar = new LeftCscSparseMatrixGrammar(JUnit.unitTestDataAsReader("grammars/eng.R0.gr.gz"),
+                new DecisionTreeTokenClassifier(), PerfectIntPairHashPackingFunction.class);
+    }
+
+    @AfterClass
+    public static void suiteTearDown() {
+        GlobalConfigProperties.singleton().clear();
+    }
+
+    private static ParserDriver model() {
+        final ParserDriver opts = new ParserDriver();
+        opts.researchParserType = ResearchParserType.CartesianProductHashMl;
+        opts.setGrammar(grammar);
+        opts.fomModel = new InsideProb();
+        return opts;
+    }
+
+    @Test
+    public void testSwap() throws Exception {
+        final ModelRegistry registry = new ModelRegistry();
+        try {
+            registry.acquire();
+            fail("Expected IllegalStateException");
+        } catch (final IllegalStateException expected) {
+        }
+
+        final ModelRegistry.Model m1 = registry.install("1", model(), Arrays.asList(new String[] { SENTENCE }));
+        assertSame(m1, registry.current());
+
+        // An in-progress request retains the original model
+        final ModelRegistry.Lease inProgress = registry.acquire();
+        final String expected = inProgress.parse(SENTENCE).parseBracketString(false);
+        final Parser<?> parser1 = inProgress.parser();
+
+        final ModelRegistry.Model m2 = registry.install("2", model(), Collections.<String> emptyList());
+        assertSame(m2, registry.current());
+        assertFalse(m1.isReleased());
+        assertSame(m1, inProgress.model);
+        assertSame(parser1, inProgress.parser());
+        assertEquals(expected, inProgress.parse(SENTENCE).parseBracketString(false));
+
+        // New requests use the new model
+        final ModelRegistry.Lease newRequest = registry.acquire();
+        assertSame(m2, newRequest.model);
+        assertNotSame(parser1, newRequest.parser());
+        assertEquals(expected, newRequest.parse(SENTENCE).parseBracketString(false));
+        final Parser<?> parser2 = newRequest.parser();
+        newRequest.close();
+        assertEquals(0, m2.activeLeases());
+
+        // The original model is released when its last request completes
+        inProgress.close();
+        inProgress.close();
+        assertTrue(m1.isReleased());
+        assertEquals(0, m1.activeLeases());
+
+        // Parser instances are pooled and reused
+        final ModelRegistry.Lease next = registry.acquire();
+        assertSame(parser2, next.parser());
+        next.close();
+
+        registry.shutdown();
+        assertTrue(m2.isReleased());
+    }
+
+    @Test
+    public void testInstallAsync() throws Exception {
+        final ModelRegistry registry = new ModelRegistry();
+        registry.install("1", model(), Collections.<String> emptyList());
+
+        // A failed load leaves the current model in place, and is logged even if the caller ignores the Future
+        final List<LogRecord> errors = new ArrayList<LogRecord>();
+        final Handler handler = new Handler() {
+            @Override
+            public void publish(final LogRecord record) {
+                if (record.getLevel() == Level.SEVERE) {
+                    errors.add(record);
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        BaseLogger.singleton().addHandler(handler);
+        try {
+            final Future<ModelRegistry.Model> failed = registry.installAsync("bad", new Callable<ParserDriver>() {
+                @Override
+                public ParserDriver call() throws Exception {
+                    throw new IOException("Missing model");
+                }
+            });
+            try {
+                failed.get();
+                fail("Expected ExecutionException");
+            } catch (final ExecutionException expected) {
+            }
+        } finally {
+            BaseLogger.singleton().removeHandler(handler);
+        }
+        assertEquals("1", registry.current().version);
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).getMessage().contains("bad"));
+
+        final Future<ModelRegistry.Model> f = registry.installAsync("2", new Callable<ParserDriver>() {
+            @Override
+            public ParserDriver call() throws Exception {
+                return model();
+            }
+        }, Arrays.asList(new String[] { SENTENCE }));
+        assertEquals("2", f.get().version);
+        assertSame(f.get(), registry.current());
+
+        final ModelRegistry.Lease lease = registry.acquire();
+        assertTrue(lease.parse(SENTENCE).parseBracketString(false).startsWith("(ROOT"));
+        lease.close();
+        registry.shutdown();
+    }
+}
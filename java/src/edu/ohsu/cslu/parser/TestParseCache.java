@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import cltool4j.GlobalConfigProperties;
+import edu.ohsu.cslu.datastructs.narytree.BinaryTree;
+import edu.ohsu.cslu.grammar.DecisionTreeTokenClassifier;
+import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
+import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PerfectIntPairHashPackingFunction;
+import edu.ohsu.cslu.parser.ParseCache.CachedParse;
+import edu.ohsu.cslu.parser.fom.InsideProb;
+import edu.ohsu.cslu.parser.spmv.CscSpmvParser;
+import edu.ohsu.cslu.tests.JUnit;
+
+/**
+ * Unit tests for {@link ParseCache}
+ * 
+ * @author Aaron Dunlop
+ */
+public class TestParseCache {
+
+    private final static BinaryTree<String> TREE = BinaryTree.read("(ROOT (S (NP (NN a)) (VP (VB b))))", String.class);
+
+    @Test
+    public void testGetAndPut() {
+        final ParseCache cache = new ParseCache(1024 * 1024);
+        assertNull(cache.get(1, new int[] { 1, 2 }));
+
+        cache.put(1, new int[] { 1, 2 }, TREE, -3.5f);
+        final CachedParse parse = cache.get(1, new int[] { 1, 2 });
+        assertNotNull(parse);
+        assertEquals(TREE.toString(), parse.binaryParse().toString());
+        assertEquals(-3.5f, parse.insideProbability, .001f);
+
+        // A different token sequence or configuration fingerprint should miss
+        assertNull(cache.get(1, new int[] { 1, 3 }));
+        assertNull(cache.get(2, new int[] { 1, 2 }));
+
+        assertEquals(1, cache.hits());
+        assertEquals(3, cache.misses());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testLruEviction() {
+        // A single segment with room for 2 entries
+        final ParseCache cache = new ParseCache(500, 1);
+        cache.put(1, new int[] { 1, 2 }, TREE, 0);
+        cache.put(1, new int[] { 3, 4 }, TREE, 0);
+
+        // Access the first entry, so the second is least-recently-used
+        assertNotNull(cache.get(1, new int[] { 1, 2 }));
+        cache.put(1, new int[] { 5, 6 }, TREE, 0);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        assertNotNull(cache.get(1, new int[] { 1, 2 }));
+        assertNull(cache.get(1, new int[] { 3, 4 }));
+        assertNotNull(cache.get(1, new int[] { 5, 6 }));
+        assertTrue(cache.bytes() <= 500);
+    }
+
+    @Test
+    public void testParse() throws IOException {
+        final LeftCscSparseMatrixGrammar grammar = new LeftCscSparseMatrixGrammar(
+                JUnit.unitTestDataAsReader("grammars/eng.R0.gr.gz"), new DecisionTreeTokenClassifier(),
+                PerfectIntPairHashPackingFunction.class);
+        final ParserDriver opts = new ParserDriver();
+        opts.setGrammar(grammar);
+        opts.fomModel = new InsideProb();
+        opts.parseCache = new ParseCache(1024 * 1024);
+        final CscSpmvParser parser = new CscSpmvParser(opts, grammar);
+
+        final ParseTask task1 = parser.parseSentence("Zorblax rose sharply .");
+        assertFalse(task1.cacheHit);
+
+        // An unknown word mapping to the same UNK class should hit the cache, but retain its own token in the output
+        final ParseTask task2 = parser.parseSentence("Quibbleton rose sharply .");
+        assertTrue(task2.cacheHit);
+        assertEquals(task1.insideProbability, task2.insideProbability, .001f);
+        assertEquals(task1.parseBracketString(false).replace("Zorblax", "Quibbleton"), task2.parseBracketString(false));
+
+        assertEquals(1, opts.parseCache.hits());
+        assertEquals(1, opts.parseCache.misses());
+    }
+
+    @Test
+    public void testConfigurationFingerprint() throws IOException {
+        final LeftCscSparseMatrixGrammar grammar = new LeftCscSparseMatrixGrammar(
+                JUnit.unitTestDataAsReader("grammars/eng.R0.gr.gz"), new DecisionTreeTokenClassifier(),
+                PerfectIntPairHashPackingFunction.class);
+        final ParserDriver opts = new ParserDriver();
+        opts.setGrammar(grammar);
+        opts.fomModel = new InsideProb();
+        opts.parseCache = new ParseCache(1024 * 1024);
+
+        final long fingerprint = opts.configurationFingerprint();
+        assertEquals(fingerprint, opts.configurationFingerprint());
+        opts.parseCache.put(fingerprint, new int[] { 1, 2 }, TREE, 0);
+
+        // Replacing a model changes the fingerprint, and clears entries cached under the previous configuration
+        opts.fomModel = new InsideProb();
+        final long fingerprint2 = opts.configurationFingerprint();
+        assertFalse(fingerprint == fingerprint2);
+        assertEquals(0, opts.parseCache.size());
+
+        // As does changing a configuration property
+        opts.parseCache.put(fingerprint2, new int[] { 1, 2 }, TREE, 0);
+        GlobalConfigProperties.singleton().setProperty("testConfigurationFingerprint", "true");
+        try {
+            assertFalse(fingerprint2 == opts.configurationFingerprint());
+            assertEquals(0, opts.parseCache.size());
+        } finally {
+            GlobalConfigProperties.singleton().remove("testConfigurationFingerprint");
+        }
+        assertEquals(fingerprint2, opts.configurationFingerprint());
+
+        // Separate model instances with the same version share a fingerprint
+        final ParserDriver opts2 = new ParserDriver();
+        opts2.setGrammar(grammar);
+        opts2.fomModel = new InsideProb();
+        assertFalse(fingerprint2 == opts2.configurationFingerprint());
+        opts.setModelVersion("1");
+        opts2.setModelVersion("1");
+        assertEquals(opts.configurationFingerprint(), opts2.configurationFingerprint());
+
+        // But the version no longer applies once a model is replaced
+        opts2.fomModel = new InsideProb();
+        assertFalse(opts.configurationFingerprint() == opts2.configurationFingerprint());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import cltool4j.ConfigProperties;
+
+/**
+ * Unit tests for {@link ParseScheduler}
+ * 
+ * @author Aaron Dunlop
+ */
+public class TestParseScheduler {
+
+    @Test
+    public void testSingleThreaded() {
+        final ParseScheduler scheduler = new ParseScheduler(1, new ConfigProperties());
+        assertEquals(1, scheduler.cellThreads());
+        assertEquals(1, scheduler.grammarThreads());
+        assertEquals(1, scheduler.threads());
+        assertNull(scheduler.pool());
+        assertFalse(scheduler.parallelize(40));
+    }
+
+    @Test
+    public void testUnbudgeted() {
+        final ConfigProperties props = new ConfigProperties();
+        props.setProperty(ParserDriver.OPT_CELL_THREAD_COUNT, "4");
+        props.setProperty(ParserDriver.OPT_GRAMMAR_THREAD_COUNT, "2");
+
+        final ParseScheduler scheduler = new ParseScheduler(2, props);
+        assertEquals(4, scheduler.cellThreads());
+        assertEquals(2, scheduler.grammarThreads());
+        assertEquals(16, scheduler.threads());
+        assertTrue(scheduler.parallelize(1));
+
+        // All callers share the same pool, sized for both sentence threads
+        try {
+            assertNotNull(scheduler.pool());
+            assertSame(scheduler.pool(), scheduler.pool());
+            assertEquals(8, scheduler.pool().getParallelism());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testBudget() {
+        final ConfigProperties props = new ConfigProperties();
+        props.setProperty(ParserDriver.OPT_CELL_THREAD_COUNT, "4");
+        props.setProperty(ParserDriver.OPT_GRAMMAR_THREAD_COUNT, "4");
+        props.setProperty(ParserDriver.OPT_THREAD_BUDGET, "12");
+
+        // 3 threads per sentence, all allocated to cell-level parallelism
+        ParseScheduler scheduler = new ParseScheduler(4, props);
+        assertEquals(3, scheduler.cellThreads());
+        assertEquals(1, scheduler.grammarThreads());
+        assertEquals(12, scheduler.threads());
+        try {
+            assertEquals(12, scheduler.pool().getParallelism());
+        } finally {
+            scheduler.shutdown();
+        }
+
+        // Only long sentences are parallelized
+        assertFalse(scheduler.parallelize(ParseScheduler.DEFAULT_MIN_PARALLEL_SENTENCE_LENGTH - 1));
+        assertTrue(scheduler.parallelize(ParseScheduler.DEFAULT_MIN_PARALLEL_SENTENCE_LENGTH));
+
+        // 6 threads per sentence; 4 cell-level threads, leaving too few for grammar-level parallelism
+        scheduler = new ParseScheduler(2, props);
+        assertEquals(4, scheduler.cellThreads());
+        assertEquals(1, scheduler.grammarThreads());
+
+        // 12 threads for a single sentence
+        scheduler = new ParseScheduler(1, props);
+        assertEquals(4, scheduler.cellThreads());
+        assertEquals(3, scheduler.grammarThreads());
+        assertEquals(12, scheduler.threads());
+
+        // Sentence threads exceed the budget. No intra-sentence parallelism, but we still report all sentence threads.
+        scheduler = new ParseScheduler(16, props);
+        assertEquals(1, scheduler.cellThreads());
+        assertEquals(1, scheduler.grammarThreads());
+        assertEquals(16, scheduler.threads());
+        assertNull(scheduler.pool());
+    }
+}
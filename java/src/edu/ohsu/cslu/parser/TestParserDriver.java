@@ -22,13 +22,30 @@
 
 package edu.ohsu.cslu.parser;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
 
 import org.cjunit.FilteredRunner;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import cltool4j.ToolTestCase;
+import edu.ohsu.cslu.parser.Parser.InputFormat;
+import edu.ohsu.cslu.parser.agenda.AgendaParser;
+import edu.ohsu.cslu.parser.beam.BSCPPruneViterbi;
+import edu.ohsu.cslu.parser.beam.BeamSearchChartParser;
+import edu.ohsu.cslu.parser.chart.CellChart;
+import edu.ohsu.cslu.parser.chart.DenseVectorChart;
+import edu.ohsu.cslu.parser.chart.PackedArrayChart;
+import edu.ohsu.cslu.parser.chart.QuantizedPackedArrayChart;
+import edu.ohsu.cslu.parser.ml.CoarseToFineCphSpmlParser;
+import edu.ohsu.cslu.parser.ml.GrammarLoopSpmlParser;
+import edu.ohsu.cslu.parser.ml.QuantizedCphSpmlParser;
+import edu.ohsu.cslu.parser.spmv.CscSpmvParser;
 
 /**
  * Tests {@link ParserDriver} itself, particularly options which cannot be tested outside of the driver class.
@@ -70,6 +87,53 @@ public class TestParserDriver extends ToolTestCase {
         assertEquals(expectedOutput.toString(), treeOutput(output));
     }
 
+    @Test
+    public void testLengthSortWindow() throws Exception {
+        final StringBuilder input = new StringBuilder(256);
+        input.append("The most troublesome report may be the August merchandise trade deficit due out tomorrow .\n");
+        input.append("The economy 's temperature will be taken from several vantage points this week , with readings on trade , output , housing and inflation .\n");
+        input.append("The bill passed .\n");
+
+        // Reordering dispatch should not change the output (or its order)
+        final String expectedOutput = treeOutput(executeTool(new ParserDriver(), "-g " + M0_GRAMMAR + " -if token",
+                input.toString()));
+        assertEquals(expectedOutput, treeOutput(executeTool(new ParserDriver(), "-g " + M0_GRAMMAR
+                + " -if token -xt 2 -lengthWindow 2", input.toString())));
+    }
+
+    @Test
+    public void testLengthSortedOrder() {
+        final List<String> lines = Arrays.asList(new String[] { "a b c", "a b c d e", "a", "a b c d e f g", "a b c d e" });
+        assertArrayEquals(new int[] { 3, 1, 4, 0, 2 }, ParserDriver.lengthSortedOrder(lines, InputFormat.Token, 250));
+
+        // Sentences which will be skipped are dispatched last
+        assertArrayEquals(new int[] { 1, 4, 0, 2, 3 }, ParserDriver.lengthSortedOrder(lines, InputFormat.Token, 6));
+
+        assertEquals(3, ParserDriver.estimateSentenceLength("(ROOT (S (NP (DT The) (NN bill)) (VP (VBD passed))))",
+                InputFormat.Tree));
+        assertEquals(2, ParserDriver.estimateSentenceLength("(DT The) (NN bill)", InputFormat.Tagged));
+        assertEquals(3, ParserDriver.estimateSentenceLength("  The bill  passed ", InputFormat.Text));
+    }
+
+    /**
+     * Tests resolution of the chart type populated by each parser class (used to validate output options which
+     * require a {@link PackedArrayChart})
+     */
+    @Test
+    public void testChartClass() {
+        assertEquals(PackedArrayChart.class, ParserDriver.chartClass(CscSpmvParser.class));
+        assertEquals(PackedArrayChart.class, ParserDriver.chartClass(CoarseToFineCphSpmlParser.class));
+        assertEquals(QuantizedPackedArrayChart.class, ParserDriver.chartClass(QuantizedCphSpmlParser.class));
+        assertEquals(DenseVectorChart.class, ParserDriver.chartClass(GrammarLoopSpmlParser.class));
+        assertEquals(CellChart.class, ParserDriver.chartClass(BSCPPruneViterbi.class));
+
+        // Unbound type parameters resolve to their bounds
+        assertEquals(CellChart.class, ParserDriver.chartClass(BeamSearchChartParser.class));
+
+        // Parsers which do not populate a chart
+        assertNull(ParserDriver.chartClass(AgendaParser.class));
+    }
+
     @Test
     public void testRecovery() throws Exception {
         final String input = "(ROOT (SQ (VBZ Is) (NP (NNP Nikon) (NNP low) (NNP end)) (VP (VBG moving) (PP (IN toward) (NP (NP (DT the) (JJ hellish) (NNS ergonomics)) (PP (IN of) (NP (DT the) (NNP Canon) (NNP Rebel)))))) (. ?)))";
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cltool4j.GlobalConfigProperties;
+import edu.ohsu.cslu.grammar.DecisionTreeTokenClassifier;
+import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
+import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PerfectIntPairHashPackingFunction;
+import edu.ohsu.cslu.parser.Parser.ReparseStrategy.Stage;
+import edu.ohsu.cslu.parser.ParserMetrics.Phase;
+import edu.ohsu.cslu.parser.fom.InsideProb;
+import edu.ohsu.cslu.parser.spmv.CscSpmvParser;
+import edu.ohsu.cslu.tests.JUnit;
+
+/**
+ * Unit tests for {@link ParserMetrics}
+ * 
+ * @author Aaron Dunlop
+ */
+public class TestParserMetrics {
+
+    private final static String[] SENTENCES = new String[] { "The report is due out tomorrow .",
+            "The most troublesome report may be the August merchandise trade deficit due out tomorrow .",
+            "Analysts said the report may be the August merchandise trade deficit .",
+            "The report may be due out tomorrow ." };
+
+    private static LeftCscSparseMatrixGrammar grammar;
+
+    @BeforeClass
+    public static void suiteSetUp() throws IOException {
+        GlobalConfigProperties.singleton().setProperty(Parser.PROPERTY_MAX_BEAM_WIDTH, "0");
+        grammar = new LeftCscSparseMatrixGrammar(JUnit.unitTestDataAsReader("grammars/eng.R0.gr.gz"),
+                new DecisionTreeTokenClassifier(), PerfectIntPairHashPackingFunction.class);
+    }
+
+    @AfterClass
+    public static void suiteTearDown() {
+        GlobalConfigProperties.singleton().clear();
+    }
+
+    @Test
+    public void testSampledMetrics() {
+        final ParserDriver opts = new ParserDriver();
+        opts.setGrammar(grammar);
+        opts.fomModel = new InsideProb();
+        opts.metrics = new ParserMetrics(opts, 2);
+
+        final CscSpmvParser parser = new CscSpmvParser(opts, grammar);
+        int words = 0;
+        for (final String sentence : SENTENCES) {
+            parser.parseSentence(sentence);
+            words += sentence.split(" ").length;
+        }
+        parser.shutdown();
+
+        final ParserMetrics metrics = opts.metrics;
+        assertEquals(SENTENCES.length, metrics.getSentences());
+        assertEquals(words, metrics.getWords());
+        assertEquals(0, metrics.getFailedParses());
+        assertEquals(SENTENCES.length, metrics.latency().count());
+        assertTrue(metrics.getLatencyP99Us() > 0);
+        assertTrue(metrics.getLatencyP50Us() <= metrics.getLatencyMaxUs());
+
+        // Every other sentence is sampled
+        assertEquals(SENTENCES.length / 2, metrics.getSampledSentences());
+        assertEquals(SENTENCES.length / 2, metrics.phaseLatency(Phase.InsideBinary).count());
+        assertTrue(metrics.phaseLatency(Phase.InsideBinary).max() > 0);
+
+        // Initialization and extraction usually take well under a millisecond, but should still be recorded
+        assertTrue(metrics.phaseLatency(Phase.ChartInit).max() > 0);
+        assertTrue(metrics.phaseLatency(Phase.Extract).max() > 0);
+
+        // But every reparse stage is timed
+        assertEquals(SENTENCES.length, metrics.stageLatency(Stage.EXHAUSTIVE).count());
+
+        final String summary = metrics.summary();
+        assertTrue(summary, summary.contains(" sentences=4 "));
+        assertTrue(summary, summary.contains(" latency.len1-10.count=2 "));
+        assertTrue(summary, summary.contains(" latency.len11-20.count=2 "));
+        assertTrue(summary, summary.contains(" phase.InsideBinary.count=2 "));
+        assertTrue(summary, summary.contains(" stage.EXHAUSTIVE.count=4 "));
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        final ParserDriver opts = new ParserDriver();
+        final ParserMetrics metrics = new ParserMetrics(opts, 0);
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName query = new ObjectName("edu.ohsu.cslu.parser:type=ParserMetrics,*");
+        final int registered = server.queryNames(query, null).size();
+
+        metrics.register();
+        try {
+            assertEquals(registered + 1, server.queryNames(query, null).size());
+            for (final ObjectName name : server.queryNames(query, null)) {
+                assertEquals(0L, server.getAttribute(name, "Sentences"));
+            }
+        } finally {
+            metrics.close();
+        }
+        assertEquals(registered, server.queryNames(query, null).size());
+    }
+
+    /**
+     * Retiring a model (see {@link ModelRegistry}) shuts down its parsers, and should release its metrics as well
+     */
+    @Test
+    public void testShutdownParsers() throws Exception {
+        final ParserDriver opts = new ParserDriver();
+        opts.metrics = new ParserMetrics(opts, 0);
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName query = new ObjectName("edu.ohsu.cslu.parser:type=ParserMetrics,*");
+        final int registered = server.queryNames(query, null).size();
+
+        opts.metrics.register();
+        assertEquals(registered + 1, server.queryNames(query, null).size());
+        opts.shutdownParsers();
+        assertEquals(registered, server.queryNames(query, null).size());
+    }
+}
@@ -101,13 +101,13 @@ public class BeamSearchChartParser<G extends LeftHashGrammar, C extends CellChar
     protected void initSentence(final ParseTask parseTask) {
         chart = new CellChart(parseTask, this);
 
-        final long startTimeMS = System.currentTimeMillis();
+        final long startTime = System.nanoTime();
         figureOfMerit.initSentence(parseTask, chart);
-        final long endTimeMS = System.currentTimeMillis();
-        parseTask.fomInitMs = endTimeMS - startTimeMS;
+        final long endTime = System.nanoTime();
+        parseTask.fomInitNs = endTime - startTime;
 
         cellSelector.initSentence(this, parseTask);
-        parseTask.ccInitMs = System.currentTimeMillis() - endTimeMS;
+        parseTask.ccInitNs = System.nanoTime() - endTime;
     }
 
     @Override
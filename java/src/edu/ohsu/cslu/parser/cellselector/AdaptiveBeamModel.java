@@ -42,6 +42,7 @@ import edu.ohsu.cslu.parser.chart.Chart;
 import edu.ohsu.cslu.perceptron.AdaptiveBeamClassifier;
 import edu.ohsu.cslu.perceptron.AdaptiveBeamClassifier.UnaryConstraintSequence;
 import edu.ohsu.cslu.perceptron.BeamWidthSequence;
+import edu.ohsu.cslu.perceptron.ConstituentBoundaryFeatureExtractor;
 import edu.ohsu.cslu.perceptron.MulticlassTagSequence;
 import edu.ohsu.cslu.perceptron.Tagger;
 import edu.ohsu.cslu.perceptron.UnaryConstraintClassifier;
@@ -113,6 +114,10 @@ public class AdaptiveBeamModel extends ChainableCellSelectorModel implements Cel
         private BitVector factoredOnly;
         private BitVector unariesDisallowed;
 
+        /** Feature and dot-product buffers, reused across sentences */
+        private long[] featureBuffer;
+        private float[] dotProductBuffer;
+
         public BeamWidthSelector(final CellSelector child) {
             super(child);
         }
@@ -146,14 +151,21 @@ public class AdaptiveBeamModel extends ChainableCellSelectorModel implements Cel
             final AdaptiveBeamClassifier.UnaryConstraintSequence unaryConstraintSequence = unaryConstraintClassifier != null ? new UnaryConstraintSequence(
                     task.tokens, unaryConstraintClassifier) : null;
 
+            // Extract features and compute dot-products for all cells at once, into buffers reused across sentences
+            @SuppressWarnings("unchecked")
+            final ConstituentBoundaryFeatureExtractor<BeamWidthSequence> fe = (ConstituentBoundaryFeatureExtractor<BeamWidthSequence>) classifier
+                    .featureExtractor();
+            featureBuffer = fe.featureIndices(sequence, featureBuffer);
+            dotProductBuffer = classifier.dotProducts(featureBuffer, cells, fe.templateCount(), dotProductBuffer);
+            final int dotProductCount = classifier.dotProductCount();
+
             for (short span = 1; span <= sentenceLength; span++) {
                 for (short start = 0; start < sentenceLength - span + 1; start++) {
                     final short end = (short) (start + span);
                     final int cellIndex = Chart.cellIndex(start, end, sentenceLength, false);
+                    final int dotProductOffset = cellIndex * dotProductCount;
 
-                    final BitVector featureVector = classifier.featureExtractor().featureVector(sequence, cellIndex);
-                    final float[] dotProducts = classifier.dotProducts(featureVector);
-                    final short beamClass = classifier.beamClass(dotProducts);
+                    final short beamClass = classifier.beamClass(dotProductBuffer, dotProductOffset);
                     sequence.setPredictedClass(cellIndex, beamClass);
                     final short beamWidth = classifier.beamWidth(beamClass);
                     beamWidths[cellIndex] = beamWidth;
@@ -173,7 +185,7 @@ public class AdaptiveBeamModel extends ChainableCellSelectorModel implements Cel
 
                     // Classify factored-only
                     if (span > 1 && beamWidth > 0) {
-                        factoredOnly.set(cellIndex, classifier.factoredOnly(dotProducts));
+                        factoredOnly.set(cellIndex, classifier.factoredOnly(dotProductBuffer, dotProductOffset));
                     }
                 }
             }
@@ -24,12 +24,16 @@ package edu.ohsu.cslu.parser.cellselector;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
 
+import cltool4j.GlobalConfigProperties;
 import edu.ohsu.cslu.datastructs.narytree.NaryTree.Binarization;
+import edu.ohsu.cslu.datastructs.vectors.BitVector;
 import edu.ohsu.cslu.datastructs.vectors.DenseIntVector;
 import edu.ohsu.cslu.parser.ChartParser;
 import edu.ohsu.cslu.parser.ParseTask;
+import edu.ohsu.cslu.parser.ParserDriver;
 import edu.ohsu.cslu.parser.cellselector.DepGraphCellSelectorModel.DepGraphCellSelector;
 import edu.ohsu.cslu.parser.chart.Chart;
 
@@ -46,6 +50,30 @@ public abstract class CellSelector implements CellClosureClassifier, Iterator<sh
      */
     protected boolean constraintsEnabled = true;
 
+    /**
+     * Dynamically closes cells which cannot be populated from the chart below them - i.e., cells for which every
+     * midpoint has at least one empty child cell (generally because of aggressive pruning). Disabled with
+     * {@link ParserDriver#OPT_DISABLE_DYNAMIC_CELL_CLOSURE}. Subclasses which guarantee every open cell is viable may
+     * disable it as well.
+     */
+    protected boolean dynamicCellClosure = !GlobalConfigProperties.singleton().getBooleanProperty(
+            ParserDriver.OPT_DISABLE_DYNAMIC_CELL_CLOSURE, false);
+
+    /**
+     * Midpoints at which both child cells are populated, indexed by cell index ({@link Chart#cellIndex(int, int, int)}
+     * ). Populated as each cell is reached during iteration (when {@link #dynamicCellClosure} is enabled) or on demand by
+     * {@link #viableMidpoints(short, short)}.
+     */
+    private short[][] viableMidpoints;
+
+    private final static short[] NO_MIDPOINTS = new short[0];
+
+    /**
+     * Cells to skip during iteration (e.g., cells retained from a previous pass during localized reparsing). Indexed by
+     * cell index ({@link Chart#cellIndex(int, int, int)}). Null if no cells are skipped.
+     */
+    private BitVector skippedCells;
+
     protected short[] cellIndices;
     private int nextCell = 0;
     protected int openCells;
@@ -82,6 +110,8 @@ public abstract class CellSelector implements CellClosureClassifier, Iterator<sh
         this.parser = p;
         this.parseTask = task;
         nextCell = 0;
+        skippedCells = null;
+        clearViableMidpoints();
 
         // Enable constraints at sentence initialization - if parsing fails, we may disable them for a later reparsing
         // pass
@@ -107,16 +137,97 @@ public abstract class CellSelector implements CellClosureClassifier, Iterator<sh
                 parser.waitForActiveTasks();
                 return false;
             }
-            final int nextSpan = cellIndices[(nextCell << 1) + 1] - cellIndices[nextCell << 1];
-            final int currentSpan = cellIndices[((nextCell - 1) << 1) + 1] - cellIndices[(nextCell - 1) << 1];
-            if (nextSpan > currentSpan) {
+            if (span(nextCell) > span(nextCell - 1)) {
                 parser.waitForActiveTasks();
             }
         }
 
+        if (dynamicCellClosure || skippedCells != null) {
+            // Skip any cells which cannot be built from populated child cells. All smaller spans are complete at this
+            // point, but if we skip ahead to a larger span, we must wait for the cells of the current span.
+            while (nextCell < openCells && skip(cellIndices[nextCell << 1], cellIndices[(nextCell << 1) + 1])) {
+                nextCell++;
+                if (nextCell < openCells && span(nextCell) > span(nextCell - 1)) {
+                    parser.waitForActiveTasks();
+                }
+            }
+            if (nextCell >= openCells) {
+                parser.waitForActiveTasks();
+                return false;
+            }
+        }
+
         return nextCell < openCells;
     }
 
+    private boolean skip(final short start, final short end) {
+        if (skippedCells != null && skippedCells.contains(Chart.cellIndex(start, end, parseTask.sentenceLength()))) {
+            return true;
+        }
+        return dynamicCellClosure && !computeViableMidpoints(start, end);
+    }
+
+    private int span(final int cell) {
+        return cellIndices[(cell << 1) + 1] - cellIndices[cell << 1];
+    }
+
+    /**
+     * Returns the midpoints of the specified cell at which both child cells are populated. Parsers may iterate over
+     * these midpoints instead of all midpoints from <code>start + 1</code> to <code>end - 1</code>. Valid only after
+     * all smaller cells spanned by the specified cell have been populated (i.e., during normal bottom-up iteration).
+     * 
+     * @param start
+     * @param end
+     * @return Viable midpoints of the specified cell, in ascending order
+     */
+    public short[] viableMidpoints(final short start, final short end) {
+        final int cellIndex = Chart.cellIndex(start, end, parseTask.sentenceLength());
+        if (viableMidpoints[cellIndex] == null) {
+            computeViableMidpoints(start, end);
+        }
+        return viableMidpoints[cellIndex];
+    }
+
+    /**
+     * Populates {@link #viableMidpoints} for the specified cell
+     * 
+     * @param start
+     * @param end
+     * @return true if the cell has at least one viable midpoint (or is a span-1 cell)
+     */
+    private boolean computeViableMidpoints(final short start, final short end) {
+        if (end - start == 1) {
+            viableMidpoints[Chart.cellIndex(start, end, parseTask.sentenceLength())] = NO_MIDPOINTS;
+            return true;
+        }
+
+        final Chart chart = parser.chart;
+        final short[] midpoints = new short[end - start - 1];
+        int count = 0;
+        for (short midpoint = (short) (start + 1); midpoint < end; midpoint++) {
+            if (!chart.isCellEmpty(start, midpoint) && !chart.isCellEmpty(midpoint, end)) {
+                midpoints[count++] = midpoint;
+            }
+        }
+
+        viableMidpoints[Chart.cellIndex(start, end, parseTask.sentenceLength())] = count == midpoints.length ? midpoints : Arrays
+                .copyOf(midpoints, count);
+        return count > 0;
+    }
+
+    private void clearViableMidpoints() {
+        if (parseTask == null) {
+            return;
+        }
+        final int sentenceLength = parseTask.sentenceLength();
+        final int cells = sentenceLength * (sentenceLength + 1) / 2;
+        if (viableMidpoints == null || viableMidpoints.length < cells) {
+            viableMidpoints = new short[cells][];
+        } else {
+            Arrays.fill(viableMidpoints, 0, cells, null);
+        }
+    }
+
     /**
      * This {@link Iterator} implementation does not support removal.
      */
@@ -140,6 +251,20 @@ public abstract class CellSelector implements CellClosureClassifier, Iterator<sh
     public void reset(final boolean enableConstraints) {
         this.constraintsEnabled = enableConstraints;
         nextCell = 0;
+        skippedCells = null;
+        clearViableMidpoints();
+    }
+
+    /**
+     * Reset the {@link Iterator} to the first cell, optionally disabling cell constraints, and skipping the specified
+     * cells (e.g., for localized reparsing, in which cells retained from the previous pass need not be recomputed).
+     * 
+     * @param enableConstraints
+     * @param skippedCells Cells to skip, indexed by {@link Chart#cellIndex(int, int, int)}
+     */
+    public void reset(final boolean enableConstraints, final BitVector skippedCells) {
+        reset(enableConstraints);
+        this.skippedCells = skippedCells;
     }
 
     /**
@@ -123,6 +123,9 @@ public class CompleteClosureModel extends ChainableCellSelectorModel implements
 
         private BitVector unariesDisallowed;
 
+        /** Feature buffer, reused across sentences */
+        private long[] featureBuffer;
+
         public CompleteClosureSelector(final CellSelector child) {
             super(child);
         }
@@ -168,13 +171,13 @@ public class CompleteClosureModel extends ChainableCellSelectorModel implements
                     task.inputTree.binarize(task.grammar.grammarFormat, task.grammar.binarization()), classifier)
                     : new CompleteClosureSequence(task.tokens, task.posTags, classifier);
 
+            final BitVector closedCells = new PackedBitVector(sequence.length());
+            featureBuffer = classifier.classify(sequence, featureBuffer, closedCells);
+
             for (short span = 2; span <= sentenceLength; span++) {
                 for (short start = 0; start < sentenceLength - span + 1; start++) {
 
-                    final boolean closed = classifier.classify(sequence,
-                            Chart.cellIndex(start, start + span, sentenceLength, true));
-
-                    if (!closed) {
+                    if (!closedCells.contains(Chart.cellIndex(start, start + span, sentenceLength, true))) {
                         tmpCellIndices.add(start);
                         tmpCellIndices.add((short) (start + span));
                     }
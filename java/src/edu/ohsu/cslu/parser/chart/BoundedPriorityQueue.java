@@ -79,6 +79,13 @@ public final class BoundedPriorityQueue {
         return maxTail + 1;
     }
 
+    /**
+     * @return The largest size which may be specified with {@link #setMaxSize(int)}
+     */
+    public int capacity() {
+        return nts.length;
+    }
+
     public void setMaxSize(final int maxSize) {
         final int currentMaxSize = maxTail - head + 1;
         if (maxSize != currentMaxSize) {
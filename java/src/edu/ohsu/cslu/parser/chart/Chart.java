@@ -75,6 +75,19 @@ public abstract class Chart {
      */
     public abstract ChartCell getCell(final int start, final int end);
 
+    /**
+     * Returns true if the specified cell is empty (i.e., contains no non-terminals). Subclasses may override with a more
+     * efficient implementation.
+     * 
+     * @param start
+     * @param end
+     * @return true if the specified cell contains no non-terminals
+     */
+    public boolean isCellEmpty(final int start, final int end) {
+        final ChartCell cell = getCell(start, end);
+        return cell == null || cell.getNumNTs() == 0;
+    }
+
     /**
      * Returns the root cell
      * 
@@ -117,6 +130,14 @@ public abstract class Chart {
         throw new IllegalArgumentException("Chart instance does not support getOutside(start,end,nt)");
     }
 
+    /**
+     * @return True if the chart contains outside probabilities for the current sentence (i.e., if it was populated by
+     *         an inside-outside parser and the outside pass has completed)
+     */
+    public boolean hasOutsideProbabilities() {
+        return false;
+    }
+
     public boolean hasCompleteParse(final int startSymbol) {
         return getRootCell().getInside(startSymbol) > Float.NEGATIVE_INFINITY;
     }
@@ -305,9 +326,42 @@ public abstract class Chart {
                 }
             }
         }
+
+        if (list.isEmpty()) {
+            // No populated cells in this span (e.g., the deadline expired before the lexical row was complete). Fall
+            // back to the most probable part-of-speech for each word, so the recovery parse still covers every token.
+            for (int i = start; i < end; i++) {
+                list.add(extractLexicalFragment(i));
+            }
+        }
         return list;
     }
 
+    /**
+     * @param start Word index
+     * @return A preterminal node labeled with the most probable part-of-speech of the specified word (ignoring
+     *         context)
+     */
+    private NaryTree<String> extractLexicalFragment(final int start) {
+        final int token = parseTask.tokens[start];
+        final short[] parents = grammar.lexicalParents(token);
+        final float[] logProbabilities = grammar.lexicalLogProbabilities(token);
+
+        short maxParent = -1;
+        float maxLogProbability = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < parents.length; i++) {
+            if (maxParent < 0 || logProbabilities[i] > maxLogProbability) {
+                maxParent = parents[i];
+                maxLogProbability = logProbabilities[i];
+            }
+        }
+
+        final NaryTree<String> preterminal = new NaryTree<String>(maxParent >= 0 ? grammar.grammarFormat.getBaseNT(
+                grammar.nonTermSet.getSymbol(maxParent), false) : Grammar.nullSymbolStr);
+        preterminal.addChild(grammar.lexSet.getSymbol(token));
+        return preterminal;
+    }
+
     /**
      * @param cell
      * @return unfactored tree rooted by the most-probable entry in the specified cell
@@ -51,6 +51,11 @@ public class InOutCellChart extends CellChart {
         return getCell(start, end).getOutside(nt);
     }
 
+    @Override
+    public boolean hasOutsideProbabilities() {
+        return getOutside(0, size, grammar.startSymbol) != Float.NEGATIVE_INFINITY;
+    }
+
     public class ChartCell extends edu.ohsu.cslu.parser.chart.CellChart.HashSetChartCell {
 
         public float outside[];
@@ -21,11 +21,22 @@
  */
 package edu.ohsu.cslu.parser.chart;
 
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.shorts.ShortArrayList;
+
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 import cltool4j.GlobalConfigProperties;
 import edu.ohsu.cslu.datastructs.narytree.BinaryTree;
+import edu.ohsu.cslu.datastructs.narytree.EncodedTree;
+import edu.ohsu.cslu.datastructs.narytree.HeadTable;
 import edu.ohsu.cslu.datastructs.narytree.Tree;
+import edu.ohsu.cslu.grammar.CscSparseMatrixGrammar;
 import edu.ohsu.cslu.grammar.Grammar;
 import edu.ohsu.cslu.grammar.InsideOutsideCscSparseMatrixGrammar;
 import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
@@ -34,6 +45,7 @@ import edu.ohsu.cslu.grammar.SparseMatrixGrammar;
 import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PackingFunction;
 import edu.ohsu.cslu.grammar.Vocabulary;
 import edu.ohsu.cslu.lela.ConstrainingChart;
+import edu.ohsu.cslu.parser.ParseScheduler;
 import edu.ohsu.cslu.parser.ParseTask;
 import edu.ohsu.cslu.parser.Parser;
 import edu.ohsu.cslu.parser.Parser.DecodeMethod;
@@ -165,6 +177,14 @@ public class PackedArrayChart extends ParallelArrayChart {
 
     protected final ThreadLocal<PackedArrayChart.TemporaryChartCell> threadLocalTemporaryCells;
 
+    /** Per-thread temporary storage used when decoding (see {@link #decode(ForkJoinPool)}) */
+    private final ThreadLocal<DecodeScratch> threadLocalDecodeScratch = new ThreadLocal<DecodeScratch>() {
+        @Override
+        protected DecodeScratch initialValue() {
+            return new DecodeScratch();
+        }
+    };
+
     /**
      * Constructs a chart
      * 
@@ -177,8 +197,26 @@ public class PackedArrayChart extends ParallelArrayChart {
      */
     public PackedArrayChart(final ParseTask parseTask, final SparseMatrixGrammar sparseMatrixGrammar,
             final int beamWidth, final int lexicalRowBeamWidth, final int leftChildSegments) {
+        this(parseTask, sparseMatrixGrammar, beamWidth, lexicalRowBeamWidth, leftChildSegments, true);
+    }
+
+    /**
+     * Constructs a chart
+     * 
+     * @param parseTask Current task
+     * @param sparseMatrixGrammar Grammar
+     * @param beamWidth
+     * @param lexicalRowBeamWidth
+     * @param leftChildSegments The number of 'segments' to split left children into; used to multi-thread
+     *            cartesian-product operation.
+     * @param allocateInsideProbabilities False if the subclass stores inside probabilities in another form, and
+     *            overrides {@link #insideProbability(int, int)} and related methods
+     */
+    protected PackedArrayChart(final ParseTask parseTask, final SparseMatrixGrammar sparseMatrixGrammar,
+            final int beamWidth, final int lexicalRowBeamWidth, final int leftChildSegments,
+            final boolean allocateInsideProbabilities) {
         super(parseTask, sparseMatrixGrammar, Math.min(beamWidth, sparseMatrixGrammar.numNonTerms()), Math.min(
-                lexicalRowBeamWidth, sparseMatrixGrammar.numNonTerms()));
+                lexicalRowBeamWidth, sparseMatrixGrammar.numNonTerms()), allocateInsideProbabilities);
 
         numNonTerminals = new int[maxCells];
         minLeftChildIndex = new int[maxCells];
@@ -369,6 +407,410 @@ public class PackedArrayChart extends ParallelArrayChart {
         return subtree;
     }
 
+    /**
+     * Extracts lexical dependencies from the Viterbi backpointers, without materializing a parse tree. Factored
+     * categories are flattened into their (n-ary) parent, as in {@link BinaryTree#unfactor}, and
+     * the head of each n-ary constituent is chosen by the supplied {@link HeadTable}. Each word is labeled with the
+     * constituent in which it attaches to its head; the root word is labeled with the start symbol.
+     * 
+     * Populates {@link ParseTask#dependencyHeads}, {@link ParseTask#dependencyLabels}, and
+     * {@link ParseTask#preterminals}.
+     * 
+     * @param headTable Head-percolation rules, compiled against the grammar's non-terminal vocabulary
+     */
+    public void extractDependencies(final HeadTable headTable) {
+        parseTask.dependencyHeads = new int[size];
+        parseTask.dependencyLabels = new short[size];
+        parseTask.preterminals = new short[size];
+
+        final int root = new HeadExtractor(headTable).extract(0, size, grammar.startSymbol);
+        parseTask.dependencyHeads[root] = -1;
+        parseTask.dependencyLabels[root] = grammar.startSymbol;
+    }
+
+    /**
+     * Returns the index in the parallel chart arrays of the specified non-terminal, which must be populated in the
+     * specified cell (e.g., because it was reached via a backpointer).
+     */
+    private int backpointerEntryIndex(final int start, final int end, final short nonTerminal) {
+        final int cellIndex = cellIndex(start, end);
+        final int i = entryIndex(offset(cellIndex), numNonTerminals[cellIndex], nonTerminal);
+        if (i < 0) {
+            throw new IllegalArgumentException("No " + sparseMatrixGrammar.nonTermSet.getSymbol(nonTerminal)
+                    + " in cell " + start + "," + end);
+        }
+        return i;
+    }
+
+    /**
+     * Walks Viterbi backpointers, recording a dependency from the head of each n-ary constituent to the heads of its
+     * other children. The n-ary children of constituents on the current path are maintained in a shared stack, so
+     * extraction allocates only when that stack grows.
+     */
+    private final class HeadExtractor {
+
+        private final HeadTable headTable;
+        private final Vocabulary nonTermSet = sparseMatrixGrammar.nonTermSet;
+        private final PackingFunction packingFunction = sparseMatrixGrammar.packingFunction();
+
+        /** Start and end of each stacked child (the start is replaced by the child's head word once extracted) */
+        private final IntArrayList childStarts = new IntArrayList();
+        private final IntArrayList childEnds = new IntArrayList();
+        private final ShortArrayList childNonTerminals = new ShortArrayList();
+
+        public HeadExtractor(final HeadTable headTable) {
+            this.headTable = headTable;
+        }
+
+        /**
+         * @return The index of the lexical head of the specified constituent
+         */
+        public int extract(final int start, final int end, final short parent) {
+            final int i = backpointerEntryIndex(start, end, parent);
+
+            final int edgeChildren = packedChildren[i];
+            final short leftChild = (short) packingFunction.unpackLeftChild(edgeChildren);
+            final short rightChild = packingFunction.unpackRightChild(edgeChildren);
+
+            if (rightChild == Production.LEXICAL_PRODUCTION) {
+                parseTask.preterminals[start] = parent;
+                return start;
+            }
+
+            if (rightChild == Production.UNARY_PRODUCTION) {
+                // The head of a unary production is its only child
+                return extract(start, end, leftChild);
+            }
+
+            // Binary production. Stack the n-ary children and choose the head child
+            final int base = childNonTerminals.size();
+            pushChildren(start, midpoints[i], leftChild);
+            pushChildren(midpoints[i], end, rightChild);
+            final int count = childNonTerminals.size() - base;
+            final int headChild = base + headTable.headChild(parent, childNonTerminals.elements(), base, count);
+
+            for (int child = base; child < base + count; child++) {
+                childStarts.set(child, extract(childStarts.getInt(child), childEnds.getInt(child),
+                        childNonTerminals.getShort(child)));
+            }
+
+            final int head = childStarts.getInt(headChild);
+            for (int child = base; child < base + count; child++) {
+                if (child != headChild) {
+                    parseTask.dependencyHeads[childStarts.getInt(child)] = head;
+                    parseTask.dependencyLabels[childStarts.getInt(child)] = parent;
+                }
+            }
+
+            childStarts.size(base);
+            childEnds.size(base);
+            childNonTerminals.size(base);
+            return head;
+        }
+
+        /**
+         * Stacks the n-ary children contributed by a binary child, descending through factored categories
+         */
+        private void pushChildren(final int start, final int end, final short child) {
+
+            if (nonTermSet.isFactored(child)) {
+                final int i = backpointerEntryIndex(start, end, child);
+                final int edgeChildren = packedChildren[i];
+                final short rightChild = packingFunction.unpackRightChild(edgeChildren);
+
+                if (rightChild != Production.LEXICAL_PRODUCTION) {
+                    final short leftChild = (short) packingFunction.unpackLeftChild(edgeChildren);
+                    if (rightChild == Production.UNARY_PRODUCTION) {
+                        pushChildren(start, end, leftChild);
+                    } else {
+                        pushChildren(start, midpoints[i], leftChild);
+                        pushChildren(midpoints[i], end, rightChild);
+                    }
+                    return;
+                }
+            }
+
+            childStarts.add(start);
+            childEnds.add(end);
+            childNonTerminals.add(child);
+        }
+    }
+
+    /**
+     * Encodes the Viterbi parse directly from backpointers, without constructing a {@link BinaryTree}. Factored
+     * categories are flattened as in {@link BinaryTree#unfactor}, and nodes are labeled with the indices of their
+     * unsplit categories in {@link Vocabulary#baseVocabulary()}, as written by
+     * {@link edu.ohsu.cslu.datastructs.narytree.EncodedTreeWriter}.
+     * 
+     * @param includeScores Include the inside probability of each node
+     * @return The encoded parse
+     */
+    public EncodedTree extractEncodedParse(final boolean includeScores) {
+        final TreeEncoder encoder = new TreeEncoder(includeScores);
+        encoder.encode(0, size, grammar.startSymbol);
+        return encoder.tree(Strings.splitOnSpace(parseTask.sentence));
+    }
+
+    /**
+     * Accumulates the nodes of an {@link EncodedTree} in pre-order
+     */
+    private final class TreeEncoder {
+
+        private final Vocabulary nonTermSet = sparseMatrixGrammar.nonTermSet;
+        private final PackingFunction packingFunction = sparseMatrixGrammar.packingFunction();
+
+        private final ShortArrayList labels = new ShortArrayList();
+        private final ShortArrayList arities = new ShortArrayList();
+        private final ShortArrayList tokenIndices = new ShortArrayList();
+        /** Null if scores are not included */
+        private final FloatArrayList scores;
+
+        public TreeEncoder(final boolean includeScores) {
+            this.scores = includeScores ? new FloatArrayList() : null;
+            // Ensure the base vocabulary mapping is initialized
+            nonTermSet.baseVocabulary();
+        }
+
+        /**
+         * Encodes the (unfactored) subtree rooted at the specified non-terminal
+         */
+        public void encode(final int start, final int end, final short parent) {
+            final int node = labels.size();
+            final int i = backpointerEntryIndex(start, end, parent);
+
+            labels.add(nonTermSet.getBaseIndex(parent));
+            arities.add((short) 0);
+            tokenIndices.add((short) 0);
+            if (scores != null) {
+                scores.add(insideProbability(cellIndex(start, end), i));
+            }
+
+            final int edgeChildren = packedChildren[i];
+            final short leftChild = (short) packingFunction.unpackLeftChild(edgeChildren);
+            final short rightChild = packingFunction.unpackRightChild(edgeChildren);
+
+            if (rightChild == Production.LEXICAL_PRODUCTION) {
+                tokenIndices.set(node, (short) start);
+
+            } else if (rightChild == Production.UNARY_PRODUCTION) {
+                arities.set(node, (short) 1);
+                encode(start, end, leftChild);
+
+            } else {
+                arities.set(node,
+                        (short) (encodeChildren(start, midpoints[i], leftChild) + encodeChildren(midpoints[i], end,
+                                rightChild)));
+            }
+        }
+
+        /**
+         * Encodes the n-ary children contributed by a binary child, descending through factored categories
+         * 
+         * @return The number of n-ary children encoded
+         */
+        private int encodeChildren(final int start, final int end, final short child) {
+
+            if (nonTermSet.isFactored(child)) {
+                final int i = backpointerEntryIndex(start, end, child);
+                final int edgeChildren = packedChildren[i];
+                final short rightChild = packingFunction.unpackRightChild(edgeChildren);
+
+                if (rightChild != Production.LEXICAL_PRODUCTION) {
+                    final short leftChild = (short) packingFunction.unpackLeftChild(edgeChildren);
+                    if (rightChild == Production.UNARY_PRODUCTION) {
+                        return encodeChildren(start, end, leftChild);
+                    }
+                    return encodeChildren(start, midpoints[i], leftChild)
+                            + encodeChildren(midpoints[i], end, rightChild);
+                }
+            }
+
+            encode(start, end, child);
+            return 1;
+        }
+
+        public EncodedTree tree(final String[] tokens) {
+            return new EncodedTree(tokens, labels.toShortArray(), arities.toShortArray(), tokenIndices.toShortArray(),
+                    scores != null ? scores.toFloatArray() : null);
+        }
+    }
+
+    /**
+     * Extracts all populated entries, with their backpointers. Outside probabilities are included if the parser
+     * computed them (i.e., if the start symbol in the top cell has a finite outside probability).
+     * 
+     * Hyperedge posteriors are computed from the inside and outside probabilities in the chart, so hyperedges are
+     * extracted only from charts populated by an inside-outside parser (which requires a CSC grammar). The inside
+     * probability of each child includes any unary productions applied in its cell.
+     * 
+     * @param edgeThreshold Minimum log posterior probability of hyperedges to include ({@link Float#POSITIVE_INFINITY}
+     *            to omit hyperedges)
+     * @return The populated chart entries, for output by {@link PackedForestWriter}
+     */
+    public PackedForest extractForest(final float edgeThreshold) {
+
+        // Populated cells, in chart order
+        final ShortArrayList cellStarts = new ShortArrayList();
+        final ShortArrayList cellEnds = new ShortArrayList();
+        final IntArrayList cellOffsets = new IntArrayList();
+
+        // Index in the forest entry arrays of the first entry of each chart cell. Indexed by cell index.
+        final int[] forestOffsets = new int[size * (size + 1) / 2];
+        int entries = 0;
+        for (short start = 0; start < size; start++) {
+            for (short end = (short) (start + 1); end <= size; end++) {
+                final int cellIndex = cellIndex(start, end);
+                forestOffsets[cellIndex] = entries;
+                if (numNonTerminals[cellIndex] > 0) {
+                    cellStarts.add(start);
+                    cellEnds.add(end);
+                    cellOffsets.add(entries);
+                    entries += numNonTerminals[cellIndex];
+                }
+            }
+        }
+        cellOffsets.add(entries);
+
+        final boolean outside = hasOutsideProbabilities();
+
+        final short[] forestNonTerminals = new short[entries];
+        final float[] forestInsideProbabilities = new float[entries];
+        final float[] forestOutsideProbabilities = outside ? new float[entries] : null;
+        final short[] forestMidpoints = new short[entries];
+        final short[] leftChildren = new short[entries];
+        final short[] rightChildren = new short[entries];
+        final PackingFunction pf = sparseMatrixGrammar.packingFunction();
+
+        for (int cell = 0; cell < cellStarts.size(); cell++) {
+            final short start = cellStarts.getShort(cell);
+            final int cellIndex = cellIndex(start, cellEnds.getShort(cell));
+            final int offset = offset(cellIndex);
+
+            for (int i = offset, j = cellOffsets.getInt(cell); i < offset + numNonTerminals[cellIndex]; i++, j++) {
+                forestNonTerminals[j] = nonTerminalIndices[i];
+                forestInsideProbabilities[j] = insideProbability(cellIndex, i);
+                if (outside) {
+                    forestOutsideProbabilities[j] = outsideProbabilities[i];
+                }
+                forestMidpoints[j] = midpoints[i];
+                rightChildren[j] = pf.unpackRightChild(packedChildren[i]);
+                leftChildren[j] = rightChildren[j] == Production.LEXICAL_PRODUCTION ? start : (short) pf
+                        .unpackLeftChild(packedChildren[i]);
+            }
+        }
+
+        final ForestEdges edges = new ForestEdges(forestOffsets);
+        if (outside && edgeThreshold != Float.POSITIVE_INFINITY) {
+            edges.extract(edgeThreshold, getInside(0, size, sparseMatrixGrammar.startSymbol));
+        }
+
+        return new PackedForest(Strings.splitOnSpace(parseTask.sentence), cellStarts.toShortArray(),
+                cellEnds.toShortArray(), cellOffsets.toIntArray(), forestNonTerminals, forestInsideProbabilities,
+                forestOutsideProbabilities, forestMidpoints, leftChildren, rightChildren, edges.parents.toIntArray(),
+                edges.leftChildren.toIntArray(), edges.rightChildren.toIntArray(),
+                edges.probabilities.toFloatArray(), edges.posteriors.toFloatArray());
+    }
+
+    /**
+     * Enumerates the binary and unary hyperedges connecting populated chart entries
+     */
+    private final class ForestEdges {
+
+        private final IntArrayList parents = new IntArrayList();
+        private final IntArrayList leftChildren = new IntArrayList();
+        private final IntArrayList rightChildren = new IntArrayList();
+        private final FloatArrayList probabilities = new FloatArrayList();
+        private final FloatArrayList posteriors = new FloatArrayList();
+
+        /** Index in the forest entry arrays of the first entry of each chart cell. Indexed by cell index. */
+        private final int[] forestOffsets;
+
+        public ForestEdges(final int[] forestOffsets) {
+            this.forestOffsets = forestOffsets;
+        }
+
+        /**
+         * @param threshold Minimum log posterior probability of an edge
+         * @param rootInside Inside probability of the start symbol in the top cell (the sentence probability)
+         */
+        public void extract(final float threshold, final float rootInside) {
+
+            final PackingFunction pf = sparseMatrixGrammar.packingFunction();
+            final CscSparseMatrixGrammar g = (CscSparseMatrixGrammar) sparseMatrixGrammar;
+
+            for (short start = 0; start < size; start++) {
+                for (short end = (short) (start + 1); end <= size; end++) {
+                    final int cellIndex = cellIndex(start, end);
+                    final int offset = offset(cellIndex);
+                    final int population = numNonTerminals[cellIndex];
+
+                    // Binary edges
+                    for (short midpoint = (short) (start + 1); population > 0 && midpoint < end; midpoint++) {
+                        final int leftCellIndex = cellIndex(start, midpoint);
+                        final int rightCellIndex = cellIndex(midpoint, end);
+                        final int leftOffset = offset(leftCellIndex), rightOffset = offset(rightCellIndex);
+
+                        for (int l = leftOffset; l < leftOffset + numNonTerminals[leftCellIndex]; l++) {
+                            for (int r = rightOffset; r < rightOffset + numNonTerminals[rightCellIndex]; r++) {
+                                final int column = pf.pack(nonTerminalIndices[l], nonTerminalIndices[r]);
+                                if (column == Integer.MIN_VALUE) {
+                                    continue;
+                                }
+
+                                final float childInside = insideProbability(leftCellIndex, l)
+                                        + insideProbability(rightCellIndex, r);
+                                final int columnEnd = g.cscBinaryColumnOffsets[column + 1];
+                                for (int k = g.cscBinaryColumnOffsets[column]; k < columnEnd; k++) {
+                                    final int parent = entryIndex(offset, population, g.cscBinaryRowIndices[k]);
+                                    if (parent >= 0) {
+                                        add(threshold, rootInside, g.cscBinaryProbabilities[k], childInside,
+                                                cellIndex, parent, leftCellIndex, l, rightCellIndex, r);
+                                    }
+                                }
+                            }
+                        }
+                    }
+
+                    // Unary edges
+                    for (int c = offset; c < offset + population; c++) {
+                        final short child = nonTerminalIndices[c];
+                        for (int k = g.cscUnaryColumnOffsets[child]; k < g.cscUnaryColumnOffsets[child + 1]; k++) {
+                            final int parent = entryIndex(offset, population, g.cscUnaryRowIndices[k]);
+                            if (parent >= 0 && parent != c) {
+                                add(threshold, rootInside, g.cscUnaryProbabilities[k],
+                                        insideProbability(cellIndex, c), cellIndex, parent, cellIndex, c, -1, -1);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Records an edge if its posterior probability exceeds the threshold. Parent and child entries are specified
+         * by their cell indices and indices in the chart arrays; the right child is -1 for unary edges.
+         */
+        private void add(final float threshold, final float rootInside, final float probability,
+                final float childInside, final int cellIndex, final int parent, final int leftCellIndex,
+                final int leftChild, final int rightCellIndex, final int rightChild) {
+
+            final float posterior = outsideProbabilities[parent] + probability + childInside - rootInside;
+            if (posterior < threshold) {
+                return;
+            }
+
+            parents.add(forestIndex(cellIndex, parent));
+            leftChildren.add(forestIndex(leftCellIndex, leftChild));
+            rightChildren.add(rightChild < 0 ? -1 : forestIndex(rightCellIndex, rightChild));
+            probabilities.add(probability);
+            posteriors.add(posterior);
+        }
+
+        private int forestIndex(final int cellIndex, final int chartIndex) {
+            return forestOffsets[cellIndex] + chartIndex - offset(cellIndex);
+        }
+    }
+
     @Override
     public float getInside(final int start, final int end, final int nonTerminal) {
         final int cellIndex = cellIndex(start, end);
@@ -378,9 +820,43 @@ public class PackedArrayChart extends ParallelArrayChart {
         if (index < 0) {
             return Float.NEGATIVE_INFINITY;
         }
+        return insideProbability(cellIndex, index);
+    }
+
+    /**
+     * Returns the inside probability of a chart entry. Subclasses which store inside probabilities in another form
+     * (see {@link QuantizedPackedArrayChart}) override this method, {@link #setInsideProbability(int, int, float)},
+     * and {@link #cellInsideProbabilities(int)}, as well as {@link #copyCell(PackedArrayChart, int, int)} and
+     * {@link #restoreCell(CellSnapshot, int, int)}.
+     * 
+     * @param cellIndex
+     * @param index Index of the entry in the chart arrays
+     * @return The inside probability of the specified entry
+     */
+    protected float insideProbability(final int cellIndex, final int index) {
         return insideProbabilities[index];
     }
 
+    /**
+     * Stores the inside probability of a chart entry
+     * 
+     * @param cellIndex
+     * @param index Index of the entry in the chart arrays
+     * @param insideProbability
+     */
+    protected void setInsideProbability(final int cellIndex, final int index, final float insideProbability) {
+        insideProbabilities[index] = insideProbability;
+    }
+
+    /**
+     * @param cellIndex
+     * @return A copy of the inside probabilities of the populated entries in the specified cell
+     */
+    protected float[] cellInsideProbabilities(final int cellIndex) {
+        final int offset = cellOffsets[cellIndex];
+        return Arrays.copyOfRange(insideProbabilities, offset, offset + numNonTerminals[cellIndex]);
+    }
+
     /**
      * Decodes the packed parse forest using the specified decoding method (e.g., {@link DecodeMethod#Goodman},
      * {@link DecodeMethod#MaxRuleProd}, etc.)
@@ -388,19 +864,31 @@ public class PackedArrayChart extends ParallelArrayChart {
      * @return The extracted binary tree
      */
     public BinaryTree<String> decode() {
+        return decode(null);
+    }
+
+    /**
+     * Decodes the packed parse forest using the specified decoding method (e.g., {@link DecodeMethod#Goodman},
+     * {@link DecodeMethod#MaxRuleProd}, etc.). The maxc and max-rule scores of each cell depend only on cells of
+     * smaller span, so if a thread pool is supplied, all cells of a span are decoded concurrently.
+     * 
+     * @param threadPool Thread pool used to decode cells of each span in parallel. If null, decoding is single-threaded.
+     * @return The extracted binary tree
+     */
+    public BinaryTree<String> decode(final ForkJoinPool threadPool) {
 
         switch (parseTask.decodeMethod) {
 
         case Goodman:
-            computeGoodmanMaxc();
+            computeGoodmanMaxc(threadPool);
             return extractMaxcParse(0, size);
 
         case SplitSum:
-            computeSplitSumMaxc();
+            computeSplitSumMaxc(threadPool);
             return extractMaxcParse(0, size);
 
         case MaxRuleProd:
-            return decodeMaxRuleProductParse((InsideOutsideCscSparseMatrixGrammar) grammar);
+            return decodeMaxRuleProductParse((InsideOutsideCscSparseMatrixGrammar) grammar, threadPool);
 
         case ViterbiMax:
             // TODO Rename extractBestParse to extractViterbiParse, switch references to use decode() instead.
@@ -411,73 +899,112 @@ public class PackedArrayChart extends ParallelArrayChart {
         }
     }
 
+    /**
+     * Applies a {@link CellDecoder} to each cell of the chart, bottom-up. Cells of the same span are processed in
+     * parallel if a thread pool is supplied.
+     * 
+     * @param threadPool Thread pool (null for single-threaded execution)
+     * @param cellDecoder
+     */
+    private void decodeBottomUp(final ForkJoinPool threadPool, final CellDecoder cellDecoder) {
+
+        for (short span = 1; span <= size; span++) {
+            if (threadPool == null || span == size) {
+                for (short start = 0; start < size - span + 1; start++) {
+                    cellDecoder.decode(start, (short) (start + span));
+                }
+
+            } else {
+                final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(size - span + 1);
+                for (short start = 0; start < size - span + 1; start++) {
+                    final short cellStart = start;
+                    final short cellEnd = (short) (start + span);
+                    tasks.add(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            cellDecoder.decode(cellStart, cellEnd);
+                            return null;
+                        }
+                    });
+                }
+                ParseScheduler.invokeAll(threadPool, tasks);
+            }
+        }
+    }
+
     /**
      * Computes 'maxc', per the algorithm in Figure 1 of Joshua Goodman, 1996, 'Parsing Algorithms and Metrics'.
      * 
      * Uses lambda as per Equation 7, Appendix A of Hollingshead and Roark, 'Pipeline Iteration'.
      * 
      */
-    private void computeGoodmanMaxc() {
+    private void computeGoodmanMaxc(final ForkJoinPool threadPool) {
 
-        final PackingFunction pf = sparseMatrixGrammar.packingFunction;
         maxcVocabulary = sparseMatrixGrammar.nonTermSet;
         initMaxc();
 
         // Start symbol inside-probability (e in Goodman's notation)
         final float startSymbolInsideProbability = startSymbolInsideProbability();
 
-        for (short span = 1; span <= size; span++) {
-            for (short start = 0; start < size - span + 1; start++) {
-                final int end = start + span;
-                final int cellIndex = cellIndex(start, end);
-                final int offset = offset(cellIndex);
+        decodeBottomUp(threadPool, new CellDecoder() {
+            @Override
+            public void decode(final short start, final short end) {
+                computeGoodmanMaxc(start, end, startSymbolInsideProbability);
+            }
+        });
+    }
 
-                // maxg = max(posterior probability / e).
-                double maxg = Double.NEGATIVE_INFINITY;
-                for (int i = offset; i < offset + numNonTerminals[cellIndex]; i++) {
+    private void computeGoodmanMaxc(final short start, final int end, final float startSymbolInsideProbability) {
 
-                    final short nt = nonTerminalIndices[i];
-
-                    // Factored non-terminals do not contribute to the final parse tree, so their maxc score is 0
-                    final double g = maxcVocabulary.isFactored(nt) ? 0 : Math.exp(insideProbabilities[i]
-                            + outsideProbabilities[i] - startSymbolInsideProbability)
-                            - (span > 1 ? lambda : 0);
-
-                    // Bias toward recovering unary parents in the case of a tie (e.g., when ROOT and S are tied in the
-                    // top cell)
-                    final boolean unaryParent = pf.unpackRightChild(packedChildren[i]) == Production.UNARY_PRODUCTION;
-                    if (g > maxg || (g == maxg && unaryParent)) {
-                        maxg = g;
-                        maxcEntries[cellIndex] = nt;
-
-                        // Addition to Goodman's algorithm: if the best path to the highest-scoring non-terminal was
-                        // through a unary child, record that unary child as well. Note that this requires we store
-                        // unary backpointers during the inside parsing pass.
-                        if (unaryParent) {
-                            maxcUnaryChildren[cellIndex] = (short) pf.unpackLeftChild(packedChildren[i]);
-                        } else {
-                            maxcUnaryChildren[cellIndex] = Short.MIN_VALUE;
-                        }
-                    }
-                }
+        final PackingFunction pf = sparseMatrixGrammar.packingFunction;
+        final int span = end - start;
+        final int cellIndex = cellIndex(start, end);
+        final int offset = offset(cellIndex);
+
+        // maxg = max(posterior probability / e).
+        double maxg = Double.NEGATIVE_INFINITY;
+        for (int i = offset; i < offset + numNonTerminals[cellIndex]; i++) {
+
+            final short nt = nonTerminalIndices[i];
+
+            // Factored non-terminals do not contribute to the final parse tree, so their maxc score is 0
+            final double g = maxcVocabulary.isFactored(nt) ? 0 : Math.exp(insideProbability(cellIndex, i)
+                    + outsideProbabilities[i] - startSymbolInsideProbability)
+                    - (span > 1 ? lambda : 0);
+
+            // Bias toward recovering unary parents in the case of a tie (e.g., when ROOT and S are tied in the
+            // top cell)
+            final boolean unaryParent = pf.unpackRightChild(packedChildren[i]) == Production.UNARY_PRODUCTION;
+            if (g > maxg || (g == maxg && unaryParent)) {
+                maxg = g;
+                maxcEntries[cellIndex] = nt;
 
-                if (span == 1) {
-                    maxcScores[cellIndex] = maxg;
+                // Addition to Goodman's algorithm: if the best path to the highest-scoring non-terminal was
+                // through a unary child, record that unary child as well. Note that this requires we store
+                // unary backpointers during the inside parsing pass.
+                if (unaryParent) {
+                    maxcUnaryChildren[cellIndex] = (short) pf.unpackLeftChild(packedChildren[i]);
                 } else {
-                    // Iterate over possible binary child cells, to find the maximum midpoint ('max split')
-                    double bestSplit = Double.NEGATIVE_INFINITY;
-                    for (short midpoint = (short) (start + 1); midpoint < end; midpoint++) {
-
-                        // maxc = max(posterior probability) + max(maxc(children)). Also store midpoints for use when
-                        // extracting the parse tree
-                        final double split = maxcScores[cellIndex(start, midpoint)]
-                                + maxcScores[cellIndex(midpoint, end)];
-                        if (split > bestSplit) {
-                            bestSplit = split;
-                            maxcScores[cellIndex] = maxg + split;
-                            maxcMidpoints[cellIndex] = midpoint;
-                        }
-                    }
+                    maxcUnaryChildren[cellIndex] = Short.MIN_VALUE;
+                }
+            }
+        }
+
+        if (span == 1) {
+            maxcScores[cellIndex] = maxg;
+        } else {
+            // Iterate over possible binary child cells, to find the maximum midpoint ('max split')
+            double bestSplit = Double.NEGATIVE_INFINITY;
+            for (short midpoint = (short) (start + 1); midpoint < end; midpoint++) {
+
+                // maxc = max(posterior probability) + max(maxc(children)). Also store midpoints for use when
+                // extracting the parse tree
+                final double split = maxcScores[cellIndex(start, midpoint)]
+                        + maxcScores[cellIndex(midpoint, end)];
+                if (split > bestSplit) {
+                    bestSplit = split;
+                    maxcScores[cellIndex] = maxg + split;
+                    maxcMidpoints[cellIndex] = midpoint;
                 }
             }
         }
@@ -505,7 +1032,7 @@ public class PackedArrayChart extends ParallelArrayChart {
         if (startSymbolIndex < 0) {
             throw new IllegalArgumentException("Parse failure");
         }
-        final float startSymbolInsideProbability = insideProbabilities[startSymbolIndex];
+        final float startSymbolInsideProbability = insideProbability(topCellIndex, startSymbolIndex);
 
         return startSymbolInsideProbability;
     }
@@ -517,96 +1044,100 @@ public class PackedArrayChart extends ParallelArrayChart {
      * Uses lambda as per {@link #computeGoodmanMaxc()} - from Equation 7, Appendix A of Hollingshead and Roark,
      * 'Pipeline Iteration'.
      */
-    private void computeSplitSumMaxc() {
+    private void computeSplitSumMaxc(final ForkJoinPool threadPool) {
 
-        final PackingFunction pf = sparseMatrixGrammar.packingFunction;
         maxcVocabulary = sparseMatrixGrammar.nonTermSet.baseVocabulary();
         initMaxc();
 
         // Start symbol inside-probability (e in Goodman's notation)
         final float startSymbolInsideProbability = startSymbolInsideProbability();
 
-        for (short span = 1; span <= size; span++) {
-            for (short start = 0; start < size - span + 1; start++) {
-                final int end = start + span;
-                final int cellIndex = cellIndex(start, end);
-                final int offset = offset(cellIndex);
+        decodeBottomUp(threadPool, new CellDecoder() {
+            @Override
+            public void decode(final short start, final short end) {
+                computeSplitSumMaxc(start, end, startSymbolInsideProbability);
+            }
+        });
+    }
 
-                // maxg = max(posterior probability / e).
-                final float[] baseSumProbabilities = new float[maxcVocabulary.size()];
-                final short[] unaryChildren = new short[maxcVocabulary.size()];
-                Arrays.fill(baseSumProbabilities, Float.NEGATIVE_INFINITY);
-                Arrays.fill(unaryChildren, Short.MIN_VALUE);
+    private void computeSplitSumMaxc(final short start, final int end, final float startSymbolInsideProbability) {
 
-                final float[] maxBaseProbabilities = new float[maxcVocabulary.size()];
-                Arrays.fill(maxBaseProbabilities, Float.NEGATIVE_INFINITY);
+        final PackingFunction pf = sparseMatrixGrammar.packingFunction;
+        final int span = end - start;
+        final int cellIndex = cellIndex(start, end);
+        final int offset = offset(cellIndex);
 
-                for (int i = offset; i < offset + numNonTerminals[cellIndex]; i++) {
-                    final float posteriorProbability = insideProbabilities[i] + outsideProbabilities[i];
-                    final short baseNt = sparseMatrixGrammar.nonTermSet.getBaseIndex(nonTerminalIndices[i]);
+        final DecodeScratch scratch = threadLocalDecodeScratch.get();
+        final float[] baseSumProbabilities = scratch.baseSumProbabilities(maxcVocabulary.size());
+        final short[] unaryChildren = scratch.unaryChildren(maxcVocabulary.size());
+        final float[] maxBaseProbabilities = scratch.maxBaseProbabilities(maxcVocabulary.size());
 
-                    if (APPROXIMATE_SUM) {
-                        baseSumProbabilities[baseNt] = edu.ohsu.cslu.util.Math.approximateLogSum(
-                                baseSumProbabilities[baseNt], posteriorProbability, SUM_DELTA);
-                    } else {
-                        baseSumProbabilities[baseNt] = edu.ohsu.cslu.util.Math.logSum(baseSumProbabilities[baseNt],
-                                posteriorProbability, SUM_DELTA);
-                    }
+        // maxg = max(posterior probability / e).
 
-                    if (posteriorProbability > maxBaseProbabilities[baseNt]) {
-                        maxBaseProbabilities[baseNt] = posteriorProbability;
-                        // If the (current) maximum-probability split of the base nonterminal is a unary parent, record
-                        // the base nonterminal as a unary parent with the appropriate unary child
-                        if (pf.unpackRightChild(packedChildren[i]) == Production.UNARY_PRODUCTION) {
-                            unaryChildren[baseNt] = sparseMatrixGrammar.nonTermSet.getBaseIndex((short) pf
-                                    .unpackLeftChild(packedChildren[i]));
-                        } else {
-                            unaryChildren[baseNt] = Short.MIN_VALUE;
-                        }
-                    }
+        for (int i = offset; i < offset + numNonTerminals[cellIndex]; i++) {
+            final float posteriorProbability = insideProbability(cellIndex, i) + outsideProbabilities[i];
+            final short baseNt = sparseMatrixGrammar.nonTermSet.getBaseIndex(nonTerminalIndices[i]);
+
+            if (APPROXIMATE_SUM) {
+                baseSumProbabilities[baseNt] = edu.ohsu.cslu.util.Math.approximateLogSum(
+                        baseSumProbabilities[baseNt], posteriorProbability, SUM_DELTA);
+            } else {
+                baseSumProbabilities[baseNt] = edu.ohsu.cslu.util.Math.logSum(baseSumProbabilities[baseNt],
+                        posteriorProbability, SUM_DELTA);
+            }
+
+            if (posteriorProbability > maxBaseProbabilities[baseNt]) {
+                maxBaseProbabilities[baseNt] = posteriorProbability;
+                // If the (current) maximum-probability split of the base nonterminal is a unary parent, record
+                // the base nonterminal as a unary parent with the appropriate unary child
+                if (pf.unpackRightChild(packedChildren[i]) == Production.UNARY_PRODUCTION) {
+                    unaryChildren[baseNt] = sparseMatrixGrammar.nonTermSet.getBaseIndex((short) pf
+                            .unpackLeftChild(packedChildren[i]));
+                } else {
+                    unaryChildren[baseNt] = Short.MIN_VALUE;
                 }
-                double maxg = Double.NEGATIVE_INFINITY;
+            }
+        }
+        double maxg = Double.NEGATIVE_INFINITY;
 
-                // Compute g scores for each base NT and record the max
-                for (short baseNt = 0; baseNt < baseSumProbabilities.length; baseNt++) {
+        // Compute g scores for each base NT and record the max
+        for (short baseNt = 0; baseNt < baseSumProbabilities.length; baseNt++) {
 
-                    // Factored non-terminals do not contribute to the final parse tree, so their maxc score is 0
-                    final double g = maxcVocabulary.isFactored(baseNt) ? 0 : Math.exp(baseSumProbabilities[baseNt]
-                            - startSymbolInsideProbability)
-                            - (span > 1 ? lambda : 0);
+            // Factored non-terminals do not contribute to the final parse tree, so their maxc score is 0
+            final double g = maxcVocabulary.isFactored(baseNt) ? 0 : Math.exp(baseSumProbabilities[baseNt]
+                    - startSymbolInsideProbability)
+                    - (span > 1 ? lambda : 0);
 
-                    // Bias toward recovering unary parents in the case of a tie (e.g., when ROOT and S are tied in the
-                    // top cell)
-                    if (g > maxg || (g == maxg && unaryChildren[baseNt] >= 0)) {
-                        maxg = g;
-                        maxcEntries[cellIndex] = baseNt;
-                    }
-                }
+            // Bias toward recovering unary parents in the case of a tie (e.g., when ROOT and S are tied in the
+            // top cell)
+            if (g > maxg || (g == maxg && unaryChildren[baseNt] >= 0)) {
+                maxg = g;
+                maxcEntries[cellIndex] = baseNt;
+            }
+        }
 
-                // Addition to Goodman's algorithm: if the best path to the highest-scoring non-terminal was
-                // through a unary child, record that unary child as well. Note that this requires we store
-                // unary backpointers during the inside parsing pass.
-                maxcUnaryChildren[cellIndex] = unaryChildren[maxcEntries[cellIndex]];
+        // Addition to Goodman's algorithm: if the best path to the highest-scoring non-terminal was
+        // through a unary child, record that unary child as well. Note that this requires we store
+        // unary backpointers during the inside parsing pass.
+        maxcUnaryChildren[cellIndex] = unaryChildren[maxcEntries[cellIndex]];
 
-                // For span-1 cells, maxc = maxg
-                if (span == 1) {
-                    maxcScores[cellIndex] = maxg;
-                } else {
-                    // For span > 1, we must iterate over possible binary child cells, to find the maximum midpoint
-                    // ('max split')
-                    double bestSplit = Double.NEGATIVE_INFINITY;
-                    for (short midpoint = (short) (start + 1); midpoint < end; midpoint++) {
-
-                        // maxc = max(posterior probability) + max(maxc(children)). Also store midpoints for use when
-                        // extracting the parse tree
-                        final double split = maxcScores[cellIndex(start, midpoint)]
-                                + maxcScores[cellIndex(midpoint, end)];
-                        if (split > bestSplit) {
-                            bestSplit = split;
-                            maxcScores[cellIndex] = maxg + split;
-                            maxcMidpoints[cellIndex] = midpoint;
-                        }
-                    }
+        // For span-1 cells, maxc = maxg
+        if (span == 1) {
+            maxcScores[cellIndex] = maxg;
+        } else {
+            // For span > 1, we must iterate over possible binary child cells, to find the maximum midpoint
+            // ('max split')
+            double bestSplit = Double.NEGATIVE_INFINITY;
+            for (short midpoint = (short) (start + 1); midpoint < end; midpoint++) {
+
+                // maxc = max(posterior probability) + max(maxc(children)). Also store midpoints for use when
+                // extracting the parse tree
+                final double split = maxcScores[cellIndex(start, midpoint)]
+                        + maxcScores[cellIndex(midpoint, end)];
+                if (split > bestSplit) {
+                    bestSplit = split;
+                    maxcScores[cellIndex] = maxg + split;
+                    maxcMidpoints[cellIndex] = midpoint;
                 }
             }
         }
@@ -652,7 +1183,7 @@ public class PackedArrayChart extends ParallelArrayChart {
                 float maxSplitProb = Float.NEGATIVE_INFINITY;
                 short splitParent = -1;
                 for (int i = offset; i < offset + numNonTerms; i++) {
-                    final float posteriorProbability = insideProbabilities[i] + outsideProbabilities[i];
+                    final float posteriorProbability = insideProbability(cellIndex, i) + outsideProbabilities[i];
                     if (posteriorProbability > maxSplitProb
                             && sparseMatrixGrammar.nonTermSet.getBaseIndex(nonTerminalIndices[i]) == parent) {
                         maxSplitProb = posteriorProbability;
@@ -695,199 +1226,202 @@ public class PackedArrayChart extends ParallelArrayChart {
      * Computes max-rule-product parse, as described in Figure 3 of Petrov and Klein, 1997, 'Improved Inference for
      * Unlexicalized Parsing'.
      */
-    private BinaryTree<String> decodeMaxRuleProductParse(final InsideOutsideCscSparseMatrixGrammar cscGrammar) {
+    private BinaryTree<String> decodeMaxRuleProductParse(final InsideOutsideCscSparseMatrixGrammar cscGrammar,
+            final ForkJoinPool threadPool) {
 
         maxcVocabulary = cscGrammar.nonTermSet.baseVocabulary();
 
         // Start symbol inside-probability (P_in(root,0,n) in Petrov's notation)
         final float startSymbolInsideProbability = startSymbolInsideProbability();
 
-        for (short span = 1; span <= size; span++) {
-            for (short start = 0; start < size - span + 1; start++) {
+        decodeBottomUp(threadPool, new CellDecoder() {
+            @Override
+            public void decode(final short start, final short end) {
+                computeMaxRuleProduct(cscGrammar, start, end, startSymbolInsideProbability);
+            }
+        });
 
-                final short end = (short) (start + span);
-                final int cellIndex = cellIndex(start, end);
-                Arrays.fill(maxQMidpoints[cellIndex], (short) -1);
-                Arrays.fill(maxQ[cellIndex], Float.NEGATIVE_INFINITY);
-                Arrays.fill(maxQLeftChildren[cellIndex], (short) -1);
-                Arrays.fill(maxQRightChildren[cellIndex], (short) -1);
+        return extractMaxQParse(0, size, maxcVocabulary.startSymbol(), maxcVocabulary);
+    }
 
-                // Initialize lexical entries in the score arrays - sum outside probability x production probability
-                // over all nonterminal splits
-                if (end - start == 1) {
-                    final float[] r = new float[maxcVocabulary.size()];
-                    Arrays.fill(r, Float.NEGATIVE_INFINITY);
+    private void computeMaxRuleProduct(final InsideOutsideCscSparseMatrixGrammar cscGrammar, final short start,
+            final short end, final float startSymbolInsideProbability) {
 
-                    final int offset = offset(cellIndex);
-                    for (int i = offset; i < offset + numNonTerminals[cellIndex]; i++) {
-                        final short parent = nonTerminalIndices[i];
-                        if (grammar.isPos(parent)) {
-                            final short baseParent = cscGrammar.nonTermSet.getBaseIndex(parent);
-                            maxQMidpoints[cellIndex][baseParent] = end;
-                            // Left child is implied by marking the production as lexical. Unaries will be handled
-                            // below.
-                            if (APPROXIMATE_SUM) {
-                                r[baseParent] = edu.ohsu.cslu.util.Math.approximateLogSum(
-                                        r[baseParent],
-                                        outsideProbabilities[i]
-                                                + cscGrammar.lexicalLogProbability(parent, parseTask.tokens[start]),
-                                        SUM_DELTA);
-                            } else {
-                                r[baseParent] = edu.ohsu.cslu.util.Math.logSum(r[baseParent], outsideProbabilities[i]
-                                        + cscGrammar.lexicalLogProbability(parent, parseTask.tokens[start]), SUM_DELTA);
-                            }
-                            maxQRightChildren[cellIndex][baseParent] = Production.LEXICAL_PRODUCTION;
-                        }
-                    }
-                    for (int baseParent = 0; baseParent < maxcVocabulary.size(); baseParent++) {
-                        if (r[baseParent] > Float.NEGATIVE_INFINITY) {
-                            maxQ[cellIndex][baseParent] = r[baseParent] - startSymbolInsideProbability;
-                        }
+        final DecodeScratch scratch = threadLocalDecodeScratch.get();
+        final int cellIndex = cellIndex(start, end);
+        Arrays.fill(maxQMidpoints[cellIndex], (short) -1);
+        Arrays.fill(maxQ[cellIndex], Float.NEGATIVE_INFINITY);
+        Arrays.fill(maxQLeftChildren[cellIndex], (short) -1);
+        Arrays.fill(maxQRightChildren[cellIndex], (short) -1);
+
+        // Initialize lexical entries in the score arrays - sum outside probability x production probability
+        // over all nonterminal splits
+        if (end - start == 1) {
+            final float[] r = scratch.baseSumProbabilities(maxcVocabulary.size());
+
+            final int offset = offset(cellIndex);
+            for (int i = offset; i < offset + numNonTerminals[cellIndex]; i++) {
+                final short parent = nonTerminalIndices[i];
+                if (grammar.isPos(parent)) {
+                    final short baseParent = cscGrammar.nonTermSet.getBaseIndex(parent);
+                    maxQMidpoints[cellIndex][baseParent] = end;
+                    // Left child is implied by marking the production as lexical. Unaries will be handled
+                    // below.
+                    if (APPROXIMATE_SUM) {
+                        r[baseParent] = edu.ohsu.cslu.util.Math.approximateLogSum(
+                                r[baseParent],
+                                outsideProbabilities[i]
+                                        + cscGrammar.lexicalLogProbability(parent, parseTask.tokens[start]),
+                                SUM_DELTA);
+                    } else {
+                        r[baseParent] = edu.ohsu.cslu.util.Math.logSum(r[baseParent], outsideProbabilities[i]
+                                + cscGrammar.lexicalLogProbability(parent, parseTask.tokens[start]), SUM_DELTA);
                     }
+                    maxQRightChildren[cellIndex][baseParent] = Production.LEXICAL_PRODUCTION;
                 }
+            }
+            for (int baseParent = 0; baseParent < maxcVocabulary.size(); baseParent++) {
+                if (r[baseParent] > Float.NEGATIVE_INFINITY) {
+                    maxQ[cellIndex][baseParent] = r[baseParent] - startSymbolInsideProbability;
+                }
+            }
+        }
 
-                final int parentStart = offset(cellIndex);
-                final int parentEnd = parentStart + numNonTerminals[cellIndex];
-
-                // Iterate over all possible midpoints
-                for (short midpoint = (short) (start + 1); midpoint <= end - 1; midpoint++) {
+        final int parentStart = offset(cellIndex);
+        final int parentEnd = parentStart + numNonTerminals[cellIndex];
 
-                    // Since Petrov's 'r' is a sum over unsplit categories, we compute a temporary r array for each
-                    // midpoint and then maximize over midpoints
-                    // currentMidpointR is indexed by base parent, base left child, base right child
-                    final float[][][] r = new float[maxcVocabulary.size()][][];
+        // Iterate over all possible midpoints
+        for (short midpoint = (short) (start + 1); midpoint <= end - 1; midpoint++) {
 
-                    final int leftCellIndex = cellIndex(start, midpoint);
-                    final int rightCellIndex = cellIndex(midpoint, end);
+            // Since Petrov's 'r' is a sum over unsplit categories, we compute a temporary r array for each
+            // midpoint and then maximize over midpoints (see DecodeScratch#midpointR)
+            scratch.nextMidpoint(maxcVocabulary.size());
 
-                    final int leftStart = minLeftChildIndex(leftCellIndex);
-                    final int leftEnd = maxLeftChildIndex(leftCellIndex);
+            final int leftCellIndex = cellIndex(start, midpoint);
+            final int rightCellIndex = cellIndex(midpoint, end);
 
-                    final PackedArrayChartCell rightChildCell = getCell(midpoint, end);
-                    // final int rightCellIndex = rightChildCell.cellIndex;
+            final int leftStart = minLeftChildIndex(leftCellIndex);
+            final int leftEnd = maxLeftChildIndex(leftCellIndex);
 
-                    rightChildCell.allocateTemporaryStorage();
-                    final float[] rightChildInsideProbabilities = rightChildCell.tmpCell.insideProbabilities;
+            // Expand the right child cell's inside probabilities into (reused) dense storage
+            final float[] rightChildInsideProbabilities = scratch.denseInsideProbabilities(rightCellIndex);
 
-                    // Iterate over parents
-                    for (int i = parentStart; i < parentEnd; i++) {
-                        final short parent = nonTerminalIndices[i];
-                        final short baseParent = cscGrammar.nonTermSet.getBaseIndex(parent);
-                        final float parentOutside = outsideProbabilities[i];
+            // Iterate over parents
+            for (int i = parentStart; i < parentEnd; i++) {
+                final short parent = nonTerminalIndices[i];
+                final short baseParent = cscGrammar.nonTermSet.getBaseIndex(parent);
+                final float parentOutside = outsideProbabilities[i];
 
-                        // And over children in the left child cell
-                        for (int j = leftStart; j <= leftEnd; j++) {
-                            final short leftChild = nonTerminalIndices[j];
-                            final short baseLeftChild = cscGrammar.nonTermSet.getBaseIndex(leftChild);
+                // And over children in the left child cell
+                for (int j = leftStart; j <= leftEnd; j++) {
+                    final short leftChild = nonTerminalIndices[j];
+                    final short baseLeftChild = cscGrammar.nonTermSet.getBaseIndex(leftChild);
 
-                            // // If we've already found a q for this parent greater than the left-child maxQ, we can
-                            // // short-circuit without computing r
-                            // if (maxQ[leftCellIndex][baseLeftChild] < maxQ[cellIndex][baseParent]) {
-                            // continue;
-                            // }
+                    // // If we've already found a q for this parent greater than the left-child maxQ, we can
+                    // // short-circuit without computing r
+                    // if (maxQ[leftCellIndex][baseLeftChild] < maxQ[cellIndex][baseParent]) {
+                    // continue;
+                    // }
 
-                            final int column = cscGrammar.rightChildPackingFunction.pack(parent, leftChild);
-                            if (column == Integer.MIN_VALUE) {
-                                continue;
-                            }
+                    final int column = cscGrammar.rightChildPackingFunction.pack(parent, leftChild);
+                    if (column == Integer.MIN_VALUE) {
+                        continue;
+                    }
 
-                            final float leftChildInside = insideProbabilities[j];
+                    final float leftChildInside = insideProbability(leftCellIndex, j);
+                    float[] r = null;
 
-                            // Iterate over grammar rules
-                            for (int k = cscGrammar.rightChildCscBinaryColumnOffsets[column]; k < cscGrammar.rightChildCscBinaryColumnOffsets[column + 1]; k++) {
-                                final short rightChild = cscGrammar.rightChildCscBinaryRowIndices[k];
+                    // Iterate over grammar rules
+                    for (int k = cscGrammar.rightChildCscBinaryColumnOffsets[column]; k < cscGrammar.rightChildCscBinaryColumnOffsets[column + 1]; k++) {
+                        final short rightChild = cscGrammar.rightChildCscBinaryRowIndices[k];
 
-                                final float rightChildInside = rightChildInsideProbabilities[rightChild];
-                                if (rightChildInside == Float.NEGATIVE_INFINITY) {
-                                    continue;
-                                }
+                        final float rightChildInside = rightChildInsideProbabilities[rightChild];
+                        if (rightChildInside == Float.NEGATIVE_INFINITY) {
+                            continue;
+                        }
 
-                                final short baseRightChild = cscGrammar.nonTermSet.getBaseIndex(rightChild);
-
-                                // // Again, we can short-circuit based on the combined child maxQ
-                                // if (maxQ[leftCellIndex][baseLeftChild] + maxQ[rightCellIndex][baseRightChild] <
-                                // maxQ[cellIndex][baseParent]) {
-                                // continue;
-                                // }
-
-                                // Allocate space in current-midpoint r array if needed
-                                allocateChildArray(r, baseParent, baseLeftChild);
-
-                                if (APPROXIMATE_SUM) {
-                                    r[baseParent][baseLeftChild][baseRightChild] = edu.ohsu.cslu.util.Math
-                                            .approximateLogSum(r[baseParent][baseLeftChild][baseRightChild],
-                                                    cscGrammar.rightChildCscBinaryProbabilities[k] + leftChildInside
-                                                            + rightChildInside + parentOutside, SUM_DELTA);
-                                } else {
-                                    r[baseParent][baseLeftChild][baseRightChild] = edu.ohsu.cslu.util.Math.logSum(
-                                            r[baseParent][baseLeftChild][baseRightChild],
-                                            cscGrammar.rightChildCscBinaryProbabilities[k] + leftChildInside
-                                                    + rightChildInside + parentOutside, SUM_DELTA);
-                                }
+                        final short baseRightChild = cscGrammar.nonTermSet.getBaseIndex(rightChild);
 
-                                //
-                                // Compute q (just r divided by the start symbol inside probability)
-                                // Scale with the top cell's scaling step
-                                //
-                                // Note: true max-rule decoding incorporates the child cell q's. We've generally found
-                                // that it works better _without_ that (optimizing rule scores for local labels).
-                                // But we have both options.
-                                //
-                                // TODO I think we could defer computing q and maxQ for each 'r' until after iterating
-                                // over all grammar rules. But that might not save much.
-                                final float q;
-                                if (LOCAL_MAXRULE_DECODING) {
-                                    q = r[baseParent][baseLeftChild][baseRightChild] - startSymbolInsideProbability;
-                                } else {
-                                    q = r[baseParent][baseLeftChild][baseRightChild] - startSymbolInsideProbability
-                                            + maxQ[leftCellIndex][baseLeftChild] + maxQ[rightCellIndex][baseRightChild];
-                                }
+                        // // Again, we can short-circuit based on the combined child maxQ
+                        // if (maxQ[leftCellIndex][baseLeftChild] + maxQ[rightCellIndex][baseRightChild] <
+                        // maxQ[cellIndex][baseParent]) {
+                        // continue;
+                        // }
 
-                                if (q > maxQ[cellIndex][baseParent]) {
-                                    maxQ[cellIndex][baseParent] = q;
-                                    maxQLeftChildren[cellIndex][baseParent] = baseLeftChild;
-                                    maxQRightChildren[cellIndex][baseParent] = baseRightChild;
-                                    maxQMidpoints[cellIndex][baseParent] = midpoint;
-                                }
-                            }
+                        // Current-midpoint r array for this parent and left child, indexed by base right child
+                        if (r == null) {
+                            r = scratch.midpointR(baseParent, baseLeftChild);
                         }
-                    }
-                }
 
-                // Compute unary scores - iterate over populated children (matrix columns). Indexed by base parent and
-                // child
-                final float[][] unaryR = unaryR(cscGrammar, cellIndex);
+                        if (APPROXIMATE_SUM) {
+                            r[baseRightChild] = edu.ohsu.cslu.util.Math.approximateLogSum(r[baseRightChild],
+                                    cscGrammar.rightChildCscBinaryProbabilities[k] + leftChildInside
+                                            + rightChildInside + parentOutside, SUM_DELTA);
+                        } else {
+                            r[baseRightChild] = edu.ohsu.cslu.util.Math.logSum(r[baseRightChild],
+                                    cscGrammar.rightChildCscBinaryProbabilities[k] + leftChildInside
+                                            + rightChildInside + parentOutside, SUM_DELTA);
+                        }
 
-                // Replace any binary or lexical parent scores which are beat by unaries
-                for (short baseParent = 0; baseParent < unaryR.length; baseParent++) {
-                    final float[] parentUnaryR = unaryR[baseParent];
-                    if (parentUnaryR == null) {
-                        continue;
-                    }
-                    for (short baseChild = 0; baseChild < parentUnaryR.length; baseChild++) {
-                        // Preclude unary chains. Not great, but it's one way to prevent infinite unary loops
-                        final float unaryQ;
+                        //
+                        // Compute q (just r divided by the start symbol inside probability)
+                        // Scale with the top cell's scaling step
+                        //
+                        // Note: true max-rule decoding incorporates the child cell q's. We've generally found
+                        // that it works better _without_ that (optimizing rule scores for local labels).
+                        // But we have both options.
+                        //
+                        // TODO I think we could defer computing q and maxQ for each 'r' until after iterating
+                        // over all grammar rules. But that might not save much.
+                        final float q;
                         if (LOCAL_MAXRULE_DECODING) {
-                            unaryQ = parentUnaryR[baseChild] - startSymbolInsideProbability;
+                            q = r[baseRightChild] - startSymbolInsideProbability;
                         } else {
-                            unaryQ = parentUnaryR[baseChild] - startSymbolInsideProbability
-                                    + maxQ[cellIndex][baseChild];
+                            q = r[baseRightChild] - startSymbolInsideProbability + maxQ[leftCellIndex][baseLeftChild]
+                                    + maxQ[rightCellIndex][baseRightChild];
                         }
 
-                        if (unaryQ > maxQ[cellIndex][baseParent]
-                                && maxQRightChildren[cellIndex][baseChild] != Production.UNARY_PRODUCTION) {
-
-                            maxQ[cellIndex][baseParent] = unaryQ;
-                            maxQMidpoints[cellIndex][baseParent] = end;
-                            maxQLeftChildren[cellIndex][baseParent] = baseChild;
-                            maxQRightChildren[cellIndex][baseParent] = Production.UNARY_PRODUCTION;
+                        if (q > maxQ[cellIndex][baseParent]) {
+                            maxQ[cellIndex][baseParent] = q;
+                            maxQLeftChildren[cellIndex][baseParent] = baseLeftChild;
+                            maxQRightChildren[cellIndex][baseParent] = baseRightChild;
+                            maxQMidpoints[cellIndex][baseParent] = midpoint;
                         }
                     }
                 }
             }
         }
 
-        return extractMaxQParse(0, size, maxcVocabulary.startSymbol(), maxcVocabulary);
+        // Compute unary scores - iterate over populated children (matrix columns). Indexed by base parent and
+        // child
+        final float[][] unaryR = unaryR(cscGrammar, cellIndex);
+
+        // Replace any binary or lexical parent scores which are beat by unaries
+        for (short baseParent = 0; baseParent < unaryR.length; baseParent++) {
+            final float[] parentUnaryR = unaryR[baseParent];
+            if (parentUnaryR == null) {
+                continue;
+            }
+            for (short baseChild = 0; baseChild < parentUnaryR.length; baseChild++) {
+                // Preclude unary chains. Not great, but it's one way to prevent infinite unary loops
+                final float unaryQ;
+                if (LOCAL_MAXRULE_DECODING) {
+                    unaryQ = parentUnaryR[baseChild] - startSymbolInsideProbability;
+                } else {
+                    unaryQ = parentUnaryR[baseChild] - startSymbolInsideProbability
+                            + maxQ[cellIndex][baseChild];
+                }
+
+                if (unaryQ > maxQ[cellIndex][baseParent]
+                        && maxQRightChildren[cellIndex][baseChild] != Production.UNARY_PRODUCTION) {
+
+                    maxQ[cellIndex][baseParent] = unaryQ;
+                    maxQMidpoints[cellIndex][baseParent] = end;
+                    maxQLeftChildren[cellIndex][baseParent] = baseChild;
+                    maxQRightChildren[cellIndex][baseParent] = Production.UNARY_PRODUCTION;
+                }
+            }
+        }
     }
 
     private float[][] unaryR(final LeftCscSparseMatrixGrammar cscGrammar, final int cellIndex) {
@@ -899,7 +1433,7 @@ public class PackedArrayChart extends ParallelArrayChart {
         for (int i = offset; i < offset + numNonTerminals[cellIndex]; i++) {
             final short child = nonTerminalIndices[i];
             final short baseChild = cscGrammar.nonTermSet.getBaseIndex(child);
-            final float childInsideProbability = insideProbabilities[i];
+            final float childInsideProbability = insideProbability(cellIndex, i);
 
             // And over grammar rules matching the child
             for (int j = cscGrammar.cscUnaryColumnOffsets[child]; j < cscGrammar.cscUnaryColumnOffsets[child + 1]; j++) {
@@ -931,17 +1465,6 @@ public class PackedArrayChart extends ParallelArrayChart {
         return unaryR;
     }
 
-    private void allocateChildArray(final float[][][] currentMidpointR, final short baseParent,
-            final short baseLeftChild) {
-        if (currentMidpointR[baseParent] == null) {
-            currentMidpointR[baseParent] = new float[maxcVocabulary.size()][];
-        }
-        if (currentMidpointR[baseParent][baseLeftChild] == null) {
-            currentMidpointR[baseParent][baseLeftChild] = new float[maxcVocabulary.size()];
-            Arrays.fill(currentMidpointR[baseParent][baseLeftChild], Float.NEGATIVE_INFINITY);
-        }
-    }
-
     private BinaryTree<String> extractMaxQParse(final int start, final int end, final int parent,
             final Vocabulary vocabulary) {
 
@@ -984,6 +1507,17 @@ public class PackedArrayChart extends ParallelArrayChart {
         return Arrays.binarySearch(nonTerminalIndices, offset, offset + cellPopulation, parent);
     }
 
+    @Override
+    public boolean hasOutsideProbabilities() {
+        if (outsideProbabilities == null) {
+            return false;
+        }
+        final int topCellIndex = cellIndex(0, size);
+        final int rootIndex = entryIndex(offset(topCellIndex), numNonTerminals[topCellIndex],
+                sparseMatrixGrammar.startSymbol);
+        return rootIndex >= 0 && outsideProbabilities[rootIndex] != Float.NEGATIVE_INFINITY;
+    }
+
     @Override
     public float getOutside(final int start, final int end, final int nonTerminal) {
         final int cellIndex = cellIndex(start, end);
@@ -1006,6 +1540,140 @@ public class PackedArrayChart extends ParallelArrayChart {
         return new PackedArrayChartCell(start, end);
     }
 
+    @Override
+    public boolean isCellEmpty(final int start, final int end) {
+        return numNonTerminals[cellIndex(start, end)] == 0;
+    }
+
+    /**
+     * Copies a finalized cell from another chart over the same sentence. The source chart may differ in beam width (and
+     * thus in cell offsets), but the cell's population must fit within the beam of this chart. Used to retain cells
+     * when reparsing only a portion of the chart.
+     * 
+     * @param source
+     * @param start
+     * @param end
+     */
+    public void copyCell(final PackedArrayChart source, final int start, final int end) {
+        final int cellIndex = cellIndex(start, end);
+        final int sourceOffset = source.cellOffsets[cellIndex];
+        final int offset = cellOffsets[cellIndex];
+        final int entries = source.numNonTerminals[cellIndex];
+        assert entries <= (end - start == 1 ? lexicalRowBeamWidth : beamWidth);
+
+        System.arraycopy(source.nonTerminalIndices, sourceOffset, nonTerminalIndices, offset, entries);
+        System.arraycopy(source.cellInsideProbabilities(cellIndex), 0, insideProbabilities, offset, entries);
+        System.arraycopy(source.packedChildren, sourceOffset, packedChildren, offset, entries);
+        System.arraycopy(source.midpoints, sourceOffset, midpoints, offset, entries);
+        numNonTerminals[cellIndex] = entries;
+
+        // Child ranges are indices into the chart arrays, so we shift them to the offset of the cell in this chart
+        final int delta = offset - sourceOffset;
+        minLeftChildIndex[cellIndex] = source.minLeftChildIndex[cellIndex] + delta;
+        maxLeftChildIndex[cellIndex] = source.maxLeftChildIndex[cellIndex] + delta;
+        minRightChildIndex[cellIndex] = source.minRightChildIndex[cellIndex] + delta;
+        maxRightChildIndex[cellIndex] = source.maxRightChildIndex[cellIndex] + delta;
+
+        if (leftChildSegmentStartIndices != null) {
+            assert source.leftChildSegments == leftChildSegments;
+            final int cellSegmentStartIndex = cellIndex * (leftChildSegments + 1);
+            for (int i = cellSegmentStartIndex; i <= cellSegmentStartIndex + leftChildSegments; i++) {
+                leftChildSegmentStartIndices[i] = source.leftChildSegmentStartIndices[i] + delta;
+            }
+        }
+    }
+
+    /**
+     * Captures the contents of a finalized cell, independent of its position in the chart (see
+     * {@link #restoreCell(CellSnapshot, int, int)}).
+     * 
+     * @param start
+     * @param end
+     * @return A snapshot of the cell
+     */
+    public CellSnapshot snapshotCell(final int start, final int end) {
+        final int cellIndex = cellIndex(start, end);
+        final int offset = cellOffsets[cellIndex];
+        final int entries = numNonTerminals[cellIndex];
+
+        final short[] cellMidpoints = Arrays.copyOfRange(midpoints, offset, offset + entries);
+        for (int i = 0; i < entries; i++) {
+            cellMidpoints[i] -= start;
+        }
+
+        int[] segmentStartIndices = null;
+        if (leftChildSegmentStartIndices != null) {
+            final int cellSegmentStartIndex = cellIndex * (leftChildSegments + 1);
+            segmentStartIndices = new int[leftChildSegments + 1];
+            for (int i = 0; i <= leftChildSegments; i++) {
+                segmentStartIndices[i] = leftChildSegmentStartIndices[cellSegmentStartIndex + i] - offset;
+            }
+        }
+
+        return new CellSnapshot(Arrays.copyOfRange(nonTerminalIndices, offset, offset + entries),
+                cellInsideProbabilities(cellIndex), Arrays.copyOfRange(packedChildren, offset, offset + entries),
+                cellMidpoints, minLeftChildIndex[cellIndex] - offset, maxLeftChildIndex[cellIndex] - offset,
+                minRightChildIndex[cellIndex] - offset, maxRightChildIndex[cellIndex] - offset, segmentStartIndices);
+    }
+
+    /**
+     * Populates a cell from a snapshot of a cell spanning the same tokens, possibly from another chart and at another
+     * position (backpointer midpoints and child ranges are adjusted accordingly). The snapshot must come from a chart
+     * of the same type and over the same grammar.
+     * 
+     * @param snapshot
+     * @param start
+     * @param end
+     * @return True if the cell was restored, false if the snapshot does not fit within the cell's beam
+     */
+    public boolean restoreCell(final CellSnapshot snapshot, final int start, final int end) {
+        if (!fits(snapshot, start, end)) {
+            return false;
+        }
+
+        final int entries = snapshot.nonTerminalIndices.length;
+        final int cellIndex = cellIndex(start, end);
+        final int offset = cellOffsets[cellIndex];
+
+        System.arraycopy(snapshot.nonTerminalIndices, 0, nonTerminalIndices, offset, entries);
+        System.arraycopy(snapshot.insideProbabilities, 0, insideProbabilities, offset, entries);
+        System.arraycopy(snapshot.packedChildren, 0, packedChildren, offset, entries);
+        for (int i = 0; i < entries; i++) {
+            midpoints[offset + i] = (short) (snapshot.midpoints[i] + start);
+        }
+        numNonTerminals[cellIndex] = entries;
+
+        minLeftChildIndex[cellIndex] = snapshot.minLeftChildIndex + offset;
+        maxLeftChildIndex[cellIndex] = snapshot.maxLeftChildIndex + offset;
+        minRightChildIndex[cellIndex] = snapshot.minRightChildIndex + offset;
+        maxRightChildIndex[cellIndex] = snapshot.maxRightChildIndex + offset;
+
+        if (leftChildSegmentStartIndices != null) {
+            final int cellSegmentStartIndex = cellIndex * (leftChildSegments + 1);
+            for (int i = 0; i <= leftChildSegments; i++) {
+                leftChildSegmentStartIndices[cellSegmentStartIndex + i] = snapshot.leftChildSegmentStartIndices[i]
+                        + offset;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param snapshot
+     * @param start
+     * @param end
+     * @return True if the snapshot fits within the beam of the specified cell, and matches the segmentation of this
+     *         chart
+     */
+    protected boolean fits(final CellSnapshot snapshot, final int start, final int end) {
+        if (snapshot.nonTerminalIndices.length > (end - start == 1 ? lexicalRowBeamWidth : beamWidth)) {
+            return false;
+        }
+        return leftChildSegmentStartIndices != null ? snapshot.leftChildSegmentStartIndices != null
+                && snapshot.leftChildSegmentStartIndices.length == leftChildSegments + 1
+                : snapshot.leftChildSegmentStartIndices == null;
+    }
+
     public final int minLeftChildIndex(final int cellIndex) {
         return minLeftChildIndex[cellIndex];
     }
@@ -1086,7 +1754,7 @@ public class PackedArrayChart extends ParallelArrayChart {
                         && (tmpCell.outsideProbabilities == null || tmpCell.outsideProbabilities[nonTerminal] != Float.NEGATIVE_INFINITY)) {
 
                     nonTerminalIndices[nonTerminalOffset] = nonTerminal;
-                    insideProbabilities[nonTerminalOffset] = tmpCell.insideProbabilities[nonTerminal];
+                    setInsideProbability(cellIndex, nonTerminalOffset, tmpCell.insideProbabilities[nonTerminal]);
                     packedChildren[nonTerminalOffset] = tmpCell.packedChildren[nonTerminal];
                     midpoints[nonTerminalOffset] = tmpCell.midpoints[nonTerminal];
 
@@ -1129,7 +1797,7 @@ public class PackedArrayChart extends ParallelArrayChart {
             maxRightChildIndex[cellIndex] = offset - 1;
 
             nonTerminalIndices[offset] = entryNonTerminal;
-            insideProbabilities[offset] = entryInsideProbability;
+            setInsideProbability(cellIndex, offset, entryInsideProbability);
             packedChildren[offset] = entryPackedChildren;
             midpoints[offset] = entryMidpoint;
 
@@ -1213,7 +1881,7 @@ public class PackedArrayChart extends ParallelArrayChart {
             if (index < 0) {
                 return Float.NEGATIVE_INFINITY;
             }
-            return insideProbabilities[index];
+            return insideProbability(cellIndex, index);
         }
 
         public short getMidpoint(final short nonTerminal) {
@@ -1494,7 +2162,7 @@ public class PackedArrayChart extends ParallelArrayChart {
                 for (int i = offset; i < offset + numNonTerminals[cellIndex]; i++) {
                     final int nonTerminal = nonTerminalIndices[i];
                     tmpCell.packedChildren[nonTerminal] = packedChildren[i];
-                    tmpCell.insideProbabilities[nonTerminal] = insideProbabilities[i];
+                    tmpCell.insideProbabilities[nonTerminal] = insideProbability(cellIndex, i);
                     tmpCell.midpoints[nonTerminal] = midpoints[i];
                 }
 
@@ -1554,7 +2222,7 @@ public class PackedArrayChart extends ParallelArrayChart {
                 // Format entries from the main chart array
                 for (int index = offset; index < offset + numNonTerminals[cellIndex]; index++) {
                     final int childProductions = packedChildren[index];
-                    final float insideProbability = insideProbabilities[index];
+                    final float insideProbability = insideProbability(cellIndex, index);
                     final float outsideProbability = outsideProbabilities != null ? outsideProbabilities[index]
                             : Float.NEGATIVE_INFINITY;
                     final int midpoint = midpoints[index];
@@ -1600,7 +2268,7 @@ public class PackedArrayChart extends ParallelArrayChart {
                 // Format entries from the main chart array
                 for (int index = offset; index < offset + numNonTerminals[cellIndex]; index++) {
                     final int childProductions = packedChildren[index];
-                    final float insideProbability = insideProbabilities[index];
+                    final float insideProbability = insideProbability(cellIndex, index);
                     final float outsideProbability = outsideProbabilities[index];
                     final int midpoint = midpoints[index];
 
@@ -1736,6 +2404,153 @@ public class PackedArrayChart extends ParallelArrayChart {
         }
     }
 
+    /**
+     * Decodes a single cell, given that all cells of smaller span have already been decoded.
+     */
+    private interface CellDecoder {
+        public void decode(short start, short end);
+    }
+
+    /**
+     * Temporary storage for decoding, allocated once per thread and reused for each cell.
+     */
+    private final class DecodeScratch {
+
+        private float[] baseSumProbabilities = new float[0];
+        private float[] maxBaseProbabilities = new float[0];
+        private short[] unaryChildren = new short[0];
+        private final float[] denseInsideProbabilities = new float[sparseMatrixGrammar.numNonTerms()];
+
+        /**
+         * Max-rule 'r' scores for the current midpoint, indexed by base parent, base left child, and base right child.
+         * Child arrays are allocated on first use and retained, and are reset lazily when first used at each midpoint
+         * (tracked by {@link #midpointRGenerations}).
+         */
+        private float[][][] midpointR = new float[0][][];
+        private int[][] midpointRGenerations = new int[0][];
+        private int midpoint;
+
+        float[] baseSumProbabilities(final int length) {
+            if (baseSumProbabilities.length < length) {
+                baseSumProbabilities = new float[length];
+            }
+            Arrays.fill(baseSumProbabilities, Float.NEGATIVE_INFINITY);
+            return baseSumProbabilities;
+        }
+
+        float[] maxBaseProbabilities(final int length) {
+            if (maxBaseProbabilities.length < length) {
+                maxBaseProbabilities = new float[length];
+            }
+            Arrays.fill(maxBaseProbabilities, Float.NEGATIVE_INFINITY);
+            return maxBaseProbabilities;
+        }
+
+        short[] unaryChildren(final int length) {
+            if (unaryChildren.length < length) {
+                unaryChildren = new short[length];
+            }
+            Arrays.fill(unaryChildren, Short.MIN_VALUE);
+            return unaryChildren;
+        }
+
+        /**
+         * Begins a new midpoint, invalidating all {@link #midpointR(short, short)} arrays
+         * 
+         * @param vocabularySize Size of the base (unsplit) vocabulary
+         */
+        void nextMidpoint(final int vocabularySize) {
+            if (midpointR.length != vocabularySize) {
+                midpointR = new float[vocabularySize][][];
+                midpointRGenerations = new int[vocabularySize][];
+            }
+            if (++midpoint == Integer.MAX_VALUE) {
+                // Restart the generation count (rather than wrapping around and matching stale arrays)
+                for (final int[] generations : midpointRGenerations) {
+                    if (generations != null) {
+                        Arrays.fill(generations, 0);
+                    }
+                }
+                midpoint = 1;
+            }
+        }
+
+        /**
+         * @return The current midpoint's r array for the specified base parent and left child, indexed by base right
+         *         child. Initialized to negative infinity on first use at each midpoint.
+         */
+        float[] midpointR(final short baseParent, final short baseLeftChild) {
+            if (midpointR[baseParent] == null) {
+                midpointR[baseParent] = new float[midpointR.length][];
+                midpointRGenerations[baseParent] = new int[midpointR.length];
+            }
+            if (midpointR[baseParent][baseLeftChild] == null) {
+                midpointR[baseParent][baseLeftChild] = new float[midpointR.length];
+            }
+            if (midpointRGenerations[baseParent][baseLeftChild] != midpoint) {
+                Arrays.fill(midpointR[baseParent][baseLeftChild], Float.NEGATIVE_INFINITY);
+                midpointRGenerations[baseParent][baseLeftChild] = midpoint;
+            }
+            return midpointR[baseParent][baseLeftChild];
+        }
+
+        /**
+         * Expands the inside probabilities of a (finalized) cell into a dense array indexed by non-terminal.
+         */
+        float[] denseInsideProbabilities(final int cellIndex) {
+            Arrays.fill(denseInsideProbabilities, Float.NEGATIVE_INFINITY);
+            final int offset = offset(cellIndex);
+            for (int i = offset; i < offset + numNonTerminals[cellIndex]; i++) {
+                denseInsideProbabilities[nonTerminalIndices[i]] = insideProbability(cellIndex, i);
+            }
+            return denseInsideProbabilities;
+        }
+    }
+
+    /**
+     * The contents of a finalized cell, with backpointer midpoints relative to the cell's start and child ranges
+     * relative to the cell's offset. See {@link PackedArrayChart#snapshotCell(int, int)}.
+     */
+    public final static class CellSnapshot {
+
+        final short[] nonTerminalIndices;
+        final float[] insideProbabilities;
+        final int[] packedChildren;
+        final short[] midpoints;
+        private final int minLeftChildIndex, maxLeftChildIndex, minRightChildIndex, maxRightChildIndex;
+        private final int[] leftChildSegmentStartIndices;
+
+        private CellSnapshot(final short[] nonTerminalIndices, final float[] insideProbabilities,
+                final int[] packedChildren, final short[] midpoints, final int minLeftChildIndex,
+                final int maxLeftChildIndex, final int minRightChildIndex, final int maxRightChildIndex,
+                final int[] leftChildSegmentStartIndices) {
+            this.nonTerminalIndices = nonTerminalIndices;
+            this.insideProbabilities = insideProbabilities;
+            this.packedChildren = packedChildren;
+            this.midpoints = midpoints;
+            this.minLeftChildIndex = minLeftChildIndex;
+            this.maxLeftChildIndex = maxLeftChildIndex;
+            this.minRightChildIndex = minRightChildIndex;
+            this.maxRightChildIndex = maxRightChildIndex;
+            this.leftChildSegmentStartIndices = leftChildSegmentStartIndices;
+        }
+
+        /**
+         * @return The number of populated non-terminals
+         */
+        public int size() {
+            return nonTerminalIndices.length;
+        }
+
+        /**
+         * @return The approximate size of the snapshot in memory, in bytes
+         */
+        public long bytes() {
+            return 96 + nonTerminalIndices.length * 12L
+                    + (leftChildSegmentStartIndices != null ? leftChildSegmentStartIndices.length * 4 : 0);
+        }
+    }
+
     public final static class TemporaryChartCell {
 
         public final int[] packedChildren;
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser.chart;
+
+import java.util.Arrays;
+
+import edu.ohsu.cslu.datastructs.narytree.BinaryTree;
+import edu.ohsu.cslu.grammar.Production;
+
+/**
+ * The populated entries of a {@link PackedArrayChart}, as written by {@link PackedForestWriter} and read by
+ * {@link PackedForestReader}, so downstream systems (e.g., rerankers) can consume the pruned forest without re-parsing.
+ * 
+ * Entries are grouped by cell, and sorted by non-terminal within each cell (as in the chart itself). Each entry stores
+ * its inside probability, its outside probability (if computed by the parser), and its backpointer: the midpoint and
+ * children of the best-scoring edge recorded in the chart. Unary and lexical backpointers are denoted by a right child
+ * of {@link Production#UNARY_PRODUCTION} or {@link Production#LEXICAL_PRODUCTION}; the left child of a lexical
+ * backpointer is the index of the token.
+ * 
+ * A forest may also include a set of binary and unary hyperedges, each connecting a parent entry to one or two child
+ * entries (referenced by entry index), with the rule log probability and log posterior probability of the edge.
+ * 
+ * Non-terminal indices refer to a label vocabulary shared by all forests in a stream (see
+ * {@link PackedForestReader#labels()}).
+ * 
+ * @author Aaron Dunlop
+ */
+public class PackedForest {
+
+    /** Sentence tokens */
+    public final String[] tokens;
+
+    /** Start of each populated cell */
+    public final short[] cellStarts;
+
+    /** End of each populated cell */
+    public final short[] cellEnds;
+
+    /** Index of the first entry of each populated cell. 1 longer than {@link #cellStarts}, to simplify loops. */
+    public final int[] cellOffsets;
+
+    /** Non-terminal index of each entry */
+    public final short[] nonTerminals;
+
+    /** Log inside probability of each entry */
+    public final float[] insideProbabilities;
+
+    /** Log outside probability of each entry. Null if the parser did not compute outside probabilities. */
+    public final float[] outsideProbabilities;
+
+    /** Backpointer midpoint of each entry (the end of the cell for unary and lexical backpointers) */
+    public final short[] midpoints;
+
+    /** Backpointer left child of each entry (the token index, for lexical backpointers) */
+    public final short[] leftChildren;
+
+    /** Backpointer right child of each entry, or a unary or lexical marker */
+    public final short[] rightChildren;
+
+    /** Entry index of the parent of each hyperedge */
+    public final int[] edgeParents;
+
+    /** Entry index of the left (or only) child of each hyperedge */
+    public final int[] edgeLeftChildren;
+
+    /** Entry index of the right child of each hyperedge, or -1 for unary edges */
+    public final int[] edgeRightChildren;
+
+    /** Rule log probability of each hyperedge */
+    public final float[] edgeProbabilities;
+
+    /** Log posterior probability of each hyperedge */
+    public final float[] edgePosteriors;
+
+    public PackedForest(final String[] tokens, final short[] cellStarts, final short[] cellEnds,
+            final int[] cellOffsets, final short[] nonTerminals, final float[] insideProbabilities,
+            final float[] outsideProbabilities, final short[] midpoints, final short[] leftChildren,
+            final short[] rightChildren, final int[] edgeParents, final int[] edgeLeftChildren,
+            final int[] edgeRightChildren, final float[] edgeProbabilities, final float[] edgePosteriors) {
+        this.tokens = tokens;
+        this.cellStarts = cellStarts;
+        this.cellEnds = cellEnds;
+        this.cellOffsets = cellOffsets;
+        this.nonTerminals = nonTerminals;
+        this.insideProbabilities = insideProbabilities;
+        this.outsideProbabilities = outsideProbabilities;
+        this.midpoints = midpoints;
+        this.leftChildren = leftChildren;
+        this.rightChildren = rightChildren;
+        this.edgeParents = edgeParents;
+        this.edgeLeftChildren = edgeLeftChildren;
+        this.edgeRightChildren = edgeRightChildren;
+        this.edgeProbabilities = edgeProbabilities;
+        this.edgePosteriors = edgePosteriors;
+    }
+
+    /**
+     * Constructs an empty forest, denoting a parse failure
+     * 
+     * @param tokens Sentence tokens
+     */
+    public PackedForest(final String[] tokens) {
+        this(tokens, new short[0], new short[0], new int[1], new short[0], new float[0], null, new short[0],
+                new short[0], new short[0], new int[0], new int[0], new int[0], new float[0], new float[0]);
+    }
+
+    /**
+     * @return The number of populated cells
+     */
+    public int cells() {
+        return cellStarts.length;
+    }
+
+    /**
+     * @return The number of entries (across all cells). 0 denotes a parse failure.
+     */
+    public int size() {
+        return nonTerminals.length;
+    }
+
+    /**
+     * @return The number of hyperedges
+     */
+    public int edges() {
+        return edgeParents.length;
+    }
+
+    /**
+     * @param start
+     * @param end
+     * @param nonTerminal
+     * @return The index of the specified entry, or -1 if the entry is not populated
+     */
+    public int entryIndex(final int start, final int end, final short nonTerminal) {
+        for (int cell = 0; cell < cellStarts.length; cell++) {
+            if (cellStarts[cell] == start && cellEnds[cell] == end) {
+                final int i = Arrays.binarySearch(nonTerminals, cellOffsets[cell], cellOffsets[cell + 1], nonTerminal);
+                return i < 0 ? -1 : i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Follows backpointers from the specified root entry, as in {@link Chart#extractBestParse(int)}.
+     * 
+     * @param root Root non-terminal (generally the grammar start symbol)
+     * @param labels Non-terminal labels, indexed by non-terminal index
+     * @return The best parse, or null if the forest does not contain a complete parse
+     */
+    public BinaryTree<String> extractBestParse(final short root, final String[] labels) {
+        return extractBestParse(0, tokens.length, root, labels);
+    }
+
+    private BinaryTree<String> extractBestParse(final int start, final int end, final short parent,
+            final String[] labels) {
+        final int i = entryIndex(start, end, parent);
+        if (i < 0) {
+            return null;
+        }
+
+        final BinaryTree<String> subtree = new BinaryTree<String>(labels[parent]);
+        if (rightChildren[i] == Production.UNARY_PRODUCTION) {
+            subtree.addChild(extractBestParse(start, end, leftChildren[i], labels));
+
+        } else if (rightChildren[i] == Production.LEXICAL_PRODUCTION) {
+            subtree.addChild(new BinaryTree<String>(tokens[leftChildren[i]]));
+
+        } else {
+            subtree.addChild(extractBestParse(start, midpoints[i], leftChildren[i], labels));
+            subtree.addChild(extractBestParse(midpoints[i], end, rightChildren[i], labels));
+        }
+        return subtree;
+    }
+}
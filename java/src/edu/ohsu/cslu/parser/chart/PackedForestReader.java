@@ -0,0 +1,190 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser.chart;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads parse forests written by {@link PackedForestWriter}. e.g.:
+ * 
+ * <pre>
+ * final PackedForestReader reader = new PackedForestReader(inputStream);
+ * for (PackedForest forest = reader.read(); forest != null; forest = reader.read()) {
+ *     for (int e = 0; e &lt; forest.edges(); e++) {
+ *         final short parent = forest.nonTerminals[forest.edgeParents[e]];
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * 
+ * @author Aaron Dunlop
+ */
+public class PackedForestReader {
+
+    private final DataInputStream input;
+    private final String[] labels;
+
+    /**
+     * Reads the stream header
+     * 
+     * @param inputStream Input stream
+     * @throws IOException if the read fails or the stream header is invalid
+     */
+    public PackedForestReader(final InputStream inputStream) throws IOException {
+        this.input = new DataInputStream(new BufferedInputStream(inputStream));
+
+        if (input.readInt() != PackedForestWriter.MAGIC) {
+            throw new IOException("Not a forest stream");
+        }
+        final short version = input.readShort();
+        if (version != PackedForestWriter.VERSION) {
+            throw new IOException("Unsupported forest version: " + version);
+        }
+
+        this.labels = new String[input.readShort()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = input.readUTF();
+        }
+    }
+
+    /**
+     * @return Non-terminal labels, indexed by non-terminal index
+     */
+    public String[] labels() {
+        return labels;
+    }
+
+    /**
+     * Reads the next forest
+     * 
+     * @return the next forest, or null at the end of the stream
+     * @throws IOException if the read fails
+     */
+    public PackedForest read() throws IOException {
+        final int length;
+        try {
+            length = input.readInt();
+        } catch (final EOFException e) {
+            return null;
+        }
+
+        final String[] tokens = new String[input.readShort()];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = input.readUTF();
+        }
+        final boolean outside = input.readBoolean();
+
+        // The entry count isn't recorded, but each entry occupies a fixed number of bytes, so the record length
+        // bounds it from above
+        final int cells = input.readInt();
+        final int maxEntries = length / (outside ? 16 : 12);
+
+        final short[] cellStarts = new short[cells];
+        final short[] cellEnds = new short[cells];
+        final int[] cellOffsets = new int[cells + 1];
+        short[] nonTerminals = new short[maxEntries];
+        float[] insideProbabilities = new float[maxEntries];
+        float[] outsideProbabilities = outside ? new float[maxEntries] : null;
+        short[] midpoints = new short[maxEntries];
+        short[] leftChildren = new short[maxEntries];
+        short[] rightChildren = new short[maxEntries];
+
+        int i = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            cellStarts[cell] = input.readShort();
+            cellEnds[cell] = input.readShort();
+            cellOffsets[cell] = i;
+            final int entries = input.readShort();
+
+            for (int j = 0; j < entries; j++, i++) {
+                nonTerminals[i] = input.readShort();
+                insideProbabilities[i] = input.readFloat();
+                if (outside) {
+                    outsideProbabilities[i] = input.readFloat();
+                }
+                midpoints[i] = input.readShort();
+                leftChildren[i] = input.readShort();
+                rightChildren[i] = input.readShort();
+            }
+        }
+        cellOffsets[cells] = i;
+
+        nonTerminals = Arrays.copyOf(nonTerminals, i);
+        insideProbabilities = Arrays.copyOf(insideProbabilities, i);
+        if (outside) {
+            outsideProbabilities = Arrays.copyOf(outsideProbabilities, i);
+        }
+        midpoints = Arrays.copyOf(midpoints, i);
+        leftChildren = Arrays.copyOf(leftChildren, i);
+        rightChildren = Arrays.copyOf(rightChildren, i);
+
+        final int edges = input.readInt();
+        final int[] edgeParents = new int[edges];
+        final int[] edgeLeftChildren = new int[edges];
+        final int[] edgeRightChildren = new int[edges];
+        final float[] edgeProbabilities = new float[edges];
+        final float[] edgePosteriors = new float[edges];
+        for (int e = 0; e < edges; e++) {
+            edgeParents[e] = input.readInt();
+            edgeLeftChildren[e] = input.readInt();
+            edgeRightChildren[e] = input.readInt();
+            edgeProbabilities[e] = input.readFloat();
+            edgePosteriors[e] = input.readFloat();
+        }
+
+        return new PackedForest(tokens, cellStarts, cellEnds, cellOffsets, nonTerminals, insideProbabilities,
+                outsideProbabilities, midpoints, leftChildren, rightChildren, edgeParents, edgeLeftChildren,
+                edgeRightChildren, edgeProbabilities, edgePosteriors);
+    }
+
+    /**
+     * Skips the next forest without decoding it
+     * 
+     * @return false at the end of the stream
+     * @throws IOException if the read fails
+     */
+    public boolean skip() throws IOException {
+        final int length;
+        try {
+            length = input.readInt();
+        } catch (final EOFException e) {
+            return false;
+        }
+        for (int remaining = length; remaining > 0;) {
+            final int skipped = input.skipBytes(remaining);
+            if (skipped == 0) {
+                throw new EOFException("Truncated record");
+            }
+            remaining -= skipped;
+        }
+        return true;
+    }
+
+    public void close() throws IOException {
+        input.close();
+    }
+}
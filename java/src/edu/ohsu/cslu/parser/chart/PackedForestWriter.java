@@ -0,0 +1,157 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser.chart;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes parse forests ({@link PackedForest}) in a compact binary hypergraph encoding, one record per sentence. The
+ * stream begins with a header:
+ * 
+ * <pre>
+ * int     magic number ({@link #MAGIC})
+ * short   format version ({@link #VERSION})
+ * short   label count, followed by each non-terminal label (modified UTF-8)
+ * </pre>
+ * 
+ * Each forest is a length-prefixed record, so readers can skip forests without decoding them:
+ * 
+ * <pre>
+ * int     record length in bytes (excluding this field)
+ * short   token count, followed by each token (modified UTF-8)
+ * boolean true if outside probabilities are included
+ * int     cell count, followed by each populated cell:
+ *   short   start
+ *   short   end
+ *   short   entry count, followed by each entry:
+ *     short   non-terminal index
+ *     float   inside probability
+ *     float   outside probability (only if outside probabilities are included)
+ *     short   backpointer midpoint
+ *     short   backpointer left child
+ *     short   backpointer right child
+ * int     hyperedge count, followed by each hyperedge:
+ *   int     parent entry index
+ *   int     left child entry index
+ *   int     right child entry index (-1 for unary edges)
+ *   float   rule probability
+ *   float   posterior probability
+ * </pre>
+ * 
+ * All probabilities are log probabilities, and all values are big-endian, as written by {@link DataOutputStream}.
+ * 
+ * @see PackedForestReader
+ * 
+ * @author Aaron Dunlop
+ */
+public class PackedForestWriter {
+
+    public final static int MAGIC = 0x42465354; // 'BFST'
+    public final static short VERSION = 1;
+
+    private final DataOutputStream output;
+
+    /** Reusable buffer for each record, so we can prefix it with its length */
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(16384);
+    private final DataOutputStream recordOutput = new DataOutputStream(record);
+
+    /**
+     * Writes the stream header
+     * 
+     * @param outputStream Output stream
+     * @param labels Non-terminal labels, indexed by non-terminal index
+     * @throws IOException if the write fails
+     */
+    public PackedForestWriter(final OutputStream outputStream, final String[] labels) throws IOException {
+        this.output = new DataOutputStream(new BufferedOutputStream(outputStream));
+
+        output.writeInt(MAGIC);
+        output.writeShort(VERSION);
+        output.writeShort(labels.length);
+        for (final String label : labels) {
+            output.writeUTF(label);
+        }
+    }
+
+    /**
+     * Writes a single forest record, flushing it to the underlying stream so that a consumer reading the stream
+     * incrementally sees each forest as soon as its sentence is parsed.
+     * 
+     * @param forest Forest
+     * @throws IOException if the write fails
+     */
+    public void write(final PackedForest forest) throws IOException {
+        record.reset();
+
+        recordOutput.writeShort(forest.tokens.length);
+        for (final String token : forest.tokens) {
+            recordOutput.writeUTF(token);
+        }
+
+        final boolean outside = forest.outsideProbabilities != null;
+        recordOutput.writeBoolean(outside);
+
+        recordOutput.writeInt(forest.cells());
+        for (int cell = 0; cell < forest.cells(); cell++) {
+            recordOutput.writeShort(forest.cellStarts[cell]);
+            recordOutput.writeShort(forest.cellEnds[cell]);
+            recordOutput.writeShort(forest.cellOffsets[cell + 1] - forest.cellOffsets[cell]);
+
+            for (int i = forest.cellOffsets[cell]; i < forest.cellOffsets[cell + 1]; i++) {
+                recordOutput.writeShort(forest.nonTerminals[i]);
+                recordOutput.writeFloat(forest.insideProbabilities[i]);
+                if (outside) {
+                    recordOutput.writeFloat(forest.outsideProbabilities[i]);
+                }
+                recordOutput.writeShort(forest.midpoints[i]);
+                recordOutput.writeShort(forest.leftChildren[i]);
+                recordOutput.writeShort(forest.rightChildren[i]);
+            }
+        }
+
+        recordOutput.writeInt(forest.edges());
+        for (int i = 0; i < forest.edges(); i++) {
+            recordOutput.writeInt(forest.edgeParents[i]);
+            recordOutput.writeInt(forest.edgeLeftChildren[i]);
+            recordOutput.writeInt(forest.edgeRightChildren[i]);
+            recordOutput.writeFloat(forest.edgeProbabilities[i]);
+            recordOutput.writeFloat(forest.edgePosteriors[i]);
+        }
+        recordOutput.flush();
+
+        output.writeInt(record.size());
+        record.writeTo(output);
+        output.flush();
+    }
+
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    public void close() throws IOException {
+        output.close();
+    }
+}
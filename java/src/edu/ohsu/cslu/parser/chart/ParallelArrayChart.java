@@ -80,6 +80,20 @@ public abstract class ParallelArrayChart extends Chart {
      */
     protected ParallelArrayChart(final ParseTask parseTask, final SparseMatrixGrammar sparseMatrixGrammar,
             final int beamWidth, final int lexicalRowBeamWidth) {
+        this(parseTask, sparseMatrixGrammar, beamWidth, lexicalRowBeamWidth, true);
+    }
+
+    /**
+     * Constructs a chart
+     * 
+     * @param parseTask Parser state
+     * @param sparseMatrixGrammar Grammar
+     * @param beamWidth The maximum number of entries allowed in a chart cell
+     * @param allocateInsideProbabilities False if the subclass stores inside probabilities in another form (in which
+     *            case {@link #insideProbabilities} is null)
+     */
+    protected ParallelArrayChart(final ParseTask parseTask, final SparseMatrixGrammar sparseMatrixGrammar,
+            final int beamWidth, final int lexicalRowBeamWidth, final boolean allocateInsideProbabilities) {
 
         super(parseTask, sparseMatrixGrammar);
         this.sparseMatrixGrammar = sparseMatrixGrammar;
@@ -89,8 +103,12 @@ public abstract class ParallelArrayChart extends Chart {
         maxCells = size * (size + 1) / 2;
 
         this.chartArraySize = ParallelArrayChart.chartArraySize(this.size, this.beamWidth, this.lexicalRowBeamWidth);
-        this.insideProbabilities = new float[chartArraySize];
-        Arrays.fill(insideProbabilities, Float.NEGATIVE_INFINITY);
+        if (allocateInsideProbabilities) {
+            this.insideProbabilities = new float[chartArraySize];
+            Arrays.fill(insideProbabilities, Float.NEGATIVE_INFINITY);
+        } else {
+            this.insideProbabilities = null;
+        }
         this.packedChildren = new int[chartArraySize];
         this.midpoints = new short[chartArraySize];
 
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser.chart;
+
+import java.util.Arrays;
+
+import edu.ohsu.cslu.datastructs.matrices.FixedPointShortMatrix;
+import edu.ohsu.cslu.grammar.SparseMatrixGrammar;
+import edu.ohsu.cslu.parser.ParseTask;
+import edu.ohsu.cslu.parser.ml.QuantizedCphSpmlParser;
+
+/**
+ * A {@link PackedArrayChart} which stores inside probabilities at reduced precision, as 16-bit fixed-point offsets
+ * from the maximum probability in each cell. Similar to {@link FixedPointShortMatrix}, but the fixed-point scale is
+ * chosen per cell, so the full 16 bits span the range of probabilities actually observed in that cell. The resolution
+ * of each cell ({@link #insideProbabilityResolutions}) is (max - min) / 65535; e.g., about .0002 in log space for a
+ * cell pruned with a maximum local delta of 15. The range is capped at {@link #MAX_RANGE}; entries further than that
+ * below the cell maximum are negligible, and are dropped from the cell when it is finalized (as if their inside
+ * probability were -Infinity).
+ * 
+ * The quantized offsets ({@link #quantizedInsideProbabilities}) replace the floating-point
+ * {@link #insideProbabilities} array, which is not allocated; all accesses through the chart and its cells are
+ * dequantized (see {@link #dequantize(int, int)}). Parsers which read child cells directly from the quantized arrays
+ * (e.g. {@link QuantizedCphSpmlParser}) touch half as much memory per child entry in the grammar intersection.
+ * 
+ * @author Aaron Dunlop
+ */
+public class QuantizedPackedArrayChart extends PackedArrayChart {
+
+    /** The maximum range of log probabilities represented in a cell */
+    public final static float MAX_RANGE = 32f;
+
+    /** Offsets of each entry from {@link #maxInsideProbabilities} of its cell, in units of the cell's resolution */
+    public final char[] quantizedInsideProbabilities;
+
+    /** The maximum inside probability in each cell, indexed by cell index */
+    public final float[] maxInsideProbabilities;
+
+    /** The size of a single fixed-point step in each cell (in log probability), indexed by cell index */
+    public final float[] insideProbabilityResolutions;
+
+    /**
+     * Constructs a chart
+     * 
+     * @param parseTask Current task
+     * @param sparseMatrixGrammar Grammar
+     * @param beamWidth
+     * @param lexicalRowBeamWidth
+     * @param leftChildSegments The number of 'segments' to split left children into
+     */
+    public QuantizedPackedArrayChart(final ParseTask parseTask, final SparseMatrixGrammar sparseMatrixGrammar,
+            final int beamWidth, final int lexicalRowBeamWidth, final int leftChildSegments) {
+        super(parseTask, sparseMatrixGrammar, beamWidth, lexicalRowBeamWidth, leftChildSegments, false);
+        this.quantizedInsideProbabilities = new char[chartArraySize];
+        this.maxInsideProbabilities = new float[maxCells];
+        Arrays.fill(maxInsideProbabilities, Float.NEGATIVE_INFINITY);
+        this.insideProbabilityResolutions = new float[maxCells];
+    }
+
+    /**
+     * Constructs a chart
+     * 
+     * @param parseTask Current task
+     * @param sparseMatrixGrammar Grammar
+     * @param beamWidth
+     * @param lexicalRowBeamWidth
+     */
+    public QuantizedPackedArrayChart(final ParseTask parseTask, final SparseMatrixGrammar sparseMatrixGrammar,
+            final int beamWidth, final int lexicalRowBeamWidth) {
+        this(parseTask, sparseMatrixGrammar, beamWidth, lexicalRowBeamWidth, 0);
+    }
+
+    /**
+     * Constructs a chart for exhaustive inference.
+     * 
+     * @param parseTask Current task
+     * @param sparseMatrixGrammar Grammar
+     */
+    public QuantizedPackedArrayChart(final ParseTask parseTask, final SparseMatrixGrammar sparseMatrixGrammar) {
+        this(parseTask, sparseMatrixGrammar, sparseMatrixGrammar.numNonTerms(), sparseMatrixGrammar.numNonTerms(), 0);
+    }
+
+    @Override
+    public QuantizedPackedArrayChartCell getCell(final int start, final int end) {
+        return new QuantizedPackedArrayChartCell(start, end);
+    }
+
+    @Override
+    protected float insideProbability(final int cellIndex, final int index) {
+        return dequantize(cellIndex, index);
+    }
+
+    /**
+     * Quantizes an entry of a cell which is being finalized (the range of the cell must already be set; see
+     * {@link QuantizedPackedArrayChartCell#finalizeCell()}).
+     */
+    @Override
+    protected void setInsideProbability(final int cellIndex, final int index, final float insideProbability) {
+        final float resolution = insideProbabilityResolutions[cellIndex];
+        // Guard against overflow from rounding
+        final int steps = resolution == 0 ? 0 : Math.round((maxInsideProbabilities[cellIndex] - insideProbability)
+                / resolution);
+        quantizedInsideProbabilities[index] = (char) Math.min(steps, Character.MAX_VALUE);
+    }
+
+    @Override
+    protected float[] cellInsideProbabilities(final int cellIndex) {
+        final int offset = cellOffsets[cellIndex];
+        final float[] cellInsideProbabilities = new float[numNonTerminals[cellIndex]];
+        for (int i = 0; i < cellInsideProbabilities.length; i++) {
+            cellInsideProbabilities[i] = dequantize(cellIndex, offset + i);
+        }
+        return cellInsideProbabilities;
+    }
+
+    @Override
+    public void copyCell(final PackedArrayChart source, final int start, final int end) {
+        final int cellIndex = cellIndex(start, end);
+        finalizeCell(start, end, source.cellInsideProbabilities(cellIndex), source.nonTerminalIndices,
+                source.packedChildren, source.midpoints, source.offset(cellIndex), 0);
+    }
+
+    @Override
+    public boolean restoreCell(final CellSnapshot snapshot, final int start, final int end) {
+        if (!fits(snapshot, start, end)) {
+            return false;
+        }
+        finalizeCell(start, end, snapshot.insideProbabilities, snapshot.nonTerminalIndices, snapshot.packedChildren,
+                snapshot.midpoints, 0, start);
+        return true;
+    }
+
+    /**
+     * Populates a cell from the entries of another (possibly full-precision) cell, and finalizes it, quantizing the
+     * entries and dropping any beyond the range of the cell.
+     * 
+     * @param start
+     * @param end
+     * @param cellInsideProbabilities Inside probabilities of the entries to be copied
+     * @param sourceNonTerminalIndices
+     * @param sourcePackedChildren
+     * @param sourceMidpoints
+     * @param sourceOffset Offset of the entries in the source non-terminal, child, and midpoint arrays
+     * @param midpointShift Shift applied to each source midpoint
+     */
+    private void finalizeCell(final int start, final int end, final float[] cellInsideProbabilities,
+            final short[] sourceNonTerminalIndices, final int[] sourcePackedChildren, final short[] sourceMidpoints,
+            final int sourceOffset, final int midpointShift) {
+
+        final QuantizedPackedArrayChartCell cell = getCell(start, end);
+        cell.tmpCell = new TemporaryChartCell(grammar, false);
+
+        for (int i = 0; i < cellInsideProbabilities.length; i++) {
+            final short nonTerminal = sourceNonTerminalIndices[sourceOffset + i];
+            cell.tmpCell.insideProbabilities[nonTerminal] = cellInsideProbabilities[i];
+            cell.tmpCell.packedChildren[nonTerminal] = sourcePackedChildren[sourceOffset + i];
+            cell.tmpCell.midpoints[nonTerminal] = (short) (sourceMidpoints[sourceOffset + i] + midpointShift);
+        }
+        cell.finalizeCell();
+    }
+
+    /**
+     * @param cellIndex
+     * @param index Index of the entry in the chart arrays
+     * @return The (reduced-precision) inside probability of the specified entry, computed from the quantized arrays
+     */
+    public final float dequantize(final int cellIndex, final int index) {
+        return maxInsideProbabilities[cellIndex] - quantizedInsideProbabilities[index]
+                * insideProbabilityResolutions[cellIndex];
+    }
+
+    public class QuantizedPackedArrayChartCell extends PackedArrayChartCell {
+
+        public QuantizedPackedArrayChartCell(final int start, final int end) {
+            super(start, end);
+        }
+
+        /**
+         * Selects the fixed-point scale of the cell, drops entries more than {@link #MAX_RANGE} below the cell
+         * maximum, and quantizes the remaining entries into the main chart arrays.
+         */
+        @Override
+        public void finalizeCell() {
+            if (tmpCell == null) {
+                return;
+            }
+
+            final float[] probabilities = tmpCell.insideProbabilities;
+            float max = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < probabilities.length; i++) {
+                max = Math.max(max, probabilities[i]);
+            }
+
+            float min = max;
+            for (int i = 0; i < probabilities.length; i++) {
+                if (probabilities[i] < max - MAX_RANGE) {
+                    probabilities[i] = Float.NEGATIVE_INFINITY;
+                } else {
+                    min = Math.min(min, probabilities[i]);
+                }
+            }
+
+            maxInsideProbabilities[cellIndex] = max;
+            insideProbabilityResolutions[cellIndex] = max > min ? (max - min) / Character.MAX_VALUE : 0f;
+            super.finalizeCell();
+        }
+
+        @Override
+        public void finalizeCell(final short entryNonTerminal, final float entryInsideProbability,
+                final int entryPackedChildren, final short entryMidpoint) {
+            maxInsideProbabilities[cellIndex] = entryInsideProbability;
+            insideProbabilityResolutions[cellIndex] = 0f;
+            super.finalizeCell(entryNonTerminal, entryInsideProbability, entryPackedChildren, entryMidpoint);
+        }
+
+        @Override
+        public void finalizeEmptyCell() {
+            super.finalizeEmptyCell();
+            maxInsideProbabilities[cellIndex] = Float.NEGATIVE_INFINITY;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser.chart;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.cjunit.FilteredRunner;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import cltool4j.GlobalConfigProperties;
+import edu.ohsu.cslu.grammar.DecisionTreeTokenClassifier;
+import edu.ohsu.cslu.grammar.InsideOutsideCscSparseMatrixGrammar;
+import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
+import edu.ohsu.cslu.grammar.Production;
+import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PerfectIntPairHashPackingFunction;
+import edu.ohsu.cslu.parser.ParseTask;
+import edu.ohsu.cslu.parser.Parser;
+import edu.ohsu.cslu.parser.Parser.DecodeMethod;
+import edu.ohsu.cslu.parser.ParserDriver;
+import edu.ohsu.cslu.parser.fom.InsideProb;
+import edu.ohsu.cslu.parser.ml.CartesianProductHashSpmlParser;
+import edu.ohsu.cslu.parser.ml.InsideOutsideCphSpmlParser;
+import edu.ohsu.cslu.parser.ml.TestInsideOutsideCphSpmlParser;
+import edu.ohsu.cslu.tests.JUnit;
+import edu.ohsu.cslu.util.Math;
+
+/**
+ * Tests {@link PackedForestWriter}, {@link PackedForestReader}, and forest extraction from {@link PackedArrayChart}
+ * 
+ * @author Aaron Dunlop
+ */
+@RunWith(FilteredRunner.class)
+public class TestPackedForest {
+
+    private final static String[] LABELS = new String[] { "ROOT", "NP", "NN" };
+
+    /** (ROOT (NP (NN fish))), with a competing edge (NP -> NN) in cell 0,1 */
+    private final static PackedForest SAMPLE_FOREST = new PackedForest(new String[] { "fish" }, new short[] { 0 },
+            new short[] { 1 }, new int[] { 0, 3 }, new short[] { 0, 1, 2 }, new float[] { -3f, -2.5f, -1f },
+            new float[] { 0f, -.5f, -2f }, new short[] { 1, 1, 1 }, new short[] { 1, 2, 0 }, new short[] {
+                    Production.UNARY_PRODUCTION, Production.UNARY_PRODUCTION, Production.LEXICAL_PRODUCTION },
+            new int[] { 0, 1 }, new int[] { 1, 2 }, new int[] { -1, -1 }, new float[] { -.5f, -1.5f }, new float[] {
+                    0f, 0f });
+
+    @After
+    public void tearDown() {
+        GlobalConfigProperties.singleton().remove(Parser.PROPERTY_MAX_BEAM_WIDTH);
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final PackedForestWriter writer = new PackedForestWriter(bos, LABELS);
+        writer.write(SAMPLE_FOREST);
+
+        // Each record is flushed as it is written, so it can be read before the writer is closed
+        final PackedForestReader partialReader = new PackedForestReader(new ByteArrayInputStream(bos.toByteArray()));
+        assertArrayEquals(SAMPLE_FOREST.tokens, partialReader.read().tokens);
+        assertNull(partialReader.read());
+
+        writer.write(new PackedForest(new String[] { "fish", "swims" }));
+        writer.write(SAMPLE_FOREST);
+        writer.close();
+
+        final PackedForestReader reader = new PackedForestReader(new ByteArrayInputStream(bos.toByteArray()));
+        assertArrayEquals(LABELS, reader.labels());
+
+        final PackedForest forest = reader.read();
+        assertArrayEquals(SAMPLE_FOREST.tokens, forest.tokens);
+        assertArrayEquals(SAMPLE_FOREST.cellStarts, forest.cellStarts);
+        assertArrayEquals(SAMPLE_FOREST.cellEnds, forest.cellEnds);
+        assertArrayEquals(SAMPLE_FOREST.cellOffsets, forest.cellOffsets);
+        assertArrayEquals(SAMPLE_FOREST.nonTerminals, forest.nonTerminals);
+        assertArrayEquals(SAMPLE_FOREST.insideProbabilities, forest.insideProbabilities, 0f);
+        assertArrayEquals(SAMPLE_FOREST.outsideProbabilities, forest.outsideProbabilities, 0f);
+        assertArrayEquals(SAMPLE_FOREST.midpoints, forest.midpoints);
+        assertArrayEquals(SAMPLE_FOREST.leftChildren, forest.leftChildren);
+        assertArrayEquals(SAMPLE_FOREST.rightChildren, forest.rightChildren);
+        assertArrayEquals(SAMPLE_FOREST.edgeParents, forest.edgeParents);
+        assertArrayEquals(SAMPLE_FOREST.edgeLeftChildren, forest.edgeLeftChildren);
+        assertArrayEquals(SAMPLE_FOREST.edgeRightChildren, forest.edgeRightChildren);
+        assertArrayEquals(SAMPLE_FOREST.edgeProbabilities, forest.edgeProbabilities, 0f);
+        assertArrayEquals(SAMPLE_FOREST.edgePosteriors, forest.edgePosteriors, 0f);
+
+        assertEquals("(ROOT (NP (NN fish)))", forest.extractBestParse((short) 0, LABELS).toString());
+        assertEquals(2, forest.entryIndex(0, 1, (short) 2));
+        assertEquals(-1, forest.entryIndex(0, 1, (short) 3));
+
+        // A parse failure
+        final PackedForest failure = reader.read();
+        assertEquals(0, failure.size());
+        assertEquals(0, failure.edges());
+        assertNull(failure.outsideProbabilities);
+        assertArrayEquals(new String[] { "fish", "swims" }, failure.tokens);
+        assertNull(failure.extractBestParse((short) 0, LABELS));
+
+        assertTrue(reader.skip());
+        assertFalse(reader.skip());
+        assertNull(reader.read());
+    }
+
+    /**
+     * Extracts forests from a Viterbi parser. The forest should reproduce the Viterbi parse, and should not include
+     * outside probabilities or hyperedges.
+     */
+    @Test
+    public void testViterbiForest() throws Exception {
+        final LeftCscSparseMatrixGrammar g = new LeftCscSparseMatrixGrammar(
+                JUnit.unitTestDataAsReader("grammars/eng.R2.gr.gz"), new DecisionTreeTokenClassifier(),
+                PerfectIntPairHashPackingFunction.class);
+        final ParserDriver opts = new ParserDriver();
+        opts.forestOutput = true;
+        opts.forestEdgeThreshold = -5f;
+        final CartesianProductHashSpmlParser parser = new CartesianProductHashSpmlParser(opts, g);
+
+        final String[] labels = new String[g.nonTermSet.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = g.nonTermSet.getSymbol(i);
+        }
+
+        final ParseTask task = parser.parseSentence("The report is due out tomorrow .");
+        final PackedForest forest = task.forest;
+        assertEquals(task.binaryParse.toString(), forest.extractBestParse(g.startSymbol, labels).toString());
+        assertNull(forest.outsideProbabilities);
+        assertEquals(0, forest.edges());
+
+        // Every cell's entries should match the chart
+        for (int cell = 0; cell < forest.cells(); cell++) {
+            final int start = forest.cellStarts[cell], end = forest.cellEnds[cell];
+            for (int i = forest.cellOffsets[cell]; i < forest.cellOffsets[cell + 1]; i++) {
+                assertEquals(parser.chart.getInside(start, end, forest.nonTerminals[i]),
+                        forest.insideProbabilities[i], 0f);
+            }
+        }
+
+        // Round-trip through the binary format
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final PackedForestWriter writer = new PackedForestWriter(bos, labels);
+        writer.write(forest);
+        writer.close();
+        final PackedForestReader reader = new PackedForestReader(new ByteArrayInputStream(bos.toByteArray()));
+        assertEquals(task.binaryParse.toString(),
+                reader.read().extractBestParse(g.startSymbol, reader.labels()).toString());
+    }
+
+    /**
+     * Extracts a forest, including hyperedges, from an inside-outside parse. The posteriors of all edges in each cell
+     * should sum to the posterior probability of that cell's constituents.
+     */
+    @Test
+    public void testInsideOutsideForest() throws Exception {
+        GlobalConfigProperties.singleton().setProperty(Parser.PROPERTY_MAX_BEAM_WIDTH, "0");
+        final ParserDriver opts = new ParserDriver();
+        opts.decodeMethod = DecodeMethod.MaxRuleProd;
+        opts.fomModel = new InsideProb();
+        opts.forestOutput = true;
+        opts.forestEdgeThreshold = Float.NEGATIVE_INFINITY;
+
+        final InsideOutsideCscSparseMatrixGrammar g = new InsideOutsideCscSparseMatrixGrammar(
+                TestInsideOutsideCphSpmlParser.simpleGrammar2(), new DecisionTreeTokenClassifier(),
+                PerfectIntPairHashPackingFunction.class);
+        final InsideOutsideCphSpmlParser parser = new InsideOutsideCphSpmlParser(opts, g);
+        final PackedForest forest = parser.parseSentence("The fish market stands last").forest;
+
+        assertTrue(forest.outsideProbabilities != null);
+        assertTrue(forest.edges() > 0);
+
+        // ROOT -> S is the only edge into ROOT, so its posterior is 1
+        final int root = forest.entryIndex(0, 5, g.startSymbol);
+        float rootPosterior = Float.NEGATIVE_INFINITY;
+        for (int e = 0; e < forest.edges(); e++) {
+            assertTrue(forest.edgePosteriors[e] < .0001f);
+            if (forest.edgeParents[e] == root) {
+                rootPosterior = Math.logSum(rootPosterior, forest.edgePosteriors[e]);
+            }
+        }
+        assertEquals(0f, rootPosterior, .0001f);
+
+        // Only edges above the threshold
+        opts.forestEdgeThreshold = -1f;
+        final PackedForest pruned = parser.parseSentence("The fish market stands last").forest;
+        assertTrue(pruned.edges() > 0);
+        assertTrue(pruned.edges() < forest.edges());
+        for (int e = 0; e < pruned.edges(); e++) {
+            assertTrue(pruned.edgePosteriors[e] >= -1f);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser.chart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ohsu.cslu.grammar.GrammarTestCase;
+import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
+import edu.ohsu.cslu.grammar.Production;
+import edu.ohsu.cslu.grammar.SparseMatrixGrammar;
+import edu.ohsu.cslu.parser.ParseTask;
+import edu.ohsu.cslu.parser.Parser;
+import edu.ohsu.cslu.parser.Parser.DecodeMethod;
+import edu.ohsu.cslu.parser.chart.Chart.ChartCell;
+import edu.ohsu.cslu.parser.ecp.ExhaustiveChartParserTestCase;
+
+/**
+ * Unit tests for {@link QuantizedPackedArrayChart}
+ * 
+ * @author Aaron Dunlop
+ */
+public class TestQuantizedPackedArrayChart {
+
+    private QuantizedPackedArrayChart chart;
+    private SparseMatrixGrammar simpleGrammar2;
+
+    @Before
+    public void setUp() throws Exception {
+        simpleGrammar2 = GrammarTestCase.createGrammar(LeftCscSparseMatrixGrammar.class,
+                ExhaustiveChartParserTestCase.simpleGrammar2());
+        chart = new QuantizedPackedArrayChart(new ParseTask("The fish market stands last", Parser.InputFormat.Text,
+                simpleGrammar2, DecodeMethod.ViterbiMax), simpleGrammar2);
+    }
+
+    @Test
+    public void testFinalizeCell() throws Exception {
+        final ChartCell cell_2_3 = chart.getCell(2, 3);
+
+        cell_2_3.updateInside(new Production(1, 2, 3, -3.1234567f, simpleGrammar2), cell_2_3, null, -3.1234567f);
+        cell_2_3.updateInside(new Production(2, 3, 4, -2.0004f, simpleGrammar2), cell_2_3, null, -2.0004f);
+        cell_2_3.updateInside(new Production(3, 2, 2, -20.987654f, simpleGrammar2), cell_2_3, null, -20.987654f);
+        cell_2_3.updateInside(new Production(4, 3, -1.5f, false, simpleGrammar2), cell_2_3, null, -1.5f);
+        cell_2_3.finalizeCell();
+
+        final int cellIndex = chart.cellIndex(2, 3);
+        assertEquals(4, cell_2_3.getNumNTs());
+        assertEquals(-1.5f, chart.maxInsideProbabilities[cellIndex], 0f);
+
+        // Each entry should be within half a fixed-point step of the original value
+        final float resolution = chart.insideProbabilityResolutions[cellIndex];
+        assertEquals((20.987654f - 1.5f) / 65535, resolution, .0000001f);
+        final float tolerance = resolution / 2;
+        assertEquals(-3.1234567f, cell_2_3.getInside(1), tolerance);
+        assertEquals(-2.0004f, cell_2_3.getInside(2), tolerance);
+        assertEquals(-20.987654f, cell_2_3.getInside(3), tolerance);
+        assertEquals(-1.5f, cell_2_3.getInside(4), 0f);
+
+        // The quantized array is the only store of inside probabilities
+        assertNull(chart.insideProbabilities);
+        assertDequantized(cellIndex);
+    }
+
+    @Test
+    public void testDropOutOfRange() throws Exception {
+        final ChartCell cell_0_1 = chart.getCell(0, 1);
+        cell_0_1.updateInside(new Production(1, 2, 3, -1f, simpleGrammar2), cell_0_1, null, -1f);
+        cell_0_1.updateInside(new Production(2, 3, 4, -200f, simpleGrammar2), cell_0_1, null, -200f);
+        cell_0_1.updateInside(new Production(3, 2, 2, -20.123f, simpleGrammar2), cell_0_1, null, -20.123f);
+        cell_0_1.finalizeCell();
+
+        // Entries beyond the capped range are dropped, and do not contribute to the range of the cell
+        final int cellIndex = chart.cellIndex(0, 1);
+        assertEquals(2, cell_0_1.getNumNTs());
+        final float resolution = chart.insideProbabilityResolutions[cellIndex];
+        assertEquals((20.123f - 1f) / 65535, resolution, .0000001f);
+        assertEquals(-1f, cell_0_1.getInside(1), 0f);
+        assertEquals(Float.NEGATIVE_INFINITY, cell_0_1.getInside(2), 0f);
+        assertEquals(-20.123f, cell_0_1.getInside(3), resolution / 2);
+        assertDequantized(cellIndex);
+    }
+
+    @Test
+    public void testCopyCell() throws Exception {
+        final PackedArrayChart source = new PackedArrayChart(chart.parseTask, simpleGrammar2);
+        final ChartCell sourceCell = source.getCell(3, 5);
+        sourceCell.updateInside(new Production(1, 2, 3, -4.5f, simpleGrammar2), sourceCell, null, -4.5f);
+        sourceCell.updateInside(new Production(2, 3, 4, -60f, simpleGrammar2), sourceCell, null, -60f);
+        sourceCell.updateInside(new Production(3, 2, 2, -11.75f, simpleGrammar2), sourceCell, null, -11.75f);
+        sourceCell.finalizeCell();
+
+        // Copying from a full-precision chart quantizes the cell (and drops entries beyond its range)
+        chart.copyCell(source, 3, 5);
+        final int cellIndex = chart.cellIndex(3, 5);
+        assertEquals(2, chart.getCell(3, 5).getNumNTs());
+        final float resolution = chart.insideProbabilityResolutions[cellIndex];
+        assertEquals(-4.5f, chart.getInside(3, 5, 1), 0f);
+        assertEquals(Float.NEGATIVE_INFINITY, chart.getInside(3, 5, 2), 0f);
+        assertEquals(-11.75f, chart.getInside(3, 5, 3), resolution / 2);
+
+        // And a snapshot of the quantized cell restores the same (reduced-precision) values
+        final float quantized = chart.getInside(3, 5, 3);
+        assertTrue(chart.restoreCell(chart.snapshotCell(3, 5), 3, 5));
+        assertEquals(quantized, chart.getInside(3, 5, 3), 0f);
+        assertDequantized(cellIndex);
+    }
+
+    @Test
+    public void testSingleEntryCell() throws Exception {
+        final PackedArrayChart.PackedArrayChartCell cell_1_2 = chart.getCell(1, 2);
+        cell_1_2.finalizeCell((short) 2, -7.25f, 0, (short) 2);
+        assertEquals(-7.25f, chart.maxInsideProbabilities[chart.cellIndex(1, 2)], 0f);
+        assertEquals(-7.25f, cell_1_2.getInside(2), 0f);
+        assertDequantized(chart.cellIndex(1, 2));
+    }
+
+    /**
+     * Verifies that the chart reports each entry's dequantized inside probability
+     */
+    private void assertDequantized(final int cellIndex) {
+        final int offset = chart.cellOffsets[cellIndex];
+        for (int i = offset; i < offset + chart.numNonTerminals[cellIndex]; i++) {
+            assertEquals(chart.dequantize(cellIndex, i), chart.insideProbability(cellIndex, i), 0f);
+        }
+    }
+}
@@ -34,6 +34,8 @@ import org.junit.runners.Suite;
         TestCartesianProductBinarySearchSpmlParser.class, TestCartesianProductBinarySearchLeftChildSpmlParser.class,
         TestCartesianProductHashSpmlParser.class, TestGrammarLoopSpmlParser.class,
         TestPrunedCartesianProductHashSpmlParser.class, TestInsideOutsideCphSpmlParser.class,
-        TestConstrainedCphSpmlParser.class })
+        TestParallelInsideOutsideCphSpmlParser.class, TestConstrainedCphSpmlParser.class,
+        TestCoarseToFineCphSpmlParser.class, TestInterleavedCphSpmlParser.class, TestQuantizedCphSpmlParser.class,
+        TestQuantizedGrammarCphSpmlParser.class })
 public class AllMatrixLoopParserTests {
 }
@@ -22,12 +22,17 @@
 
 package edu.ohsu.cslu.parser.ml;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 import cltool4j.GlobalConfigProperties;
 import edu.ohsu.cslu.datastructs.narytree.BinaryTree;
 import edu.ohsu.cslu.grammar.InsideOutsideCscSparseMatrixGrammar;
+import edu.ohsu.cslu.parser.ParseScheduler;
 import edu.ohsu.cslu.parser.ParseTask;
 import edu.ohsu.cslu.parser.ParserDriver;
 import edu.ohsu.cslu.parser.chart.PackedArrayChart;
@@ -38,6 +43,11 @@ import edu.ohsu.cslu.parser.chart.PackedArrayChart.PackedArrayChartCell;
  * a chart containing inside or inside-outside (posterior) probabilities, we have a choice of decoding methods (see
  * {@link edu.ohsu.cslu.parser.Parser.DecodeMethod} and {@link PackedArrayChart}).
  * 
+ * If {@link ParserDriver#OPT_CELL_THREAD_COUNT} is greater than 1, the outside pass and posterior decoding are
+ * parallelized across the cells of each span. The outside probabilities of a cell depend only on cells of larger span
+ * (its parents) and on inside probabilities (its siblings), so all cells of a span can be processed concurrently once
+ * the span above it is complete. Similarly, maxc and max-rule scores of a cell depend only on cells of smaller span.
+ * 
  * @author Aaron Dunlop
  */
 public abstract class BaseIoCphSpmlParser extends
@@ -62,8 +72,26 @@ public abstract class BaseIoCphSpmlParser extends
     protected final static boolean HEURISTIC_OUTSIDE = GlobalConfigProperties.singleton().getBooleanProperty(
             ParserDriver.OPT_HEURISTIC_OUTSIDE, false);
 
+    /**
+     * Executes the outside pass and decoding in parallel across cells of a span (null if single-threaded). Shared by all
+     * parser instances (see {@link ParseScheduler}).
+     */
+    protected final ForkJoinPool threadPool;
+
+    /** Dense outside probabilities of the current parent cell, reused by each worker thread */
+    protected final ThreadLocal<float[]> threadLocalParentOutsideProbabilities;
+
     public BaseIoCphSpmlParser(final ParserDriver opts, final InsideOutsideCscSparseMatrixGrammar grammar) {
         super(opts, grammar);
+
+        this.threadPool = opts.scheduler().pool();
+
+        this.threadLocalParentOutsideProbabilities = new ThreadLocal<float[]>() {
+            @Override
+            protected float[] initialValue() {
+                return new float[grammar.numNonTerms()];
+            }
+        };
     }
 
     @Override
@@ -71,6 +99,11 @@ public abstract class BaseIoCphSpmlParser extends
         initChart(parseTask);
         insidePass();
 
+        // If the deadline expired before we populated the top cell, skip the outside pass and decoding
+        if (parseTask.timedOut && !chart.hasCompleteParse(grammar.startSymbol)) {
+            return null;
+        }
+
         // TODO Support reparsing in inside-outside parsers (BaseIoCph and RealIo)
 
         // If we're using the FOM estimate of outside probabilities, we already populated it during the inside pass
@@ -81,28 +114,130 @@ public abstract class BaseIoCphSpmlParser extends
                 Arrays.fill(chart.outsideProbabilities, 0, chart.chartArraySize(), 0f);
 
             } else {
-                // Outside pass
-
-                // To compute the outside probability of a non-terminal in a cell, we need the outside probability of
-                // the cell's parent, so we process downward from the top of the chart.
-                final Iterator<short[]> reverseIterator = cellSelector.reverseIterator();
-
-                while (reverseIterator.hasNext()) {
-                    final short[] startAndEnd = reverseIterator.next();
-                    final PackedArrayChartCell cell = chart.getCell(startAndEnd[0], startAndEnd[1]);
-                    computeOutsideProbabilities(cell);
-                }
+                outsidePass();
             }
         }
 
         if (collectDetailedStatistics) {
-            final long t3 = System.currentTimeMillis();
-            final BinaryTree<String> parseTree = chart.decode();
-            parseTask.extractTimeMs = System.currentTimeMillis() - t3;
+            final long t3 = System.nanoTime();
+            final BinaryTree<String> parseTree = chart.decode(sentencePool());
+            parseTask.extractNs = System.nanoTime() - t3;
             return parseTree;
         }
 
-        return chart.decode();
+        return chart.decode(sentencePool());
+    }
+
+    /**
+     * @return {@link #threadPool} if the current sentence is long enough to parallelize, or null if it should be
+     *         processed entirely on the calling thread
+     */
+    private ForkJoinPool sentencePool() {
+        return threadPool != null && opts.scheduler().parallelize(chart.size()) ? threadPool : null;
+    }
+
+    /**
+     * Populates outside probabilities for all cells in the chart (after the inside pass is complete).
+     */
+    protected void outsidePass() {
+        if (sentencePool() != null) {
+            parallelOutsidePass();
+            return;
+        }
+
+        // To compute the outside probability of a non-terminal in a cell, we need the outside probability of the
+        // cell's parent, so we process downward from the top of the chart.
+        final Iterator<short[]> reverseIterator = cellSelector.reverseIterator();
+
+        while (reverseIterator.hasNext()) {
+            final short[] startAndEnd = reverseIterator.next();
+            final PackedArrayChartCell cell = chart.getCell(startAndEnd[0], startAndEnd[1]);
+            computeOutsideProbabilities(cell);
+            cell.finalizeCell();
+        }
+    }
+
+    /**
+     * Executes the outside pass top-down, one span at a time. All cells of a span are computed concurrently, and
+     * finalized only after the entire span is complete, so no thread reads a sibling cell while it is being repacked.
+     * Deferring finalization does not change the result, since sibling entries dropped during finalization (those with
+     * 0 outside probability) cannot contribute to the outside probability of any other cell.
+     * 
+     * Assumes the cell selector orders cells bottom-up by span (as {@link edu.ohsu.cslu.parser.cellselector.CellSelector#hasNext()} does).
+     */
+    private void parallelOutsidePass() {
+
+        final Iterator<short[]> reverseIterator = cellSelector.reverseIterator();
+        final List<PackedArrayChartCell> spanCells = new ArrayList<PackedArrayChartCell>();
+        int currentSpan = 0;
+
+        while (reverseIterator.hasNext()) {
+            final short[] startAndEnd = reverseIterator.next();
+            if (startAndEnd[1] - startAndEnd[0] != currentSpan) {
+                computeOutsideProbabilities(spanCells);
+                spanCells.clear();
+                currentSpan = startAndEnd[1] - startAndEnd[0];
+            }
+            spanCells.add(chart.getCell(startAndEnd[0], startAndEnd[1]));
+        }
+        computeOutsideProbabilities(spanCells);
+    }
+
+    /**
+     * Populates and then finalizes outside probabilities for all cells of a single span.
+     * 
+     * @param spanCells Cells of a single span
+     */
+    private void computeOutsideProbabilities(final List<PackedArrayChartCell> spanCells) {
+
+        if (spanCells.size() <= 1) {
+            for (final PackedArrayChartCell cell : spanCells) {
+                computeOutsideProbabilities(cell);
+                cell.finalizeCell();
+            }
+            return;
+        }
+
+        final List<Callable<Void>> computeTasks = new ArrayList<Callable<Void>>(spanCells.size());
+        final List<Callable<Void>> finalizeTasks = new ArrayList<Callable<Void>>(spanCells.size());
+        for (final PackedArrayChartCell cell : spanCells) {
+            computeTasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    computeOutsideProbabilities(cell);
+                    return null;
+                }
+            });
+            finalizeTasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    cell.finalizeCell();
+                    return null;
+                }
+            });
+        }
+        ParseScheduler.invokeAll(threadPool, computeTasks);
+        ParseScheduler.invokeAll(threadPool, finalizeTasks);
+    }
+
+    /**
+     * Copies the outside probabilities of a (finalized) parent cell into dense thread-local storage. Avoids allocating
+     * a temporary cell for each parent of each cell in the outside pass.
+     * 
+     * @param parentStart
+     * @param parentEnd
+     * @return Outside probabilities of the parent cell, indexed by non-terminal
+     */
+    protected final float[] parentOutsideProbabilities(final int parentStart, final int parentEnd) {
+        final float[] parentOutsideProbabilities = threadLocalParentOutsideProbabilities.get();
+        Arrays.fill(parentOutsideProbabilities, Float.NEGATIVE_INFINITY);
+
+        final int parentCellIndex = chart.cellIndex(parentStart, parentEnd);
+        final int offset = chart.offset(parentCellIndex);
+        for (int i = offset; i < offset + chart.numNonTerminals[parentCellIndex]; i++) {
+            parentOutsideProbabilities[chart.nonTerminalIndices[i]] = chart.outsideProbabilities[i];
+        }
+        return parentOutsideProbabilities;
     }
 
     /**
@@ -131,7 +266,8 @@ public abstract class BaseIoCphSpmlParser extends
     }
 
     /**
-     * Populates outside probabilities in the target cell
+     * Populates outside probabilities in the temporary storage of the target cell. The caller is responsible for
+     * finalizing the cell.
      * 
      * @param cell
      */
@@ -65,8 +65,8 @@ public class CartesianProductHashSpmlParser extends
 
         final PackingFunction pf = grammar.packingFunction();
 
-        // Iterate over all possible midpoints
-        for (short midpoint = (short) (start + 1); midpoint <= end - 1; midpoint++) {
+        // Iterate over all viable midpoints (those at which both child cells are populated)
+        for (final short midpoint : cellSelector.viableMidpoints(start, end)) {
             if (end - start > cellSelector.getMaxSpan(start, end)) {
                 continue;
             }
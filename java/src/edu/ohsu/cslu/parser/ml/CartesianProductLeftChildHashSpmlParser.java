@@ -70,8 +70,8 @@ public class CartesianProductLeftChildHashSpmlParser extends
         targetCell.allocateTemporaryStorage();
         final TemporaryChartCell tmpCell = targetCell.tmpCell;
 
-        // Iterate over all possible midpoints
-        for (short midpoint = (short) (start + 1); midpoint <= end - 1; midpoint++) {
+        // Iterate over all viable midpoints (those at which both child cells are populated)
+        for (final short midpoint : cellSelector.viableMidpoints(start, end)) {
             final int leftCellIndex = chart.cellIndex(start, midpoint);
             final int rightCellIndex = chart.cellIndex(midpoint, end);
 
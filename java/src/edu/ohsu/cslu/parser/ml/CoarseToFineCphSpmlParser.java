@@ -0,0 +1,322 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser.ml;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import cltool4j.BaseLogger;
+import cltool4j.GlobalConfigProperties;
+import edu.ohsu.cslu.datastructs.narytree.BinaryTree;
+import edu.ohsu.cslu.grammar.InsideOutsideCscSparseMatrixGrammar;
+import edu.ohsu.cslu.grammar.Vocabulary;
+import edu.ohsu.cslu.parser.ParseTask;
+import edu.ohsu.cslu.parser.ParserDriver;
+import edu.ohsu.cslu.parser.chart.Chart.ChartCell;
+import edu.ohsu.cslu.parser.chart.PackedArrayChart.PackedArrayChartCell;
+
+/**
+ * Hierarchical coarse-to-fine inside-outside parser for latent-variable (split) grammars (see Petrov and Klein, 2007).
+ * 
+ * The split grammar is projected onto a sequence of coarser grammars, from the unsplit (Markov-0) grammar through
+ * successive split levels. Each coarse grammar is parsed exhaustively (inside-outside), constrained by the posteriors
+ * of the previous (coarser) pass, and we retain only the (cell, non-terminal) entries whose posterior probability
+ * exceeds {@link #PROPERTY_C2F_THRESHOLD}. The final pass with the split grammar is restricted to fine non-terminals
+ * which project onto a retained entry of the last coarse pass, and is then decoded as in
+ * {@link InsideOutsideCphSpmlParser}.
+ * 
+ * Split levels are recovered from the subcategory indices of split non-terminals (e.g. NP_13), assuming that each
+ * split doubles the subcategories of its parent, as {@link edu.ohsu.cslu.lela.FractionalCountGrammar#split} does (NP_k
+ * is split into NP_2k and NP_2k+1). For grammars which have also been merged, the intermediate levels are an
+ * approximation of the training hierarchy, but pruning is still safe with respect to the unsplit grammar. Coarse
+ * grammar probabilities sum over splits without weighting (see {@link InsideOutsideCscSparseMatrixGrammar#toProjectedGrammar}).
+ * 
+ * @author Aaron Dunlop
+ */
+public class CoarseToFineCphSpmlParser extends InsideOutsideCphSpmlParser {
+
+    /** Minimum log posterior probability of a coarse chart entry retained for the next pass. Default = -10 */
+    public final static String PROPERTY_C2F_THRESHOLD = "c2fThreshold";
+
+    /**
+     * Maximum number of coarse passes, beginning with the unsplit grammar. Default = all split levels of the grammar
+     * (log2 of the largest subcategory count).
+     */
+    public final static String PROPERTY_C2F_LEVELS = "c2fLevels";
+
+    /**
+     * Coarse grammar hierarchies, shared by all parser instances (and threads) using the same fine grammar. Projecting
+     * a large split grammar is expensive, so we do it only once. {@link GrammarHierarchy} must not reference the fine
+     * grammar, or the entry (and all its coarse grammars) would never be released.
+     */
+    private final static Map<InsideOutsideCscSparseMatrixGrammar, GrammarHierarchy> grammarHierarchies = new WeakHashMap<InsideOutsideCscSparseMatrixGrammar, GrammarHierarchy>();
+
+    /** The next-coarser pass (null for the coarsest) */
+    private final CoarseToFineCphSpmlParser coarseStage;
+
+    /**
+     * Maps non-terminals of this stage's grammar to those of {@link #coarseStage}. Indexed by non-terminal index.
+     * Null for the coarsest stage.
+     */
+    private final short[] projection;
+
+    private final float threshold;
+
+    /**
+     * Entries retained by this (coarse) pass, indexed by cellIndex * |V| + non-terminal. Populated by
+     * {@link #prune(ParseTask)} and unused in the final (fine) pass.
+     */
+    private boolean[] retainedEntries;
+
+    public CoarseToFineCphSpmlParser(final ParserDriver opts, final InsideOutsideCscSparseMatrixGrammar grammar) {
+        this(opts, grammar, grammarHierarchy(grammar), GlobalConfigProperties.singleton().getIntProperty(
+                PROPERTY_C2F_LEVELS, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Constructs the parser for a single stage, and (recursively) all coarser stages.
+     * 
+     * @param opts
+     * @param grammar Grammar for this stage
+     * @param hierarchy Coarse grammars projected from the fine grammar
+     * @param level Index of this stage in <code>hierarchy</code> (the number of coarser passes, if all are in use)
+     */
+    private CoarseToFineCphSpmlParser(final ParserDriver opts, final InsideOutsideCscSparseMatrixGrammar grammar,
+            final GrammarHierarchy hierarchy, final int level) {
+        super(opts, grammar);
+
+        this.threshold = GlobalConfigProperties.singleton().getFloatProperty(PROPERTY_C2F_THRESHOLD, -10f);
+        final int coarseLevel = java.lang.Math.min(level, hierarchy.grammars.length) - 1;
+
+        if (coarseLevel >= 0) {
+            this.coarseStage = new CoarseToFineCphSpmlParser(opts, hierarchy.grammars[coarseLevel], hierarchy,
+                    coarseLevel);
+            // Project through any intermediate levels we're skipping
+            this.projection = level < hierarchy.grammars.length && grammar == hierarchy.grammars[level] ? hierarchy
+                    .projection(level, coarseLevel) : hierarchy.fineProjections[coarseLevel];
+            // Coarse passes are parsed exhaustively, and do not use the FOM
+            this.coarseStage.figureOfMerit = null;
+        } else {
+            this.coarseStage = null;
+            this.projection = null;
+        }
+    }
+
+    @Override
+    protected void initDefaultPruningParams() {
+        // Pruning is driven by the posteriors of coarser passes, so we don't restrict the local beam
+        this.beamWidth = grammar.numNonTerms();
+        this.lexicalRowBeamWidth = grammar.numNonTerms();
+        this.lexicalRowUnaries = grammar.numNonTerms();
+        this.maxLocalDelta = 0f;
+        this.exhaustiveSearch = true;
+    }
+
+    @Override
+    public BinaryTree<String> findBestParse(final ParseTask parseTask) {
+        if (coarseStage != null) {
+            coarseStage.prune(parseTask);
+        }
+        return super.findBestParse(parseTask);
+    }
+
+    /**
+     * Executes the inside-outside passes for this (coarse) stage, constrained by the coarser stages, and records the
+     * chart entries whose posterior probability exceeds {@link #threshold}.
+     * 
+     * @param parseTask
+     */
+    private void prune(final ParseTask parseTask) {
+        if (coarseStage != null) {
+            coarseStage.prune(parseTask);
+        }
+
+        initChart(parseTask);
+        insidePass();
+
+        final int sentenceLength = parseTask.sentenceLength();
+        final int cells = sentenceLength * (sentenceLength + 1) / 2;
+        final int v = grammar.numNonTerms();
+        if (retainedEntries == null || retainedEntries.length < cells * v) {
+            retainedEntries = new boolean[cells * v];
+        } else {
+            Arrays.fill(retainedEntries, 0, cells * v, false);
+        }
+
+        // If the coarse grammar cannot parse the sentence, the fine grammar cannot either, so retain nothing
+        final float sentenceInsideProbability = chart.getInside(0, sentenceLength, grammar.startSymbol);
+        if (sentenceInsideProbability == Float.NEGATIVE_INFINITY) {
+            return;
+        }
+
+        outsidePass();
+
+        final float minInsideOutside = sentenceInsideProbability + threshold;
+        for (int start = 0; start < sentenceLength; start++) {
+            for (int end = start + 1; end <= sentenceLength; end++) {
+                final int cellIndex = chart.cellIndex(start, end);
+                final int offset = chart.offset(cellIndex);
+                final int entryOffset = cellIndex * v;
+
+                for (int i = offset; i < offset + chart.numNonTerminals[cellIndex]; i++) {
+                    if (chart.insideProbabilities[i] + chart.outsideProbabilities[i] >= minInsideOutside) {
+                        retainedEntries[entryOffset + chart.nonTerminalIndices[i]] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Prunes entries which were not retained by the coarser pass, both before and after applying unary productions.
+     * {@link InsideOutsideCphSpmlParser#computeInsideProbabilities(ChartCell)} applies unaries to all cells (including
+     * lexical cells) during exhaustive search, so this covers all entries of the chart.
+     */
+    @Override
+    public void unarySpmv(final ChartCell chartCell) {
+        if (coarseStage == null) {
+            super.unarySpmv(chartCell);
+            return;
+        }
+
+        final PackedArrayChartCell cell = (PackedArrayChartCell) chartCell;
+        cell.allocateTemporaryStorage();
+        final int entryOffset = cell.cellIndex * coarseStage.grammar.numNonTerms();
+
+        pruneTemporaryCell(cell.tmpCell.insideProbabilities, entryOffset);
+        super.unarySpmv(chartCell);
+        pruneTemporaryCell(cell.tmpCell.insideProbabilities, entryOffset);
+    }
+
+    private void pruneTemporaryCell(final float[] insideProbabilities, final int entryOffset) {
+        final boolean[] coarseEntries = coarseStage.retainedEntries;
+        for (int nt = 0; nt < insideProbabilities.length; nt++) {
+            if (insideProbabilities[nt] != Float.NEGATIVE_INFINITY && !coarseEntries[entryOffset + projection[nt]]) {
+                insideProbabilities[nt] = Float.NEGATIVE_INFINITY;
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        if (coarseStage != null) {
+            coarseStage.shutdown();
+        }
+    }
+
+    private static GrammarHierarchy grammarHierarchy(final InsideOutsideCscSparseMatrixGrammar grammar) {
+        synchronized (grammarHierarchies) {
+            GrammarHierarchy hierarchy = grammarHierarchies.get(grammar);
+            if (hierarchy == null) {
+                hierarchy = new GrammarHierarchy(grammar);
+                grammarHierarchies.put(grammar, hierarchy);
+            }
+            return hierarchy;
+        }
+    }
+
+    /**
+     * Returns the subcategory index of a split non-terminal (e.g. 13 for NP_13), or -1 if the non-terminal is not
+     * split.
+     */
+    static int subcategory(final String nonTerminal) {
+        final int i = nonTerminal.lastIndexOf('_');
+        if (i < 0 || i == nonTerminal.length() - 1) {
+            return -1;
+        }
+        for (int j = i + 1; j < nonTerminal.length(); j++) {
+            if (!Character.isDigit(nonTerminal.charAt(j))) {
+                return -1;
+            }
+        }
+        return Integer.parseInt(nonTerminal.substring(i + 1));
+    }
+
+    /**
+     * The sequence of coarse grammars projected from a split grammar, ordered from coarsest (unsplit) to finest.
+     */
+    static class GrammarHierarchy {
+
+        /** Coarse grammars, indexed by level (0 = unsplit) */
+        final InsideOutsideCscSparseMatrixGrammar[] grammars;
+
+        /** Projections from fine non-terminals to each coarse level. Indexed by level, fine non-terminal */
+        final short[][] fineProjections;
+
+        GrammarHierarchy(final InsideOutsideCscSparseMatrixGrammar fineGrammar) {
+            final Vocabulary fineVocabulary = fineGrammar.nonTermSet;
+
+            int maxSubcategory = 0;
+            for (short nt = 0; nt < fineVocabulary.size(); nt++) {
+                maxSubcategory = java.lang.Math.max(maxSubcategory, subcategory(fineVocabulary.getSymbol(nt)));
+            }
+
+            // Each level doubles the number of subcategories
+            final int levels = 32 - Integer.numberOfLeadingZeros(maxSubcategory);
+            this.grammars = new InsideOutsideCscSparseMatrixGrammar[levels];
+            this.fineProjections = new short[levels][];
+
+            for (int level = 0; level < levels; level++) {
+                final int shift = levels - level;
+                final Vocabulary coarseVocabulary = new Vocabulary(fineGrammar.grammarFormat);
+                final short[] fineProjection = new short[fineVocabulary.size()];
+
+                for (short nt = 0; nt < fineVocabulary.size(); nt++) {
+                    final String symbol = fineVocabulary.getSymbol(nt);
+                    final int subcategory = subcategory(symbol);
+                    final String coarseSymbol = subcategory < 0 ? symbol : symbol.substring(0,
+                            symbol.lastIndexOf('_') + 1) + (subcategory >> shift);
+                    fineProjection[nt] = (short) coarseVocabulary.addSymbol(coarseSymbol);
+                }
+                coarseVocabulary.setStartSymbol(fineProjection[fineGrammar.startSymbol]);
+
+                fineProjections[level] = fineProjection;
+                grammars[level] = (InsideOutsideCscSparseMatrixGrammar) fineGrammar.toProjectedGrammar(
+                        coarseVocabulary, fineProjection);
+            }
+
+            BaseLogger.singleton().fine(
+                    String.format("INFO: Projected %d coarse grammars (%s)", levels, Arrays.toString(grammarSizes())));
+        }
+
+        /**
+         * @return The mapping from non-terminals of level <code>from</code> onto those of level <code>to</code>.
+         */
+        short[] projection(final int from, final int to) {
+            final short[] projection = new short[grammars[from].numNonTerms()];
+            for (int nt = 0; nt < fineProjections[from].length; nt++) {
+                projection[fineProjections[from][nt]] = fineProjections[to][nt];
+            }
+            return projection;
+        }
+
+        private int[] grammarSizes() {
+            final int[] sizes = new int[grammars.length];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = grammars[i].numNonTerms();
+            }
+            return sizes;
+        }
+    }
+}
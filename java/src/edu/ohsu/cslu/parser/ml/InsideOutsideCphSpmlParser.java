@@ -62,8 +62,8 @@ public class InsideOutsideCphSpmlParser extends BaseIoCphSpmlParser {
 
         final float[] targetCellProbabilities = targetCell.tmpCell.insideProbabilities;
 
-        // Iterate over all possible midpoints
-        for (short midpoint = (short) (start + 1); midpoint <= end - 1; midpoint++) {
+        // Iterate over all viable midpoints (those at which both child cells are populated)
+        for (final short midpoint : cellSelector.viableMidpoints(start, end)) {
             final int leftCellIndex = chart.cellIndex(start, midpoint);
             final int rightCellIndex = chart.cellIndex(midpoint, end);
 
@@ -247,9 +247,7 @@ public class InsideOutsideCphSpmlParser extends BaseIoCphSpmlParser {
 
         // foreach parent-start in {0..start - 1}
         for (int parentStart = 0; parentStart < start; parentStart++) {
-            final PackedArrayChartCell parentCell = chart.getCell(parentStart, end);
-            parentCell.allocateTemporaryStorage(true, true);
-            final float[] parentOutsideProbabilities = parentCell.tmpCell.outsideProbabilities;
+            final float[] parentOutsideProbabilities = parentOutsideProbabilities(parentStart, end);
 
             // Sibling (left) cell
             final int siblingCellIndex = chart.cellIndex(parentStart, start);
@@ -264,9 +262,7 @@ public class InsideOutsideCphSpmlParser extends BaseIoCphSpmlParser {
 
         // foreach parent-end in {end + 1..n}
         for (int parentEnd = end + 1; parentEnd <= chart.size(); parentEnd++) {
-            final PackedArrayChartCell parentCell = chart.getCell(start, parentEnd);
-            parentCell.allocateTemporaryStorage(true, true);
-            final float[] parentOutsideProbabilities = parentCell.tmpCell.outsideProbabilities;
+            final float[] parentOutsideProbabilities = parentOutsideProbabilities(start, parentEnd);
 
             // Sibling (right) cell
             final int siblingCellIndex = chart.cellIndex(end, parentEnd);
@@ -286,8 +282,6 @@ public class InsideOutsideCphSpmlParser extends BaseIoCphSpmlParser {
         } else {
             computeUnaryOutsideProbabilities(cell.tmpCell.outsideProbabilities);
         }
-
-        cell.finalizeCell();
     }
 
     private void computeLeftSiblingOutsideProbabilities(final float[] outsideProbabilities, final int targetStart,
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser.ml;
+
+import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
+import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PackingFunction;
+import edu.ohsu.cslu.parser.ParserDriver;
+import edu.ohsu.cslu.parser.chart.Chart.ChartCell;
+import edu.ohsu.cslu.parser.chart.PackedArrayChart.PackedArrayChartCell;
+import edu.ohsu.cslu.parser.chart.PackedArrayChart.TemporaryChartCell;
+import edu.ohsu.cslu.parser.chart.QuantizedPackedArrayChart;
+
+/**
+ * Variant of {@link CartesianProductHashSpmlParser} which stores inside probabilities at reduced precision (see
+ * {@link QuantizedPackedArrayChart}), and reads child-cell probabilities from the 16-bit quantized arrays during
+ * grammar intersection.
+ * 
+ * @author Aaron Dunlop
+ */
+public class QuantizedCphSpmlParser extends
+        SparseMatrixLoopParser<LeftCscSparseMatrixGrammar, QuantizedPackedArrayChart> {
+
+    public QuantizedCphSpmlParser(final ParserDriver opts, final LeftCscSparseMatrixGrammar grammar) {
+        super(opts, grammar);
+    }
+
+    @Override
+    protected void computeInsideProbabilities(final ChartCell cell) {
+
+        final long t0 = collectDetailedStatistics ? System.nanoTime() : 0;
+
+        final PackedArrayChartCell targetCell = (PackedArrayChartCell) cell;
+        final short start = cell.start();
+        final short end = cell.end();
+        targetCell.allocateTemporaryStorage();
+        final TemporaryChartCell tmpCell = targetCell.tmpCell;
+
+        final boolean factoredOnly = cellSelector.hasCellConstraints() && cellSelector.isCellOnlyFactored(start, end);
+
+        final int[] binaryColumnOffsets = factoredOnly ? grammar.factoredCscBinaryColumnOffsets
+                : grammar.cscBinaryColumnOffsets;
+        final float[] binaryProbabilities = factoredOnly ? grammar.factoredCscBinaryProbabilities
+                : grammar.cscBinaryProbabilities;
+        final short[] binaryRowIndices = factoredOnly ? grammar.factoredCscBinaryRowIndices
+                : grammar.cscBinaryRowIndices;
+
+        final PackingFunction pf = grammar.packingFunction();
+
+        // Iterate over all viable midpoints (those at which both child cells are populated)
+        for (final short midpoint : cellSelector.viableMidpoints(start, end)) {
+            if (end - start > cellSelector.getMaxSpan(start, end)) {
+                continue;
+            }
+
+            final int leftCellIndex = chart.cellIndex(start, midpoint);
+            final int rightCellIndex = chart.cellIndex(midpoint, end);
+
+            // Iterate over children in the left child cell
+            final int leftStart = chart.minLeftChildIndex(leftCellIndex);
+            final int leftEnd = chart.maxLeftChildIndex(leftCellIndex);
+
+            final int rightStart = chart.minRightChildIndex(rightCellIndex);
+            final int rightEnd = chart.maxRightChildIndex(rightCellIndex);
+
+            // Child probabilities are stored as offsets from the maximum in each cell
+            final float leftMax = chart.maxInsideProbabilities[leftCellIndex];
+            final float leftResolution = chart.insideProbabilityResolutions[leftCellIndex];
+            final float rightMax = chart.maxInsideProbabilities[rightCellIndex];
+            final float rightResolution = chart.insideProbabilityResolutions[rightCellIndex];
+
+            for (int i = leftStart; i <= leftEnd; i++) {
+                final short leftChild = chart.nonTerminalIndices[i];
+                final float leftProbability = leftMax - chart.quantizedInsideProbabilities[i] * leftResolution;
+
+                // And over children in the right child cell
+                for (int j = rightStart; j <= rightEnd; j++) {
+                    final int column = pf.pack(leftChild, chart.nonTerminalIndices[j]);
+                    if (column == Integer.MIN_VALUE) {
+                        continue;
+                    }
+
+                    final float childProbability = leftProbability
+                            + (rightMax - chart.quantizedInsideProbabilities[j] * rightResolution);
+
+                    for (int k = binaryColumnOffsets[column]; k < binaryColumnOffsets[column + 1]; k++) {
+
+                        final float jointProbability = binaryProbabilities[k] + childProbability;
+                        final short parent = binaryRowIndices[k];
+
+                        if (jointProbability > tmpCell.insideProbabilities[parent]) {
+                            tmpCell.packedChildren[parent] = column;
+                            tmpCell.insideProbabilities[parent] = jointProbability;
+                            tmpCell.midpoints[parent] = midpoint;
+                        }
+                    }
+                }
+            }
+
+            if (collectDetailedStatistics) {
+                chart.parseTask.nBinaryConsidered += (leftEnd - leftStart + 1) * (rightEnd - rightStart + 1);
+            }
+        }
+
+        if (collectDetailedStatistics) {
+            chart.parseTask.insideBinaryNs += System.nanoTime() - t0;
+        }
+
+        // Apply unary rules
+        if (exhaustiveSearch) {
+            unarySpmv(targetCell);
+            targetCell.finalizeCell();
+        } else {
+            // unaryAndPruning finalizes the cell
+            unaryAndPruning(targetCell, start, end);
+        }
+
+        if (collectDetailedStatistics) {
+            chart.parseTask.totalPopulatedEdges += targetCell.getNumNTs();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser.ml;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import cltool4j.GlobalConfigProperties;
+import edu.ohsu.cslu.grammar.CscSparseMatrixGrammar.QuantizedMatrix;
+import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
+import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PackingFunction;
+import edu.ohsu.cslu.parser.ParserDriver;
+import edu.ohsu.cslu.parser.chart.Chart.ChartCell;
+import edu.ohsu.cslu.parser.chart.PackedArrayChart.PackedArrayChartCell;
+import edu.ohsu.cslu.parser.chart.PackedArrayChart.TemporaryChartCell;
+
+/**
+ * Variant of {@link CartesianProductHashSpmlParser} which reads binary rule probabilities from reduced-width
+ * fixed-point codes, scaled per column (see {@link QuantizedMatrix}). At the default width of 16 bits, each rule
+ * occupies 4 bytes in the innermost loop (parent and code) instead of 6; at 8 bits or fewer, 3 bytes.
+ * 
+ * The code width is configurable with {@link #PROPERTY_RULE_BITS}, so the accuracy impact of narrower codes can be
+ * measured by parsing a development set with gold trees as input, e.g.:
+ * 
+ * <pre>
+ * parse -g eng.gr.gz -rp qgcph -if tree -O ruleBits=8 &lt; dev.trees
+ * </pre>
+ * 
+ * which reports bracket F1 (via {@link edu.ohsu.cslu.util.Evalb}) for comparison with the same run using
+ * <code>-rp cph</code>.
+ * 
+ * @author Aaron Dunlop
+ */
+public class QuantizedGrammarCphSpmlParser extends CartesianProductHashSpmlParser {
+
+    /** Width of quantized binary rule probabilities, in bits (1-16). Default = 16 */
+    public final static String PROPERTY_RULE_BITS = "ruleBits";
+
+    /**
+     * Quantized binary rules (full and factored-only matrices), shared by all parser instances (and threads) using the
+     * same grammar.
+     */
+    private final static Map<LeftCscSparseMatrixGrammar, QuantizedMatrix[]> quantizedGrammars = new WeakHashMap<LeftCscSparseMatrixGrammar, QuantizedMatrix[]>();
+
+    /** Full and factored-only quantized binary rule matrices */
+    private final QuantizedMatrix[] quantizedRules;
+
+    public QuantizedGrammarCphSpmlParser(final ParserDriver opts, final LeftCscSparseMatrixGrammar grammar) {
+        super(opts, grammar);
+        this.quantizedRules = quantizedRules(grammar,
+                GlobalConfigProperties.singleton().getIntProperty(PROPERTY_RULE_BITS, 16));
+    }
+
+    private static QuantizedMatrix[] quantizedRules(final LeftCscSparseMatrixGrammar grammar, final int bits) {
+        synchronized (quantizedGrammars) {
+            QuantizedMatrix[] rules = quantizedGrammars.get(grammar);
+            if (rules == null || rules[0].bits != bits) {
+                rules = new QuantizedMatrix[] { grammar.quantizedMatrix(bits, false),
+                        grammar.quantizedMatrix(bits, true) };
+                quantizedGrammars.put(grammar, rules);
+            }
+            return rules;
+        }
+    }
+
+    @Override
+    protected void computeInsideProbabilities(final ChartCell cell) {
+
+        final long t0 = collectDetailedStatistics ? System.nanoTime() : 0;
+
+        final PackedArrayChartCell targetCell = (PackedArrayChartCell) cell;
+        final short start = cell.start();
+        final short end = cell.end();
+        targetCell.allocateTemporaryStorage();
+        final TemporaryChartCell tmpCell = targetCell.tmpCell;
+
+        final boolean factoredOnly = cellSelector.hasCellConstraints() && cellSelector.isCellOnlyFactored(start, end);
+
+        final QuantizedMatrix rules = factoredOnly ? quantizedRules[1] : quantizedRules[0];
+        final int[] populatedColumnIndices = rules.populatedColumnIndices;
+        final int[] populatedColumnOffsets = rules.populatedColumnOffsets;
+        final byte[] byteCodes = rules.byteCodes;
+        final char[] charCodes = rules.charCodes;
+        final short[] binaryRowIndices = factoredOnly ? grammar.factoredCscBinaryRowIndices
+                : grammar.cscBinaryRowIndices;
+
+        final PackingFunction pf = grammar.packingFunction();
+
+        // Iterate over all viable midpoints (those at which both child cells are populated)
+        for (final short midpoint : cellSelector.viableMidpoints(start, end)) {
+            if (end - start > cellSelector.getMaxSpan(start, end)) {
+                continue;
+            }
+
+            final int leftCellIndex = chart.cellIndex(start, midpoint);
+            final int rightCellIndex = chart.cellIndex(midpoint, end);
+
+            // Iterate over children in the left child cell
+            final int leftStart = chart.minLeftChildIndex(leftCellIndex);
+            final int leftEnd = chart.maxLeftChildIndex(leftCellIndex);
+
+            final int rightStart = chart.minRightChildIndex(rightCellIndex);
+            final int rightEnd = chart.maxRightChildIndex(rightCellIndex);
+
+            for (int i = leftStart; i <= leftEnd; i++) {
+                final short leftChild = chart.nonTerminalIndices[i];
+                final float leftProbability = chart.insideProbabilities[i];
+
+                // And over children in the right child cell
+                for (int j = rightStart; j <= rightEnd; j++) {
+                    final int column = pf.pack(leftChild, chart.nonTerminalIndices[j]);
+                    if (column == Integer.MIN_VALUE) {
+                        continue;
+                    }
+                    final int populatedColumn = populatedColumnIndices[column];
+                    if (populatedColumn < 0) {
+                        continue;
+                    }
+
+                    // Rule probabilities are stored as offsets from the maximum in each column
+                    final float childProbability = leftProbability + chart.insideProbabilities[j]
+                            + rules.columnMaxima[populatedColumn];
+                    final float scale = rules.columnScales[populatedColumn];
+                    final int firstRule = populatedColumnOffsets[populatedColumn];
+                    final int lastRule = populatedColumnOffsets[populatedColumn + 1];
+
+                    // Separate loops for each code width, to keep the width test out of the innermost loop
+                    if (byteCodes != null) {
+                        for (int k = firstRule; k < lastRule; k++) {
+
+                            final float jointProbability = childProbability - (byteCodes[k] & 0xff) * scale;
+                            final short parent = binaryRowIndices[k];
+
+                            if (jointProbability > tmpCell.insideProbabilities[parent]) {
+                                tmpCell.packedChildren[parent] = column;
+                                tmpCell.insideProbabilities[parent] = jointProbability;
+                                tmpCell.midpoints[parent] = midpoint;
+                            }
+                        }
+                    } else {
+                        for (int k = firstRule; k < lastRule; k++) {
+
+                            final float jointProbability = childProbability - charCodes[k] * scale;
+                            final short parent = binaryRowIndices[k];
+
+                            if (jointProbability > tmpCell.insideProbabilities[parent]) {
+                                tmpCell.packedChildren[parent] = column;
+                                tmpCell.insideProbabilities[parent] = jointProbability;
+                                tmpCell.midpoints[parent] = midpoint;
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (collectDetailedStatistics) {
+                chart.parseTask.nBinaryConsidered += (leftEnd - leftStart + 1) * (rightEnd - rightStart + 1);
+            }
+        }
+
+        if (collectDetailedStatistics) {
+            chart.parseTask.insideBinaryNs += System.nanoTime() - t0;
+        }
+
+        // Apply unary rules
+        if (exhaustiveSearch) {
+            unarySpmv(targetCell);
+            targetCell.finalizeCell();
+        } else {
+            // unaryAndPruning finalizes the cell
+            unaryAndPruning(targetCell, start, end);
+        }
+
+        if (collectDetailedStatistics) {
+            chart.parseTask.totalPopulatedEdges += targetCell.getNumNTs();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser.ml;
+
+import static org.junit.Assert.assertEquals;
+
+import edu.ohsu.cslu.grammar.Grammar;
+import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
+import edu.ohsu.cslu.parser.ChartParser;
+import edu.ohsu.cslu.parser.ParseTask;
+import edu.ohsu.cslu.parser.chart.Chart;
+
+/**
+ * Base class for tests of parsers which store inside or rule probabilities at reduced precision (e.g.
+ * {@link QuantizedCphSpmlParser} and {@link QuantizedGrammarCphSpmlParser}).
+ * 
+ * @author Aaron Dunlop
+ */
+public abstract class ReducedPrecisionParserTestCase<P extends ChartParser<? extends Grammar, ? extends Chart>>
+        extends SparseMatrixLoopParserTestCase<P> {
+
+    /**
+     * Quantization may resolve near-ties between competing analyses differently than the full-precision parsers which
+     * produced the reference parses, so we compare the score of the best parse to that of
+     * {@link CartesianProductHashSpmlParser} instead of comparing the trees themselves.
+     */
+    @Override
+    protected void parseTreebankSentence(final int index) throws Exception {
+        final ParseTask actual = parser.parseSentence(sentences.get(index)[0]);
+        final ParseTask expected = new CartesianProductHashSpmlParser(parserOptions(),
+                (LeftCscSparseMatrixGrammar) f2_21_grammar).parseSentence(sentences.get(index)[0]);
+
+        assertEquals(expected.insideProbability, actual.insideProbability, expected.sentenceLength() * .001f);
+    }
+}
@@ -21,17 +21,28 @@
  */
 package edu.ohsu.cslu.parser.ml;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
 import java.io.Reader;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import org.cjunit.PerformanceTest;
 import org.junit.Before;
 import org.junit.Test;
 
+import edu.ohsu.cslu.datastructs.narytree.CharniakHeadPercolationRuleset;
+import edu.ohsu.cslu.datastructs.narytree.HeadPercolationRuleset;
+import edu.ohsu.cslu.datastructs.narytree.NaryTree;
 import edu.ohsu.cslu.grammar.DecisionTreeTokenClassifier;
 import edu.ohsu.cslu.grammar.Grammar;
 import edu.ohsu.cslu.grammar.SparseMatrixGrammar;
 import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PackingFunction;
 import edu.ohsu.cslu.grammar.TokenClassifier;
+import edu.ohsu.cslu.grammar.Vocabulary;
+import edu.ohsu.cslu.parser.ParseTask;
+import edu.ohsu.cslu.parser.Parser.OutputFormat;
 import edu.ohsu.cslu.parser.ecp.ExhaustiveChartParserTestCase;
 
 public class TestCartesianProductHashSpmlParser extends ExhaustiveChartParserTestCase<CartesianProductHashSpmlParser> {
@@ -80,4 +91,61 @@ public class TestCartesianProductHashSpmlParser extends ExhaustiveChartParserTes
 
         super.setUp();
     }
+
+    /**
+     * Verifies that dependencies extracted directly from the chart match those found by head-percolation over the
+     * unfactored n-ary parse tree.
+     */
+    @Test
+    public void testExtractDependencies() throws Exception {
+        final HeadPercolationRuleset ruleset = new CharniakHeadPercolationRuleset();
+        parser.opts.headTable = ruleset.headTable(f2_21_grammar.nonTermSet);
+
+        for (int i = 0; i < 10; i++) {
+            final ParseTask task = parser.parseSentence(sentences.get(i)[0]);
+            final NaryTree<String> tree = task.naryParse();
+
+            // Index leaves by identity (leaves with identical labels are equal)
+            final Map<NaryTree<String>, Integer> leafIndices = new IdentityHashMap<NaryTree<String>, Integer>();
+            for (final NaryTree<String> leaf : tree.leafTraversal()) {
+                leafIndices.put(leaf, leafIndices.size());
+            }
+
+            final int[] expectedHeads = new int[leafIndices.size()];
+            for (final NaryTree<String> node : tree.preOrderTraversal()) {
+                final NaryTree<String> head = node.headDescendant(ruleset);
+                for (final NaryTree<String> child : node.children()) {
+                    final NaryTree<String> dependent = child.headDescendant(ruleset);
+                    if (dependent != head) {
+                        expectedHeads[leafIndices.get(dependent)] = leafIndices.get(head);
+                    }
+                }
+            }
+            expectedHeads[leafIndices.get(tree.headDescendant(ruleset))] = -1;
+
+            assertArrayEquals(expectedHeads, task.dependencyHeads);
+            assertEquals(leafIndices.size(), task.conllString().split("\n").length);
+        }
+    }
+
+    /**
+     * Verifies that trees encoded directly from the chart match the unfactored bracketed output
+     */
+    @Test
+    public void testExtractEncodedParse() throws Exception {
+        parser.opts.outputFormat = OutputFormat.Binary;
+        parser.opts.encodeScores = true;
+
+        final Vocabulary baseVocabulary = f2_21_grammar.nonTermSet.baseVocabulary();
+        final String[] labels = new String[baseVocabulary.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = baseVocabulary.getSymbol(i);
+        }
+
+        for (int i = 0; i < 10; i++) {
+            final ParseTask task = parser.parseSentence(sentences.get(i)[0]);
+            assertEquals(task.parseBracketString(false), task.encodedParse.toNaryTree(labels).toString());
+            assertEquals(task.insideProbability, task.encodedParse.scores[0], .001f);
+        }
+    }
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser.ml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cltool4j.GlobalConfigProperties;
+import edu.ohsu.cslu.grammar.DecisionTreeTokenClassifier;
+import edu.ohsu.cslu.grammar.Grammar;
+import edu.ohsu.cslu.grammar.InsideOutsideCscSparseMatrixGrammar;
+import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PerfectIntPairHashPackingFunction;
+import edu.ohsu.cslu.parser.Parser;
+import edu.ohsu.cslu.parser.Parser.DecodeMethod;
+import edu.ohsu.cslu.parser.ParserDriver;
+import edu.ohsu.cslu.parser.chart.PackedArrayChart;
+import edu.ohsu.cslu.parser.fom.InsideProb;
+import edu.ohsu.cslu.tests.JUnit;
+
+/**
+ * Unit tests for {@link CoarseToFineCphSpmlParser}.
+ * 
+ * @author Aaron Dunlop
+ */
+public class TestCoarseToFineCphSpmlParser {
+
+    private final static String[] SENTENCES = new String[] { "The report is due out tomorrow .",
+            "The most troublesome report may be the August merchandise trade deficit ." };
+
+    /** Unsplit grammar */
+    private static InsideOutsideCscSparseMatrixGrammar grammar0;
+
+    /** 2-split grammar */
+    private static InsideOutsideCscSparseMatrixGrammar grammar2;
+
+    private InsideOutsideCphSpmlParser parser;
+
+    @BeforeClass
+    public static void suiteSetUp() throws Exception {
+        grammar0 = new InsideOutsideCscSparseMatrixGrammar(JUnit.unitTestDataAsReader("grammars/eng.R0.gr.gz"),
+                new DecisionTreeTokenClassifier(), PerfectIntPairHashPackingFunction.class);
+        grammar2 = new InsideOutsideCscSparseMatrixGrammar(splitGrammar(
+                JUnit.unitTestDataAsReader("grammars/eng.R0.gr.gz"), 2), new DecisionTreeTokenClassifier(),
+                PerfectIntPairHashPackingFunction.class);
+
+        GlobalConfigProperties.singleton().setProperty(Parser.PROPERTY_MAX_BEAM_WIDTH, "0");
+    }
+
+    /**
+     * Splits each non-terminal (other than the start symbol) of a Berkeley-format grammar into 2^splits subcategories
+     * (NP_0, NP_1, ...), dividing rule probabilities evenly among the child splits, with a small amount of random
+     * noise to break ties.
+     */
+    private static Reader splitGrammar(final Reader unsplitGrammar, final int splits) throws IOException {
+        final Random random = new Random(0);
+        final int subcategories = 1 << splits;
+        final StringBuilder sb = new StringBuilder(16 * 1024 * 1024);
+
+        final BufferedReader br = new BufferedReader(unsplitGrammar);
+        final String header = br.readLine();
+        final String startSymbol = header.replaceAll(".*start=(\\S+).*", "$1");
+        sb.append(header);
+        sb.append('\n');
+
+        boolean lexicon = false;
+        for (String line = br.readLine(); line != null; line = br.readLine()) {
+            if (line.trim().length() == 0) {
+                continue;
+            }
+            if (line.equals(Grammar.LEXICON_DELIMITER)) {
+                lexicon = true;
+                sb.append(line);
+                sb.append('\n');
+                continue;
+            }
+
+            // parent -> child [child] probability
+            final String[] tokens = line.split("\\s+");
+            final int children = tokens.length - 3;
+            final float probability = Float.parseFloat(tokens[tokens.length - 1]);
+
+            // Non-terminals to split (lexical children are words)
+            final int[] splitCounts = new int[1 + children];
+            for (int i = 0; i < splitCounts.length; i++) {
+                final String symbol = tokens[i == 0 ? 0 : i + 1];
+                splitCounts[i] = symbol.equals(startSymbol) || (lexicon && i > 0) ? 1 : subcategories;
+            }
+            int childSplits = 1;
+            for (int i = 1; i < splitCounts.length; i++) {
+                childSplits *= splitCounts[i];
+            }
+            final float childSplitProbability = (float) Math.log(childSplits);
+
+            final int[] indices = new int[splitCounts.length];
+            for (boolean done = false; !done;) {
+                for (int i = 0; i < indices.length; i++) {
+                    sb.append(splitSymbol(tokens[i == 0 ? 0 : i + 1], indices[i], splitCounts[i]));
+                    sb.append(i == 0 ? " " + tokens[1] + " " : " ");
+                }
+                sb.append(probability - childSplitProbability + (float) Math.log(1 + (random.nextFloat() - .5f) * .02f));
+                sb.append('\n');
+
+                // Increment the split indices
+                done = true;
+                for (int i = indices.length - 1; i >= 0; i--) {
+                    if (++indices[i] < splitCounts[i]) {
+                        done = false;
+                        break;
+                    }
+                    indices[i] = 0;
+                }
+            }
+        }
+        return new StringReader(sb.toString());
+    }
+
+    private static String splitSymbol(final String symbol, final int index, final int splitCount) {
+        return splitCount == 1 ? symbol : symbol + '_' + index;
+    }
+
+    @After
+    public void tearDown() {
+        if (parser != null) {
+            parser.shutdown();
+        }
+        GlobalConfigProperties.singleton().remove(CoarseToFineCphSpmlParser.PROPERTY_C2F_THRESHOLD);
+    }
+
+    @AfterClass
+    public static void suiteTearDown() {
+        GlobalConfigProperties.singleton().clear();
+    }
+
+    @Test
+    public void testGrammarHierarchy() {
+        final CoarseToFineCphSpmlParser.GrammarHierarchy hierarchy = new CoarseToFineCphSpmlParser.GrammarHierarchy(
+                grammar2);
+        assertEquals(2, hierarchy.grammars.length);
+
+        // The coarsest level should be equivalent to the unsplit grammar (the start and null symbols are never split)
+        assertEquals(grammar0.numNonTerms(), hierarchy.grammars[0].numNonTerms());
+        assertEquals(grammar0.numNonTerms() * 2 - 2, hierarchy.grammars[1].numNonTerms());
+        assertEquals("ROOT", hierarchy.grammars[1].nonTermSet.getSymbol(hierarchy.grammars[1].startSymbol));
+
+        // NP_3 -> NP_1 -> NP_0
+        final short np3 = (short) grammar2.nonTermSet.getIndex("NP_3");
+        final short np1 = hierarchy.fineProjections[1][np3];
+        assertEquals("NP_1", hierarchy.grammars[1].nonTermSet.getSymbol(np1));
+        assertEquals("NP_0", hierarchy.grammars[0].nonTermSet.getSymbol(hierarchy.fineProjections[0][np3]));
+        assertEquals(hierarchy.fineProjections[0][np3], hierarchy.projection(1, 0)[np1]);
+    }
+
+    @Test
+    public void testSubcategory() {
+        assertEquals(13, CoarseToFineCphSpmlParser.subcategory("NP_13"));
+        assertEquals(3, CoarseToFineCphSpmlParser.subcategory("@NP_3"));
+        assertEquals(-1, CoarseToFineCphSpmlParser.subcategory("ROOT"));
+        assertEquals(-1, CoarseToFineCphSpmlParser.subcategory("NP_"));
+        assertEquals(-1, CoarseToFineCphSpmlParser.subcategory("-NONE-_a"));
+    }
+
+    /**
+     * With a negligible pruning threshold, coarse-to-fine parsing should match exhaustive inside-outside parsing
+     */
+    @Test
+    public void testUnprunedParse() throws Exception {
+        GlobalConfigProperties.singleton().setProperty(CoarseToFineCphSpmlParser.PROPERTY_C2F_THRESHOLD, "-1000");
+
+        final ParserDriver opts = new ParserDriver();
+        opts.decodeMethod = DecodeMethod.MaxRuleProd;
+        opts.fomModel = new InsideProb();
+
+        final InsideOutsideCphSpmlParser exhaustiveParser = new InsideOutsideCphSpmlParser(opts, grammar2);
+        parser = new CoarseToFineCphSpmlParser(opts, grammar2);
+
+        for (int i = 0; i < SENTENCES.length; i++) {
+            final String sentence = SENTENCES[i];
+            assertEquals("Failed on sentence " + i, exhaustiveParser.parseSentence(sentence)
+                    .parseBracketString(false), parser.parseSentence(sentence).parseBracketString(false));
+        }
+        exhaustiveParser.shutdown();
+    }
+
+    /**
+     * With the default threshold, the fine pass should populate fewer chart entries than exhaustive parsing, but still
+     * find a parse
+     */
+    @Test
+    public void testPrunedParse() throws Exception {
+        final ParserDriver opts = new ParserDriver();
+        opts.decodeMethod = DecodeMethod.MaxRuleProd;
+        opts.fomModel = new InsideProb();
+
+        final InsideOutsideCphSpmlParser exhaustiveParser = new InsideOutsideCphSpmlParser(opts, grammar2);
+        parser = new CoarseToFineCphSpmlParser(opts, grammar2);
+
+        for (int i = 0; i < SENTENCES.length; i++) {
+            final String sentence = SENTENCES[i];
+            exhaustiveParser.parseSentence(sentence);
+            assertNotNull("Failed on sentence " + i, parser.parseSentence(sentence).binaryParse);
+            assertTrue(population(parser.chart) < population(exhaustiveParser.chart));
+        }
+        exhaustiveParser.shutdown();
+    }
+
+    private int population(final PackedArrayChart chart) {
+        int population = 0;
+        for (int start = 0; start < chart.size(); start++) {
+            for (int end = start + 1; end <= chart.size(); end++) {
+                population += chart.numNonTerminals[chart.cellIndex(start, end)];
+            }
+        }
+        return population;
+    }
+}
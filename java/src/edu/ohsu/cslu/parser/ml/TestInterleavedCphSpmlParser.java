@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser.ml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.Reader;
+
+import org.cjunit.PerformanceTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ohsu.cslu.grammar.DecisionTreeTokenClassifier;
+import edu.ohsu.cslu.grammar.Grammar;
+import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
+import edu.ohsu.cslu.grammar.SparseMatrixGrammar;
+import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PackingFunction;
+import edu.ohsu.cslu.grammar.TokenClassifier;
+import edu.ohsu.cslu.parser.ecp.ExhaustiveChartParserTestCase;
+
+/**
+ * Tests for {@link InterleavedCphSpmlParser}.
+ * 
+ * @author Aaron Dunlop
+ */
+public class TestInterleavedCphSpmlParser extends ExhaustiveChartParserTestCase<InterleavedCphSpmlParser> {
+
+    private final static Class<? extends PackingFunction> PACKING_FUNCTION_CLASS = SparseMatrixGrammar.PerfectIntPairHashPackingFunction.class;
+
+    @Override
+    @Test
+    @PerformanceTest({ "mbp", "0", "mbp2012", "0" })
+    public void profileSentences11Through20() throws Exception {
+        internalProfileSentences11Through20();
+    }
+
+    @Override
+    public Grammar createGrammar(final Reader grammarReader) throws Exception {
+        return grammarClass().getConstructor(new Class<?>[] { Reader.class, TokenClassifier.class, Class.class })
+                .newInstance(new Object[] { grammarReader, new DecisionTreeTokenClassifier(), PACKING_FUNCTION_CLASS });
+    }
+
+    /**
+     * Constructs the grammar (if necessary) and a new parser instance, discarding any cached grammar built with a
+     * different grammar class or packing function. Run prior to each test method.
+     * 
+     * @throws Exception if unable to construct grammar or parser.
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        if (f2_21_grammar != null
+                && (f2_21_grammar.getClass() != grammarClass() || ((SparseMatrixGrammar) f2_21_grammar)
+                        .packingFunction().getClass() != PACKING_FUNCTION_CLASS)) {
+            f2_21_grammar = null;
+        }
+
+        if (simpleGrammar1 != null
+                && (simpleGrammar1.getClass() != grammarClass() || ((SparseMatrixGrammar) simpleGrammar1)
+                        .packingFunction().getClass() != PACKING_FUNCTION_CLASS)) {
+            simpleGrammar1 = null;
+        }
+
+        if (simpleGrammar2 != null
+                && (simpleGrammar2.getClass() != grammarClass() || ((SparseMatrixGrammar) simpleGrammar2)
+                        .packingFunction().getClass() != PACKING_FUNCTION_CLASS)) {
+            simpleGrammar2 = null;
+        }
+
+        super.setUp();
+    }
+
+    /**
+     * Verifies that the interleaved rule layout matches the separate row-index and probability arrays
+     */
+    @Test
+    public void testInterleavedRules() {
+        final LeftCscSparseMatrixGrammar g = (LeftCscSparseMatrixGrammar) f2_21_grammar;
+
+        final long[] rules = g.cscBinaryInterleavedRules();
+        assertEquals(g.cscBinaryRowIndices.length, rules.length);
+        for (int i = 0; i < rules.length; i++) {
+            assertEquals(g.cscBinaryRowIndices[i], LeftCscSparseMatrixGrammar.unpackParent(rules[i]));
+            assertEquals(g.cscBinaryProbabilities[i], LeftCscSparseMatrixGrammar.unpackProbability(rules[i]), 0f);
+        }
+
+        final long[] factoredRules = g.factoredCscBinaryInterleavedRules();
+        assertEquals(g.factoredCscBinaryRowIndices.length, factoredRules.length);
+        for (int i = 0; i < factoredRules.length; i++) {
+            assertEquals(g.factoredCscBinaryRowIndices[i], LeftCscSparseMatrixGrammar.unpackParent(factoredRules[i]));
+            assertEquals(g.factoredCscBinaryProbabilities[i],
+                    LeftCscSparseMatrixGrammar.unpackProbability(factoredRules[i]), 0f);
+        }
+
+        // Negative and infinite probabilities, and the largest representable parent
+        final long packed = LeftCscSparseMatrixGrammar.packRule(Short.MAX_VALUE, Float.NEGATIVE_INFINITY);
+        assertEquals(Short.MAX_VALUE, LeftCscSparseMatrixGrammar.unpackParent(packed));
+        assertEquals(Float.NEGATIVE_INFINITY, LeftCscSparseMatrixGrammar.unpackProbability(packed), 0f);
+    }
+}
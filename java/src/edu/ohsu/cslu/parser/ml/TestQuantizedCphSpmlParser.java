@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser.ml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+
+import org.cjunit.PerformanceTest;
+import org.junit.Test;
+
+import cltool4j.ConfigProperties;
+import cltool4j.GlobalConfigProperties;
+import edu.ohsu.cslu.grammar.DecisionTreeTokenClassifier;
+import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
+import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PerfectIntPairHashPackingFunction;
+import edu.ohsu.cslu.parser.ParseTask;
+import edu.ohsu.cslu.parser.Parser;
+import edu.ohsu.cslu.parser.Parser.InputFormat;
+import edu.ohsu.cslu.parser.ParserDriver;
+import edu.ohsu.cslu.parser.fom.BoundaryPosModel;
+import edu.ohsu.cslu.parser.fom.FigureOfMeritModel.FOMType;
+import edu.ohsu.cslu.tests.JUnit;
+import edu.ohsu.cslu.util.Evalb.BracketEvaluator;
+
+/**
+ * Tests reduced-precision parsing with {@link QuantizedCphSpmlParser}. In addition to the standard exhaustive-parsing
+ * tests, compares pruned parses against full-precision parses from {@link CartesianProductHashSpmlParser}, to measure
+ * the accuracy impact of quantization.
+ * 
+ * @author Aaron Dunlop
+ */
+public class TestQuantizedCphSpmlParser extends ReducedPrecisionParserTestCase<QuantizedCphSpmlParser> {
+
+    @Override
+    @Test
+    @PerformanceTest({ "mbp2012", "0", "mbp", "0" })
+    public void profileSentences11Through20() throws Exception {
+        internalProfileSentences11Through20();
+    }
+
+    /**
+     * Parses WSJ section 24 (sentences 1-20) with a FOM-pruned beam, at full and reduced precision, and compares
+     * accuracy against the gold trees. Quantization error is far below the score differences which usually separate
+     * competing analyses, but the latent-variable grammar admits many nearly-tied derivations, and a few of those ties
+     * may be resolved differently, so we compare aggregate accuracy rather than individual parses. The scores of the
+     * best parses should differ by no more than the accumulated rounding error.
+     */
+    @Test
+    public void testPrunedAccuracy() throws Exception {
+        final ConfigProperties props = GlobalConfigProperties.singleton();
+        props.put(Parser.PROPERTY_MAX_BEAM_WIDTH, "50");
+        props.put(Parser.PROPERTY_LEXICAL_ROW_BEAM_WIDTH, "60");
+        props.put(Parser.PROPERTY_LEXICAL_ROW_UNARIES, "20");
+        props.put(Parser.PROPERTY_MAX_LOCAL_DELTA, "15");
+
+        try {
+            final LeftCscSparseMatrixGrammar g = new LeftCscSparseMatrixGrammar(
+                    JUnit.unitTestDataAsReader("grammars/eng.R2.gr.gz"), new DecisionTreeTokenClassifier(),
+                    PerfectIntPairHashPackingFunction.class);
+            final ParserDriver opts = new ParserDriver();
+            opts.inputFormat = InputFormat.Tree;
+            opts.fomModel = new BoundaryPosModel(FOMType.BoundaryPOS, g, new BufferedReader(
+                    JUnit.unitTestDataAsReader("fom/eng.R2.fom.gz")));
+
+            final CartesianProductHashSpmlParser fullPrecisionParser = new CartesianProductHashSpmlParser(opts, g);
+            final QuantizedCphSpmlParser quantizedParser = new QuantizedCphSpmlParser(opts, g);
+
+            final BufferedReader goldReader = new BufferedReader(new InputStreamReader(
+                    JUnit.unitTestDataAsStream("parsing/wsj.24.trees.1-20")));
+
+            final BracketEvaluator fullPrecisionEvaluator = new BracketEvaluator();
+            final BracketEvaluator quantizedEvaluator = new BracketEvaluator();
+            int sentences = 0;
+            for (String tree = goldReader.readLine(); tree != null; tree = goldReader.readLine()) {
+                final ParseTask expected = fullPrecisionParser.parseSentence(tree);
+                final ParseTask actual = quantizedParser.parseSentence(tree);
+                expected.evaluate(fullPrecisionEvaluator);
+                actual.evaluate(quantizedEvaluator);
+
+                sentences++;
+                // Each constituent may accumulate up to half a fixed-point step of rounding error from each child
+                // cell (generally much less than .001 per word)
+                assertEquals("Failed on sentence " + sentences, expected.insideProbability, actual.insideProbability,
+                        expected.sentenceLength() * .001f);
+            }
+
+            final float fullPrecisionF1 = (float) fullPrecisionEvaluator.accumulatedResult().f1();
+            final float quantizedF1 = (float) quantizedEvaluator.accumulatedResult().f1();
+            assertEquals(fullPrecisionF1, quantizedF1, .01f);
+
+        } finally {
+            props.remove(Parser.PROPERTY_MAX_BEAM_WIDTH);
+            props.remove(Parser.PROPERTY_LEXICAL_ROW_BEAM_WIDTH);
+            props.remove(Parser.PROPERTY_LEXICAL_ROW_UNARIES);
+            props.remove(Parser.PROPERTY_MAX_LOCAL_DELTA);
+        }
+    }
+}
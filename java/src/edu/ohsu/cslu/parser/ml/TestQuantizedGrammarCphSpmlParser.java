@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser.ml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.cjunit.PerformanceTest;
+import org.junit.Test;
+
+import cltool4j.GlobalConfigProperties;
+import edu.ohsu.cslu.grammar.CscSparseMatrixGrammar.QuantizedMatrix;
+import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
+import edu.ohsu.cslu.parser.ParseTask;
+
+/**
+ * Tests parsing with quantized grammar probabilities ({@link QuantizedGrammarCphSpmlParser}).
+ * 
+ * @author Aaron Dunlop
+ */
+public class TestQuantizedGrammarCphSpmlParser extends ReducedPrecisionParserTestCase<QuantizedGrammarCphSpmlParser> {
+
+    @Override
+    @Test
+    @PerformanceTest({ "mbp2012", "0", "mbp", "0" })
+    public void profileSentences11Through20() throws Exception {
+        internalProfileSentences11Through20();
+    }
+
+    /**
+     * Verifies that each decoded rule probability is within half a fixed-point step of the original, and that the
+     * maximum in each column is represented exactly.
+     */
+    @Test
+    public void testQuantizedMatrix() {
+        final LeftCscSparseMatrixGrammar g = (LeftCscSparseMatrixGrammar) f2_21_grammar;
+
+        for (final int bits : new int[] { 16, 8 }) {
+            final QuantizedMatrix m = g.quantizedMatrix(bits, false);
+            assertEquals(bits, m.bits);
+            // Narrow codes are stored in bytes
+            if (bits <= 8) {
+                assertEquals(g.cscBinaryProbabilities.length, m.byteCodes.length);
+                assertNull(m.charCodes);
+            } else {
+                assertEquals(g.cscBinaryProbabilities.length, m.charCodes.length);
+                assertNull(m.byteCodes);
+            }
+
+            // Column parameters are stored only for populated columns
+            assertEquals(g.cscBinaryPopulatedColumns.length, m.columnMaxima.length);
+            int populated = 0;
+            for (final int p : m.populatedColumnIndices) {
+                if (p >= 0) {
+                    populated++;
+                }
+            }
+            assertEquals(g.cscBinaryPopulatedColumns.length, populated);
+
+            for (int i = 0; i < g.cscBinaryPopulatedColumns.length; i++) {
+                final int p = m.populatedColumnIndices[g.cscBinaryPopulatedColumns[i]];
+                assertEquals(i, p);
+                final float tolerance = m.columnScales[p] / 2 + 1e-5f;
+                float max = Float.NEGATIVE_INFINITY;
+
+                for (int j = m.populatedColumnOffsets[p]; j < m.populatedColumnOffsets[p + 1]; j++) {
+                    assertEquals(g.cscBinaryProbabilities[j], m.probability(p, j), tolerance);
+                    assertTrue(m.code(j) < 1 << bits);
+                    max = Math.max(max, g.cscBinaryProbabilities[j]);
+                }
+                assertEquals(max, m.columnMaxima[p], 0f);
+            }
+        }
+
+        final QuantizedMatrix factored = g.quantizedMatrix(16, true);
+        assertEquals(g.factoredCscBinaryProbabilities.length, factored.charCodes.length);
+        for (int i = 0; i < g.factoredCscBinaryPopulatedColumns.length; i++) {
+            final int p = factored.populatedColumnIndices[g.factoredCscBinaryPopulatedColumns[i]];
+            final int end = g.factoredCscBinaryPopulatedColumnOffsets[i + 1];
+            for (int j = g.factoredCscBinaryPopulatedColumnOffsets[i]; j < end; j++) {
+                assertEquals(g.factoredCscBinaryProbabilities[j], factored.probability(p, j),
+                        factored.columnScales[p] / 2 + 1e-5f);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWidth() {
+        ((LeftCscSparseMatrixGrammar) f2_21_grammar).quantizedMatrix(17, false);
+    }
+
+    /**
+     * Parses with 8-bit rule probabilities. Scores should still be close to those of the full-precision grammar.
+     */
+    @Test
+    public void testNarrowCodes() throws Exception {
+        GlobalConfigProperties.singleton().put(QuantizedGrammarCphSpmlParser.PROPERTY_RULE_BITS, "8");
+        try {
+            final QuantizedGrammarCphSpmlParser p = new QuantizedGrammarCphSpmlParser(parserOptions(),
+                    (LeftCscSparseMatrixGrammar) f2_21_grammar);
+            for (int i = 0; i < 5; i++) {
+                final ParseTask actual = p.parseSentence(sentences.get(i)[0]);
+                final ParseTask expected = new CartesianProductHashSpmlParser(parserOptions(),
+                        (LeftCscSparseMatrixGrammar) f2_21_grammar).parseSentence(sentences.get(i)[0]);
+                assertEquals(expected.insideProbability, actual.insideProbability, expected.sentenceLength() * .5f);
+            }
+        } finally {
+            GlobalConfigProperties.singleton().remove(QuantizedGrammarCphSpmlParser.PROPERTY_RULE_BITS);
+        }
+    }
+}
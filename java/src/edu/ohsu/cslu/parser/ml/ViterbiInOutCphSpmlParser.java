@@ -70,8 +70,8 @@ public class ViterbiInOutCphSpmlParser extends BaseIoCphSpmlParser {
 
         final PackingFunction pf = grammar.packingFunction();
 
-        // Iterate over all possible midpoints
-        for (short midpoint = (short) (start + 1); midpoint <= end - 1; midpoint++) {
+        // Iterate over all viable midpoints (those at which both child cells are populated)
+        for (final short midpoint : cellSelector.viableMidpoints(start, end)) {
             if (end - start > cellSelector.getMaxSpan(start, end)) {
                 continue;
             }
@@ -149,9 +149,7 @@ public class ViterbiInOutCphSpmlParser extends BaseIoCphSpmlParser {
 
         // foreach parent-start in {0..start - 1}
         for (int parentStart = 0; parentStart < start; parentStart++) {
-            final PackedArrayChartCell parentCell = chart.getCell(parentStart, end);
-            parentCell.allocateTemporaryStorage(true, true);
-            final float[] parentOutsideProbabilities = parentCell.tmpCell.outsideProbabilities;
+            final float[] parentOutsideProbabilities = parentOutsideProbabilities(parentStart, end);
 
             // Sibling (left) cell
             final int siblingCellIndex = chart.cellIndex(parentStart, start);
@@ -166,9 +164,7 @@ public class ViterbiInOutCphSpmlParser extends BaseIoCphSpmlParser {
 
         // foreach parent-end in {end + 1..n}
         for (int parentEnd = end + 1; parentEnd <= chart.size(); parentEnd++) {
-            final PackedArrayChartCell parentCell = chart.getCell(start, parentEnd);
-            parentCell.allocateTemporaryStorage(true, true);
-            final float[] parentOutsideProbabilities = parentCell.tmpCell.outsideProbabilities;
+            final float[] parentOutsideProbabilities = parentOutsideProbabilities(start, parentEnd);
 
             // Sibling (right) cell
             final int siblingCellIndex = chart.cellIndex(end, parentEnd);
@@ -188,8 +184,6 @@ public class ViterbiInOutCphSpmlParser extends BaseIoCphSpmlParser {
         } else {
             computeUnaryOutsideProbabilities(cell.tmpCell.outsideProbabilities);
         }
-
-        cell.finalizeCell();
     }
 
     private void computeLeftSiblingOutsideProbabilities(final float[] outsideProbabilities, final int targetStart,
@@ -163,6 +163,8 @@ public class RealInsideOutsideCphParser extends
                 cellSelector.reset(false);
                 break;
 
+            case LOCAL:
+                // The outside pass depends on the entire chart, so we reparse the full chart
             case DOUBLE:
                 // Skip this doubling if it results in exhaustive parsing. We'll get to EXHAUSTIVE later if it's
                 // included in the hierarchy.
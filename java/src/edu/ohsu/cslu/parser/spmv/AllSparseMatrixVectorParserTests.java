@@ -27,7 +27,8 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({ TestCscSpmvParser.class, TestRowParallelCscSpmvParser.class, TestPrunedCscSpmvParser.class,
         TestCsrSpmvParser.class, TestRowParallelCsrSpmvParser.class, TestGrammarParallelCsrSpmvParser.class,
-        TestGrammarParallelCscSpmvParser.class, TestPrunedCsrSpmvParser.class, TestDenseVectorOpenClSpmvParser.class
+        TestGrammarParallelCscSpmvParser.class, TestPrunedCsrSpmvParser.class, TestInterleavedCscSpmvParser.class,
+        TestCacheBlockedCscSpmvParser.class, TestDenseVectorOpenClSpmvParser.class
 // , TestPackedOpenClSpmvParser
 })
 public class AllSparseMatrixVectorParserTests {
@@ -21,6 +21,8 @@
  */
 package edu.ohsu.cslu.parser.spmv;
 
+import cltool4j.GlobalConfigProperties;
+import edu.ohsu.cslu.grammar.CscSparseMatrixGrammar.ParentBlockedMatrix;
 import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
 import edu.ohsu.cslu.parser.ParserDriver;
 import edu.ohsu.cslu.parser.chart.Chart.ChartCell;
@@ -38,8 +40,40 @@ import edu.ohsu.cslu.parser.chart.PackedArrayChart.TemporaryChartCell;
  */
 public class CscSpmvParser extends PackedArraySpmvParser<LeftCscSparseMatrixGrammar> {
 
+    /**
+     * Binary grammar rules partitioned into cache-sized blocks of parents (see
+     * {@link ParserDriver#OPT_SPMV_PARENT_BLOCK_SIZE}). Null if cache-blocking is disabled.
+     */
+    protected final ParentBlockedMatrix blockedBinaryRules;
+
+    /** Factored-only binary grammar rules, partitioned by the same parent blocks as {@link #blockedBinaryRules}. */
+    protected final ParentBlockedMatrix blockedFactoredBinaryRules;
+
     public CscSpmvParser(final ParserDriver opts, final LeftCscSparseMatrixGrammar grammar) {
         super(opts, grammar);
+
+        final short[] boundaries = parentBlockBoundaries(grammar);
+        if (boundaries != null) {
+            this.blockedBinaryRules = grammar.parentBlockedMatrix(boundaries, false);
+            this.blockedFactoredBinaryRules = grammar.parentBlockedMatrix(boundaries, true);
+        } else {
+            this.blockedBinaryRules = null;
+            this.blockedFactoredBinaryRules = null;
+        }
+    }
+
+    /**
+     * Returns the parent-block boundaries used to partition the grammar for cache-blocked SpMV, or null to multiply by
+     * the unpartitioned matrix. Called from the constructor, so implementations must not depend on subclass state.
+     * 
+     * @param g Grammar
+     * @return Parent-block boundaries (see {@link LeftCscSparseMatrixGrammar#parentBlockBoundaries(int, int)}), or
+     *         null
+     */
+    protected short[] parentBlockBoundaries(final LeftCscSparseMatrixGrammar g) {
+        final int parentBlockSize = GlobalConfigProperties.singleton().getIntProperty(
+                ParserDriver.OPT_SPMV_PARENT_BLOCK_SIZE, 0);
+        return parentBlockSize > 0 ? g.parentBlockBoundaries(1, parentBlockSize) : null;
     }
 
     @Override
@@ -49,12 +83,20 @@ public class CscSpmvParser extends PackedArraySpmvParser<LeftCscSparseMatrixGram
         targetCell.allocateTemporaryStorage();
         final TemporaryChartCell tmpCell = targetCell.tmpCell;
 
-        if (cellSelector.hasCellConstraints() && cellSelector.isCellOnlyFactored(chartCell.start(), chartCell.end())) {
+        final boolean factoredOnly = cellSelector.hasCellConstraints()
+                && cellSelector.isCellOnlyFactored(chartCell.start(), chartCell.end());
+
+        if (blockedBinaryRules != null) {
+            // Multiply by each block of the grammar matrix in turn
+            binarySpmvMultiply(cartesianProductVector, factoredOnly ? blockedFactoredBinaryRules : blockedBinaryRules,
+                    0, blockedBinaryRules.blocks(), tmpCell);
+
+        } else if (factoredOnly) {
             // Multiply by the factored grammar rule matrix
             binarySpmvMultiply(cartesianProductVector, grammar.factoredCscBinaryPopulatedColumns,
                     grammar.factoredCscBinaryPopulatedColumnOffsets, grammar.factoredCscBinaryRowIndices,
                     grammar.factoredCscBinaryProbabilities, tmpCell.packedChildren, tmpCell.insideProbabilities,
-                    tmpCell.midpoints, 0, grammar.cscBinaryPopulatedColumns.length);
+                    tmpCell.midpoints, 0, grammar.factoredCscBinaryPopulatedColumns.length);
         } else {
             // Multiply by the main grammar rule matrix
             binarySpmvMultiply(cartesianProductVector, grammar.cscBinaryPopulatedColumns,
@@ -64,6 +106,29 @@ public class CscSpmvParser extends PackedArraySpmvParser<LeftCscSparseMatrixGram
         }
     }
 
+    /**
+     * Multiplies a range of parent blocks by the cartesian-product vector, storing the results in the specified
+     * temporary cell. Blocks partition the parents, so concurrent calls on disjoint block ranges may safely share a
+     * target cell.
+     * 
+     * @param cartesianProductVector
+     * @param blockedRules
+     * @param startBlock First block to multiply (inclusive)
+     * @param endBlock Last block to multiply (exclusive)
+     * @param tmpCell Target cell
+     */
+    protected final void binarySpmvMultiply(final CartesianProductVector cartesianProductVector,
+            final ParentBlockedMatrix blockedRules, final int startBlock, final int endBlock,
+            final TemporaryChartCell tmpCell) {
+
+        for (int b = startBlock; b < endBlock; b++) {
+            binarySpmvMultiply(cartesianProductVector, blockedRules.populatedColumns[b],
+                    blockedRules.populatedColumnOffsets[b], blockedRules.rowIndices[b], blockedRules.probabilities[b],
+                    tmpCell.packedChildren, tmpCell.insideProbabilities, tmpCell.midpoints, 0,
+                    blockedRules.populatedColumns[b].length);
+        }
+    }
+
     protected final void binarySpmvMultiply(final CartesianProductVector cartesianProductVector,
             final int[] grammarCscBinaryPopulatedColumns, final int[] grammarCscBinaryPopulatedColumnOffsets,
             final short[] grammarCscBinaryRowIndices, final float[] grammarCscBinaryProbabilities,
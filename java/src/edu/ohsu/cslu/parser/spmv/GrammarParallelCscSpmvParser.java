@@ -21,27 +21,27 @@
  */
 package edu.ohsu.cslu.parser.spmv;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinTask;
-import java.util.concurrent.Future;
+import java.util.List;
 import java.util.logging.Level;
 
 import cltool4j.BaseLogger;
 import cltool4j.ConfigProperties;
 import cltool4j.GlobalConfigProperties;
-import edu.ohsu.cslu.grammar.CsrSparseMatrixGrammar;
+import edu.ohsu.cslu.grammar.CscSparseMatrixGrammar.ParentBlockedMatrix;
 import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
 import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PerfectIntPairHashPackingFunction;
 import edu.ohsu.cslu.parser.ParseTask;
 import edu.ohsu.cslu.parser.ParserDriver;
 import edu.ohsu.cslu.parser.chart.Chart.ChartCell;
-import edu.ohsu.cslu.parser.chart.PackedArrayChart;
 import edu.ohsu.cslu.parser.chart.PackedArrayChart.PackedArrayChartCell;
 import edu.ohsu.cslu.parser.chart.PackedArrayChart.TemporaryChartCell;
+import edu.ohsu.cslu.util.TaskGang;
 
 /**
- * Distributes the binary SpMV operation across multiple threads.
+ * Distributes the binary SpMV operation across multiple threads. Grammar-level work for each cell is dispatched to a
+ * persistent {@link TaskGang}, avoiding per-cell task allocation and executor overhead.
  * 
  * @author Aaron Dunlop
  * @since Mar 10, 2011
@@ -56,65 +56,84 @@ public final class GrammarParallelCscSpmvParser extends CscSpmvParser {
      */
     private final int cpvSegments;
 
-    // TODO Fix this documentation
     /**
-     * Offsets into {@link CsrSparseMatrixGrammar#csrBinaryRowOffsets} splitting the binary rule-set into segments of
-     * roughly equal size for distribution between threads. Length is {@link #grammarThreads} + 1 (to avoid falling off
-     * the end)
+     * Indices of the first parent block (in {@link #blockedBinaryRules}) assigned to each thread. Blocks are grouped
+     * into runs of roughly equal rule counts; each thread owns a disjoint range of parents, so threads write directly
+     * to the target cell without a merge step. Length is {@link #grammarThreads} + 1 (to avoid falling off the end)
      */
-    private final int[] binaryRowSegments;
+    private final int[] threadBlockStarts;
 
-    private final ThreadLocal<PackedArrayChart.TemporaryChartCell[]> threadLocalTemporaryCellArrays;
+    /**
+     * Grammar-level worker gangs, one per cell-level thread (so concurrently-processed cells do not contend for a
+     * single gang)
+     */
+    private final ThreadLocal<GangTasks> threadLocalGangTasks;
+
+    /** All gangs created by {@link #threadLocalGangTasks}, so they can be terminated in {@link #shutdown()} */
+    private final List<GangTasks> gangs = new ArrayList<GangTasks>();
 
     public GrammarParallelCscSpmvParser(final ParserDriver opts, final LeftCscSparseMatrixGrammar grammar) {
         super(opts, grammar);
 
-        final ConfigProperties props = GlobalConfigProperties.singleton();
-        // Split the binary grammar rules into segments of roughly equal size
-        final int requestedThreads = props.getIntProperty(ParserDriver.OPT_GRAMMAR_THREAD_COUNT);
-        final int[] segments = new int[requestedThreads + 1];
+        final int requestedThreads = opts.scheduler().grammarThreads();
+
+        // Group parent blocks into runs of roughly equal size
+        final int blocks = blockedBinaryRules.blocks();
         final int segmentSize = grammar.cscBinaryRowIndices.length / requestedThreads + 1;
-        segments[0] = 0;
+        final int[] starts = new int[requestedThreads + 1];
         int i = 1;
-        // Examine each populated column
-        for (int j = 1; j < grammar.cscBinaryPopulatedColumns.length - 1; j++) {
-            if (grammar.cscBinaryPopulatedColumnOffsets[j] - grammar.cscBinaryPopulatedColumnOffsets[segments[i - 1]] >= segmentSize) {
-                segments[i++] = j;
+        for (int b = 1, rules = blockedBinaryRules.rules(0); b < blocks; b++) {
+            if (rules >= segmentSize * i && i < requestedThreads) {
+                starts[i++] = b;
             }
+            rules += blockedBinaryRules.rules(b);
         }
-        segments[i] = grammar.cscBinaryPopulatedColumnOffsets.length - 1;
+        starts[i] = blocks;
 
         this.grammarThreads = i;
         this.cpvSegments = grammarThreads * 2;
-        GlobalConfigProperties.singleton().setProperty(ParserDriver.RUNTIME_CONFIGURED_THREAD_COUNT,
-                Integer.toString(props.getIntProperty(ParserDriver.OPT_CELL_THREAD_COUNT, 1) * grammarThreads));
 
-        this.binaryRowSegments = new int[i + 1];
-        System.arraycopy(segments, 0, binaryRowSegments, 0, binaryRowSegments.length);
+        this.threadBlockStarts = new int[i + 1];
+        System.arraycopy(starts, 0, threadBlockStarts, 0, threadBlockStarts.length);
 
         if (BaseLogger.singleton().isLoggable(Level.FINE)) {
             final StringBuilder sb = new StringBuilder();
-            for (int j = 1; j < binaryRowSegments.length; j++) {
-                sb.append((grammar.cscBinaryPopulatedColumnOffsets[binaryRowSegments[j]] - grammar.cscBinaryPopulatedColumnOffsets[binaryRowSegments[j - 1]])
-                        + " ");
+            for (int j = 0; j < grammarThreads; j++) {
+                int rules = 0;
+                for (int b = threadBlockStarts[j]; b < threadBlockStarts[j + 1]; b++) {
+                    rules += blockedBinaryRules.rules(b);
+                }
+                sb.append(rules + " ");
             }
-            BaseLogger.singleton().fine("INFO: CSC Binary Grammar segments of length: " + sb.toString());
+            BaseLogger.singleton().fine(
+                    "INFO: CSC Binary Grammar partitioned into " + blocks + " parent blocks. Segments of length: "
+                            + sb.toString());
         }
 
-        // Temporary cell storage for each grammar-level thread
-        this.threadLocalTemporaryCellArrays = new ThreadLocal<PackedArrayChart.TemporaryChartCell[]>() {
+        this.threadLocalGangTasks = new ThreadLocal<GangTasks>() {
 
             @Override
-            protected PackedArrayChart.TemporaryChartCell[] initialValue() {
-                final PackedArrayChart.TemporaryChartCell[] tcs = new PackedArrayChart.TemporaryChartCell[grammarThreads];
-                for (int j = 0; j < grammarThreads; j++) {
-                    tcs[j] = new PackedArrayChart.TemporaryChartCell(grammar, false);
+            protected GangTasks initialValue() {
+                final GangTasks tasks = new GangTasks();
+                synchronized (gangs) {
+                    gangs.add(tasks);
                 }
-                return tcs;
+                return tasks;
             }
         };
     }
 
+    /**
+     * Partitions the grammar into at least one parent block per thread, subdivided according to
+     * {@link ParserDriver#OPT_SPMV_PARENT_BLOCK_SIZE}.
+     */
+    @Override
+    protected short[] parentBlockBoundaries(final LeftCscSparseMatrixGrammar g) {
+        final ConfigProperties props = GlobalConfigProperties.singleton();
+        return g.parentBlockBoundaries(opts.scheduler().grammarThreads(),
+                props.getIntProperty(ParserDriver.OPT_SPMV_PARENT_BLOCK_SIZE, 0));
+    }
+
     @Override
     protected void initSentence(final ParseTask parseTask) {
         initSentence(parseTask, beamWidth, lexicalRowBeamWidth, lexicalRowUnaries, maxLocalDelta);
@@ -136,7 +155,6 @@ public final class GrammarParallelCscSpmvParser extends CscSpmvParser {
     @Override
     protected CartesianProductVector cartesianProductUnion(final int start, final int end) {
 
-        final PerfectIntPairHashPackingFunction pf = (PerfectIntPairHashPackingFunction) grammar.packingFunction();
         final short[] nonTerminalIndices = chart.nonTerminalIndices;
         final float[] insideProbabilities = chart.insideProbabilities;
 
@@ -145,31 +163,15 @@ public final class GrammarParallelCscSpmvParser extends CscSpmvParser {
 
         Arrays.fill(cpvMidpoints, (short) 0);
 
-        // // Don't bother multi-threading for fewer than 4 midpoints
-        // if (end - start - 1 < 4) {
-        // return internalCartesianProduct(start, end, start + 1, end - 1, pf, nonTerminalIndices,
-        // insideProbabilities, cpvProbabilities, cpvMidpoints);
-        // }
-
         // Perform cartesian-product operation for each left-child segment
-        final ForkJoinTask<?>[] futures = new ForkJoinTask[cpvSegments];
-
-        for (int i = 0; i < cpvSegments; i++) {
-            final int segment = i;
-            futures[i] = threadPool.submit(new Runnable() {
-
-                @Override
-                public void run() {
-                    cartesianProductSegment(start, end, segment, pf, nonTerminalIndices, insideProbabilities,
-                            cpvProbabilities, cpvMidpoints);
-                }
-            });
-        }
-
-        // Wait for CPV tasks to complete.
-        for (int i = 0; i < cpvSegments; i++) {
-            futures[i].join();
-        }
+        final GangTasks tasks = threadLocalGangTasks.get();
+        tasks.start = start;
+        tasks.end = end;
+        tasks.nonTerminalIndices = nonTerminalIndices;
+        tasks.insideProbabilities = insideProbabilities;
+        tasks.cpvProbabilities = cpvProbabilities;
+        tasks.cpvMidpoints = cpvMidpoints;
+        tasks.gang.invoke(tasks.cartesianProductTask);
 
         return new CartesianProductVector(grammar, cpvProbabilities, cpvMidpoints, 0);
     }
@@ -237,74 +239,74 @@ public final class GrammarParallelCscSpmvParser extends CscSpmvParser {
     @Override
     public final void binarySpmv(final CartesianProductVector cartesianProductVector, final ChartCell chartCell) {
 
-        final Future<?>[] futures = new Future[grammarThreads];
-        final PackedArrayChart.TemporaryChartCell[] temporaryCells = threadLocalTemporaryCellArrays.get();
-
-        // Iterate over binary grammar segments
-        for (int i = 0; i < grammarThreads; i++) {
-            final int segmentStart = binaryRowSegments[i];
-            final int segmentEnd = binaryRowSegments[i + 1];
-            final PackedArrayChart.TemporaryChartCell tmpCell = temporaryCells[i];
-
-            if (cellSelector.hasCellConstraints()
-                    && cellSelector.isCellOnlyFactored(chartCell.start(), chartCell.end())) {
-                futures[i] = threadPool.submit(new Runnable() {
-
-                    @Override
-                    public void run() {
-                        tmpCell.clear();
-                        // Multiply by the factored grammar rule matrix
-                        binarySpmvMultiply(cartesianProductVector, grammar.factoredCscBinaryPopulatedColumns,
-                                grammar.factoredCscBinaryPopulatedColumnOffsets, grammar.factoredCscBinaryRowIndices,
-                                grammar.factoredCscBinaryProbabilities, tmpCell.packedChildren,
-                                tmpCell.insideProbabilities, tmpCell.midpoints, segmentStart, segmentEnd);
-                    }
-                });
-            } else {
-                futures[i] = threadPool.submit(new Runnable() {
-
-                    @Override
-                    public void run() {
-                        tmpCell.clear();
-                        // Multiply by the full grammar rule matrix
-                        binarySpmvMultiply(cartesianProductVector, grammar.cscBinaryPopulatedColumns,
-                                grammar.cscBinaryPopulatedColumnOffsets, grammar.cscBinaryRowIndices,
-                                grammar.cscBinaryProbabilities, tmpCell.packedChildren, tmpCell.insideProbabilities,
-                                tmpCell.midpoints, segmentStart, segmentEnd);
-                    }
-                });
+        final PackedArrayChartCell packedArrayCell = (PackedArrayChartCell) chartCell;
+        packedArrayCell.allocateTemporaryStorage();
+        final TemporaryChartCell tmpCell = packedArrayCell.tmpCell;
+
+        final ParentBlockedMatrix blockedRules = cellSelector.hasCellConstraints()
+                && cellSelector.isCellOnlyFactored(chartCell.start(), chartCell.end()) ? blockedFactoredBinaryRules
+                : blockedBinaryRules;
+
+        // Each thread multiplies a disjoint range of parent blocks, writing directly to the target cell
+        final GangTasks tasks = threadLocalGangTasks.get();
+        tasks.cartesianProductVector = cartesianProductVector;
+        tasks.blockedRules = blockedRules;
+        tasks.tmpCell = tmpCell;
+        tasks.gang.invoke(tasks.binarySpmvTask);
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (gangs) {
+            for (final GangTasks tasks : gangs) {
+                tasks.gang.shutdown();
             }
+            gangs.clear();
         }
+        super.shutdown();
+    }
 
-        final PackedArrayChartCell packedArrayCell = (PackedArrayChartCell) chartCell;
-        packedArrayCell.allocateTemporaryStorage();
-        try {
-            // Wait for the first task to finish and use its arrays as the temporary cell storage
-            futures[0].get();
-
-            final TemporaryChartCell tmpCell = packedArrayCell.tmpCell;
-            // TODO Eliminate this extra arraycopy
-            final int arrayLength = temporaryCells[0].insideProbabilities.length;
-            System.arraycopy(temporaryCells[0].insideProbabilities, 0, tmpCell.insideProbabilities, 0, arrayLength);
-            System.arraycopy(temporaryCells[0].packedChildren, 0, tmpCell.packedChildren, 0, arrayLength);
-            System.arraycopy(temporaryCells[0].midpoints, 0, tmpCell.midpoints, 0, arrayLength);
-
-            // Wait for each other task to complete and merge results into the main temporary storage
-            for (int i = 1; i < grammarThreads; i++) {
-                futures[i].get();
-                final PackedArrayChart.TemporaryChartCell threadTmpCell = temporaryCells[i];
-                for (int j = 0; j < arrayLength; j++) {
-                    if (threadTmpCell.insideProbabilities[j] > tmpCell.insideProbabilities[j]) {
-                        tmpCell.insideProbabilities[j] = threadTmpCell.insideProbabilities[j];
-                        tmpCell.packedChildren[j] = threadTmpCell.packedChildren[j];
-                        tmpCell.midpoints[j] = threadTmpCell.midpoints[j];
-                    }
+    /**
+     * A {@link TaskGang} owned by a single cell-level thread, with preallocated task descriptors for the
+     * cartesian-product and binary SpMV operations. Per-cell parameters are assigned to fields before each invocation,
+     * so dispatching a cell allocates nothing.
+     */
+    private final class GangTasks {
+
+        final TaskGang gang = new TaskGang(grammarThreads);
+
+        // Cartesian-product parameters
+        int start, end;
+        short[] nonTerminalIndices;
+        float[] insideProbabilities;
+        float[] cpvProbabilities;
+        short[] cpvMidpoints;
+
+        // Binary SpMV parameters
+        CartesianProductVector cartesianProductVector;
+        ParentBlockedMatrix blockedRules;
+        TemporaryChartCell tmpCell;
+
+        final TaskGang.Task cartesianProductTask = new TaskGang.Task() {
+
+            @Override
+            public void run(final int index) {
+                final PerfectIntPairHashPackingFunction pf = (PerfectIntPairHashPackingFunction) grammar
+                        .packingFunction();
+                for (int segment = index; segment < cpvSegments; segment += grammarThreads) {
+                    cartesianProductSegment(start, end, segment, pf, nonTerminalIndices, insideProbabilities,
+                            cpvProbabilities, cpvMidpoints);
                 }
             }
-        } catch (final InterruptedException e) {
-            e.printStackTrace();
-        } catch (final ExecutionException e) {
-            e.printStackTrace();
-        }
+        };
+
+        final TaskGang.Task binarySpmvTask = new TaskGang.Task() {
+
+            @Override
+            public void run(final int index) {
+                binarySpmvMultiply(cartesianProductVector, blockedRules, threadBlockStarts[index],
+                        threadBlockStarts[index + 1], tmpCell);
+            }
+        };
     }
 }
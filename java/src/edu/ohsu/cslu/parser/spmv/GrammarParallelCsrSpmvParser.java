@@ -21,23 +21,19 @@
  */
 package edu.ohsu.cslu.parser.spmv;
 
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.logging.Level;
 
 import cltool4j.BaseLogger;
-import cltool4j.GlobalConfigProperties;
 import edu.ohsu.cslu.grammar.CsrSparseMatrixGrammar;
 import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PerfectIntPairHashPackingFunction;
 import edu.ohsu.cslu.parser.ParserDriver;
 import edu.ohsu.cslu.parser.chart.Chart.ChartCell;
 import edu.ohsu.cslu.parser.chart.PackedArrayChart.PackedArrayChartCell;
+import edu.ohsu.cslu.util.TaskGang;
 
 /**
- * Distributes the binary SpMV operation across multiple threads.
+ * Distributes the binary SpMV operation across multiple threads. Work for each cell is dispatched to a persistent
+ * {@link TaskGang}, avoiding per-cell task allocation and executor overhead.
  * 
  * @author Aaron Dunlop
  * @since Mar 10, 2011
@@ -54,17 +50,42 @@ public final class GrammarParallelCsrSpmvParser extends CsrSpmvParser {
      */
     private final int[] binaryRowSegments;
 
-    private final ExecutorService executor;
+    private final TaskGang gang;
 
     private final float[][] cpvProbabilities;
     private final short[][] cpvMidpoints;
 
+    // Per-cell task parameters, assigned before each invocation of the gang
+    private int taskStart, taskEnd, taskSegmentSize;
+    private CartesianProductVector taskCartesianProductVector;
+    private PackedArrayChartCell taskCell;
+
+    private final TaskGang.Task cartesianProductTask = new TaskGang.Task() {
+
+        @Override
+        public void run(final int index) {
+            final int midpointStart = taskStart + 1 + taskSegmentSize * index;
+            final int midpointEnd = Math.min(midpointStart + taskSegmentSize, taskEnd - 1);
+            internalCartesianProduct(taskStart, taskEnd, midpointStart, midpointEnd,
+                    (PerfectIntPairHashPackingFunction) grammar.packingFunction(), chart.nonTerminalIndices,
+                    chart.insideProbabilities, cpvProbabilities[index], cpvMidpoints[index]);
+        }
+    };
+
+    private final TaskGang.Task binarySpmvTask = new TaskGang.Task() {
+
+        @Override
+        public void run(final int index) {
+            binarySpmvSegment(taskCartesianProductVector, taskCell, binaryRowSegments[index],
+                    binaryRowSegments[index + 1]);
+        }
+    };
+
     public GrammarParallelCsrSpmvParser(final ParserDriver opts, final CsrSparseMatrixGrammar grammar) {
         super(opts, grammar);
 
         // Split the binary grammar rules into segments of roughly equal size
-        final int requestedThreads = GlobalConfigProperties.singleton().getIntProperty(
-                ParserDriver.OPT_GRAMMAR_THREAD_COUNT);
+        final int requestedThreads = opts.scheduler().grammarThreads();
         final int[] segments = new int[requestedThreads + 1];
         final int segmentSize = grammar.csrBinaryColumnIndices.length / requestedThreads + 1;
         segments[0] = 0;
@@ -77,8 +98,6 @@ public final class GrammarParallelCsrSpmvParser extends CsrSpmvParser {
         segments[i] = grammar.csrBinaryRowOffsets.length - 1;
 
         this.threads = i;
-        GlobalConfigProperties.singleton().setProperty(ParserDriver.RUNTIME_CONFIGURED_THREAD_COUNT,
-                Integer.toString(threads));
         this.binaryRowSegments = new int[i + 1];
         System.arraycopy(segments, 0, binaryRowSegments, 0, binaryRowSegments.length);
 
@@ -91,8 +110,8 @@ public final class GrammarParallelCsrSpmvParser extends CsrSpmvParser {
             BaseLogger.singleton().fine("CSR Binary Grammar segments of length: " + sb.toString());
         }
 
-        // Configure a thread pool
-        executor = Executors.newFixedThreadPool(threads);
+        // Start persistent grammar-level worker threads
+        gang = new TaskGang(threads);
 
         // Pre-allocate cartesian-product vector arrays for each thread
         cpvProbabilities = new float[threads][];
@@ -120,68 +139,31 @@ public final class GrammarParallelCsrSpmvParser extends CsrSpmvParser {
         final short[] nonTerminalIndices = chart.nonTerminalIndices;
         final float[] insideProbabilities = chart.insideProbabilities;
 
-        // Perform cartesian-product operation at each midpoint
-        @SuppressWarnings("unchecked")
-        final Future<CartesianProductVector>[] futures = new Future[threads];
-
         // Don't bother multi-threading for fewer than 4 midpoints
-        final int segmentSize = (end - start - 2) / threads + 1;
-
-        if (end - start - 1 > 4) {
-            for (int i = 0; i < threads; i++) {
-
-                final int midpointStart = start + 1 + segmentSize * i;
-                final int midpointEnd = Math.min(midpointStart + segmentSize, end - 1);
-                final float[] probabilities = cpvProbabilities[i];
-                final short[] midpoints = cpvMidpoints[i];
-
-                futures[i] = executor.submit(new Callable<CartesianProductVector>() {
-
-                    @Override
-                    public edu.ohsu.cslu.parser.spmv.SparseMatrixVectorParser.CartesianProductVector call() {
-                        return internalCartesianProduct(start, end, midpointStart, midpointEnd, pf, nonTerminalIndices,
-                                insideProbabilities, probabilities, midpoints);
-                    }
-                });
-            }
-        } else {
+        if (end - start - 1 <= 4) {
             return internalCartesianProduct(start, end, start + 1, end - 1, pf, nonTerminalIndices,
                     insideProbabilities, cpvProbabilities[0], cpvMidpoints[0]);
         }
 
-        // Wait for the first task to complete (the first one uses the 'main' arrays, so we can't begin the
-        // merge until
-        // it is complete)
-        try {
-            futures[0].get();
-        } catch (final InterruptedException ignore) {
-        } catch (final ExecutionException e) {
-            e.printStackTrace();
-        }
+        // Perform cartesian-product operation over a range of midpoints in each thread
+        taskStart = start;
+        taskEnd = end;
+        taskSegmentSize = (end - start - 2) / threads + 1;
+        gang.invoke(cartesianProductTask);
 
-        // Wait for other tasks to complete.
-        // Copy the probabilities and midpoints of the first task directly to the main array and merge each
-        // subsequent
-        // task into that array.
+        // Merge each partial cartesian-product vector into the first (tropical semiring - choose maximum probability)
         // TODO This merge could be parallelized by splitting the vector array in segments
+        final float[] cartesianProductProbabilities = cpvProbabilities[0];
+        final short[] cartesianProductMidpoints = cpvMidpoints[0];
         for (int i = 1; i < threads; i++) {
-            try {
-                final CartesianProductVector partialCpv = futures[i].get();
-                final float[] cartesianProductProbabilities = cpvProbabilities[0];
-                final short[] cartesianProductMidpoints = cpvMidpoints[0];
-                // Merge partial cartesian-product vector into the main vector (tropical semiring - choose
-                // maximum
-                // probability)
-                for (int j = 0; j < partialCpv.midpoints.length; j++) {
-                    if (partialCpv.midpoints[j] != 0
-                            && (cartesianProductMidpoints[j] == 0 || partialCpv.probabilities[j] > cartesianProductProbabilities[j])) {
-                        cartesianProductMidpoints[j] = partialCpv.midpoints[j];
-                        cartesianProductProbabilities[j] = partialCpv.probabilities[j];
-                    }
+            final float[] partialProbabilities = cpvProbabilities[i];
+            final short[] partialMidpoints = cpvMidpoints[i];
+            for (int j = 0; j < partialMidpoints.length; j++) {
+                if (partialMidpoints[j] != 0
+                        && (cartesianProductMidpoints[j] == 0 || partialProbabilities[j] > cartesianProductProbabilities[j])) {
+                    cartesianProductMidpoints[j] = partialMidpoints[j];
+                    cartesianProductProbabilities[j] = partialProbabilities[j];
                 }
-            } catch (final InterruptedException ignore) {
-            } catch (final ExecutionException e) {
-                e.printStackTrace();
             }
         }
 
@@ -194,29 +176,10 @@ public final class GrammarParallelCsrSpmvParser extends CsrSpmvParser {
         final PackedArrayChartCell packedArrayCell = (PackedArrayChartCell) chartCell;
         packedArrayCell.allocateTemporaryStorage();
 
-        final Future<?>[] futures = new Future<?>[binaryRowSegments.length - 1];
-        // Iterate over binary grammar segments
-        for (int i = 0; i < threads; i++) {
-            final int segmentStart = binaryRowSegments[i];
-            final int segmentEnd = binaryRowSegments[i + 1];
-            futures[i] = executor.submit(new Runnable() {
-
-                @Override
-                public void run() {
-                    binarySpmvSegment(cartesianProductVector, packedArrayCell, segmentStart, segmentEnd);
-                }
-            });
-        }
-
-        // Wait for all tasks to complete
-        for (int i = 0; i < binaryRowSegments.length - 1; i++) {
-            try {
-                futures[i].get();
-            } catch (final InterruptedException ignore) {
-            } catch (final ExecutionException e) {
-                e.printStackTrace();
-            }
-        }
+        // Multiply each binary grammar segment in a separate thread
+        taskCartesianProductVector = cartesianProductVector;
+        taskCell = packedArrayCell;
+        gang.invoke(binarySpmvTask);
     }
 
     private void binarySpmvSegment(final CartesianProductVector cartesianProductVector,
@@ -257,9 +220,7 @@ public final class GrammarParallelCsrSpmvParser extends CsrSpmvParser {
 
     @Override
     public void shutdown() {
-        try {
-            executor.shutdown();
-        } catch (final Exception ignore) {
-        }
+        gang.shutdown();
+        super.shutdown();
     }
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser.spmv;
+
+import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
+import edu.ohsu.cslu.parser.ParserDriver;
+import edu.ohsu.cslu.parser.chart.Chart.ChartCell;
+import edu.ohsu.cslu.parser.chart.PackedArrayChart.PackedArrayChartCell;
+import edu.ohsu.cslu.parser.chart.PackedArrayChart.TemporaryChartCell;
+
+/**
+ * Variant of {@link CscSpmvParser} which multiplies by the interleaved CSC rule layout (
+ * {@link LeftCscSparseMatrixGrammar#cscBinaryInterleavedRules()}), reading each rule's parent and probability from a
+ * single array.
+ * 
+ * @author Aaron Dunlop
+ */
+public class InterleavedCscSpmvParser extends CscSpmvParser {
+
+    private final long[] binaryRules;
+    private final long[] factoredBinaryRules;
+
+    public InterleavedCscSpmvParser(final ParserDriver opts, final LeftCscSparseMatrixGrammar grammar) {
+        super(opts, grammar);
+        this.binaryRules = grammar.cscBinaryInterleavedRules();
+        this.factoredBinaryRules = grammar.factoredCscBinaryInterleavedRules();
+    }
+
+    /**
+     * Cache-blocking is not implemented for the interleaved layout
+     */
+    @Override
+    protected short[] parentBlockBoundaries(final LeftCscSparseMatrixGrammar g) {
+        return null;
+    }
+
+    @Override
+    public void binarySpmv(final CartesianProductVector cartesianProductVector, final ChartCell chartCell) {
+
+        final PackedArrayChartCell targetCell = (PackedArrayChartCell) chartCell;
+        targetCell.allocateTemporaryStorage();
+        final TemporaryChartCell tmpCell = targetCell.tmpCell;
+
+        if (cellSelector.hasCellConstraints() && cellSelector.isCellOnlyFactored(chartCell.start(), chartCell.end())) {
+            // Multiply by the factored grammar rule matrix
+            binarySpmvMultiply(cartesianProductVector, grammar.factoredCscBinaryPopulatedColumns,
+                    grammar.factoredCscBinaryPopulatedColumnOffsets, factoredBinaryRules, tmpCell.packedChildren,
+                    tmpCell.insideProbabilities, tmpCell.midpoints);
+        } else {
+            // Multiply by the main grammar rule matrix
+            binarySpmvMultiply(cartesianProductVector, grammar.cscBinaryPopulatedColumns,
+                    grammar.cscBinaryPopulatedColumnOffsets, binaryRules, tmpCell.packedChildren,
+                    tmpCell.insideProbabilities, tmpCell.midpoints);
+        }
+    }
+
+    private void binarySpmvMultiply(final CartesianProductVector cartesianProductVector,
+            final int[] grammarCscBinaryPopulatedColumns, final int[] grammarCscBinaryPopulatedColumnOffsets,
+            final long[] grammarCscBinaryRules, final int[] targetCellChildren, final float[] targetCellProbabilities,
+            final short[] targetCellMidpoints) {
+
+        // Iterate over possible populated child pairs (matrix columns)
+        for (int i = 0; i < grammarCscBinaryPopulatedColumns.length; i++) {
+
+            final int childPair = grammarCscBinaryPopulatedColumns[i];
+            final short cartesianProductMidpoint = cartesianProductVector.midpoints[childPair];
+
+            // Skip grammar matrix columns for unpopulated cartesian-product entries
+            if (cartesianProductMidpoint == 0) {
+                continue;
+            }
+            final float cartesianProductProbability = cartesianProductVector.probabilities[childPair];
+
+            // Iterate over possible parents of the child pair (rows with non-zero entries)
+            for (int j = grammarCscBinaryPopulatedColumnOffsets[i]; j < grammarCscBinaryPopulatedColumnOffsets[i + 1]; j++) {
+
+                final long rule = grammarCscBinaryRules[j];
+                final float jointProbability = LeftCscSparseMatrixGrammar.unpackProbability(rule)
+                        + cartesianProductProbability;
+                final int parent = LeftCscSparseMatrixGrammar.unpackParent(rule);
+
+                if (jointProbability > targetCellProbabilities[parent]) {
+                    targetCellChildren[parent] = childPair;
+                    targetCellProbabilities[parent] = jointProbability;
+                    targetCellMidpoints[parent] = cartesianProductMidpoint;
+                }
+            }
+        }
+    }
+}
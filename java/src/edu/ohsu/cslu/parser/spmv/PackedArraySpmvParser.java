@@ -26,12 +26,12 @@ import java.util.LinkedList;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
 
-import cltool4j.ConfigProperties;
-import cltool4j.GlobalConfigProperties;
 import edu.ohsu.cslu.grammar.SparseMatrixGrammar;
 import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PackingFunction;
 import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PerfectIntPairHashPackingFunction;
+import edu.ohsu.cslu.parser.CellCache;
 import edu.ohsu.cslu.parser.ChartParser;
+import edu.ohsu.cslu.parser.ParseScheduler;
 import edu.ohsu.cslu.parser.ParserDriver;
 import edu.ohsu.cslu.parser.chart.Chart.ChartCell;
 import edu.ohsu.cslu.parser.chart.PackedArrayChart;
@@ -46,10 +46,12 @@ import edu.ohsu.cslu.parser.chart.PackedArrayChart.PackedArrayChartCell;
 public abstract class PackedArraySpmvParser<G extends SparseMatrixGrammar> extends
         SparseMatrixVectorParser<G, PackedArrayChart> {
 
+    /** Cell-level pool shared by all parser instances (see {@link ParseScheduler}); null if single-threaded */
     protected final ForkJoinPool threadPool;
     protected final LinkedList<ForkJoinTask<?>> currentTasks;
 
-    private final int rowThreads;
+    /** True if the cells of the current sentence are distributed across {@link #threadPool} */
+    private boolean parallelSentence;
 
     protected final ThreadLocal<float[]> threadLocalCpvProbabilities;
     protected final ThreadLocal<short[]> threadLocalCpvMidpoints;
@@ -57,30 +59,8 @@ public abstract class PackedArraySpmvParser<G extends SparseMatrixGrammar> exten
     public PackedArraySpmvParser(final ParserDriver opts, final G grammar) {
         super(opts, grammar);
 
-        final ConfigProperties props = GlobalConfigProperties.singleton();
-
-        if (props.containsKey(ParserDriver.OPT_CELL_THREAD_COUNT)
-                || props.containsKey(ParserDriver.OPT_GRAMMAR_THREAD_COUNT)) {
-
-            this.rowThreads = props.containsKey(ParserDriver.OPT_CELL_THREAD_COUNT) ? props
-                    .getIntProperty(ParserDriver.OPT_CELL_THREAD_COUNT) : 1;
-            final int cellThreads = props.containsKey(ParserDriver.OPT_GRAMMAR_THREAD_COUNT) ? props
-                    .getIntProperty(ParserDriver.OPT_GRAMMAR_THREAD_COUNT) : 1;
-
-            final int threads = rowThreads * cellThreads;
-
-            GlobalConfigProperties.singleton().setProperty(ParserDriver.RUNTIME_CONFIGURED_THREAD_COUNT,
-                    Integer.toString(threads));
-
-            // Configure thread pool and current-task list
-            this.threadPool = new ForkJoinPool(threads);
-            this.currentTasks = new LinkedList<ForkJoinTask<?>>();
-
-        } else {
-            this.rowThreads = 1;
-            this.currentTasks = null;
-            this.threadPool = null;
-        }
+        this.threadPool = opts.scheduler().pool();
+        this.currentTasks = threadPool != null ? new LinkedList<ForkJoinTask<?>>() : null;
 
         // And thread-local cartesian-product vector storage
         this.threadLocalCpvProbabilities = new ThreadLocal<float[]>() {
@@ -108,17 +88,34 @@ public abstract class PackedArraySpmvParser<G extends SparseMatrixGrammar> exten
      */
     @Override
     protected final void insidePass() {
+        parallelSentence = threadPool != null && opts.scheduler().parallelize(chart.size());
+
+        // Cached cells are restored and stored in cell order, so we don't use the cell cache when parsing in parallel
+        final CellCache cellCache = parallelSentence ? null : cellCache();
+        final long fingerprint = cellCache != null ? opts.configurationFingerprint() : 0;
+
         while (cellSelector.hasNext()) {
+            if (chart.parseTask.deadlineExpired()) {
+                // Let any in-flight cells complete before the chart is decoded
+                waitForActiveTasks();
+                break;
+            }
             final short[] startAndEnd = cellSelector.next();
+            if (cellCache != null && restoreCachedCell(cellCache, fingerprint, startAndEnd[0], startAndEnd[1])) {
+                continue;
+            }
             final ChartCell cell = chart.getCell(startAndEnd[0], startAndEnd[1]);
             computeInsideProbabilities(cell);
+            if (cellCache != null) {
+                cacheCell(cellCache, fingerprint, startAndEnd[0], startAndEnd[1]);
+            }
         }
     }
 
     @Override
     protected void computeInsideProbabilities(final ChartCell cell) {
 
-        if (threadPool != null && rowThreads > 1) {
+        if (parallelSentence) {
             currentTasks.add(threadPool.submit(new Runnable() {
 
                 @Override
@@ -134,7 +131,7 @@ public abstract class PackedArraySpmvParser<G extends SparseMatrixGrammar> exten
 
     @Override
     public void waitForActiveTasks() {
-        if (threadPool != null) {
+        if (parallelSentence) {
             for (final ForkJoinTask<?> t : currentTasks) {
                 t.join();
             }
@@ -354,16 +351,4 @@ public abstract class PackedArraySpmvParser<G extends SparseMatrixGrammar> exten
         }
         return new CartesianProductVector(grammar, probabilities, midpoints, 0);
     }
-
-    @Override
-    public void shutdown() {
-        if (threadPool != null) {
-            threadPool.shutdown();
-        }
-    }
-
-    @Override
-    public void finalize() {
-        shutdown();
-    }
 }
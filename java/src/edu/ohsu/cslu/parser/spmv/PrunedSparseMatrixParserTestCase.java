@@ -22,6 +22,9 @@
 package edu.ohsu.cslu.parser.spmv;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -41,9 +44,12 @@ import cltool4j.GlobalConfigProperties;
 import edu.ohsu.cslu.grammar.SparseMatrixGrammar;
 import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PackingFunction;
 import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PerfectIntPairHashPackingFunction;
+import edu.ohsu.cslu.parser.ParseTask;
 import edu.ohsu.cslu.parser.Parser;
+import edu.ohsu.cslu.parser.Parser.ReparseStrategy;
 import edu.ohsu.cslu.parser.ParserDriver;
 import edu.ohsu.cslu.parser.SparseMatrixParser;
+import edu.ohsu.cslu.parser.chart.Chart.RecoveryStrategy;
 import edu.ohsu.cslu.parser.chart.PackedArrayChart;
 import edu.ohsu.cslu.parser.ecp.ChartParserTestCase;
 import edu.ohsu.cslu.parser.fom.BoundaryPosModel;
@@ -62,12 +68,14 @@ import edu.ohsu.cslu.tests.JUnit;
 public abstract class PrunedSparseMatrixParserTestCase<G extends SparseMatrixGrammar> {
 
     private SparseMatrixParser<G, PackedArrayChart> parser;
+    private G grammar;
+    private ParserDriver opts;
 
     @Before
     public void setUp() throws IOException {
-        final G grammar = createGrammar(JUnit.unitTestDataAsReader("grammars/eng.R2.gr.gz"),
+        grammar = createGrammar(JUnit.unitTestDataAsReader("grammars/eng.R2.gr.gz"),
                 PerfectIntPairHashPackingFunction.class);
-        final ParserDriver opts = new ParserDriver();
+        opts = new ParserDriver();
         opts.fomModel = new BoundaryPosModel(FOMType.BoundaryPOS, grammar, new BufferedReader(
                 JUnit.unitTestDataAsReader("fom/eng.R2.fom.gz")));
 
@@ -108,6 +116,91 @@ public abstract class PrunedSparseMatrixParserTestCase<G extends SparseMatrixGra
      */
     @Test
     public void testPruned() throws IOException {
+        assertPrunedParses();
+    }
+
+    /**
+     * Verifies that disabling dynamic cell closure does not alter pruned parses (dynamic closure should only skip
+     * cells which cannot be populated)
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testPrunedWithoutDynamicCellClosure() throws IOException {
+        final ConfigProperties props = GlobalConfigProperties.singleton();
+        props.put(ParserDriver.OPT_DISABLE_DYNAMIC_CELL_CLOSURE, "true");
+        try {
+            parser.shutdown();
+            parser = createParser(opts, grammar);
+            assertPrunedParses();
+        } finally {
+            props.remove(ParserDriver.OPT_DISABLE_DYNAMIC_CELL_CLOSURE);
+        }
+    }
+
+    /**
+     * Parses with a beam narrow enough to force reparsing, and verifies that localized reparsing recovers a complete
+     * parse for each sentence.
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testLocalReparse() throws IOException {
+        final ConfigProperties props = GlobalConfigProperties.singleton();
+        props.put(Parser.PROPERTY_MAX_BEAM_WIDTH, "1");
+        props.put(Parser.PROPERTY_LEXICAL_ROW_BEAM_WIDTH, "1");
+        props.put(Parser.PROPERTY_LEXICAL_ROW_UNARIES, "0");
+        props.put(Parser.PROPERTY_MAX_LOCAL_DELTA, "1");
+        opts.reparseStrategy = ReparseStrategy.LocalEscalate;
+        parser.shutdown();
+        parser = createParser(opts, grammar);
+
+        final BufferedReader tokenizedReader = new BufferedReader(new InputStreamReader(
+                JUnit.unitTestDataAsStream("parsing/wsj.24.tokens.1-20")));
+
+        // Count sentences recovered by the localized reparsing stages (stages 1 and 2 of LocalEscalate)
+        int locallyReparsedSentences = 0;
+        for (String sentence = tokenizedReader.readLine(); sentence != null; sentence = tokenizedReader.readLine()) {
+            final ParseTask task = parser.parseSentence(sentence);
+            assertNotNull("Failed on sentence: " + sentence, task.binaryParse);
+            if (task.reparseStages == 1 || task.reparseStages == 2) {
+                locallyReparsedSentences++;
+            }
+        }
+        assertTrue("Expected at least one sentence recovered by localized reparsing", locallyReparsedSentences > 0);
+    }
+
+    /**
+     * Parses with a deadline which has already expired, so parsing stops before any cells (even in the lexical row)
+     * are populated, and escalation to a wider beam never starts. Verifies that each sentence returns a recovery parse
+     * covering every token, and that timeouts are recorded.
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testDeadline() throws IOException {
+        opts.reparseStrategy = ReparseStrategy.Escalate;
+        parser.shutdown();
+        parser = createParser(opts, grammar);
+
+        final BufferedReader tokenizedReader = new BufferedReader(new InputStreamReader(
+                JUnit.unitTestDataAsStream("parsing/wsj.24.tokens.1-20")));
+
+        for (String sentence = tokenizedReader.readLine(); sentence != null; sentence = tokenizedReader.readLine()) {
+            final ParseTask task = parser.parseSentence(sentence, RecoveryStrategy.RightBiased, -1);
+            assertTrue("No timeout on sentence: " + sentence, task.timedOut);
+            assertNotNull("Failed on sentence: " + sentence, task.recoveryParse);
+            assertEquals("Dropped tokens on sentence: " + sentence, task.sentenceLength(),
+                    task.recoveryParse.leaves());
+        }
+
+        // Without a deadline, parsing is unaffected
+        final ParseTask task = parser.parseSentence("The bill passed .");
+        assertFalse(task.timedOut);
+        assertNotNull(task.binaryParse);
+    }
+
+    private void assertPrunedParses() throws IOException {
 
         final BufferedReader tokenizedReader = new BufferedReader(new InputStreamReader(
                 JUnit.unitTestDataAsStream("parsing/wsj.24.tokens.1-20")));
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.parser.spmv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.cjunit.PerformanceTest;
+import org.junit.Test;
+
+import cltool4j.GlobalConfigProperties;
+import edu.ohsu.cslu.grammar.CscSparseMatrixGrammar.ParentBlockedMatrix;
+import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
+import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PerfectIntPairHashPackingFunction;
+import edu.ohsu.cslu.parser.ParserDriver;
+
+/**
+ * Tests for cache-blocked SpMV in {@link CscSpmvParser} (see {@link ParserDriver#OPT_SPMV_PARENT_BLOCK_SIZE}).
+ * 
+ * @author Aaron Dunlop
+ */
+public class TestCacheBlockedCscSpmvParser extends
+        SparseMatrixVectorParserTestCase<CscSpmvParser, PerfectIntPairHashPackingFunction> {
+
+    private final static int PARENT_BLOCK_SIZE = 64;
+
+    @Override
+    @Test
+    @PerformanceTest({ "mbp", "0", "mbp2012", "0" })
+    public void profileSentences11Through20() throws Exception {
+        internalProfileSentences11Through20();
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        GlobalConfigProperties.singleton().setProperty(ParserDriver.OPT_SPMV_PARENT_BLOCK_SIZE,
+                Integer.toString(PARENT_BLOCK_SIZE));
+        super.setUp();
+    }
+
+    @Override
+    public void tearDown() {
+        super.tearDown();
+        GlobalConfigProperties.singleton().remove(ParserDriver.OPT_SPMV_PARENT_BLOCK_SIZE);
+    }
+
+    /**
+     * Verifies that a parent-blocked matrix partitions the rules of the full binary matrix
+     */
+    @Test
+    public void testParentBlockedMatrix() throws Exception {
+        final LeftCscSparseMatrixGrammar g = (LeftCscSparseMatrixGrammar) f2_21_grammar;
+
+        final short[] boundaries = g.parentBlockBoundaries(4, PARENT_BLOCK_SIZE);
+        assertEquals(0, boundaries[0]);
+        assertEquals(g.numNonTerms(), boundaries[boundaries.length - 1]);
+        assertTrue(boundaries.length - 1 >= Math.min(4, g.numNonTerms() / PARENT_BLOCK_SIZE));
+        for (int b = 0; b < boundaries.length - 1; b++) {
+            assertTrue(boundaries[b + 1] > boundaries[b]);
+            assertTrue(boundaries[b + 1] - boundaries[b] <= PARENT_BLOCK_SIZE);
+        }
+
+        final ParentBlockedMatrix m = g.parentBlockedMatrix(boundaries, false);
+        int totalRules = 0;
+        for (int b = 0; b < m.blocks(); b++) {
+            totalRules += m.rules(b);
+
+            for (int i = 0; i < m.populatedColumns[b].length; i++) {
+                final int childPair = m.populatedColumns[b][i];
+                assertTrue(m.populatedColumnOffsets[b][i + 1] > m.populatedColumnOffsets[b][i]);
+
+                for (int j = m.populatedColumnOffsets[b][i]; j < m.populatedColumnOffsets[b][i + 1]; j++) {
+                    final short parent = m.rowIndices[b][j];
+                    assertTrue(parent >= boundaries[b] && parent < boundaries[b + 1]);
+                    assertEquals(binaryProbability(g, parent, childPair), m.probabilities[b][j], 0f);
+                }
+            }
+        }
+        assertEquals(g.numBinaryProds(), totalRules);
+
+        // Parsers sharing the grammar should share a single partitioned copy
+        assertSame(m, g.parentBlockedMatrix(boundaries.clone(), false));
+        final CscSpmvParser p1 = new CscSpmvParser(parserOptions(), g);
+        final CscSpmvParser p2 = new CscSpmvParser(parserOptions(), g);
+        assertSame(p1.blockedBinaryRules, p2.blockedBinaryRules);
+        assertSame(p1.blockedFactoredBinaryRules, p2.blockedFactoredBinaryRules);
+        p1.shutdown();
+        p2.shutdown();
+    }
+
+    private float binaryProbability(final LeftCscSparseMatrixGrammar g, final short parent, final int childPair) {
+        for (int k = g.cscBinaryColumnOffsets[childPair]; k < g.cscBinaryColumnOffsets[childPair + 1]; k++) {
+            if (g.cscBinaryRowIndices[k] == parent) {
+                return g.cscBinaryProbabilities[k];
+            }
+        }
+        return Float.NEGATIVE_INFINITY;
+    }
+}
@@ -35,6 +35,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import cltool4j.BaseLogger;
 import cltool4j.args4j.Option;
@@ -657,13 +658,25 @@ public class AdaptiveBeamClassifier extends ClassifierTool<BeamWidthSequence> {
      * @return The beam-width class, as selected from the supplied <code>dotProducts</code>
      */
     public short beamClass(final float[] dotProducts) {
+        return beamClass(dotProducts, 0);
+    }
+
+    /**
+     * As {@link #beamClass(float[])}, but reads dot-products for a single entry from a batch populated by
+     * {@link #dotProducts(long[], int, int, float[])}.
+     * 
+     * @param dotProducts
+     * @param offset Offset of the entry's dot-products in <code>dotProducts</code>
+     * @return The beam-width class, as selected from the supplied <code>dotProducts</code>
+     */
+    public short beamClass(final float[] dotProducts, final int offset) {
 
         final short unboundedClass = (short) (classes() - 1);
 
         // Evaluate each dot-product as an independent binary classification, searching for the first positive
         // classification
         for (short c = 0; c < unboundedClass; c++) {
-            if (dotProducts[c] + biases[c] > 0) {
+            if (dotProducts[offset + c] + biases[c] > 0) {
                 return c;
             }
         }
@@ -671,11 +684,12 @@ public class AdaptiveBeamClassifier extends ClassifierTool<BeamWidthSequence> {
     }
 
     public boolean factoredOnly(final float[] dotProducts) {
+        return factoredOnly(dotProducts, 0);
+    }
 
-        if (factoredOnlyOffset < 0) {
-            return false;
-        }
-        return factoredOnlyOffset < 0 ? false : dotProducts[factoredOnlyOffset] + biases[factoredOnlyOffset] > 0;
+    public boolean factoredOnly(final float[] dotProducts, final int offset) {
+        return factoredOnlyOffset < 0 ? false
+                : dotProducts[offset + factoredOnlyOffset] + biases[factoredOnlyOffset] > 0;
     }
 
     public UnaryConstraintClassifier unaryConstraintClassifier() {
@@ -784,6 +798,54 @@ public class AdaptiveBeamClassifier extends ClassifierTool<BeamWidthSequence> {
         return dotProducts;
     }
 
+    /**
+     * Computes dot-products for a batch of entries, using features pre-extracted into a single primitive array (see
+     * {@link ConstituentBoundaryFeatureExtractor#featureIndices(ConstituentBoundarySequence, long[])}). The
+     * dot-products of entry <i>i</i> are stored at <code>i * {@link #dotProductCount()}</code>.
+     * 
+     * @param featureIndices Feature indices, <code>templates</code> consecutive entries per classified entry
+     * @param entries Number of entries to classify
+     * @param templates Number of features per entry
+     * @param buffer Dot-product buffer (may be null). Reused if large enough to contain all dot-products.
+     * @return The populated dot-product buffer (<code>buffer</code> or a new array)
+     */
+    public float[] dotProducts(final long[] featureIndices, final int entries, final int templates,
+            final float[] buffer) {
+
+        final int length = entries * biases.length;
+        final float[] dotProducts;
+        if (buffer != null && buffer.length >= length) {
+            dotProducts = buffer;
+            Arrays.fill(dotProducts, 0, length, 0f);
+        } else {
+            dotProducts = new float[length];
+        }
+
+        for (int e = 0; e < entries; e++) {
+            final int dpOffset = e * biases.length;
+
+            for (int j = e * templates, featureEnd = j + templates; j < featureEnd; j++) {
+                final int offset = parallelArrayOffsetMap.get(featureIndices[j]);
+                if (offset < 0) {
+                    continue;
+                }
+                final int end = offset + parallelWeightArrayTags[offset];
+                for (int i = offset + 1; i <= end; i++) {
+                    dotProducts[dpOffset + parallelWeightArrayTags[i]] += parallelWeightArray[i];
+                }
+            }
+        }
+        return dotProducts;
+    }
+
+    /**
+     * @return The number of dot-products computed per entry (beam-width classes, plus the factored-only and
+     *         unary-constraint classifiers, if any)
+     */
+    public int dotProductCount() {
+        return biases.length;
+    }
+
     private short classifyWithTrainingVectors(final BitVector featureVector) {
 
         final float[] dotProducts = new float[classBoundaryBeamWidths.length];
@@ -286,6 +286,91 @@ public class AveragedPerceptron extends Perceptron {
         rawGuess.inPlaceAdd(featureVector, -alpha);
     }
 
+    /**
+     * Updates the model toward the gold class for one feature vector and away from the guess class for another. Used
+     * for structured training (e.g. early-update beam search), in which the gold and predicted derivations diverge, so
+     * corresponding decisions are made from different states (and feature vectors).
+     * 
+     * @param goldClass
+     * @param goldFeatureVector Features of the gold decision (if null, only the guess is penalized)
+     * @param guessClass
+     * @param guessFeatureVector Features of the predicted decision (if null, only the gold is rewarded)
+     */
+    public void update(final int goldClass, final BitVector goldFeatureVector, final int guessClass,
+            final BitVector guessFeatureVector) {
+
+        trainExampleNumber++;
+        if (goldFeatureVector != null) {
+            update(goldClass, learningRate, goldFeatureVector, trainExampleNumber);
+        }
+        if (guessFeatureVector != null) {
+            update(guessClass, -learningRate, guessFeatureVector, trainExampleNumber);
+        }
+    }
+
+    /**
+     * Counts a training example which requires no update (e.g., a correct decision in structured training), so that
+     * the averaged model reflects the number of examples for which the current weights were retained.
+     */
+    public void skipExample() {
+        trainExampleNumber++;
+    }
+
+    /**
+     * Updates the weights of a single class. The averaged weights of all classes are first brought up to date for
+     * each feature, since the last-averaged example is shared across classes.
+     */
+    private void update(final int updateClass, final float alpha, final BitVector featureVector, final int example) {
+
+        if (lastAveraged instanceof LargeVector) {
+            final LargeVector largeLastAveraged = (LargeVector) lastAveraged;
+
+            for (final long featIndex : ((LargeBitVector) featureVector).longValues()) {
+                final int l = largeLastAveraged.getInt(featIndex);
+
+                if (l < example) {
+                    for (int i = 0; i < avgWeights.length; i++) {
+                        final float r = ((LargeVector) rawWeights[i]).getFloat(featIndex);
+                        final float a = ((LargeVector) avgWeights[i]).getFloat(featIndex);
+                        ((LargeVector) avgWeights[i]).set(featIndex, (a - r) * l / example + r);
+                    }
+                    largeLastAveraged.set(featIndex, example);
+                }
+
+                final LargeVector raw = (LargeVector) rawWeights[updateClass];
+                raw.set(featIndex, raw.getFloat(featIndex) + alpha);
+                final LargeVector avg = (LargeVector) avgWeights[updateClass];
+                avg.set(featIndex, avg.getFloat(featIndex) + alpha / example);
+            }
+
+        } else {
+            for (final int featIndex : featureVector.values()) {
+                final int l = lastAveraged.getInt(featIndex);
+
+                if (l < example) {
+                    for (int i = 0; i < avgWeights.length; i++) {
+                        final float r = rawWeights[i].getFloat(featIndex);
+                        avgWeights[i].set(featIndex, (avgWeights[i].getFloat(featIndex) - r) * l / example + r);
+                    }
+                    lastAveraged.set(featIndex, example);
+                }
+
+                rawWeights[updateClass].set(featIndex, rawWeights[updateClass].getFloat(featIndex) + alpha);
+                avgWeights[updateClass].set(featIndex, avgWeights[updateClass].getFloat(featIndex) + alpha / example);
+            }
+        }
+    }
+
+    /**
+     * Averages all feature weights. Classification averages the model lazily when required, so callers sharing a model
+     * across threads should call this method once before classifying concurrently.
+     */
+    public void averageModel() {
+        if (lastExampleAllUpdated < trainExampleNumber) {
+            averageAllFeatures();
+        }
+    }
+
     void averageAllFeatures() {
 
         if (lastAveraged instanceof LargeVector) {
@@ -173,6 +173,11 @@ public abstract class BinaryClassifier<S extends BinarySequence> extends Classif
     }
 
     private boolean classify(final BitVector featureVector) {
+        updateAveragedWeights();
+        return avgWeights.dotProduct(featureVector) >= bias;
+    }
+
+    private void updateAveragedWeights() {
         if (lastExampleAllUpdated < trainExampleNumber) {
             averageAllFeatures(rawWeights, avgWeights, lastAveraged, trainExampleNumber);
 
@@ -180,7 +185,41 @@ public abstract class BinaryClassifier<S extends BinarySequence> extends Classif
             // classification and model writing to ensure model is up-to-date
             lastExampleAllUpdated = trainExampleNumber;
         }
-        return avgWeights.dotProduct(featureVector) >= bias;
+    }
+
+    /**
+     * Classifies a batch of entries, using features pre-extracted into a single primitive array (e.g., by
+     * {@link ConstituentBoundaryFeatureExtractor#featureIndices(ConstituentBoundarySequence, long[])}). Equivalent to
+     * classifying each entry individually, but avoids allocating a feature vector per entry.
+     * 
+     * @param featureIndices Feature indices, <code>templates</code> consecutive entries per classified entry
+     * @param entries Number of entries to classify
+     * @param templates Number of features per entry
+     * @param classifications Populated with the classification of each entry (0..entries-1)
+     */
+    public void classify(final long[] featureIndices, final int entries, final int templates,
+            final BitVector classifications) {
+
+        updateAveragedWeights();
+
+        if (avgWeights instanceof LargeVector) {
+            final LargeVector largeWeights = (LargeVector) avgWeights;
+            for (int i = 0, offset = 0; i < entries; i++, offset += templates) {
+                float dotProduct = 0;
+                for (int j = offset; j < offset + templates; j++) {
+                    dotProduct += largeWeights.getFloat(featureIndices[j]);
+                }
+                classifications.set(i, dotProduct >= bias);
+            }
+        } else {
+            for (int i = 0, offset = 0; i < entries; i++, offset += templates) {
+                float dotProduct = 0;
+                for (int j = offset; j < offset + templates; j++) {
+                    dotProduct += avgWeights.getFloat((int) featureIndices[j]);
+                }
+                classifications.set(i, dotProduct >= bias);
+            }
+        }
     }
 
     /**
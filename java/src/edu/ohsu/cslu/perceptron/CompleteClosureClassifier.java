@@ -35,8 +35,10 @@ import java.util.ArrayList;
 import cltool4j.BaseLogger;
 import cltool4j.args4j.Option;
 import edu.ohsu.cslu.datastructs.narytree.NaryTree.Binarization;
+import edu.ohsu.cslu.datastructs.vectors.BitVector;
 import edu.ohsu.cslu.datastructs.vectors.FloatVector;
 import edu.ohsu.cslu.grammar.Grammar;
+import edu.ohsu.cslu.parser.chart.Chart;
 import edu.ohsu.cslu.perceptron.AdaptiveBeamClassifier.UnaryConstraintSequence;
 import edu.ohsu.cslu.util.MutableEnumeration;
 
@@ -425,6 +427,27 @@ public class CompleteClosureClassifier extends BinaryClassifier<CompleteClosureS
                         result.sentenceNegativeRecall() * 100f));
     }
 
+    /**
+     * Classifies all span > 1 cells of a sentence in a single pass, extracting features for all cells into a shared
+     * primitive buffer rather than allocating a feature vector per cell.
+     * 
+     * @param sequence
+     * @param featureBuffer Feature buffer (may be null). Reused if large enough.
+     * @param closedCells Populated with the classification of each cell, indexed as in
+     *            {@link Chart#cellIndex(int, int, int, boolean)} (excluding span-1 cells). True denotes a closed cell.
+     * @return The feature buffer used (<code>featureBuffer</code> or a newly-allocated array), for reuse in subsequent
+     *         calls.
+     */
+    public long[] classify(final CompleteClosureSequence sequence, final long[] featureBuffer,
+            final BitVector closedCells) {
+
+        @SuppressWarnings("unchecked")
+        final ConstituentBoundaryFeatureExtractor<CompleteClosureSequence> fe = (ConstituentBoundaryFeatureExtractor<CompleteClosureSequence>) featureExtractor;
+        final long[] featureIndices = fe.featureIndices(sequence, featureBuffer);
+        classify(featureIndices, sequence.length(), fe.templateCount(), closedCells);
+        return featureIndices;
+    }
+
     public Binarization binarization() {
         return binarization;
     }
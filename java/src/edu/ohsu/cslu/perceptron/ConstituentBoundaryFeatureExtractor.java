@@ -186,8 +186,46 @@ public class ConstituentBoundaryFeatureExtractor<S extends ConstituentBoundarySe
         final long[] featureIndices = new long[templates.length];
 
         final short[] startAndEnd = Chart.startAndEnd(position, input.sentenceLength, excludeSpan1Cells);
-        final short start = startAndEnd[0];
-        final short end = startAndEnd[1];
+        featureIndices(input, startAndEnd[0], startAndEnd[1], featureIndices, 0);
+
+        return featureVectorLength > Integer.MAX_VALUE ? new LargeSparseBitVector(featureVectorLength, featureIndices,
+                true) : new SparseBitVector(featureVectorLength, featureIndices);
+    }
+
+    /**
+     * Extracts features for all cells of a sentence into a single primitive buffer, avoiding the allocation of a
+     * {@link BitVector} (and the cell-index to start/end search) per cell. Cells are ordered by cell index, as in
+     * {@link #featureVector(ConstituentBoundarySequence, int)}, and the features of each cell occupy
+     * {@link #templateCount()} consecutive entries.
+     * 
+     * @param input
+     * @param buffer Feature buffer (may be null). Reused if large enough to contain all features of <code>input</code>
+     * @return The populated feature buffer (<code>buffer</code> or a new array)
+     */
+    public long[] featureIndices(final S input, final long[] buffer) {
+
+        final int sentenceLength = input.sentenceLength;
+        final int minSpan = excludeSpan1Cells ? 2 : 1;
+        final int cells = (sentenceLength - minSpan + 1) * (sentenceLength - minSpan + 2) / 2;
+        final long[] featureIndices = (buffer != null && buffer.length >= cells * templates.length) ? buffer
+                : new long[cells * templates.length];
+
+        int offset = 0;
+        for (short start = 0; start <= sentenceLength - minSpan; start++) {
+            for (short end = (short) (start + minSpan); end <= sentenceLength; end++) {
+                featureIndices(input, start, end, featureIndices, offset);
+                offset += templates.length;
+            }
+        }
+        return featureIndices;
+    }
+
+    /**
+     * Populates the features of a single cell in <code>featureIndices</code>, starting at <code>offset</code>
+     */
+    private void featureIndices(final S input, final short start, final short end, final long[] featureIndices,
+            final int offset) {
+
         final int span = end - start;
 
         for (int i = 0; i < templates.length; i++) {
@@ -278,11 +316,8 @@ public class ConstituentBoundaryFeatureExtractor<S extends ConstituentBoundarySe
             }
             final long featureIndex = featureOffsets[i] + feature;
             assert featureIndex >= 0 && featureIndex < featureVectorLength;
-            featureIndices[i] = featureIndex;
+            featureIndices[offset + i] = featureIndex;
         }
-
-        return featureVectorLength > Integer.MAX_VALUE ? new LargeSparseBitVector(featureVectorLength, featureIndices,
-                true) : new SparseBitVector(featureVectorLength, featureIndices);
     }
 
     private enum TemplateElement {
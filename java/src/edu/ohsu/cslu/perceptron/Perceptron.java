@@ -187,6 +187,38 @@ public class Perceptron extends Classifier {
         return new ScoredRanking(classes, scores);
     }
 
+    /**
+     * Scores a batch of feature vectors, iterating over the weights of each class once for the entire batch (e.g.,
+     * scoring all states of a beam at once).
+     * 
+     * @param featureVectors Feature vectors (only the first <code>count</code> are scored)
+     * @param count Number of feature vectors to score
+     * @param scores Output array, indexed by feature vector and class. Must be at least <code>count</code> x
+     *            {@link #numClasses()}. Allocated by the caller so it can be reused across batches.
+     */
+    public final void scores(final Vector[] featureVectors, final int count, final float[][] scores) {
+        scores(modelWeights(), featureVectors, count, scores);
+    }
+
+    /**
+     * Scores a batch of feature vectors with the raw (unaveraged) model, as used to make predictions during training.
+     * See {@link #scores(Vector[], int, float[][])}.
+     */
+    public final void rawScores(final Vector[] featureVectors, final int count, final float[][] scores) {
+        scores(rawWeights, featureVectors, count, scores);
+    }
+
+    private void scores(final FloatVector[] model, final Vector[] featureVectors, final int count,
+            final float[][] scores) {
+        for (int i = 0; i < model.length; i++) {
+            final FloatVector classWeights = model[i];
+            final float classBias = bias[i];
+            for (int j = 0; j < count; j++) {
+                scores[j][i] = featureVectors[j].dotProduct(classWeights) + classBias;
+            }
+        }
+    }
+
     // also used by AveragedPerceptron
     @Override
     public void train(final int goldClass, final BitVector featureVector) {
@@ -34,6 +34,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import edu.ohsu.cslu.datastructs.narytree.NaryTree.Binarization;
+import edu.ohsu.cslu.datastructs.vectors.PackedBitVector;
 import edu.ohsu.cslu.datastructs.vectors.SparseBitVector;
 import edu.ohsu.cslu.grammar.DecisionTreeTokenClassifier;
 import edu.ohsu.cslu.grammar.Grammar;
@@ -250,4 +251,47 @@ public class TestCompleteClosure {
         assertTrue("Expected at least 97.7%, but was " + result.precision(), result.precision() > .977f);
     }
 
+    @Test
+    public void testBatchFeatureExtraction() {
+
+        final ConstituentBoundaryFeatureExtractor<CompleteClosureSequence> fe = new ConstituentBoundaryFeatureExtractor<CompleteClosureSequence>(
+                "ltm1,lt,rt,rtp1,lwm1_lw,rw_rwp1,s2,s4,rs2", lexicon, unkClassSet, vocabulary, true);
+        final CompleteClosureSequence sequence = trainingCorpusSequences.get(0);
+        final int templates = fe.templateCount();
+
+        final long[] featureIndices = fe.featureIndices(sequence, null);
+        assertEquals(sequence.length() * templates, featureIndices.length);
+
+        // Each cell's features should match those extracted individually
+        for (int cellIndex = 0; cellIndex < sequence.length(); cellIndex++) {
+            final int[] expected = ((SparseBitVector) fe.featureVector(sequence, cellIndex)).elements();
+            for (int i = 0; i < templates; i++) {
+                assertEquals(expected[i], featureIndices[cellIndex * templates + i]);
+            }
+        }
+
+        // A sufficiently-large buffer should be reused
+        final long[] buffer = new long[featureIndices.length + 10];
+        assertTrue(buffer == fe.featureIndices(sequence, buffer));
+    }
+
+    @Test
+    public void testBatchClassification() throws IOException {
+        final String tree = "(ROOT (S (NP (DT The) (NN fish) (NN market)) (VP (VB stands) (RB last))))";
+        final CompleteClosureClassifier classifier = new CompleteClosureClassifier(null, null, "lw_rw,lwm1_rwp1");
+        classifier.trainingIterations = 2;
+        classifier.lexicon = new MutableEnumeration<String>();
+        classifier.decisionTreeUnkClassSet = new MutableEnumeration<String>();
+        classifier.train(new BufferedReader(new StringReader(tree)));
+
+        final CompleteClosureSequence sequence = new CompleteClosureSequence(tree, Binarization.LEFT,
+                classifier.lexicon, classifier.decisionTreeUnkClassSet, new MutableEnumeration<String>());
+        final PackedBitVector closedCells = new PackedBitVector(sequence.length());
+        classifier.classify(sequence, null, closedCells);
+
+        for (int cellIndex = 0; cellIndex < sequence.length(); cellIndex++) {
+            assertEquals(classifier.classify(sequence, cellIndex), closedCells.contains(cellIndex));
+        }
+    }
+
 }
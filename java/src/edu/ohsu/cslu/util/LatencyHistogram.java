@@ -0,0 +1,166 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of non-negative long values (generally latencies), with log-linear buckets in the style of
+ * HdrHistogram. Values below 64 are recorded exactly; larger values are bucketed by their 6 most significant bits, so
+ * percentiles are accurate to within about 3% across the entire range. Recording is lock-free (a few atomic
+ * increments), so a single instance can be shared by all parsing threads.
+ * 
+ * Values larger than {@link #MAX_VALUE} are clamped.
+ * 
+ * @author Aaron Dunlop
+ */
+public final class LatencyHistogram {
+
+    /** Number of bits of precision retained for values above the linear range */
+    private final static int SUB_BUCKET_BITS = 5;
+    private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Values below this threshold are recorded exactly */
+    private final static int LINEAR_BUCKETS = SUB_BUCKETS << 1;
+
+    /** Largest value tracked (about 18 minutes, when recording nanoseconds) */
+    public final static long MAX_VALUE = (1L << 40) - 1;
+
+    private final static int BUCKETS = bucket(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a single observation
+     * 
+     * @param value
+     */
+    public void record(final long value) {
+        final long v = value < 0 ? 0 : (value > MAX_VALUE ? MAX_VALUE : value);
+        counts.incrementAndGet(bucket(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+
+        long m = max.get();
+        while (v > m && !max.compareAndSet(m, v)) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * @return The number of observations recorded
+     */
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * @return The total of all observations recorded
+     */
+    public long sum() {
+        return sum.get();
+    }
+
+    /**
+     * @return The largest observation recorded (0 if none)
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @return The mean of all observations recorded (0 if none)
+     */
+    public double mean() {
+        final long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Returns an estimate of the specified percentile. Concurrent updates may be partially reflected.
+     * 
+     * @param percentile Percentile (0-100)
+     * @return The value at the specified percentile (0 if no observations have been recorded)
+     */
+    public long percentile(final double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = java.lang.Math.max(1, (long) java.lang.Math.ceil(percentile / 100 * total));
+        if (rank >= total) {
+            return max.get();
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return java.lang.Math.min(bucketMidpoint(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Appends a summary of the histogram, in the form 'name.count=n name.mean=m name.p50=... name.max=x', scaling each
+     * value by the specified divisor (e.g. to report nanosecond observations in microseconds).
+     * 
+     * @param sb
+     * @param name
+     * @param divisor
+     */
+    public void appendSummary(final StringBuilder sb, final String name, final long divisor) {
+        sb.append(String.format(" %s.count=%d %s.mean=%d %s.p50=%d %s.p90=%d %s.p99=%d %s.max=%d", name, count(),
+                name, java.lang.Math.round(mean() / divisor), name, percentile(50) / divisor, name,
+                percentile(90) / divisor, name, percentile(99) / divisor, name, max() / divisor));
+    }
+
+    static int bucket(final long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        // Shift such that the SUB_BUCKET_BITS + 1 most-significant bits remain
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    static long bucketLowerBound(final int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        final int shift = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        return ((long) (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    private static long bucketMidpoint(final int bucket) {
+        final long lower = bucketLowerBound(bucket);
+        return bucket + 1 < BUCKETS ? (lower + bucketLowerBound(bucket + 1) - 1) / 2 : lower;
+    }
+}
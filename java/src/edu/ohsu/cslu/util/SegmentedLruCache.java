@@ -0,0 +1,189 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A concurrent cache, bounded by the (estimated) size of its contents in bytes. The cache is divided into
+ * independently-synchronized segments, each maintaining LRU order and its share of the total size limit, so concurrent
+ * threads contend only when accessing the same segment. Subclasses estimate the size of each entry.
+ * 
+ * @author Aaron Dunlop
+ */
+public abstract class SegmentedLruCache<K, V> {
+
+    private final static int DEFAULT_SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+    private final long maxSegmentBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxBytes Approximate maximum size of the cache, in bytes
+     */
+    public SegmentedLruCache(final long maxBytes) {
+        this(maxBytes, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * @param maxBytes Approximate maximum size of the cache, in bytes
+     * @param segments Number of independently-synchronized segments
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public SegmentedLruCache(final long maxBytes, final int segments) {
+        this.segments = new Segment[segments];
+        for (int i = 0; i < segments; i++) {
+            this.segments[i] = new Segment<K, V>();
+        }
+        this.maxSegmentBytes = maxBytes / segments;
+    }
+
+    /**
+     * @param key
+     * @param value
+     * @return The estimated size of the entry, in bytes
+     */
+    protected abstract long bytes(K key, V value);
+
+    /**
+     * @param key
+     * @return The cached value, or null if not found
+     */
+    public V get(final K key) {
+        final Segment<K, V> segment = segment(key);
+        final V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Adds an entry to the cache, evicting least-recently-used entries if necessary. Entries larger than a single
+     * segment are not cached.
+     * 
+     * @param key
+     * @param value
+     */
+    public void put(final K key, final V value) {
+
+        final long bytes = bytes(key, value);
+        if (bytes > maxSegmentBytes) {
+            return;
+        }
+
+        final Segment<K, V> segment = segment(key);
+        synchronized (segment) {
+            final V previous = segment.put(key, value);
+            if (previous != null) {
+                segment.bytes -= bytes(key, previous);
+            }
+            segment.bytes += bytes;
+
+            // Evict in LRU order until we're within our size limit
+            for (final Iterator<Map.Entry<K, V>> i = segment.entrySet().iterator(); segment.bytes > maxSegmentBytes
+                    && i.hasNext();) {
+                final Map.Entry<K, V> entry = i.next();
+                segment.bytes -= bytes(entry.getKey(), entry.getValue());
+                i.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries. Hit, miss, and eviction counts are retained.
+     */
+    public void clear() {
+        for (final Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+                segment.bytes = 0;
+            }
+        }
+    }
+
+    private Segment<K, V> segment(final K key) {
+        return segments[(key.hashCode() & 0x7fffffff) % segments.length];
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return The number of cached entries
+     */
+    public int size() {
+        int size = 0;
+        for (final Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return The estimated size of all cached entries, in bytes
+     */
+    public long bytes() {
+        long bytes = 0;
+        for (final Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                bytes += segment.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    private final static class Segment<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private long bytes;
+
+        public Segment() {
+            super(16, .75f, true);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A fixed gang of persistent worker threads which execute a single {@link Task} in parallel and then rendezvous with
+ * the calling thread. Intended for very fine-grained parallelism (e.g., splitting the grammar intersection for a
+ * single chart cell across threads), where the cost of submitting tasks to an executor and waiting on
+ * {@link java.util.concurrent.Future}s can exceed the cost of the work itself.
+ * 
+ * Dispatch does not allocate: callers generally keep a single preallocated {@link Task} instance, update its fields
+ * before each call to {@link #invoke(Task)}, and rely on the happens-before edge established by {@link #invoke(Task)}
+ * to publish those fields to the workers. Idle workers spin briefly before parking, so back-to-back invocations
+ * (e.g., consecutive cells) are dispatched without waking sleeping threads.
+ * 
+ * A {@link TaskGang} is not reentrant; concurrent callers should each own a separate gang.
+ * 
+ * @author Aaron Dunlop
+ */
+public final class TaskGang {
+
+    /**
+     * Spin iterations before an idle worker (or a waiting caller) parks. On a uniprocessor, spinning cannot make
+     * progress, so we park immediately.
+     */
+    private final static int SPIN_LIMIT = Runtime.getRuntime().availableProcessors() > 1 ? 1 << 14 : 0;
+
+    /** Parallel work, executed once for each index 0..size - 1 */
+    public interface Task {
+        void run(int index);
+    }
+
+    private final Worker[] workers;
+
+    /** Incremented to start each invocation (and on shutdown) */
+    private volatile int generation;
+
+    private volatile Task task;
+
+    private volatile boolean shutdown;
+
+    /** Workers which have not yet completed the current invocation */
+    private final AtomicInteger remaining = new AtomicInteger();
+
+    private volatile Thread waitingCaller;
+
+    private volatile Throwable failure;
+
+    /**
+     * @param size Total parallelism, including the calling thread (i.e., <code>size - 1</code> worker threads are
+     *            started)
+     */
+    public TaskGang(final int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Gang size must be at least 1: " + size);
+        }
+
+        this.workers = new Worker[size - 1];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i + 1);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * @return Total parallelism, including the calling thread
+     */
+    public int size() {
+        return workers.length + 1;
+    }
+
+    /**
+     * Executes <code>task.run(i)</code> for each <code>i</code> in <code>0..size() - 1</code> and waits for all
+     * executions to complete. Index 0 is executed on the calling thread.
+     * 
+     * @param t Task
+     * @throws RuntimeException if any execution throws an exception
+     */
+    public void invoke(final Task t) {
+        if (shutdown) {
+            throw new IllegalStateException("Gang has been shut down");
+        }
+
+        if (workers.length > 0) {
+            this.task = t;
+            remaining.set(workers.length);
+            // Volatile write; publishes the task (and its fields) to the workers
+            generation++;
+            for (final Worker w : workers) {
+                if (w.parked) {
+                    LockSupport.unpark(w);
+                }
+            }
+        }
+
+        Throwable callerFailure = null;
+        try {
+            t.run(0);
+        } catch (final Throwable e) {
+            callerFailure = e;
+        }
+
+        if (workers.length > 0) {
+            awaitWorkers();
+            this.task = null;
+        }
+
+        if (callerFailure == null) {
+            callerFailure = failure;
+        }
+        failure = null;
+
+        if (callerFailure instanceof RuntimeException) {
+            throw (RuntimeException) callerFailure;
+        } else if (callerFailure instanceof Error) {
+            throw (Error) callerFailure;
+        }
+    }
+
+    private void awaitWorkers() {
+        for (int spins = 0; remaining.get() != 0; spins++) {
+            if (spins >= SPIN_LIMIT) {
+                waitingCaller = Thread.currentThread();
+                while (remaining.get() != 0) {
+                    LockSupport.park(this);
+                }
+                waitingCaller = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Terminates the worker threads. Workers are daemon threads, so a gang which is never shut down will not prevent
+     * JVM exit, but its threads will remain idle until then.
+     */
+    public void shutdown() {
+        shutdown = true;
+        generation++;
+        for (final Worker w : workers) {
+            LockSupport.unpark(w);
+        }
+    }
+
+    private final class Worker extends Thread {
+
+        private final int index;
+
+        volatile boolean parked;
+
+        public Worker(final int index) {
+            super("TaskGang-worker-" + index);
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            int seenGeneration = 0;
+
+            while (true) {
+                // Wait for the next invocation
+                for (int spins = 0; generation == seenGeneration; spins++) {
+                    if (spins >= SPIN_LIMIT) {
+                        parked = true;
+                        while (generation == seenGeneration) {
+                            LockSupport.park(this);
+                        }
+                        parked = false;
+                        break;
+                    }
+                }
+                seenGeneration = generation;
+
+                if (shutdown) {
+                    return;
+                }
+
+                try {
+                    task.run(index);
+                } catch (final Throwable e) {
+                    failure = e;
+                }
+
+                if (remaining.decrementAndGet() == 0) {
+                    final Thread caller = waitingCaller;
+                    if (caller != null) {
+                        LockSupport.unpark(caller);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link LatencyHistogram}
+ * 
+ * @author Aaron Dunlop
+ */
+public class TestLatencyHistogram {
+
+    @Test
+    public void testBuckets() {
+        // Bucket boundaries should be contiguous and monotonic
+        for (int b = 1; b < LatencyHistogram.bucket(LatencyHistogram.MAX_VALUE); b++) {
+            final long lower = LatencyHistogram.bucketLowerBound(b);
+            assertTrue(lower > LatencyHistogram.bucketLowerBound(b - 1));
+            assertEquals(b, LatencyHistogram.bucket(lower));
+            assertEquals(b - 1, LatencyHistogram.bucket(lower - 1));
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        final LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.percentile(50));
+
+        for (int i = 1; i <= 1000000; i++) {
+            h.record(i * 1000L);
+        }
+        assertEquals(1000000, h.count());
+        assertEquals(1000000000L, h.max());
+        assertEquals(500000500, h.mean(), 1);
+
+        // Percentiles should be accurate to within the bucket resolution (~3%)
+        assertEquals(500000000, h.percentile(50), 500000000 * .03);
+        assertEquals(990000000, h.percentile(99), 990000000 * .03);
+        assertEquals(1000000000L, h.percentile(100));
+
+        // Small values are recorded exactly
+        final LatencyHistogram small = new LatencyHistogram();
+        small.record(3);
+        small.record(5);
+        small.record(7);
+        assertEquals(5, small.percentile(50));
+        assertEquals(7, small.percentile(99));
+    }
+
+    @Test
+    public void testClamp() {
+        final LatencyHistogram h = new LatencyHistogram();
+        h.record(-5);
+        h.record(Long.MAX_VALUE);
+        assertEquals(2, h.count());
+        assertEquals(LatencyHistogram.MAX_VALUE, h.max());
+        assertEquals(0, h.percentile(50));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010-2014, Oregon Health & Science University
+ * 
+ * This file is part of the BUBS Parser.
+ * 
+ * The BUBS Parser is free software: you can redistribute it and/or 
+ * modify  it under the terms of the GNU Affero General Public License 
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ * 
+ * The BUBS Parser is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with the BUBS Parser. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Further documentation and contact information is available at
+ *   https://code.google.com/p/bubs-parser/ 
+ */
+package edu.ohsu.cslu.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link TaskGang}
+ * 
+ * @author Aaron Dunlop
+ */
+public class TestTaskGang {
+
+    @Test
+    public void testInvoke() {
+        final TaskGang gang = new TaskGang(4);
+        assertEquals(4, gang.size());
+
+        // Reuse a single task descriptor, updating its state before each invocation
+        final SumTask task = new SumTask(4);
+        try {
+            for (int i = 0; i < 10000; i++) {
+                task.multiplier = i;
+                gang.invoke(task);
+                assertArrayEquals(new int[] { 0, i, 2 * i, 3 * i }, task.results);
+            }
+        } finally {
+            gang.shutdown();
+        }
+    }
+
+    @Test
+    public void testSingleThread() {
+        final TaskGang gang = new TaskGang(1);
+        final SumTask task = new SumTask(1);
+        task.multiplier = 3;
+        gang.invoke(task);
+        assertArrayEquals(new int[] { 0 }, task.results);
+        gang.shutdown();
+    }
+
+    @Test
+    public void testWorkerException() {
+        final TaskGang gang = new TaskGang(3);
+        try {
+            gang.invoke(new TaskGang.Task() {
+                @Override
+                public void run(final int index) {
+                    if (index == 2) {
+                        throw new IllegalArgumentException("Expected");
+                    }
+                }
+            });
+            fail("Expected IllegalArgumentException");
+        } catch (final IllegalArgumentException expected) {
+        }
+
+        // The gang should remain usable after a failed invocation
+        final SumTask task = new SumTask(3);
+        task.multiplier = 2;
+        gang.invoke(task);
+        assertArrayEquals(new int[] { 0, 2, 4 }, task.results);
+        gang.shutdown();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testInvokeAfterShutdown() {
+        final TaskGang gang = new TaskGang(2);
+        gang.shutdown();
+        gang.invoke(new SumTask(2));
+    }
+
+    private static class SumTask implements TaskGang.Task {
+        int multiplier;
+        final int[] results;
+
+        public SumTask(final int size) {
+            this.results = new int[size];
+        }
+
+        @Override
+        public void run(final int index) {
+            results[index] = index * multiplier;
+        }
+    }
+}
@@ -21,11 +21,20 @@ package edu.ohsu.cslu.webapp;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
 
 import javax.servlet.ServletConfig;
@@ -39,18 +48,33 @@ import cltool4j.GlobalConfigProperties;
 import edu.ohsu.cslu.grammar.DecisionTreeTokenClassifier;
 import edu.ohsu.cslu.grammar.LeftCscSparseMatrixGrammar;
 import edu.ohsu.cslu.grammar.SparseMatrixGrammar.PerfectIntPairHashPackingFunction;
+import edu.ohsu.cslu.parser.BatchingParseService;
+import edu.ohsu.cslu.parser.ModelRegistry;
+import edu.ohsu.cslu.parser.ParseTask;
+import edu.ohsu.cslu.parser.Parser.ResearchParserType;
 import edu.ohsu.cslu.parser.ParserDriver;
 import edu.ohsu.cslu.parser.SparseMatrixParser;
 import edu.ohsu.cslu.parser.cellselector.CompleteClosureModel;
 import edu.ohsu.cslu.parser.fom.BoundaryLex;
 import edu.ohsu.cslu.parser.fom.FigureOfMeritModel.FOMType;
-import edu.ohsu.cslu.parser.ml.CartesianProductHashSpmlParser;
 
 /**
  * A simple servlet implementation, which deploys BUBS as a service. Takes plain text as input, and returns a parse tree
  * in standard 1-line bracketed format. Loads the grammar, prioritization, and pruning models at servlet initialization,
  * so subsequent parsing should execute quickly.
  * 
+ * Models are maintained in a {@link ModelRegistry}, so they can be replaced without restarting the service. If the
+ * 'allowReload' init parameter is 'true', a PUT request with 'grammar', 'fom', and 'pruning' parameters (and an
+ * optional 'version') loads a new model in the background, warms it with the sentences from the 'warmup' init
+ * parameter (if specified), and switches subsequent requests to it. Requests in progress complete with the previous
+ * model. Model files named in init parameters are read from the classpath or, if not found there, from the
+ * filesystem. Model files named in PUT requests are resolved relative to the 'modelDir' init parameter, and requests
+ * naming files outside that directory are rejected (reloading is disabled if 'modelDir' is not specified).
+ * 
+ * If the 'batchWindow' init parameter is specified, sentences from concurrent requests are micro-batched by length
+ * with a {@link BatchingParseService} (configured by the 'batchWindow', 'batchBuckets', 'maxBatchSize', and
+ * 'batchThreads' init parameters), instead of each request thread parsing its own sentences.
+ * 
  * TODO Cleanup the {@link ThreadLocal} instances in {@link SparseMatrixParser} if the webapp is reloaded (maybe with a
  * context listener?)
  * 
@@ -60,29 +84,111 @@ public class ParseServlet extends HttpServlet {
 
     private static final long serialVersionUID = 1L;
 
-    private final ParserDriver opts = new ParserDriver();
+    /** The grammar, FOM, and pruning model are thread-safe, so each is loaded once and shared by all requests */
+    private final ModelRegistry registry = new ModelRegistry();
+
+    /** Micro-batches sentences across requests (null if batching is disabled) */
+    private BatchingParseService batcher;
+
+    private boolean allowReload;
 
-    // The grammar, FOM, and pruning model are thread-safe, so we can create them 1-time at
-    private LeftCscSparseMatrixGrammar grammar;
+    /** The directory from which PUT requests may load models (null if unspecified) */
+    private File modelDirectory;
+    private List<String> warmupSentences = Collections.emptyList();
 
     @Override
     protected void doPost(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException,
             IOException {
 
-        // The parser implementation is _not_ thread-safe, so we have to recreate it for each request. That entails
-        // creating a new chart object as well; we could probably use a thread-local to reuse the parser and chart
-        // instances, but creating them at request time isn't too terribly expensive.
-        final CartesianProductHashSpmlParser parser = new CartesianProductHashSpmlParser(opts, grammar);
+        if (batcher != null) {
+            doBatchedPost(req, resp);
+            return;
+        }
+
+        // The parser implementation is _not_ thread-safe, so each request leases its own parser instance (and chart)
+        // from the current model. The entire request is parsed with the same model, even if a new model is
+        // installed while it is in progress.
+        final ModelRegistry.Lease lease = registry.acquire();
+        try {
+            final BufferedReader br = new BufferedReader(new InputStreamReader(req.getInputStream()));
+            final BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(resp.getOutputStream()));
+            for (String line = br.readLine(); line != null; line = br.readLine()) {
+                bw.write(lease.parse(line).naryParse().toString());
+            }
+            bw.flush();
+            resp.getOutputStream().close();
+        } finally {
+            lease.close();
+        }
+    }
+
+    /**
+     * Queues all sentences from the request with the {@link BatchingParseService}, and writes the results in input
+     * order as they complete.
+     */
+    private void doBatchedPost(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException,
+            IOException {
 
         final BufferedReader br = new BufferedReader(new InputStreamReader(req.getInputStream()));
-        final BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(resp.getOutputStream()));
+        final List<Future<ParseTask>> results = new ArrayList<Future<ParseTask>>();
         for (String line = br.readLine(); line != null; line = br.readLine()) {
-            bw.write(parser.parseSentence(line).naryParse().toString());
+            results.add(batcher.submit(line));
+        }
+
+        final BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(resp.getOutputStream()));
+        try {
+            for (final Future<ParseTask> result : results) {
+                bw.write(result.get().naryParse().toString());
+            }
+        } catch (final InterruptedException e) {
+            throw new ServletException(e);
+        } catch (final ExecutionException e) {
+            throw new ServletException(e.getCause());
         }
         bw.flush();
         resp.getOutputStream().close();
     }
 
+    /**
+     * Loads a new model in the background (if enabled with the 'allowReload' init parameter). Responds immediately with
+     * 202 (Accepted); the new model is installed when loading and warmup complete.
+     */
+    @Override
+    protected void doPut(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException,
+            IOException {
+
+        if (!allowReload || modelDirectory == null) {
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN, "Model reloading is disabled");
+            return;
+        }
+
+        if (req.getParameter("grammar") == null || req.getParameter("fom") == null
+                || req.getParameter("pruning") == null) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "'grammar', 'fom', and 'pruning' are required");
+            return;
+        }
+
+        final File grammarFile = modelFile(req.getParameter("grammar"));
+        final File fomFile = modelFile(req.getParameter("fom"));
+        final File pruningFile = modelFile(req.getParameter("pruning"));
+        if (grammarFile == null || fomFile == null || pruningFile == null) {
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN, "Model files must be within the model directory");
+            return;
+        }
+        final String version = req.getParameter("version") != null ? req.getParameter("version") : req
+                .getParameter("grammar");
+
+        registry.installAsync(version, new Callable<ParserDriver>() {
+            @Override
+            public ParserDriver call() throws Exception {
+                return loadModel(grammarFile.getPath(), fomFile.getPath(), pruningFile.getPath());
+            }
+        }, warmupSentences);
+
+        resp.setStatus(HttpServletResponse.SC_ACCEPTED);
+        resp.getWriter().println("Loading model " + version + " (current model: " + registry.current().version + ")");
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public void init() throws ServletException {
@@ -90,39 +196,96 @@ public class ParseServlet extends HttpServlet {
         try {
             final ServletConfig config = getServletConfig();
 
-            // Load grammar, prioritization model, and pruning model from classpath ('grammar', 'fom', 'pruning',
-            // respectively)
-            final String grammarFile = config.getInitParameter("grammar");
-            BaseLogger.singleton().info("Loading grammar from " + grammarFile);
-            grammar = new LeftCscSparseMatrixGrammar(new InputStreamReader(new GZIPInputStream(getClass()
-                    .getClassLoader().getResourceAsStream(grammarFile))), new DecisionTreeTokenClassifier(),
-                    PerfectIntPairHashPackingFunction.class);
-            opts.setGrammar(grammar);
-
-            final String fomFile = config.getInitParameter("fom");
-            BaseLogger.singleton().info("Loading FOM model from " + fomFile);
-            opts.fomModel = new BoundaryLex(FOMType.BoundaryLex, grammar, new BufferedReader(new InputStreamReader(
-                    new GZIPInputStream(getClass().getClassLoader().getResourceAsStream(fomFile)),
-                    Charset.defaultCharset())));
-
-            final String pruningFile = config.getInitParameter("pruning");
-            BaseLogger.singleton().info("Loading pruning model from " + pruningFile);
-            opts.cellSelectorModel = new CompleteClosureModel(getClass().getClassLoader().getResourceAsStream(
-                    pruningFile), null);
-
             // Set any other init parameters as global config properties
             for (final Enumeration<String> e = config.getInitParameterNames(); e.hasMoreElements();) {
                 final String key = e.nextElement();
-                if (key.equals("grammar") || key.equals("fom") || key.equals("pruning")) {
+                if (key.equals("grammar") || key.equals("fom") || key.equals("pruning") || key.equals("warmup")
+                        || key.equals("allowReload") || key.equals("modelDir")) {
                     continue;
                 }
                 GlobalConfigProperties.singleton().setProperty(key, config.getInitParameter(key));
             }
 
+            allowReload = Boolean.parseBoolean(config.getInitParameter("allowReload"));
+            if (config.getInitParameter("modelDir") != null) {
+                modelDirectory = new File(config.getInitParameter("modelDir")).getCanonicalFile();
+            }
+            if (config.getInitParameter(BatchingParseService.PROPERTY_BATCH_WINDOW) != null) {
+                batcher = new BatchingParseService(registry);
+            }
+
+            final String warmupFile = config.getInitParameter("warmup");
+            if (warmupFile != null) {
+                warmupSentences = new ArrayList<String>();
+                final BufferedReader br = new BufferedReader(new InputStreamReader(openModel(warmupFile),
+                        Charset.defaultCharset()));
+                for (String line = br.readLine(); line != null; line = br.readLine()) {
+                    if (line.trim().length() > 0) {
+                        warmupSentences.add(line);
+                    }
+                }
+                br.close();
+            }
+
+            // Load grammar, prioritization model, and pruning model ('grammar', 'fom', 'pruning', respectively)
+            final String grammarFile = config.getInitParameter("grammar");
+            registry.install(grammarFile,
+                    loadModel(grammarFile, config.getInitParameter("fom"), config.getInitParameter("pruning")),
+                    warmupSentences);
+
         } catch (final IOException e) {
             throw new ServletException(e);
         } catch (final ClassNotFoundException e) {
             throw new ServletException(e);
         }
     }
+
+    @Override
+    public void destroy() {
+        if (batcher != null) {
+            batcher.shutdown();
+        }
+        registry.shutdown();
+    }
+
+    private ParserDriver loadModel(final String grammarFile, final String fomFile, final String pruningFile)
+            throws IOException, ClassNotFoundException {
+
+        final ParserDriver opts = new ParserDriver();
+        opts.researchParserType = ResearchParserType.CartesianProductHashMl;
+
+        BaseLogger.singleton().info("Loading grammar from " + grammarFile);
+        final LeftCscSparseMatrixGrammar grammar = new LeftCscSparseMatrixGrammar(new InputStreamReader(
+                new GZIPInputStream(openModel(grammarFile))), new DecisionTreeTokenClassifier(),
+                PerfectIntPairHashPackingFunction.class);
+        opts.setGrammar(grammar);
+
+        BaseLogger.singleton().info("Loading FOM model from " + fomFile);
+        opts.fomModel = new BoundaryLex(FOMType.BoundaryLex, grammar, new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(openModel(fomFile)), Charset.defaultCharset())));
+
+        BaseLogger.singleton().info("Loading pruning model from " + pruningFile);
+        opts.cellSelectorModel = new CompleteClosureModel(openModel(pruningFile), null);
+
+        return opts;
+    }
+
+    /**
+     * Resolves a model file named in a PUT request, relative to the model directory
+     * 
+     * @param name File name
+     * @return The file, or null if it is not within the model directory
+     */
+    private File modelFile(final String name) throws IOException {
+        final File file = new File(modelDirectory, name).getCanonicalFile();
+        return file.getPath().startsWith(modelDirectory.getPath() + File.separator) ? file : null;
+    }
+
+    /**
+     * Opens a model file from the classpath or (if not found on the classpath) from the filesystem
+     */
+    private InputStream openModel(final String name) throws IOException {
+        final InputStream is = getClass().getClassLoader().getResourceAsStream(name);
+        return is != null ? is : new FileInputStream(name);
+    }
 }